@@ -0,0 +1,662 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs ArrayTour.java
+ *  Execution:    java-introcs ArrayTour < file.txt
+ *  Dependencies: DistanceKernel.java CandidateGraph.java Storage.java
+ *                StdMap.java MapSession.java
+ *                StdIn.java StdDraw.java
+ *
+ *  Circular tour stored in primitive arrays instead of linked Node objects.
+ *  Point i is the i-th point inserted; next[i] is the point that follows it
+ *  in the tour and prev[i] the one before it. The nearest and smallest insertion heuristics produce the
+ *  same tours as the linked-list Tour (same scan order from the first point,
+ *  same tie-breaking), but the hot loops read coordinates straight out of
+ *  double[] arrays, compare squared distances where only the order matters,
+ *  and never allocate.
+ *
+ *  Edge i -> next[i] is also kept in structure-of-arrays form (the successor's
+ *  coordinates and the edge length, indexed by i). Nearest insertion computes
+ *  the squared distance to every point, and smallest insertion the increase
+ *  for every edge, in one contiguous DistanceKernel pass, and then they pick
+ *  the best point or edge in tour order.
+ *
+ *  Points can also be removed, in O(1) time once found: the neighbors of the
+ *  removed point are linked, and the last point moves into its index so the
+ *  arrays stay dense (so a point keeps its insertion index only until a
+ *  point is removed). remove() and removeNearest() find the point with a
+ *  uniform grid, built on first use and then kept up to date by insertions
+ *  and removals, so interactive clients (TSPVisualizer) can edit large
+ *  tours without rebuilding them. After a removal, the few points on each
+ *  side of the gap are each moved to the best edge next to one of their
+ *  nearest points, if that shortens the tour (a local Or-opt repair).
+ *
+ *  next and prev are plain int[] (see Storage for why they are not
+ *  Storage.Ints); CandidateGraph's lists, read once per Or-opt move, are.
+ *
+ *  Clients read the tour back through order() or coordinates() instead of
+ *  parsing toString(), and print() writes large tours through a single
+ *  buffered writer.
+ *
+ *  As with Tour(true), a tour created with usingMapDistance == true measures
+ *  distances with StdMap.getMapDistance instead of Euclidean distance, and
+ *  ArrayTour(session) with the given MapSession, so tours on different maps
+ *  can be built at the same time in different threads. Map
+ *  distances are directed (one-way streets, transit), so the tour is too:
+ *  edge i is always measured from i to next[i], insertion costs are
+ *  d(i, p) + d(p, next[i]) - d(i, next[i]), and orOpt() moves segments
+ *  without ever reversing one.
+ *
+ *  % java-introcs ArrayTour < tsp1000.txt
+ *  (...)
+ *  Tour length = 27868.7106
+ *  Number of points = 1000
+ *
+ **************************************************************************** */
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+public class ArrayTour {
+    private static final int INIT_CAPACITY = 16;
+    private static final int MAX_SEGMENT = 3;       // longest run of points orOpt() moves
+    private static final int NEIGHBORS = 10;        // candidate neighbors for Euclidean orOpt()
+    private static final double EPSILON = 1e-9;     // smallest improvement orOpt() accepts
+    private static final int REPAIR = 2;            // points on each side of a removal to reinsert
+    private static final int REPAIR_NEIGHBORS = 8;  // nearest points whose edges a repair tries
+
+    private final DistanceKernel kernel;
+    private final boolean usingMapDistance;
+    private final MapSession map;   // where map distances come from, or null
+
+    private double[] x;     // x[i] = x-coordinate of the i-th inserted point
+    private double[] y;     // y[i] = y-coordinate of the i-th inserted point
+    private int[] next;     // next[i] = index of the point after i in the tour
+    private int[] prev;     // prev[i] = index of the point before i in the tour
+    private double[] nx;    // nx[i] = x[next[i]]
+    private double[] ny;    // ny[i] = y[next[i]]
+    private double[] edge;  // edge[i] = length of the edge i -> next[i]
+    private double[] delta; // scratch space for the kernel
+    private int n;          // number of points in the tour
+    private Grid grid;      // spatial index, built by the first removal
+
+    // creates an empty tour
+    public ArrayTour() {
+        this(INIT_CAPACITY);
+    }
+
+    // creates an empty tour, measuring distances on the map if usingMapDistance
+    public ArrayTour(boolean usingMapDistance) {
+        this(INIT_CAPACITY, DistanceKernel.create(), usingMapDistance ? StdMap.getDefaultSession() : null);
+    }
+
+    // creates an empty tour, measuring distances on the map of the given session
+    public ArrayTour(MapSession session) {
+        this(INIT_CAPACITY, DistanceKernel.create(), session);
+        if (session == null) throw new IllegalArgumentException("Map session can't be null");
+    }
+
+    // creates an empty tour with room for capacity points before resizing
+    public ArrayTour(int capacity) {
+        this(capacity, DistanceKernel.create());
+    }
+
+    // creates an empty tour that computes batches of distances with kernel
+    public ArrayTour(int capacity, DistanceKernel kernel) {
+        this(capacity, kernel, null);
+    }
+
+    private ArrayTour(int capacity, DistanceKernel kernel, MapSession map) {
+        if (capacity < 1) capacity = 1;
+        this.kernel = kernel;
+        this.usingMapDistance = map != null;
+        this.map = map;
+        x = new double[capacity];
+        y = new double[capacity];
+        next = new int[capacity];
+        prev = new int[capacity];
+        nx = new double[capacity];
+        ny = new double[capacity];
+        edge = new double[capacity];
+        delta = new double[capacity];
+    }
+
+    // returns the number of points in this tour
+    public int size() {
+        return n;
+    }
+
+    // returns the length of this tour
+    public double length() {
+        double sum = 0.0;
+        if (n == 0) return sum;
+        int i = 0;
+        do {
+            sum += edge[i];
+            i = next[i];
+        } while (i != 0);
+        return sum;
+    }
+
+    // inserts (px, py) after the closest point already in the tour
+    public void insertNearest(double px, double py) {
+        if (n == 0) {
+            add(px, py, -1);
+            return;
+        }
+        if (usingMapDistance) {
+            add(px, py, nearestOnMap(px, py));
+            return;
+        }
+
+        // squared distances order candidates exactly like distances, and
+        // are computed in index order
+        kernel.squaredDistances(px, py, x, y, 0, n, delta);
+
+        // but compared in tour order, so ties break like Tour
+        int best = 0;
+        double bestDist2 = Double.POSITIVE_INFINITY;
+        int i = 0;
+        do {
+            if (delta[i] < bestDist2) {
+                bestDist2 = delta[i];
+                best = i;
+            }
+            i = next[i];
+        } while (i != 0);
+
+        add(px, py, best);
+    }
+
+    // inserts (px, py) where it increases the tour length the least
+    public void insertSmallest(double px, double py) {
+        if (n == 0) {
+            add(px, py, -1);
+            return;
+        }
+
+        // increase for every edge i -> next[i], computed in index order
+        if (usingMapDistance) mapDeltas(px, py);
+        else kernel.insertionDeltas(px, py, x, y, nx, ny, edge, 0, n, delta);
+
+        // but chosen in tour order, so ties break like Tour
+        int best = 0;
+        double bestDelta = Double.POSITIVE_INFINITY;
+        int i = 0;
+        do {
+            if (delta[i] < bestDelta) {
+                bestDelta = delta[i];
+                best = i;
+            }
+            i = next[i];
+        } while (i != 0);
+
+        add(px, py, best);
+    }
+
+    // returns the point closest to (px, py) by map distance, in tour order
+    private int nearestOnMap(double px, double py) {
+        int best = 0;
+        double bestDist = Double.POSITIVE_INFINITY;
+        int i = 0;
+        do {
+            double dist = map.getMapDistance(x[i], y[i], px, py);
+            if (dist < bestDist) {
+                bestDist = dist;
+                best = i;
+            }
+            i = next[i];
+        } while (i != 0);
+        return best;
+    }
+
+    // delta[i] = increase in map distance from inserting (px, py) after i
+    private void mapDeltas(double px, double py) {
+        for (int i = 0; i < n; i++) {
+            delta[i] = map.getMapDistance(x[i], y[i], px, py)
+                     + map.getMapDistance(px, py, nx[i], ny[i]) - edge[i];
+        }
+    }
+
+    // returns the distance from point i to point j
+    private double distance(int i, int j) {
+        if (usingMapDistance) return map.getMapDistance(x[i], y[i], x[j], y[j]);
+        double dx = x[i] - x[j];
+        double dy = y[i] - y[j];
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+    // appends (px, py) to the arrays and links it after point after
+    // (after == -1 starts a tour that consists of just this point)
+    private void add(double px, double py, int after) {
+        if (n == x.length) resize(2 * n);
+        x[n] = px;
+        y[n] = py;
+        if (after == -1) link(n, n);
+        else {
+            link(n, next[after]);
+            link(after, n);
+        }
+        n++;
+        if (grid != null) {
+            if (grid.outgrown()) grid = new Grid();
+            else grid.insert(n - 1);
+        }
+    }
+
+    // makes j the successor of i, updating the edge arrays
+    private void link(int i, int j) {
+        next[i] = j;
+        prev[j] = i;
+        nx[i] = x[j];
+        ny[i] = y[j];
+        edge[i] = distance(i, j);
+    }
+
+    // resizes the parallel arrays to the given capacity
+    private void resize(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        nx = Arrays.copyOf(nx, capacity);
+        ny = Arrays.copyOf(ny, capacity);
+        edge = Arrays.copyOf(edge, capacity);
+        delta = new double[capacity];
+        if (grid != null) grid.resize(capacity);
+    }
+
+    // removes one point at (px, py) from the tour and repairs the tour
+    // around it; returns false if there is no such point
+    public boolean remove(double px, double py) {
+        if (n == 0) return false;
+        if (grid == null) grid = new Grid();
+        int i = grid.find(px, py);
+        if (i == -1) return false;
+        removeAt(i);
+        return true;
+    }
+
+    // removes the point closest to (px, py) from the tour and repairs the
+    // tour around it; returns the coordinates { x, y } of the removed point,
+    // or null if the tour is empty
+    public double[] removeNearest(double px, double py) {
+        if (n == 0) return null;
+        if (grid == null) grid = new Grid();
+        int[] nearest = new int[1];
+        grid.nearest(px, py, 1, -1, nearest);
+        double[] removed = { x[nearest[0]], y[nearest[0]] };
+        removeAt(nearest[0]);
+        return removed;
+    }
+
+    // unlinks point i, moves the last point into index i and repairs the
+    // tour around the gap
+    private void removeAt(int i) {
+        int a = prev[i], b = next[i];
+        grid.delete(i);
+        n--;
+        if (n == 0) return;
+        link(a, b);
+
+        // keep the arrays dense: the last point takes index i
+        int last = n;
+        if (i != last) {
+            x[i] = x[last];
+            y[i] = y[last];
+            next[i] = next[last];
+            prev[i] = prev[last];
+            nx[i] = nx[last];
+            ny[i] = ny[last];
+            edge[i] = edge[last];
+            next[prev[i]] = i;
+            prev[next[i]] = i;
+            grid.move(last, i);
+            if (a == last) a = i;
+            if (b == last) b = i;
+        }
+        if (n == 1) link(0, 0);     // the move above follows the old self-loop
+        if (grid.outgrown()) grid = new Grid();
+        repair(a, b);
+    }
+
+    // moves each of the points near the new edge a -> b to a better place,
+    // next to one of its nearest points, if that shortens the tour
+    private void repair(int a, int b) {
+        if (n < 5) return;
+        int[] around = new int[2 * REPAIR];
+        int count = 0;
+        for (int k = 0, i = a; k < REPAIR && i != b; k++, i = prev[i]) around[count++] = i;
+        for (int k = 0, i = b; k < REPAIR && i != a; k++, i = next[i]) around[count++] = i;
+
+        int[] near = new int[REPAIR_NEIGHBORS];
+        for (int k = 0; k < count; k++) {
+            int p = around[k];
+            int before = prev[p], after = next[p];
+            double removed = edge[before] + edge[p] - distance(before, after);
+            if (removed <= EPSILON) continue;
+
+            // best edge u -> next[u] next to one of p's nearest points
+            int found = grid.nearest(x[p], y[p], near.length, p, near);
+            int bestU = -1;
+            double bestGain = EPSILON;
+            for (int j = 0; j < found; j++) {
+                for (int u : new int[] { near[j], prev[near[j]] }) {
+                    if (u == p || u == before) continue;     // edges at p, or where p is
+                    double added = distance(u, p) + distance(p, next[u]) - edge[u];
+                    if (removed - added > bestGain) {
+                        bestGain = removed - added;
+                        bestU = u;
+                    }
+                }
+            }
+            if (bestU == -1) continue;
+            int v = next[bestU];
+            link(before, after);
+            link(bestU, p);
+            link(p, v);
+        }
+    }
+
+    // improves the tour with Or-opt moves: a run of one to three consecutive
+    // points is cut out and reinserted, in the same direction, between two
+    // other consecutive points. Segments are never reversed, so the moves
+    // are valid for asymmetric (map) distances. Repeats until no move
+    // shortens the tour; returns the total decrease in length
+    public double orOpt() {
+        if (n < MAX_SEGMENT + 2) return 0.0;
+        // on the map every point is a candidate (the instances are small);
+        // in the plane only the edges next to the segment's nearest points
+        return orOpt(usingMapDistance ? null : CandidateGraph.create(x, y, n, NEIGHBORS));
+    }
+
+    // improves the tour with Or-opt moves, with the neighbors in the given
+    // graph over the points in insertion order as candidates (all points if
+    // graph is null); returns the total decrease in length
+    public double orOpt(CandidateGraph graph) {
+        if (n < MAX_SEGMENT + 2) return 0.0;
+        if (graph != null && graph.size() != n)
+            throw new IllegalArgumentException("graph must have " + n + " points, not " + graph.size());
+        int[] candidates = new int[graph == null ? n : 0];
+        double saved = 0.0;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int s = 0; s < n; s++) {
+                int e = s;
+                for (int len = 1; len <= MAX_SEGMENT; len++) {
+                    if (len > 1) e = next[e];
+                    int p = prev[s], q = next[e];
+                    if (q == p || q == s) break;        // too little left outside
+                    double removed = edge[p] + edge[e] - distance(p, q);
+                    if (removed <= EPSILON) continue;
+
+                    // best edge a -> b outside the segment to put it in
+                    int count;
+                    if (graph == null) {
+                        for (int a = 0; a < n; a++) candidates[a] = a;
+                        count = n;
+                    }
+                    else {
+                        Storage.Ints offsets = graph.offsets(), targets = graph.targets();
+                        int from = offsets.get(s), fromEnd = offsets.get(s + 1);
+                        int to = offsets.get(e), toEnd = offsets.get(e + 1);
+                        int need = (fromEnd - from) + (toEnd - to);
+                        if (candidates.length < need) candidates = new int[2 * need];
+                        count = 0;
+                        for (int k = from; k < fromEnd; k++) candidates[count++] = targets.get(k);
+                        for (int k = to; k < toEnd; k++) candidates[count++] = prev[targets.get(k)];
+                    }
+                    int bestA = -1;
+                    double bestGain = EPSILON;
+                    for (int k = 0; k < count; k++) {
+                        int a = candidates[k];
+                        if (a == p || inSegment(a, s, len)) continue;
+                        int b = next[a];
+                        double added = distance(a, s) + distance(e, b) - edge[a];
+                        if (removed - added > bestGain) {
+                            bestGain = removed - added;
+                            bestA = a;
+                        }
+                    }
+                    if (bestA == -1) continue;
+
+                    int b = next[bestA];
+                    link(p, q);
+                    link(e, b);
+                    link(bestA, s);
+                    saved += bestGain;
+                    improved = true;
+                    break;
+                }
+            }
+        }
+        return saved;
+    }
+
+    // is point a one of the len points starting at s?
+    private boolean inSegment(int a, int s, int len) {
+        for (int k = 0; k < len; k++, s = next[s]) {
+            if (a == s) return true;
+        }
+        return false;
+    }
+
+    // uniform grid over the points of the tour, for exact and nearest-point
+    // lookups; each cell holds a doubly linked list of point indices. The
+    // grid covers the bounding box of the points it was built with (points
+    // outside go to the border cells) and is rebuilt when the tour has grown
+    // or shrunk by a factor of 4, so its cost is amortized O(1) per change
+    private final class Grid {
+        private final int built;            // number of points when built
+        private final double minX, minY;
+        private final double size;          // side of a cell
+        private final int cols, rows;
+        private final int[] head;           // head[c] = first point in cell c, or -1
+        private int[] cellNext, cellPrev;   // the lists, indexed by point
+        private int[] cell;                 // cell[i] = cell of point i
+
+        private Grid() {
+            built = n;
+            double loX = Double.POSITIVE_INFINITY, loY = Double.POSITIVE_INFINITY;
+            double hiX = Double.NEGATIVE_INFINITY, hiY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                loX = Math.min(loX, x[i]);
+                loY = Math.min(loY, y[i]);
+                hiX = Math.max(hiX, x[i]);
+                hiY = Math.max(hiY, y[i]);
+            }
+            if (n == 0) loX = loY = hiX = hiY = 0.0;
+            minX = loX;
+            minY = loY;
+            // about two points per cell
+            double side = Math.sqrt((hiX - loX) * (hiY - loY) / Math.max(1, n / 2));
+            if (!(side > 0)) side = Math.max(hiX - loX, hiY - loY) / Math.max(1, n / 2);
+            if (!(side > 0)) side = 1.0;
+            size = side;
+            cols = (int) Math.min((hiX - loX) / size, 1 << 15) + 1;
+            rows = (int) Math.min((hiY - loY) / size, 1 << 15) + 1;
+            head = new int[cols * rows];
+            Arrays.fill(head, -1);
+            cellNext = new int[x.length];
+            cellPrev = new int[x.length];
+            cell = new int[x.length];
+            for (int i = 0; i < n; i++) insert(i);
+        }
+
+        // should the grid be rebuilt for the current number of points?
+        private boolean outgrown() {
+            return n > 4 * Math.max(built, 16) || 4 * n < built;
+        }
+
+        private void resize(int capacity) {
+            cellNext = Arrays.copyOf(cellNext, capacity);
+            cellPrev = Arrays.copyOf(cellPrev, capacity);
+            cell = Arrays.copyOf(cell, capacity);
+        }
+
+        private int col(double px) {
+            return (int) Math.max(0, Math.min(cols - 1, Math.floor((px - minX) / size)));
+        }
+
+        private int row(double py) {
+            return (int) Math.max(0, Math.min(rows - 1, Math.floor((py - minY) / size)));
+        }
+
+        private void insert(int i) {
+            int c = row(y[i]) * cols + col(x[i]);
+            cell[i] = c;
+            cellPrev[i] = -1;
+            cellNext[i] = head[c];
+            if (head[c] != -1) cellPrev[head[c]] = i;
+            head[c] = i;
+        }
+
+        private void delete(int i) {
+            if (cellPrev[i] != -1) cellNext[cellPrev[i]] = cellNext[i];
+            else head[cell[i]] = cellNext[i];
+            if (cellNext[i] != -1) cellPrev[cellNext[i]] = cellPrev[i];
+        }
+
+        // point from now has index to (same coordinates, same place in its list)
+        private void move(int from, int to) {
+            cell[to] = cell[from];
+            cellPrev[to] = cellPrev[from];
+            cellNext[to] = cellNext[from];
+            if (cellPrev[to] != -1) cellNext[cellPrev[to]] = to;
+            else head[cell[to]] = to;
+            if (cellNext[to] != -1) cellPrev[cellNext[to]] = to;
+        }
+
+        // returns a point at exactly (px, py), or -1 if there is none
+        private int find(double px, double py) {
+            for (int i = head[row(py) * cols + col(px)]; i != -1; i = cellNext[i]) {
+                if (x[i] == px && y[i] == py) return i;
+            }
+            return -1;
+        }
+
+        // finds the (at most) k points closest to (px, py) other than skip,
+        // closest first, and returns how many it found; the rings of cells
+        // around (px, py) are searched until no unsearched cell can be closer
+        // than the k-th point found
+        private int nearest(double px, double py, int k, int skip, int[] out) {
+            double[] dist2 = new double[k];
+            int found = 0;
+            int cx = col(px), cy = row(py);
+            int maxRing = Math.max(Math.max(cx, cols - 1 - cx), Math.max(cy, rows - 1 - cy));
+            for (int r = 0; r <= maxRing; r++) {
+                for (int gy = cy - r; gy <= cy + r; gy++) {
+                    if (gy < 0 || gy >= rows) continue;
+                    boolean edgeRow = (gy == cy - r || gy == cy + r);
+                    for (int gx = cx - r; gx <= cx + r; gx += edgeRow ? 1 : 2 * r) {
+                        if (gx >= 0 && gx < cols) {
+                            for (int i = head[gy * cols + gx]; i != -1; i = cellNext[i]) {
+                                if (i == skip) continue;
+                                double dx = x[i] - px, dy = y[i] - py;
+                                double d = dx*dx + dy*dy;
+                                if (found == k && d >= dist2[k - 1]) continue;
+                                int j = (found < k) ? found++ : k - 1;
+                                while (j > 0 && dist2[j - 1] > d) {
+                                    dist2[j] = dist2[j - 1];
+                                    out[j] = out[j - 1];
+                                    j--;
+                                }
+                                dist2[j] = d;
+                                out[j] = i;
+                            }
+                        }
+                        if (r == 0) break;
+                    }
+                }
+                // every cell beyond ring r is at least r * size away
+                double reach = r * size;
+                if (found == k && dist2[k - 1] <= reach * reach) break;
+            }
+            return found;
+        }
+    }
+
+    // returns the indices of the points, in tour order (the indices are the
+    // insertion order as long as no point was removed)
+    public int[] order() {
+        int[] order = new int[n];
+        if (n == 0) return order;
+        int i = 0;
+        for (int k = 0; k < n; k++) {
+            order[k] = i;
+            i = next[i];
+        }
+        return order;
+    }
+
+    // copies the coordinates of the points, in tour order, into xs and ys
+    public void coordinates(double[] xs, double[] ys) {
+        if (xs.length < n || ys.length < n)
+            throw new IllegalArgumentException("arrays must have room for " + n + " points");
+        if (n == 0) return;
+        int i = 0;
+        for (int k = 0; k < n; k++) {
+            xs[k] = x[i];
+            ys[k] = y[i];
+            i = next[i];
+        }
+    }
+
+    // writes the tour, one "(x, y)" per line, as StdOut.println(tour) would
+    public void print(PrintWriter out) {
+        if (n > 0) {
+            int i = 0;
+            do {
+                out.print('(');
+                out.print(x[i]);
+                out.print(", ");
+                out.print(y[i]);
+                out.print(")\n");
+                i = next[i];
+            } while (i != 0);
+        }
+        out.print('\n');
+        out.flush();
+    }
+
+    // draws this tour to standard drawing
+    public void draw() {
+        if (n == 0) return;
+        int i = 0;
+        do {
+            StdDraw.line(x[i], y[i], nx[i], ny[i]);
+            i = next[i];
+        } while (i != 0);
+    }
+
+    // returns a string representation of this tour, one point per line
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        if (n == 0) return s.toString();
+        int i = 0;
+        do {
+            s.append('(').append(x[i]).append(", ").append(y[i]).append(")\n");
+            i = next[i];
+        } while (i != 0);
+        return s.toString();
+    }
+
+    // reads in a TSP file and prints its nearest insertion tour
+    public static void main(String[] args) {
+        StdIn.readInt();
+        StdIn.readInt();
+        ArrayTour tour = new ArrayTour();
+        while (!StdIn.isEmpty()) {
+            double x = StdIn.readDouble();
+            double y = StdIn.readDouble();
+            tour.insertNearest(x, y);
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), 1 << 16));
+        tour.print(out);
+        out.printf("Tour length = %.4f\n", tour.length());
+        out.printf("Number of points = %d\n", tour.size());
+        out.flush();
+    }
+}
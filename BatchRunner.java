@@ -0,0 +1,319 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs BatchRunner.java
+ *  Execution:    java-introcs BatchRunner [-csv | -json] [-threads k | -sequential]
+ *                                       [-arraytour] [-gap] [-map mode [-api url]]
+ *                                       dir_or_file ...
+ *  Dependencies: Tour.java Point.java ArrayTour.java TourImage.java PointFile.java
+ *                LowerBound.java StdMap.java MapSession.java StdOut.java org.json
+ *
+ *  Runs the nearest and smallest insertion heuristics of Tour (or, with
+ *  -arraytour, of ArrayTour) on every instance in the given directories
+ *  (e.g. test_files/round1, test_files/round3) inside a single JVM, so
+ *  that the timings are not dominated by JVM startup as in res.txt.
+ *
+ *  The instances are solved concurrently on a pool of k threads (default:
+ *  one per core), which is fastest, but then the tours compete for the
+ *  cores and their times can't be compared with each other or with res.txt.
+ *  -sequential solves one instance at a time, for timing (as testing.sh
+ *  does). Tour with -map is always sequential, since Tour measures map
+ *  distances through StdMap's single default session.
+ *
+ *  Lengths are Euclidean over the coordinates in the file, unless -map is
+ *  given: the instances are then (lat, lng) points, as in test_files/round1,
+ *  and the tours are built with map distances in the given transportation
+ *  mode, as TSPMap builds them (with ArrayTour, each tour in its own
+ *  MapSession, all sharing one cache of Directions paths). The length is then the map
+ *  distance in meters, and the travel time in seconds is reported too.
+ *  -api replaces the Google APIs with another server, url/staticmap and
+ *  url/directions/json (e.g. http://127.0.0.1:8126/stub, the stub of
+ *  SolveServer -stub).
+ *
+ *  The time reported for an instance is the time to build the tour, with
+ *  the file already read; with -map, it includes the Directions requests.
+ *  The default report follows the layout of the "Performance" section of
+ *  res.txt, with the tour length added; -csv and -json print one record
+ *  per instance and heuristic instead.
+ *
+ *  -gap also computes a Held-Karp lower bound per instance (see LowerBound)
+ *  and reports it with each tour's gap above it, in percent; over 20000
+ *  points the bound is only an estimate, and is reported as one ("proven"
+ *  is false in -csv and -json).
+ *
+ *  % java-introcs BatchRunner test_files/round1
+ *  FILE NAME:  test_files/round1/test0.txt
+ *  nearest time
+ *  length	0.0000
+ *  real	0.073s
+ *  smallest time
+ *  length	0.0000
+ *  real	0.004s
+ *  *********
+ *  ...
+ *
+ *  % java-introcs BatchRunner -map walking -api http://127.0.0.1:8126/stub test_files/round1
+ *  ...
+ *
+ **************************************************************************** */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class BatchRunner {
+    private static final String[] HEURISTICS = { "nearest", "smallest" };
+
+    // the outcome of one heuristic on one instance
+    private static final class Result {
+        private final String filename;
+        private final String heuristic;
+        private final int points;
+        private final double length;
+        private final double seconds;
+        private final double travel;    // travel time in seconds, with -map
+        private double bound;           // lower bound on the optimal length, with -gap
+        private boolean proven;         // bound is proven, not estimated (see LowerBound)
+
+        private Result(String filename, String heuristic, int points, double length, double seconds,
+                       double travel) {
+            this.filename = filename;
+            this.heuristic = heuristic;
+            this.points = points;
+            this.length = length;
+            this.seconds = seconds;
+            this.travel = travel;
+        }
+    }
+
+    // solves one instance with the given heuristic, with Tour or ArrayTour,
+    // with map distances if map is not null (for ArrayTour a session for
+    // this instance alone, for Tour StdMap's default session)
+    private static Result solve(String filename, PointFile file, String heuristic, MapSession map,
+                                boolean arrayTour) {
+        double[] xs = file.xs();
+        double[] ys = file.ys();
+        int n = file.size();
+        boolean smallest = heuristic.equals("smallest");
+        double length;
+        double seconds;
+        double[][] coords = new double[2][];    // the tour in order, for its travel time
+        if (arrayTour) {
+            long start = System.nanoTime();
+            ArrayTour tour = (map == null) ? new ArrayTour(n) : new ArrayTour(map);
+            for (int i = 0; i < n; i++) {
+                if (smallest) tour.insertSmallest(xs[i], ys[i]);
+                else          tour.insertNearest(xs[i], ys[i]);
+            }
+            length = tour.length();
+            seconds = (System.nanoTime() - start) / 1e9;
+            coords[0] = new double[n];
+            coords[1] = new double[n];
+            tour.coordinates(coords[0], coords[1]);
+        }
+        else {
+            // as TSPMap does it: every point on the map first, then into the tour
+            if (map != null) map.clear();
+            long start = System.nanoTime();
+            Tour tour = new Tour(map != null);
+            for (int i = 0; i < n; i++) {
+                if (map != null) map.addPoint(xs[i], ys[i]);
+                Point p = new Point(xs[i], ys[i]);
+                if (smallest) tour.insertSmallest(p);
+                else          tour.insertNearest(p);
+            }
+            length = tour.length();
+            seconds = (System.nanoTime() - start) / 1e9;
+            if (map != null) TourImage.parse(tour.toString(), coords);
+        }
+
+        // travel time of the tour, each leg in its own direction
+        double travel = Double.NaN;
+        if (map != null) {
+            double[] lngs = coords[0], lats = coords[1];
+            int m = lngs.length;
+            travel = 0.0;
+            for (int k = 0; k < m && m > 1; k++) {
+                int j = (k + 1) % m;
+                travel += map.getMapTime(lngs[k], lats[k], lngs[j], lats[j]);
+            }
+        }
+        return new Result(filename, heuristic, n, length, seconds, travel);
+    }
+
+    // computes the lower bound of one instance and stores it in its results
+    private static void bound(PointFile file, List<Result> results) {
+        double best = Double.POSITIVE_INFINITY;
+        for (Result r : results) best = Math.min(best, r.length);
+        LowerBound bound = new LowerBound(file.xs(), file.ys(), file.size(), best);
+        for (Result r : results) {
+            r.bound = bound.value();
+            r.proven = bound.proven();
+        }
+    }
+
+    // adds the instance files named by arg (a file, or every file in a directory)
+    static void collect(String arg, List<String> filenames) {
+        File f = new File(arg);
+        if (!f.isDirectory()) {
+            filenames.add(arg);
+            return;
+        }
+        File[] files = f.listFiles();
+        if (files == null) return;
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isFile() && !file.getName().startsWith(".")) filenames.add(file.getPath());
+        }
+    }
+
+    // prints the results in the layout of res.txt
+    private static void printText(List<Result> results, boolean gap, boolean map) {
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            if (i % HEURISTICS.length == 0) StdOut.println("FILE NAME:  " + r.filename);
+            StdOut.println(r.heuristic + " time");
+            StdOut.printf("length\t%.4f%s\n", r.length, map ? " m" : "");
+            if (map) StdOut.printf("travel\t%.0f s\n", r.travel);
+            if (gap) StdOut.printf("gap\t%.2f%%\n", LowerBound.gap(r.length, r.bound));
+            StdOut.printf("real\t%.3fs\n", r.seconds);
+            if (i % HEURISTICS.length == HEURISTICS.length - 1) {
+                if (gap) StdOut.printf("%s\t%.4f\n", r.proven ? "lower bound" : "estimated lower bound", r.bound);
+                StdOut.println("*********");
+                StdOut.println();
+            }
+        }
+    }
+
+    // prints the results as comma-separated values with a header line
+    private static void printCsv(List<Result> results, boolean gap, boolean map) {
+        StdOut.println("file,heuristic,points,length,seconds" + (map ? ",travel" : "") + (gap ? ",bound,proven,gap" : ""));
+        for (Result r : results) {
+            StdOut.printf("%s,%s,%d,%.4f,%.6f", r.filename, r.heuristic, r.points, r.length, r.seconds);
+            if (map) StdOut.printf(",%.0f", r.travel);
+            if (gap) StdOut.printf(",%.4f,%b,%.4f", r.bound, r.proven, LowerBound.gap(r.length, r.bound));
+            StdOut.println();
+        }
+    }
+
+    // prints the results as a JSON array of records
+    private static void printJson(List<Result> results, boolean gap, boolean map) {
+        JSONArray array = new JSONArray();
+        for (Result r : results) {
+            JSONObject o = new JSONObject();
+            o.put("file", r.filename);
+            o.put("heuristic", r.heuristic);
+            o.put("points", r.points);
+            o.put("length", r.length);
+            o.put("seconds", r.seconds);
+            if (map) o.put("travel", r.travel);
+            if (gap) {
+                o.put("bound", r.bound);
+                o.put("proven", r.proven);
+                o.put("gap", LowerBound.gap(r.length, r.bound));
+            }
+            array.put(o);
+        }
+        StdOut.println(array.toString());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String format = "text";
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean gap = false, arrayTour = false;
+        String mode = null;
+        String api = null;
+        List<String> filenames = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-csv")) format = "csv";
+            else if (args[i].equals("-json")) format = "json";
+            else if (args[i].equals("-threads")) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-sequential")) threads = 1;
+            else if (args[i].equals("-arraytour")) arrayTour = true;
+            else if (args[i].equals("-gap")) gap = true;
+            else if (args[i].equals("-map")) mode = args[++i];
+            else if (args[i].equals("-api")) api = args[++i];
+            else collect(args[i], filenames);
+        }
+        if (filenames.isEmpty() || (gap && mode != null) || (api != null && mode == null)) {
+            StdOut.println("This program should be called: \n$ java-introcs BatchRunner [-csv | -json] "
+                           + "[-threads k | -sequential] [-arraytour] [-gap | -map mode [-api url]] dir_or_file ...");
+            return;
+        }
+        if (mode != null && !MapSession.isTransportationModeSupported(mode)) {
+            StdOut.println("This transportation mode is not supported. Supported transportation modes: "
+                           + MapSession.supportedTransportationModes());
+            return;
+        }
+
+        // keys, URLs and the shared path cache of the sessions, with -map;
+        // Tour only measures map distances through StdMap, one tour at a time
+        MapSession template = null;
+        if (mode != null) {
+            template = arrayTour ? new MapSession() : StdMap.getDefaultSession();
+            if (!arrayTour) threads = 1;
+            if (api != null) {
+                template.setApiUrls(api + "/staticmap", api + "/directions/json");
+                template.setApiKeys("none", "none");
+            }
+            else template.setApiKeys(Constants.STATIC_MAPS_API_KEY, Constants.DIRECTIONS_API_KEY);
+            template.setTransportationMode(mode);
+        }
+
+        // read every file before timing anything
+        List<PointFile> files = new ArrayList<PointFile>();
+        for (String filename : filenames)
+            files.add(new PointFile(filename));
+
+        boolean solverArrayTour = arrayTour;
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<Future<Result>>();
+        for (int f = 0; f < files.size(); f++) {
+            String filename = filenames.get(f);
+            PointFile file = files.get(f);
+            for (String heuristic : HEURISTICS) {
+                MapSession map = (template == null) ? null : arrayTour ? template.newSession() : template;
+                futures.add(pool.submit(() -> solve(filename, file, heuristic, map, solverArrayTour)));
+            }
+        }
+
+        // collect in submission order so the report is deterministic
+        List<Result> results = new ArrayList<Result>();
+        try {
+            for (Future<Result> future : futures)
+                results.add(future.get());
+            if (gap) {
+                List<Future<?>> bounds = new ArrayList<Future<?>>();
+                for (int i = 0; i < results.size(); i += HEURISTICS.length) {
+                    PointFile file = files.get(i / HEURISTICS.length);
+                    List<Result> instance = results.subList(i, i + HEURISTICS.length);
+                    bounds.add(pool.submit(() -> bound(file, instance)));
+                }
+                for (Future<?> future : bounds)
+                    future.get();
+            }
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("Batch run failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        double total = (System.nanoTime() - start) / 1e9;
+
+        boolean map = mode != null;
+        if (format.equals("csv")) printCsv(results, gap, map);
+        else if (format.equals("json")) printJson(results, gap, map);
+        else {
+            printText(results, gap, map);
+            StdOut.printf("%d instances with %s on %d threads in %.3f seconds\n", filenames.size(),
+                          arrayTour ? "ArrayTour" : "Tour", threads, total);
+        }
+    }
+}
@@ -0,0 +1,905 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs CandidateGraph.java
+ *  Execution:    java-introcs CandidateGraph [-cache] file.txt [k]
+ *  Dependencies: Storage.java PointFile.java StdOut.java
+ *
+ *  Sparse neighbor graph over a set of points, shared by the algorithms
+ *  that only need to look at a few close candidates per point instead of
+ *  all n (lower bounds, local search, greedy edge, partitioning).
+ *
+ *  delaunay() holds the edges of the Delaunay triangulation, built by a
+ *  sweep-hull algorithm in O(n log n); it contains the minimum spanning
+ *  tree and, in practice, nearly all edges of good tours.
+ *  nearestNeighbors(k) links every point to its k nearest points, found
+ *  with a uniform grid in about O(n k) time. create(k) is the union of
+ *  both, the usual choice. All graphs are undirected. If a graph would be
+ *  disconnected (e.g. a far-away cluster of fewer than k points), each extra
+ *  component is joined to the rest by its shortest edge, so that spanning
+ *  trees always exist.
+ *
+ *  The adjacency is stored in two arrays of ints: the neighbors of v are
+ *  targets()[offsets()[v]] through targets()[offsets()[v+1] - 1], sorted by
+ *  increasing distance. They are Storage.Ints, on the heap as built, and
+ *  copyTo(storage) moves them elsewhere (off the heap, or to a mapped file)
+ *  for graphs that are kept for long; the arrays used while building stay
+ *  on the heap.
+ *
+ *  cached() keeps the graph of an input file in a binary file next to it
+ *  (mona-100k.txt.k10.graph), and rebuilds it when the points change.
+ *
+ *  The times below are for a fresh JVM (Java 17) on a single core, where
+ *  the JIT compilers compete with the build, and vary from run to run and
+ *  machine to machine: the first build of mona-100k takes 1.0 to 1.8
+ *  seconds (1.0 to 1.4 over five runs on one machine, 1.5 to 1.8 on
+ *  another), most of it waiting for compiled code (0.48 to 0.52 seconds
+ *  with -XX:TieredStopAtLevel=1, 0.3 seconds for a second build in the
+ *  same JVM). With -cache, the first run also writes the cache file (1.8
+ *  to 2.4 seconds in all); loading it takes 0.06 to 0.1 seconds. With
+ *  more cores the compilers run alongside.
+ *
+ *  % java-introcs CandidateGraph -cache mona-100k.txt 10
+ *  100001 points, 539427 edges (Delaunay + 10 nearest) in 1.967 seconds
+ *
+ *  % java-introcs CandidateGraph -cache mona-100k.txt 10
+ *  100001 points, 539427 edges (Delaunay + 10 nearest) in 0.080 seconds
+ *
+ **************************************************************************** */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+public final class CandidateGraph {
+    private static final int MAGIC = 0x43414e44;     // "CAND", for cache files
+    private final int n;
+    private final Storage storage;          // where offsets and targets are allocated
+    private final Storage.Ints offsets;     // neighbors of v are targets[offsets[v]..offsets[v+1]-1]
+    private final Storage.Ints targets;
+
+    private CandidateGraph(int n, int[] offsets, int[] targets) {
+        this(n, Storage.heap(), Storage.wrap(offsets), Storage.wrap(targets));
+    }
+
+    private CandidateGraph(int n, Storage storage, Storage.Ints offsets, Storage.Ints targets) {
+        this.n = n;
+        this.storage = storage;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    // returns the number of points
+    public int size() {
+        return n;
+    }
+
+    // returns the number of (undirected) edges
+    public int edges() {
+        return targets.size() / 2;
+    }
+
+    // returns the number of neighbors of v
+    public int degree(int v) {
+        return offsets.get(v + 1) - offsets.get(v);
+    }
+
+    // returns the offsets of the adjacency lists (not a copy)
+    public Storage.Ints offsets() {
+        return offsets;
+    }
+
+    // returns the concatenated adjacency lists (not a copy)
+    public Storage.Ints targets() {
+        return targets;
+    }
+
+    // returns a copy of this graph with its adjacency lists in storage
+    public CandidateGraph copyTo(Storage storage) {
+        return new CandidateGraph(n, storage, storage.copyOf(offsets, offsets.size()),
+                                  storage.copyOf(targets, targets.size()));
+    }
+
+    // returns this graph with its points renumbered, point k of the new graph
+    // being point order[k] of this one (e.g. for a tour that inserted the
+    // points in the order order[0], order[1], ...); lists stay sorted, and
+    // in the same storage
+    public CandidateGraph permute(int[] order) {
+        if (order.length != n) throw new IllegalArgumentException("order must hold " + n + " points");
+        int[] rank = new int[n];
+        for (int k = 0; k < n; k++) rank[order[k]] = k;
+        Storage.Ints newOffsets = storage.ints(n + 1);
+        Storage.Ints newTargets = storage.ints(targets.size());
+        int m = 0;
+        for (int k = 0; k < n; k++) {
+            int v = order[k];
+            for (int e = offsets.get(v), end = offsets.get(v + 1); e < end; e++)
+                newTargets.set(m++, rank[targets.get(e)]);
+            newOffsets.set(k + 1, m);
+        }
+        return new CandidateGraph(n, storage, newOffsets, newTargets);
+    }
+
+    // returns the graph linking each of the n points to its k nearest points
+    public static CandidateGraph nearestNeighbors(double[] xs, double[] ys, int n, int k) {
+        return create(xs, ys, n, k, false);
+    }
+
+    // returns the Delaunay triangulation of the n points
+    public static CandidateGraph delaunay(double[] xs, double[] ys, int n) {
+        return create(xs, ys, n, 0, true);
+    }
+
+    // returns the union of the Delaunay triangulation and the k nearest points
+    public static CandidateGraph create(double[] xs, double[] ys, int n, int k) {
+        return create(xs, ys, n, k, true);
+    }
+
+    private static CandidateGraph create(double[] xs, double[] ys, int n, int k, boolean delaunay) {
+        if (n <= 1) return new CandidateGraph(n, new int[n + 1], new int[0]);
+        k = Math.min(k, n - 1);
+        int[] nearest = new int[n * k];
+        if (k > 0) new Grid(xs, ys, n, k).nearest(nearest);
+        Triangulation triangulation = delaunay ? new Triangulation(xs, ys, n) : null;
+
+        // undirected: every edge is added in both directions
+        int half = n * k + (delaunay ? triangulation.size() + n : 0);
+        int[] from = new int[2 * half];
+        int[] to = new int[2 * half];
+        int m = 0;
+        for (int u = 0; u < n; u++) {
+            for (int i = 0; i < k; i++) {
+                int v = nearest[u * k + i];
+                from[m] = u;
+                to[m++] = v;
+                from[m] = v;
+                to[m++] = u;
+            }
+        }
+        if (delaunay) {
+            for (int e = 0; e < triangulation.size(); e++) {
+                // each inner edge once, from its smaller half-edge
+                if (triangulation.twin(e) > e) continue;
+                int u = triangulation.from(e), v = triangulation.to(e);
+                from[m] = u;
+                to[m++] = v;
+                from[m] = v;
+                to[m++] = u;
+            }
+            for (int u = 0; u < n; u++) {
+                int v = triangulation.extra(u);
+                if (v == -1) continue;
+                from[m] = u;
+                to[m++] = v;
+                from[m] = v;
+                to[m++] = u;
+            }
+        }
+        // a triangulation (with its extra edges) is always connected
+        return build(xs, ys, n, from, to, m, !delaunay);
+    }
+
+    // returns the graph of the points in the given file, reading it from the
+    // cache file next to it if that was built for the same points and k, and
+    // otherwise building it and (if possible) writing the cache file
+    public static CandidateGraph cached(String filename, double[] xs, double[] ys, int n, int k) {
+        File cache = new File(filename + ".k" + k + ".graph");
+        long checksum = checksum(xs, ys, n);
+        if (cache.isFile()) {
+            try {
+                ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(cache.toPath()));
+                if (in.getInt() == MAGIC && in.getInt() == n && in.getInt() == k
+                    && in.getLong() == checksum) {
+                    IntBuffer ints = in.asIntBuffer();
+                    int[] offsets = new int[n + 1];
+                    ints.get(offsets);
+                    int[] targets = new int[offsets[n]];
+                    ints.get(targets);
+                    return new CandidateGraph(n, offsets, targets);
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                // unreadable or stale: rebuild it below
+            }
+        }
+
+        CandidateGraph graph = create(xs, ys, n, k);
+        ByteBuffer out = ByteBuffer.allocate(20 + 4 * (n + 1 + graph.targets.size()));
+        out.putInt(MAGIC).putInt(n).putInt(k).putLong(checksum);
+        IntBuffer ints = out.asIntBuffer();
+        for (int i = 0; i <= n; i++) ints.put(graph.offsets.get(i));
+        for (int i = 0; i < graph.targets.size(); i++) ints.put(graph.targets.get(i));
+        try {
+            // write a temporary file and move it in place, so that readers
+            // never see a partial cache
+            Path temp = Files.createTempFile(cache.getAbsoluteFile().getParentFile().toPath(),
+                                             cache.getName(), ".tmp");
+            Files.write(temp, out.array());
+            Files.move(temp, cache.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            System.err.println("Could not cache the candidate graph in " + cache + ": " + e);
+        }
+        return graph;
+    }
+
+    // hashes the coordinates, to tell whether a cache file is stale
+    static long checksum(double[] xs, double[] ys, int n) {
+        long h = n;
+        for (int i = 0; i < n; i++) {
+            h = 31 * h + Double.doubleToLongBits(xs[i]);
+            h = 31 * h + Double.doubleToLongBits(ys[i]);
+        }
+        return h;
+    }
+
+    // builds the adjacency arrays from the directed pairs (from[i], to[i]),
+    // dropping duplicates, joining components (if asked to) and sorting by
+    // distance
+    static CandidateGraph build(double[] xs, double[] ys, int n, int[] from, int[] to, int m,
+                                boolean connect) {
+        // union-find over the pairs, to detect extra components
+        int[] root = new int[n];
+        for (int v = 0; v < n; v++) root[v] = v;
+        if (connect) {
+            for (int i = 0; i < m; i++) union(root, from[i], to[i]);
+        }
+        int[] component = new int[n];
+        for (int v = 0; v < n; v++) component[v] = find(root, v);
+        int[] join = new int[2 * n];
+        int joins = 0;
+        int main = component[0];
+        for (int v = 0; connect && v < n; v++) {
+            int r = component[v];
+            if (r == main || r != v) continue;
+            // v represents a component without point 0: link it by its
+            // shortest edge to the component of point 0
+            int bestIn = -1, bestOut = -1;
+            double bestDist = Double.POSITIVE_INFINITY;
+            for (int a = 0; a < n; a++) {
+                if (component[a] != r) continue;
+                for (int b = 0; b < n; b++) {
+                    if (component[b] != main) continue;
+                    double dx = xs[a] - xs[b];
+                    double dy = ys[a] - ys[b];
+                    double dist = dx*dx + dy*dy;
+                    if (dist < bestDist) {
+                        bestDist = dist;
+                        bestIn = a;
+                        bestOut = b;
+                    }
+                }
+            }
+            join[joins++] = bestIn;
+            join[joins++] = bestOut;
+        }
+
+        // count, fill, then deduplicate and sort every list
+        int[] count = new int[n + 1];
+        for (int i = 0; i < m; i++) count[from[i] + 1]++;
+        for (int i = 0; i < joins; i += 2) {
+            count[join[i] + 1]++;
+            count[join[i + 1] + 1]++;
+        }
+        for (int v = 0; v < n; v++) count[v + 1] += count[v];
+        int[] raw = new int[count[n]];
+        int[] fill = Arrays.copyOf(count, n);
+        for (int i = 0; i < m; i++) raw[fill[from[i]]++] = to[i];
+        for (int i = 0; i < joins; i += 2) {
+            raw[fill[join[i]]++] = join[i + 1];
+            raw[fill[join[i + 1]]++] = join[i];
+        }
+
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[raw.length];
+        double[] dist = new double[raw.length];
+        int[] seen = new int[n];    // seen[w] = v + 1 once w is in the list of v
+        for (int v = 0; v < n; v++)
+            offsets[v + 1] = list(xs, ys, v, raw, count[v], count[v + 1], seen, targets, dist, offsets[v]);
+        return new CandidateGraph(n, offsets, Arrays.copyOf(targets, offsets[n]));
+    }
+
+    // copies the neighbors raw[lo..hi-1] of v to targets[size..], without v
+    // and without duplicates, sorts them by distance, and returns the new size
+    private static int list(double[] xs, double[] ys, int v, int[] raw, int lo, int hi, int[] seen,
+                            int[] targets, double[] dist, int size) {
+        int first = size;
+        for (int i = lo; i < hi; i++) {
+            int w = raw[i];
+            if (w == v || seen[w] == v + 1) continue;
+            seen[w] = v + 1;
+            targets[size] = w;
+            dist[size++] = distanceSquared(xs, ys, v, w);
+        }
+        sortByDistance(targets, dist, first, size);
+        return size;
+    }
+
+    // sorts list[lo..hi-1] by dist (ties by index, so that the order does not
+    // depend on the order of the pairs); the lists are short, so insertion
+    // sort it is
+    private static void sortByDistance(int[] list, double[] dist, int lo, int hi) {
+        for (int i = lo + 1; i < hi; i++) {
+            int w = list[i];
+            double dw = dist[i];
+            int j = i - 1;
+            while (j >= lo && (dist[j] > dw || dist[j] == dw && list[j] > w)) {
+                list[j + 1] = list[j];
+                dist[j + 1] = dist[j];
+                j--;
+            }
+            list[j + 1] = w;
+            dist[j + 1] = dw;
+        }
+    }
+
+    private static double distanceSquared(double[] xs, double[] ys, int i, int j) {
+        double dx = xs[i] - xs[j];
+        double dy = ys[i] - ys[j];
+        return dx*dx + dy*dy;
+    }
+
+    private static int find(int[] root, int v) {
+        while (root[v] != v) {
+            root[v] = root[root[v]];
+            v = root[v];
+        }
+        return v;
+    }
+
+    private static void union(int[] root, int u, int v) {
+        int ru = find(root, u);
+        int rv = find(root, v);
+        if (ru == rv) return;
+        if (ru < rv) root[rv] = ru;
+        else root[ru] = rv;
+    }
+
+    // Delaunay triangulation by sweeping a convex hull outwards from a seed
+    // triangle (the algorithm of the Delaunator library): points are added
+    // in order of distance from the seed, each one is connected to the hull
+    // edges it can see, and non-Delaunay edges are flipped. Triangles are
+    // stored as triples of point indices; halfedges[e] is the opposite
+    // half-edge of e in the neighboring triangle, or -1 on the hull.
+    private static final class Triangulation {
+        private static final double EPSILON = Math.ulp(1.0);
+
+        private final double[] xs, ys;
+        private final int[] triangles;
+        private final int[] halfedges;
+        private int size;                           // number of half-edges in use
+        private final int[] hullPrev, hullNext, hullTri, hullHash;
+        private final int hashSize;
+        private int hullStart;
+        private double cx, cy;
+        private final int[] stack = new int[512];   // pending flips
+        private final int[] extra;                  // edges of points left out, or -1
+
+        Triangulation(double[] xs, double[] ys, int n) {
+            this.xs = xs;
+            this.ys = ys;
+            int maxTriangles = Math.max(2 * n - 5, 0);
+            triangles = new int[3 * maxTriangles];
+            halfedges = new int[3 * maxTriangles];
+            hashSize = (int) Math.ceil(Math.sqrt(n));
+            hullPrev = new int[n];
+            hullNext = new int[n];
+            hullTri = new int[n];
+            hullHash = new int[hashSize];
+            extra = new int[n];
+            Arrays.fill(extra, -1);
+            triangulate(n);
+        }
+
+        // returns a neighbor for a point that is not in any triangle
+        // (duplicates, and collinear inputs), or -1
+        int extra(int v) {
+            return extra[v];
+        }
+
+        // returns the number of half-edges, three per triangle
+        int size() {
+            return size;
+        }
+
+        // returns the point at the start of half-edge e
+        int from(int e) {
+            return triangles[e];
+        }
+
+        // returns the point at the end of half-edge e
+        int to(int e) {
+            return triangles[e % 3 == 2 ? e - 2 : e + 1];
+        }
+
+        // returns the opposite half-edge of e, or -1 if e is on the hull
+        int twin(int e) {
+            return halfedges[e];
+        }
+
+        private void triangulate(int n) {
+            if (n < 3) return;
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            int[] ids = new int[n];
+            for (int i = 0; i < n; i++) {
+                minX = Math.min(minX, xs[i]);
+                minY = Math.min(minY, ys[i]);
+                maxX = Math.max(maxX, xs[i]);
+                maxY = Math.max(maxY, ys[i]);
+                ids[i] = i;
+            }
+
+            // seed triangle: the point nearest the center, its nearest point,
+            // and the point that makes the smallest circumcircle with them
+            double centerX = (minX + maxX) / 2, centerY = (minY + maxY) / 2;
+            int i0 = 0, i1 = -1, i2 = -1;
+            double best = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                double d = dist(centerX, centerY, xs[i], ys[i]);
+                if (d < best) {
+                    i0 = i;
+                    best = d;
+                }
+            }
+            best = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (i == i0) continue;
+                double d = dist(xs[i0], ys[i0], xs[i], ys[i]);
+                if (d < best && d > 0) {
+                    i1 = i;
+                    best = d;
+                }
+            }
+            if (i1 == -1) {                         // all points coincide
+                for (int i = 0; i < n; i++) {
+                    if (i != i0) extra[i] = i0;
+                }
+                return;
+            }
+            double minRadius = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (i == i0 || i == i1) continue;
+                double r = circumradius(xs[i0], ys[i0], xs[i1], ys[i1], xs[i], ys[i]);
+                if (r < minRadius) {
+                    i2 = i;
+                    minRadius = r;
+                }
+            }
+            if (minRadius == Double.POSITIVE_INFINITY) {
+                // all points collinear: the triangulation is a path
+                double dx = xs[i1] - xs[i0], dy = ys[i1] - ys[i0];
+                double[] along = new double[n];
+                for (int i = 0; i < n; i++) along[i] = (xs[i] - xs[i0]) * dx + (ys[i] - ys[i0]) * dy;
+                quicksort(ids, along, 0, n - 1);
+                for (int k = 1; k < n; k++) extra[ids[k]] = ids[k - 1];
+                return;
+            }
+            if (orient(xs[i0], ys[i0], xs[i1], ys[i1], xs[i2], ys[i2])) {
+                int swap = i1;
+                i1 = i2;
+                i2 = swap;
+            }
+            circumcenter(xs[i0], ys[i0], xs[i1], ys[i1], xs[i2], ys[i2]);
+
+            double[] dists = new double[n];
+            for (int i = 0; i < n; i++) dists[i] = dist(xs[i], ys[i], cx, cy);
+            quicksort(ids, dists, 0, n - 1);
+
+            // the seed triangle is the first hull
+            hullStart = i0;
+            hullNext[i0] = hullPrev[i2] = i1;
+            hullNext[i1] = hullPrev[i0] = i2;
+            hullNext[i2] = hullPrev[i1] = i0;
+            hullTri[i0] = 0;
+            hullTri[i1] = 1;
+            hullTri[i2] = 2;
+            Arrays.fill(hullHash, -1);
+            hullHash[hashKey(xs[i0], ys[i0])] = i0;
+            hullHash[hashKey(xs[i1], ys[i1])] = i1;
+            hullHash[hashKey(xs[i2], ys[i2])] = i2;
+            addTriangle(i0, i1, i2, -1, -1, -1);
+
+            double xp = 0, yp = 0;
+            int previous = -1;
+            for (int k = 0; k < n; k++) {
+                int i = ids[k];
+                double x = xs[i], y = ys[i];
+
+                // skip near-duplicates (linking them to their twin) and the
+                // seed triangle
+                if (k > 0 && Math.abs(x - xp) <= EPSILON && Math.abs(y - yp) <= EPSILON) {
+                    extra[i] = previous;
+                    continue;
+                }
+                xp = x;
+                yp = y;
+                previous = i;
+                if (i == i0 || i == i1 || i == i2) continue;
+                add(i);
+            }
+        }
+
+        // adds point i to the triangulation, connecting it to the hull edges
+        // it can see
+        private void add(int i) {
+            double x = xs[i], y = ys[i];
+
+            // find a visible hull edge, starting from the hash of the angle
+            int start = 0;
+            for (int j = 0, key = hashKey(x, y); j < hashSize; j++) {
+                start = hullHash[(key + j) % hashSize];
+                if (start != -1 && start != hullNext[start]) break;
+            }
+            start = hullPrev[start];
+            int e = start, q;
+            while (true) {
+                q = hullNext[e];
+                if (orient(x, y, xs[e], ys[e], xs[q], ys[q])) break;
+                e = q;
+                if (e == start) {
+                    e = -1;
+                    break;
+                }
+            }
+            if (e == -1) {                      // a near-duplicate after all
+                extra[i] = hullPrev[start];
+                return;
+            }
+
+            // connect the point to the first visible edge
+            int t = addTriangle(e, i, hullNext[e], -1, -1, hullTri[e]);
+            hullTri[i] = legalize(t + 2);
+            hullTri[e] = t;
+
+            // and to the visible edges after it
+            int next = hullNext[e];
+            while (true) {
+                q = hullNext[next];
+                if (!orient(x, y, xs[next], ys[next], xs[q], ys[q])) break;
+                t = addTriangle(next, i, q, hullTri[i], -1, hullTri[next]);
+                hullTri[i] = legalize(t + 2);
+                hullNext[next] = next;          // removed from the hull
+                next = q;
+            }
+
+            // and before it
+            if (e == start) {
+                while (true) {
+                    q = hullPrev[e];
+                    if (!orient(x, y, xs[q], ys[q], xs[e], ys[e])) break;
+                    t = addTriangle(q, i, e, -1, hullTri[e], hullTri[q]);
+                    legalize(t + 2);
+                    hullTri[q] = t;
+                    hullNext[e] = e;            // removed from the hull
+                    e = q;
+                }
+            }
+
+            hullStart = hullPrev[i] = e;
+            hullNext[e] = hullPrev[next] = i;
+            hullNext[i] = next;
+            hullHash[hashKey(x, y)] = i;
+            hullHash[hashKey(xs[e], ys[e])] = e;
+        }
+
+        // flips the edge a and the edges behind it until they are all
+        // Delaunay; returns the half-edge that replaced the edge after a
+        private int legalize(int a) {
+            int i = 0;
+            int ar;
+            while (true) {
+                int b = halfedges[a];
+                int a0 = a - a % 3;
+                ar = a0 + (a + 2) % 3;
+                if (b == -1) {
+                    if (i == 0) break;
+                    a = stack[--i];
+                    continue;
+                }
+                int b0 = b - b % 3;
+                int al = a0 + (a + 1) % 3;
+                int bl = b0 + (b + 2) % 3;
+                int p0 = triangles[ar];
+                int pr = triangles[a];
+                int pl = triangles[al];
+                int p1 = triangles[bl];
+                if (inCircle(xs[p0], ys[p0], xs[pr], ys[pr], xs[pl], ys[pl], xs[p1], ys[p1])) {
+                    triangles[a] = p1;
+                    triangles[b] = p0;
+                    int hbl = halfedges[bl];
+                    // the flipped edge was on the hull: fix the hull's reference
+                    if (hbl == -1) {
+                        int e = hullStart;
+                        do {
+                            if (hullTri[e] == bl) {
+                                hullTri[e] = a;
+                                break;
+                            }
+                            e = hullPrev[e];
+                        } while (e != hullStart);
+                    }
+                    link(a, hbl);
+                    link(b, halfedges[ar]);
+                    link(ar, bl);
+                    int br = b0 + (b + 1) % 3;
+                    if (i < stack.length) stack[i++] = br;
+                }
+                else {
+                    if (i == 0) break;
+                    a = stack[--i];
+                }
+            }
+            return ar;
+        }
+
+        private void link(int a, int b) {
+            halfedges[a] = b;
+            if (b != -1) halfedges[b] = a;
+        }
+
+        private int addTriangle(int i0, int i1, int i2, int a, int b, int c) {
+            int t = size;
+            triangles[t] = i0;
+            triangles[t + 1] = i1;
+            triangles[t + 2] = i2;
+            link(t, a);
+            link(t + 1, b);
+            link(t + 2, c);
+            size += 3;
+            return t;
+        }
+
+        // monotone in the angle of (x - cx, y - cy), in [0, 1)
+        private int hashKey(double x, double y) {
+            double dx = x - cx, dy = y - cy;
+            double p = dx / (Math.abs(dx) + Math.abs(dy));
+            double angle = (dy > 0 ? 3 - p : 1 + p) / 4;
+            return (int) Math.floor(angle * hashSize) % hashSize;
+        }
+
+        private static double dist(double ax, double ay, double bx, double by) {
+            double dx = ax - bx;
+            double dy = ay - by;
+            return dx*dx + dy*dy;
+        }
+
+        // is (p, q, r) clockwise?
+        private static boolean orient(double px, double py, double qx, double qy, double rx, double ry) {
+            return (qy - py) * (rx - qx) - (qx - px) * (ry - qy) < 0;
+        }
+
+        // is p inside the circumcircle of a, b, c?
+        private static boolean inCircle(double ax, double ay, double bx, double by,
+                                        double cx, double cy, double px, double py) {
+            double dx = ax - px, dy = ay - py;
+            double ex = bx - px, ey = by - py;
+            double fx = cx - px, fy = cy - py;
+            double ap = dx*dx + dy*dy;
+            double bp = ex*ex + ey*ey;
+            double cp = fx*fx + fy*fy;
+            return dx * (ey * cp - bp * fy) - dy * (ex * cp - bp * fx) + ap * (ex * fy - ey * fx) < 0;
+        }
+
+        private static double circumradius(double ax, double ay, double bx, double by,
+                                           double cx, double cy) {
+            double dx = bx - ax, dy = by - ay;
+            double ex = cx - ax, ey = cy - ay;
+            double bl = dx*dx + dy*dy;
+            double cl = ex*ex + ey*ey;
+            double d = 0.5 / (dx * ey - dy * ex);
+            double x = (ey * bl - dy * cl) * d;
+            double y = (dx * cl - ex * bl) * d;
+            double r = x*x + y*y;
+            return Double.isNaN(r) ? Double.POSITIVE_INFINITY : r;
+        }
+
+        // sets (cx, cy) to the circumcenter of a, b, c
+        private void circumcenter(double ax, double ay, double bx, double by, double cx, double cy) {
+            double dx = bx - ax, dy = by - ay;
+            double ex = cx - ax, ey = cy - ay;
+            double bl = dx*dx + dy*dy;
+            double cl = ex*ex + ey*ey;
+            double d = 0.5 / (dx * ey - dy * ex);
+            this.cx = ax + (ey * bl - dy * cl) * d;
+            this.cy = ay + (dx * cl - ex * bl) * d;
+        }
+
+        // sorts ids[left..right] by dists[id], then by coordinates, so that
+        // duplicate points end up next to each other
+        private void quicksort(int[] ids, double[] dists, int left, int right) {
+            while (right - left > 20) {
+                int median = (left + right) >>> 1;
+                swap(ids, median, left + 1);
+                if (less(dists, ids[right], ids[left])) swap(ids, left, right);
+                if (less(dists, ids[right], ids[left + 1])) swap(ids, left + 1, right);
+                if (less(dists, ids[left + 1], ids[left])) swap(ids, left, left + 1);
+                int i = left + 1, j = right;
+                int temp = ids[left + 1];
+                while (true) {
+                    do i++; while (less(dists, ids[i], temp));
+                    do j--; while (less(dists, temp, ids[j]));
+                    if (j < i) break;
+                    swap(ids, i, j);
+                }
+                ids[left + 1] = ids[j];
+                ids[j] = temp;
+                // recurse into the smaller half, loop on the larger
+                if (right - i + 1 >= j - left) {
+                    quicksort(ids, dists, left, j - 1);
+                    left = i;
+                }
+                else {
+                    quicksort(ids, dists, i, right);
+                    right = j - 1;
+                }
+            }
+            for (int i = left + 1; i <= right; i++) {
+                int temp = ids[i];
+                int j = i - 1;
+                while (j >= left && less(dists, temp, ids[j])) {
+                    ids[j + 1] = ids[j];
+                    j--;
+                }
+                ids[j + 1] = temp;
+            }
+        }
+
+        private boolean less(double[] dists, int a, int b) {
+            if (dists[a] != dists[b]) return dists[a] < dists[b];
+            if (xs[a] != xs[b]) return xs[a] < xs[b];
+            return ys[a] < ys[b];
+        }
+
+        private static void swap(int[] a, int i, int j) {
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    // uniform grid with about two points per cell, for k-nearest searches
+    private static final class Grid {
+        private final double[] xs, ys;
+        private final int n, k;
+        private final double minX, minY, cell;
+        private final int cols, rows;
+        private final int[] start;      // points of cell c are order[start[c]..start[c+1]-1]
+        private final int[] order;
+
+        Grid(double[] xs, double[] ys, int n, int k) {
+            this.xs = xs;
+            this.ys = ys;
+            this.n = n;
+            this.k = k;
+            double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+            double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                x0 = Math.min(x0, xs[i]);
+                y0 = Math.min(y0, ys[i]);
+                x1 = Math.max(x1, xs[i]);
+                y1 = Math.max(y1, ys[i]);
+            }
+            minX = x0;
+            minY = y0;
+            double w = Math.max(x1 - x0, 1e-9);
+            double h = Math.max(y1 - y0, 1e-9);
+            double size = Math.sqrt(w * h / Math.max(1, n / 2));
+            if (size <= 0) size = Math.max(w, h);
+            cell = size;
+            cols = Math.min((int) (w / size) + 1, 1 << 15);
+            rows = Math.min((int) (h / size) + 1, 1 << 15);
+
+            start = new int[cols * rows + 1];
+            int[] cellOf = new int[n];
+            for (int i = 0; i < n; i++) {
+                cellOf[i] = cellIndex(col(xs[i]), row(ys[i]));
+                start[cellOf[i] + 1]++;
+            }
+            for (int c = 0; c < cols * rows; c++) start[c + 1] += start[c];
+            int[] fill = Arrays.copyOf(start, cols * rows);
+            order = new int[n];
+            for (int i = 0; i < n; i++) order[fill[cellOf[i]]++] = i;
+        }
+
+        private int col(double x) {
+            return Math.min(cols - 1, (int) ((x - minX) / cell));
+        }
+
+        private int row(double y) {
+            return Math.min(rows - 1, (int) ((y - minY) / cell));
+        }
+
+        private int cellIndex(int c, int r) {
+            return r * cols + c;
+        }
+
+        // fills nearest[v*k .. v*k+k-1] with the k nearest points of every v
+        void nearest(int[] nearest) {
+            // copies of the coordinates in cell order, so that scanning a
+            // cell reads consecutive memory
+            double[] cellX = new double[n];
+            double[] cellY = new double[n];
+            for (int i = 0; i < n; i++) {
+                cellX[i] = xs[order[i]];
+                cellY[i] = ys[order[i]];
+            }
+
+            int[] best = new int[k];
+            double[] bestDist = new double[k];
+            // query in cell order too, so that nearby queries share cells
+            for (int at = 0; at < n; at++)
+                query(at, cellX, cellY, best, bestDist, nearest);
+        }
+
+        // finds the k nearest points of the point at order[at]
+        private void query(int at, double[] cellX, double[] cellY, int[] best, double[] bestDist,
+                           int[] nearest) {
+            int v = order[at];
+            double x = cellX[at], y = cellY[at];
+            int c0 = col(x), r0 = row(y);
+            // distance from v to the nearest side of its own cell
+            double margin = Math.min(Math.min(x - minX - c0 * cell, minX + (c0 + 1) * cell - x),
+                                     Math.min(y - minY - r0 * cell, minY + (r0 + 1) * cell - y));
+            int found = 0;
+            for (int ring = 0; ; ring++) {
+                // every point outside the rings searched so far is at
+                // least (ring - 1) * cell + margin away
+                if (found == k && ring > 0 && bestDist[k - 1] <= sq((ring - 1) * cell + margin)) break;
+                if (ring > cols && ring > rows) break;
+                for (int r = Math.max(r0 - ring, 0); r <= Math.min(r0 + ring, rows - 1); r++) {
+                    boolean edge = r == r0 - ring || r == r0 + ring;
+                    int step = (edge || ring == 0) ? 1 : 2 * ring;
+                    for (int c = c0 - ring; c <= c0 + ring; c += step) {
+                        if (c < 0 || c >= cols) continue;
+                        int cellId = cellIndex(c, r);
+                        for (int i = start[cellId]; i < start[cellId + 1]; i++) {
+                            double dx = cellX[i] - x;
+                            double dy = cellY[i] - y;
+                            double dist = dx*dx + dy*dy;
+                            if (found == k && dist >= bestDist[k - 1]) continue;
+                            int w = order[i];
+                            if (w == v) continue;
+                            int j = found < k ? found++ : k - 1;
+                            while (j > 0 && bestDist[j - 1] > dist) {
+                                best[j] = best[j - 1];
+                                bestDist[j] = bestDist[j - 1];
+                                j--;
+                            }
+                            best[j] = w;
+                            bestDist[j] = dist;
+                        }
+                    }
+                }
+            }
+            System.arraycopy(best, 0, nearest, v * k, k);
+        }
+
+        private static double sq(double x) {
+            return x < 0 ? 0 : x * x;
+        }
+    }
+
+    // builds the graph for a TSP file and prints its size and build time
+    public static void main(String[] args) {
+        boolean cache = args.length > 0 && args[0].equals("-cache");
+        int first = cache ? 1 : 0;
+        if (args.length <= first) {
+            StdOut.println("This program should be called: \n$ java-introcs CandidateGraph [-cache] file.txt [k]");
+            return;
+        }
+        String filename = args[first];
+        int k = args.length > first + 1 ? Integer.parseInt(args[first + 1]) : 10;
+        PointFile file = new PointFile(filename);
+        long start = System.nanoTime();
+        CandidateGraph graph = cache ? cached(filename, file.xs(), file.ys(), file.size(), k)
+                                     : create(file.xs(), file.ys(), file.size(), k);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        StdOut.printf("%d points, %d edges (Delaunay + %d nearest) in %.3f seconds\n",
+                      graph.size(), graph.edges(), k, seconds);
+    }
+}
@@ -0,0 +1,115 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs DistanceKernel.java
+ *  Execution:    java-introcs DistanceKernel file.txt
+ *                java-introcs --add-modules jdk.incubator.vector \
+ *                             DistanceKernel file.txt
+ *  Dependencies: ArrayTour.java PointFile.java StdOut.java Stopwatch.java
+ *                vector/VectorDistanceKernel.java (optional)
+ *
+ *  Batch distance computations from one point (px, py) to a block of points
+ *  stored in primitive arrays. This class is the scalar implementation; its
+ *  loops are written so that HotSpot can auto-vectorize them.
+ *
+ *  create() returns the SIMD implementation in vector/VectorDistanceKernel
+ *  when it has been compiled and the jdk.incubator.vector module is
+ *  available at run time, and falls back to the scalar one otherwise:
+ *
+ *  % javac-introcs --add-modules jdk.incubator.vector -d . \
+ *                  vector/VectorDistanceKernel.java
+ *
+ *  The main method benchmarks the scalar kernel against create() by running
+ *  smallest insertion on the given file with each.
+ *
+ *  % java-introcs --add-modules jdk.incubator.vector DistanceKernel mona-100k.txt
+ *
+ **************************************************************************** */
+
+public class DistanceKernel {
+
+    // name of the optional SIMD implementation
+    private static final String VECTOR_KERNEL = "VectorDistanceKernel";
+
+    // the kernel returned by create(), loaded once
+    private static DistanceKernel preferred;
+
+    // returns the fastest kernel available in this JVM
+    public static synchronized DistanceKernel create() {
+        if (preferred != null) return preferred;
+        try {
+            Class<?> c = Class.forName(VECTOR_KERNEL);
+            preferred = (DistanceKernel) c.getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            // class not compiled, or jdk.incubator.vector not added at run time
+            preferred = new DistanceKernel();
+        }
+        return preferred;
+    }
+
+    // returns a short name for this kernel
+    public String name() {
+        return "scalar";
+    }
+
+    // out[i] = distance from (px, py) to (x[i], y[i]), for i in [from, to)
+    public void distances(double px, double py, double[] x, double[] y,
+                          int from, int to, double[] out) {
+        for (int i = from; i < to; i++) {
+            double dx = x[i] - px;
+            double dy = y[i] - py;
+            out[i] = Math.sqrt(dx*dx + dy*dy);
+        }
+    }
+
+    // out[i] = squared distance from (px, py) to (x[i], y[i]), for i in [from, to)
+    public void squaredDistances(double px, double py, double[] x, double[] y,
+                                 int from, int to, double[] out) {
+        for (int i = from; i < to; i++) {
+            double dx = x[i] - px;
+            double dy = y[i] - py;
+            out[i] = dx*dx + dy*dy;
+        }
+    }
+
+    // out[i] = d(a, p) + d(p, b) - ab[i], the increase in length from inserting
+    // p = (px, py) into the edge a = (ax[i], ay[i]) -> b = (bx[i], by[i]) whose
+    // length is ab[i], for i in [from, to)
+    public void insertionDeltas(double px, double py,
+                                double[] ax, double[] ay, double[] bx, double[] by,
+                                double[] ab, int from, int to, double[] out) {
+        for (int i = from; i < to; i++) {
+            double dax = ax[i] - px;
+            double day = ay[i] - py;
+            double dbx = bx[i] - px;
+            double dby = by[i] - py;
+            out[i] = Math.sqrt(dax*dax + day*day) + Math.sqrt(dbx*dbx + dby*dby) - ab[i];
+        }
+    }
+
+    // times smallest insertion over the points with the given kernel
+    private static double time(DistanceKernel kernel, double[] xs, double[] ys, int n) {
+        Stopwatch timer = new Stopwatch();
+        ArrayTour tour = new ArrayTour(n, kernel);
+        for (int i = 0; i < n; i++)
+            tour.insertSmallest(xs[i], ys[i]);
+        double elapsed = timer.elapsedTime();
+        StdOut.printf("  %-8s length = %.4f  %8.3f seconds\n", kernel.name(), tour.length(), elapsed);
+        return elapsed;
+    }
+
+    public static void main(String[] args) {
+        PointFile file = new PointFile(args[0]);
+        double[] xs = file.xs();
+        double[] ys = file.ys();
+        int n = file.size();
+
+        DistanceKernel scalar = new DistanceKernel();
+        DistanceKernel best = create();
+        StdOut.println(args[0] + " (" + n + " points), smallest insertion");
+        time(scalar, xs, ys, n);
+        double before = time(scalar, xs, ys, n);
+        time(best, xs, ys, n);
+        double after = time(best, xs, ys, n);
+        StdOut.printf("  speedup of %s over scalar: %.2fx\n", best.name(), before / after);
+    }
+}
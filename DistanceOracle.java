@@ -0,0 +1,255 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs DistanceOracle.java
+ *  Dependencies: MapSession.java
+ *
+ *  Distances between the points of an instance, by index, for the
+ *  algorithms that look up the same pairs over and over (TwoOpt,
+ *  ExactTour), in Euclidean and in map mode alike:
+ *
+ *    euclidean(xs, ys, n)           Euclidean distances, cached in a matrix
+ *                                   when it fits in the budget (default
+ *                                   2 MB) and computed on every call otherwise
+ *    euclideanFloat(xs, ys, n)      the same, rounded to floats in the matrix
+ *    onMap(session, lngs, lats, n)  map distances in meters of a MapSession,
+ *                                   fetched once into a matrix (directed,
+ *                                   -1 for an impossible path)
+ *    matrix(d)                      any matrix d[i][j]
+ *
+ *  The Euclidean cache is a row-major n-by-n matrix of doubles, which are
+ *  exactly the distances computed on the fly (as by Point.distanceTo), or
+ *  only if asked for (euclideanFloat), of floats (within 6e-8 of the
+ *  distance, relatively), since those can change the tours found.
+ *  A lookup is one load instead of two loads, two multiplications and a
+ *  square root, but a load that misses the CPU caches costs more than all
+ *  of those. With 2-opt (TwoOpt, best of 30 runs, one oracle per JVM):
+ *
+ *    points   matrix of doubles   2-opt (ms)   direct (ms)
+ *       127          0.1 MB           0.67          0.97
+ *       250          0.5 MB           1.15          2.41
+ *       500          2.0 MB           6.80          8.38
+ *       700          3.9 MB          20.95         19.87
+ *      1000          8.0 MB          28.88         24.71
+ *      1290         13.3 MB          61.67         47.40   (circuit1290)
+ *
+ *  So the default budget keeps the matrix within the caches, and larger
+ *  instances compute the distances. A matrix of floats is half the size
+ *  and stays a little ahead of direct up to circuit1290 (44.28 ms plus
+ *  5.17 ms to fill it), but rounds distances enough there to change the
+ *  tour 2-opt finds (13717.6 instead of 13633.4). A triangular matrix,
+ *  also half the size, was slower than direct at every size above, because
+ *  of the extra index arithmetic and branch in each lookup.
+ *
+ **************************************************************************** */
+
+public abstract class DistanceOracle {
+    public static final long DEFAULT_BUDGET = 2L << 20;
+
+    // returns the number of points
+    public abstract int size();
+
+    // returns the distance from point i to point j
+    public abstract double distance(int i, int j);
+
+    // returns true if distance(i, j) == distance(j, i) for all i and j
+    public abstract boolean isSymmetric();
+
+    // returns a short name for how the distances are found
+    public abstract String name();
+
+    // returns the Euclidean distances between the first n points (xs[i], ys[i]),
+    // cached if the cache takes at most DEFAULT_BUDGET bytes (512 points)
+    public static DistanceOracle euclidean(double[] xs, double[] ys, int n) {
+        return euclidean(xs, ys, n, DEFAULT_BUDGET);
+    }
+
+    // returns the Euclidean distances between the first n points (xs[i], ys[i]),
+    // cached in doubles if the cache takes at most budget bytes, and computed
+    // on every call otherwise
+    public static DistanceOracle euclidean(double[] xs, double[] ys, int n, long budget) {
+        if (n > xs.length || n > ys.length) throw new IllegalArgumentException("Fewer than n coordinates");
+        if (fits(n, Double.BYTES, budget)) return new DoubleMatrix(xs, ys, n);
+        return new Direct(xs, ys, n);
+    }
+
+    // returns the Euclidean distances between the first n points (xs[i], ys[i]),
+    // rounded to floats in a cache of at most DEFAULT_BUDGET bytes (724 points)
+    public static DistanceOracle euclideanFloat(double[] xs, double[] ys, int n) {
+        return euclideanFloat(xs, ys, n, DEFAULT_BUDGET);
+    }
+
+    // returns the Euclidean distances between the first n points (xs[i], ys[i]),
+    // cached in floats if the cache takes at most budget bytes, and computed
+    // (exactly) on every call otherwise
+    public static DistanceOracle euclideanFloat(double[] xs, double[] ys, int n, long budget) {
+        if (n > xs.length || n > ys.length) throw new IllegalArgumentException("Fewer than n coordinates");
+        if (fits(n, Float.BYTES, budget)) return new FloatMatrix(xs, ys, n);
+        return new Direct(xs, ys, n);
+    }
+
+    // returns true if an n-by-n matrix of entries of the given size fits in
+    // an array and in budget bytes
+    private static boolean fits(int n, int bytes, long budget) {
+        long entries = (long) n * n;
+        return entries <= Integer.MAX_VALUE - 8 && entries * bytes <= budget;
+    }
+
+    // returns the map distances between the first n locations of the session
+    public static DistanceOracle onMap(MapSession session, double[] lngs, double[] lats, int n) {
+        for (int i = 0; i < n; i++)
+            session.addPoint(lngs[i], lats[i]);
+        return new Matrix(session.getDistanceMatrix(lngs, lats, n), "map");
+    }
+
+    // returns the distances of the square matrix d (d[i][j] from i to j), not copied
+    public static DistanceOracle matrix(double[][] d) {
+        for (double[] row : d) {
+            if (row.length != d.length) throw new IllegalArgumentException("Distance matrix must be square");
+        }
+        return new Matrix(d, "matrix");
+    }
+
+    // returns the distance matrix, a new array
+    public double[][] toMatrix() {
+        int n = size();
+        double[][] d = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++)
+                d[i][j] = distance(i, j);
+        }
+        return d;
+    }
+
+    private static double between(double[] xs, double[] ys, int i, int j) {
+        double dx = xs[i] - xs[j];
+        double dy = ys[i] - ys[j];
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+    // Euclidean distances computed on every call
+    private static final class Direct extends DistanceOracle {
+        private final double[] xs, ys;
+        private final int n;
+
+        private Direct(double[] xs, double[] ys, int n) {
+            this.xs = xs;
+            this.ys = ys;
+            this.n = n;
+        }
+
+        public int size() {
+            return n;
+        }
+
+        public double distance(int i, int j) {
+            return between(xs, ys, i, j);
+        }
+
+        public boolean isSymmetric() {
+            return true;
+        }
+
+        public String name() {
+            return "direct";
+        }
+    }
+
+    // Euclidean distances in a row-major matrix of doubles
+    private static final class DoubleMatrix extends DistanceOracle {
+        private final double[] d;
+        private final int n;
+
+        private DoubleMatrix(double[] xs, double[] ys, int n) {
+            this.n = n;
+            this.d = new double[n * n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < i; j++) {
+                    d[i*n + j] = between(xs, ys, i, j);
+                    d[j*n + i] = d[i*n + j];
+                }
+            }
+        }
+
+        public int size() {
+            return n;
+        }
+
+        public double distance(int i, int j) {
+            return d[i*n + j];
+        }
+
+        public boolean isSymmetric() {
+            return true;
+        }
+
+        public String name() {
+            return "double matrix";
+        }
+    }
+
+    // Euclidean distances in a row-major matrix of floats
+    private static final class FloatMatrix extends DistanceOracle {
+        private final float[] d;
+        private final int n;
+
+        private FloatMatrix(double[] xs, double[] ys, int n) {
+            this.n = n;
+            this.d = new float[n * n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < i; j++) {
+                    d[i*n + j] = (float) between(xs, ys, i, j);
+                    d[j*n + i] = d[i*n + j];
+                }
+            }
+        }
+
+        public int size() {
+            return n;
+        }
+
+        public double distance(int i, int j) {
+            return d[i*n + j];
+        }
+
+        public boolean isSymmetric() {
+            return true;
+        }
+
+        public String name() {
+            return "float matrix";
+        }
+    }
+
+    // distances of a full matrix, possibly asymmetric
+    private static final class Matrix extends DistanceOracle {
+        private final double[][] d;
+        private final String name;
+        private final boolean symmetric;
+
+        private Matrix(double[][] d, String name) {
+            this.d = d;
+            this.name = name;
+            boolean s = true;
+            for (int i = 0; i < d.length && s; i++) {
+                for (int j = 0; j < i && s; j++)
+                    s = d[i][j] == d[j][i];
+            }
+            this.symmetric = s;
+        }
+
+        public int size() {
+            return d.length;
+        }
+
+        public double distance(int i, int j) {
+            return d[i][j];
+        }
+
+        public boolean isSymmetric() {
+            return symmetric;
+        }
+
+        public String name() {
+            return name;
+        }
+    }
+}
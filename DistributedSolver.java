@@ -0,0 +1,478 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs DistributedSolver.java
+ *  Execution:    java-introcs DistributedSolver [-spawn w | -workers address,...]
+ *                                               [-regions r] [-k k]
+ *                                               file | distribution n [seed]
+ *  Dependencies: TourWorker.java LargeTour.java Storage.java PointFile.java
+ *                InstanceGenerator.java StdOut.java
+ *
+ *  Solves an instance on several worker processes (TourWorker), which can
+ *  be on other machines, so that construction and Or-opt use their cores
+ *  and memory instead of one JVM's.
+ *
+ *    1. The points are split into r regions (default: 4 per worker) of
+ *       equal size, by recursive median cuts across the longer side of the
+ *       bounding box, and the regions are ordered along a Hilbert curve
+ *       through their centers, so that consecutive regions are neighbors.
+ *    2. Each region is sent to a worker in the packed format of PointFile,
+ *       and comes back as a tour of its points. Every worker takes the next
+ *       region as soon as it is done with one; the regions of a worker that
+ *       fails go to the others.
+ *    3. The tours are joined in region order: each one is cut at the edge
+ *       that best links it to the end of the previous region and towards
+ *       the next one (in either direction).
+ *    4. The joins and region borders are repaired with Or-opt (LargeTour),
+ *       starting only from the points that have one of their k nearest
+ *       points (default 5) in another region, and then from the ends of
+ *       every move.
+ *
+ *  Workers are given as a list of addresses: host:port for TCP, or the
+ *  path of a Unix domain socket. -spawn w starts w local workers on Unix
+ *  domain sockets in a temporary directory (each its own JVM), and stops
+ *  them at the end, so the whole pipeline can be tried on one machine.
+ *
+ *  The coordinator keeps the coordinates of all the points and the joined
+ *  tour (about 70 bytes per point, with the candidate lists of the repair);
+ *  each worker only has its regions.
+ *
+ *  % java-introcs DistributedSolver -spawn 4 uniform 1000000
+ *  1000000 points, 16 regions on 4 workers (spawned)
+ *  partition: 0.6 s
+ *  regions: 8.0 s, [4, 4, 4, 4] per worker
+ *  joined: 0.4 s, length 789156.3
+ *  repaired from 9346 border points: 4.2 s, length 788277.5
+ *
+ *  On one core, LargeTour -oropt takes 23 seconds for a tour of length
+ *  785902.7 (0.3% shorter): the regions are faster than the whole even
+ *  without more cores, since each one fits in the caches.
+ *
+ **************************************************************************** */
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DistributedSolver {
+    private static final int REGIONS_PER_WORKER = 4;
+    private static final long CONNECT_MILLIS = 30000;   // how long a spawned worker may take to start
+    private static final long WAIT_MILLIS = 50;         // how often idle workers look for requeued regions
+
+    private final double[] xs, ys;
+    private final int n;
+    private final int[] region;         // region[i] = region of point i
+    private int[][] members;            // members[r] = points of region r, in region order
+    private int[][] tours;              // tours[r] = members[r] in tour order
+
+    private DistributedSolver(double[] xs, double[] ys) {
+        this.xs = xs;
+        this.ys = ys;
+        this.n = xs.length;
+        this.region = new int[n];
+    }
+
+    // splits the points into the given number of regions of equal size, in
+    // Hilbert order of their centers
+    private void partition(int regions) {
+        int[] points = new int[n];
+        for (int i = 0; i < n; i++) points[i] = i;
+        List<int[]> parts = new ArrayList<int[]>();
+        split(points, 0, n, regions, parts);
+
+        // order the regions along a Hilbert curve through their centers
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        double side = Math.max(maxX - minX, maxY - minY);
+        double scale = (side > 0) ? 65535 / side : 0.0;
+        long[] keys = new long[parts.size()];
+        for (int r = 0; r < parts.size(); r++) {
+            double cx = 0, cy = 0;
+            for (int i : parts.get(r)) {
+                cx += xs[i];
+                cy += ys[i];
+            }
+            int size = Math.max(1, parts.get(r).length);
+            int h = LargeTour.hilbert((int) ((cx / size - minX) * scale), (int) ((cy / size - minY) * scale));
+            keys[r] = (Integer.toUnsignedLong(h) << 20) | r;
+        }
+        Arrays.sort(keys);
+        members = new int[parts.size()][];
+        for (int r = 0; r < keys.length; r++) {
+            members[r] = parts.get((int) (keys[r] & 0xfffff));
+            for (int i : members[r]) region[i] = r;
+        }
+    }
+
+    // splits points[from, to) into the given number of parts by median cuts
+    // across the longer side of their bounding box
+    private void split(int[] points, int from, int to, int parts, List<int[]> out) {
+        if (parts == 1 || to - from <= 1) {
+            out.add(Arrays.copyOfRange(points, from, to));
+            for (int p = 1; p < parts; p++) out.add(new int[0]);
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int m = from; m < to; m++) {
+            minX = Math.min(minX, xs[points[m]]);
+            maxX = Math.max(maxX, xs[points[m]]);
+            minY = Math.min(minY, ys[points[m]]);
+            maxY = Math.max(maxY, ys[points[m]]);
+        }
+        double[] c = (maxX - minX >= maxY - minY) ? xs : ys;
+        int left = parts / 2;
+        int mid = from + (int) ((long) (to - from) * left / parts);
+        select(points, from, to - 1, mid, c);
+        split(points, from, mid, left, out);
+        split(points, mid, to, parts - left, out);
+    }
+
+    // rearranges points[lo..hi] so that points[k] has the k-th smallest
+    // coordinate c, with no larger one before it and no smaller one after
+    private static void select(int[] points, int lo, int hi, int k, double[] c) {
+        SplittableRandom random = new SplittableRandom(k);
+        while (lo < hi) {
+            double pivot = c[points[lo + random.nextInt(hi - lo + 1)]];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (c[points[i]] < pivot) i++;
+                while (c[points[j]] > pivot) j--;
+                if (i <= j) {
+                    int t = points[i];
+                    points[i] = points[j];
+                    points[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else return;
+        }
+    }
+
+    // sends the regions to the workers until all are solved; returns the
+    // number of regions each worker solved. A worker that fails puts its
+    // region back in the queue, and the others keep taking regions until
+    // none is left unsolved (not only until the queue is empty, since a
+    // failing worker may requeue a region after they found it empty)
+    private int[] solve(List<SocketAddress> workers) throws InterruptedException {
+        tours = new int[members.length][];
+        LinkedBlockingQueue<Integer> queue = new LinkedBlockingQueue<Integer>();
+        for (int r = 0; r < members.length; r++) queue.add(r);
+        AtomicInteger unsolved = new AtomicInteger(members.length);
+        int[] solved = new int[workers.size()];
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers.size());
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int w = 0; w < workers.size(); w++) {
+            int worker = w;
+            futures.add(pool.submit(() -> {
+                try (SocketChannel channel = SocketChannel.open(workers.get(worker))) {
+                    while (unsolved.get() > 0) {
+                        // the regions being solved by others may come back
+                        Integer r = queue.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                        if (r == null) continue;
+                        try {
+                            tours[r] = solve(channel, members[r]);
+                            solved[worker]++;
+                            unsolved.decrementAndGet();
+                        }
+                        catch (IOException e) {
+                            queue.add(r);       // for the other workers
+                            throw e;
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    System.err.println("Worker " + workers.get(worker) + " failed: " + e);
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("Solving the regions failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        if (unsolved.get() > 0) throw new IllegalStateException("No worker left to solve " + unsolved.get() + " regions");
+        return solved;
+    }
+
+    // returns the points of one region in tour order, solved by a worker
+    private int[] solve(SocketChannel channel, int[] points) throws IOException {
+        int m = points.length;
+        double[] rx = new double[m], ry = new double[m];
+        for (int j = 0; j < m; j++) {
+            rx[j] = xs[points[j]];
+            ry[j] = ys[points[j]];
+        }
+        PointFile.writePacked(channel, 0, 0, rx, ry, m);
+        int[] order = TourWorker.readOrder(channel, m);
+        int[] tour = new int[m];
+        for (int j = 0; j < m; j++) {
+            if (order[j] < 0 || order[j] >= m) throw new IOException("Worker replied with point " + order[j]);
+            tour[j] = points[order[j]];
+        }
+        return tour;
+    }
+
+    private double distance(int i, int j) {
+        double dx = xs[i] - xs[j], dy = ys[i] - ys[j];
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+    private double distance(int i, double x, double y) {
+        double dx = xs[i] - x, dy = ys[i] - y;
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+    // joins the tours of the regions, in region order, into one; the first
+    // and last point of each region's part are added to seams
+    private int[] join(List<Integer> seams) {
+        int[] tour = new int[n];
+        int count = 0;
+        int regions = tours.length;
+        double[] cx = new double[regions], cy = new double[regions];
+        for (int r = 0; r < regions; r++) {
+            for (int i : tours[r]) {
+                cx[r] += xs[i];
+                cy[r] += ys[i];
+            }
+            cx[r] /= Math.max(1, tours[r].length);
+            cy[r] /= Math.max(1, tours[r].length);
+        }
+
+        int last = -1;      // the last point of the previous region
+        for (int r = 0; r < regions; r++) {
+            int[] t = tours[r];
+            int m = t.length;
+            if (m == 0) continue;
+            int nextRegion = (r + 1) % regions;
+            // cut edge t[j] -> t[j+1]: enter at t[j+1] and go forward to t[j],
+            // or enter at t[j] and go backward to t[j+1]
+            int bestJ = 0;
+            boolean bestForward = true;
+            double best = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < m; j++) {
+                int u = t[j], v = t[(j + 1) % m];
+                double cut = (m > 1) ? distance(u, v) : 0.0;
+                double forward = (last >= 0 ? distance(last, v) : distance(v, cx[(r + regions - 1) % regions],
+                                                                                cy[(r + regions - 1) % regions]))
+                                 + distance(u, cx[nextRegion], cy[nextRegion]) - cut;
+                double backward = (last >= 0 ? distance(last, u) : distance(u, cx[(r + regions - 1) % regions],
+                                                                                 cy[(r + regions - 1) % regions]))
+                                  + distance(v, cx[nextRegion], cy[nextRegion]) - cut;
+                if (forward < best) {
+                    best = forward;
+                    bestJ = j;
+                    bestForward = true;
+                }
+                if (backward < best) {
+                    best = backward;
+                    bestJ = j;
+                    bestForward = false;
+                }
+            }
+            for (int step = 1; step <= m; step++) {
+                int j = bestForward ? (bestJ + step) % m : ((bestJ + 1 - step) % m + m) % m;
+                tour[count++] = t[j];
+            }
+            seams.add(tour[count - m]);
+            seams.add(tour[count - 1]);
+            last = tour[count - 1];
+        }
+        return tour;
+    }
+
+    // returns the tour of the points joined from the tours of the given
+    // number of regions, as solved by the workers (before the repair)
+    static int[] joinedTour(double[] xs, double[] ys, int regions, List<SocketAddress> workers)
+        throws InterruptedException {
+        DistributedSolver solver = new DistributedSolver(xs, ys);
+        solver.partition(regions);
+        solver.solve(workers);
+        return solver.join(new ArrayList<Integer>());
+    }
+
+    // starts count worker JVMs on Unix domain sockets in directory, adding
+    // them to processes, and returns their addresses once they all accept
+    // connections
+    static List<SocketAddress> spawn(Path directory, int count, int k, List<Process> processes)
+        throws IOException, InterruptedException {
+        List<SocketAddress> workers = new ArrayList<SocketAddress>();
+        for (int w = 0; w < count; w++) workers.add(spawn(directory, "worker-" + w, k, processes));
+        return workers;
+    }
+
+    // starts one worker JVM on the socket directory/name.sock, with extra
+    // TourWorker options (such as -fail r), and adds its process to processes
+    static SocketAddress spawn(Path directory, String name, int k, List<Process> processes, String... options)
+        throws IOException, InterruptedException {
+        Path socket = directory.resolve(name + ".sock");
+        Process process = spawn(socket, k, options);
+        processes.add(process);
+        SocketAddress address = UnixDomainSocketAddress.of(socket);
+        await(address, process);
+        return address;
+    }
+
+    // stops the spawned workers and deletes their directory
+    static void stop(List<Process> processes, Path directory) throws IOException, InterruptedException {
+        for (Process process : processes) process.destroy();
+        for (Process process : processes) process.waitFor();
+        File[] files = directory.toFile().listFiles();
+        if (files != null) for (File f : files) f.delete();
+        Files.deleteIfExists(directory);
+    }
+
+    // starts a worker JVM on a Unix domain socket, with the classpath of this one
+    private static Process spawn(Path socket, int k, String... options) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<String>(Arrays.asList(
+            java, "-cp", System.getProperty("java.class.path"),
+            "TourWorker", "-socket", socket.toString(), "-k", "" + k));
+        command.addAll(Arrays.asList(options));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return builder.start();
+    }
+
+    // waits until the worker accepts connections (a probe connection, which
+    // it closes at once)
+    private static void await(SocketAddress address, Process process) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + CONNECT_MILLIS;
+        while (true) {
+            try {
+                SocketChannel.open(address).close();
+                return;
+            }
+            catch (IOException e) {
+                if (!process.isAlive()) throw new IOException("Worker exited with status " + process.exitValue());
+                if (System.currentTimeMillis() > deadline) throw e;
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    // returns the address of a worker: host:port, or the path of a Unix domain socket
+    private static SocketAddress address(String s) {
+        int colon = s.lastIndexOf(':');
+        if (s.contains(File.separator) || colon < 0) return UnixDomainSocketAddress.of(s);
+        return new InetSocketAddress(s.substring(0, colon), Integer.parseInt(s.substring(colon + 1)));
+    }
+
+    private static double length(int[] tour, double[] xs, double[] ys) {
+        double sum = 0.0;
+        for (int m = 0; m < tour.length; m++) {
+            int i = tour[m], j = tour[(m + 1) % tour.length];
+            double dx = xs[i] - xs[j], dy = ys[i] - ys[j];
+            sum += Math.sqrt(dx*dx + dy*dy);
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int spawn = 0, regions = 0, k = 5;
+        List<String> addresses = new ArrayList<String>();
+        List<String> rest = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if      (args[i].equals("-spawn"))   spawn = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-workers")) addresses.addAll(Arrays.asList(args[++i].split(",")));
+            else if (args[i].equals("-regions")) regions = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-k"))       k = Integer.parseInt(args[++i]);
+            else rest.add(args[i]);
+        }
+        if (rest.isEmpty() || (spawn == 0) == addresses.isEmpty()) {
+            StdOut.println("This program should be called: \n$ java-introcs DistributedSolver "
+                           + "[-spawn w | -workers address,...] [-regions r] [-k k] file | distribution n [seed]");
+            return;
+        }
+        PointFile file = (rest.size() == 1)
+            ? new PointFile(rest.get(0))
+            : InstanceGenerator.generate(rest.get(0), Integer.parseInt(rest.get(1)),
+                                         (rest.size() > 2) ? Long.parseLong(rest.get(2)) : 0);
+
+        List<Process> processes = new ArrayList<Process>();
+        Path directory = null;
+        try {
+            List<SocketAddress> workers = new ArrayList<SocketAddress>();
+            if (spawn > 0) {
+                directory = Files.createTempDirectory("tsp-workers");
+                workers = spawn(directory, spawn, k, processes);
+            }
+            else {
+                for (String address : addresses) workers.add(address(address));
+            }
+            if (regions == 0) regions = REGIONS_PER_WORKER * workers.size();
+            StdOut.printf("%d points, %d regions on %d workers%s\n", file.size(), regions, workers.size(),
+                          spawn > 0 ? " (spawned)" : "");
+
+            long start = System.nanoTime();
+            DistributedSolver solver = new DistributedSolver(file.xs(), file.ys());
+            solver.partition(regions);
+            StdOut.printf("partition: %.1f s\n", (System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            int[] solved = solver.solve(workers);
+            StdOut.printf("regions: %.1f s, %s per worker\n", (System.nanoTime() - start) / 1e9,
+                          Arrays.toString(solved));
+
+            start = System.nanoTime();
+            List<Integer> seams = new ArrayList<Integer>();
+            int[] order = solver.join(seams);
+            StdOut.printf("joined: %.1f s, length %.1f\n", (System.nanoTime() - start) / 1e9,
+                          length(order, file.xs(), file.ys()));
+
+            start = System.nanoTime();
+            LargeTour tour = new LargeTour(Storage.wrap(file.xs()), Storage.wrap(file.ys()), Storage.heap(),
+                                           Storage.wrap(order));
+            tour.findNeighbors(k);
+            List<Integer> border = new ArrayList<Integer>(seams);
+            for (int i = 0; i < file.size(); i++) {
+                for (int m = 0; m < k; m++) {
+                    int j = tour.neighbor(i, m);
+                    if (j >= 0 && solver.region[j] != solver.region[i]) {
+                        border.add(i);
+                        break;
+                    }
+                }
+            }
+            int[] starts = new int[border.size()];
+            for (int m = 0; m < starts.length; m++) starts[m] = border.get(m);
+            tour.orOpt(starts);
+            StdOut.printf("repaired from %d border points: %.1f s, length %.1f\n", starts.length,
+                          (System.nanoTime() - start) / 1e9, tour.length());
+        }
+        finally {
+            if (directory != null) stop(processes, directory);
+        }
+    }
+}
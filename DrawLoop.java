@@ -0,0 +1,157 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs DrawLoop.java
+ *  Dependencies: StdDraw.java
+ *
+ *  Input and redraw scheduling for the interactive StdDraw clients
+ *  (TSPMap, TSPVisualizer), so that they sleep while nothing happens
+ *  instead of polling StdDraw in a loop.
+ *
+ *  awaitInput() blocks until the user types a key or uses the mouse. It
+ *  listens to every key and mouse event of the application; since StdDraw
+ *  only queues a key (or records the mouse) when its own listeners run,
+ *  the waiting thread is woken up from an event posted after the event
+ *  itself, when StdDraw's state is up to date. The caller then reads the
+ *  input as before (hasNextKeyTyped(), isMousePressed(), ...), all of it,
+ *  and waits again:
+ *
+ *      long input = DrawLoop.inputs();
+ *      while (true) {
+ *          while (StdDraw.hasNextKeyTyped()) { ... }
+ *          ...
+ *          input = DrawLoop.awaitInput(input);
+ *      }
+ *
+ *  A DrawLoop draws frames on its own thread. requestFrame() never waits:
+ *  requests made while a frame is pending are coalesced into it, and a
+ *  frame in progress is superseded: its thread is interrupted (openMap()
+ *  then stops waiting for its images and doesn't draw) and the next frame
+ *  starts right after it.
+ *
+ **************************************************************************** */
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+
+public final class DrawLoop {
+    private static final long EVENTS = AWTEvent.KEY_EVENT_MASK | AWTEvent.MOUSE_EVENT_MASK
+                                     | AWTEvent.MOUSE_MOTION_EVENT_MASK;
+
+    // input events seen so far, guarded by DrawLoop.class
+    private static long inputs;
+    private static boolean listening;
+
+    private final Runnable frame;
+    private final Thread thread;
+
+    // guarded by this
+    private boolean requested;          // a frame is pending
+    private boolean drawing;            // a frame is in progress
+    private boolean closed;
+    private int frames, superseded;
+
+    // draws frames by running frame on a new thread
+    public DrawLoop(String name, Runnable frame) {
+        this.frame = frame;
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // returns the number of input events so far, and starts counting them
+    public static long inputs() {
+        listen();
+        synchronized (DrawLoop.class) {
+            return inputs;
+        }
+    }
+
+    // blocks until there has been input since the given number of input
+    // events (from inputs() or the previous call); returns the new number
+    public static long awaitInput(long seen) {
+        listen();
+        synchronized (DrawLoop.class) {
+            try {
+                while (inputs == seen) DrawLoop.class.wait();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return inputs;
+        }
+    }
+
+    private static void listen() {
+        synchronized (DrawLoop.class) {
+            if (listening) return;
+            listening = true;
+        }
+        if (GraphicsEnvironment.isHeadless()) return;
+        Toolkit.getDefaultToolkit().addAWTEventListener(event -> {
+            // StdDraw's listeners haven't seen the event yet: wake up after them
+            EventQueue.invokeLater(() -> {
+                synchronized (DrawLoop.class) {
+                    inputs++;
+                    DrawLoop.class.notifyAll();
+                }
+            });
+        }, EVENTS);
+    }
+
+    // asks for a frame, superseding the one being drawn
+    public synchronized void requestFrame() {
+        requested = true;
+        if (drawing) {
+            superseded++;
+            thread.interrupt();
+        }
+        notifyAll();
+    }
+
+    // returns the number of frames drawn (or started, then superseded)
+    public synchronized int frames() {
+        return frames;
+    }
+
+    // returns the number of frames superseded while they were drawn
+    public synchronized int superseded() {
+        return superseded;
+    }
+
+    // stops drawing frames (after the one in progress)
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    while (!requested && !closed) wait();
+                }
+                catch (InterruptedException e) {
+                    // an interrupt meant for the previous frame
+                    continue;
+                }
+                if (closed) return;
+                requested = false;
+                drawing = true;
+            }
+            // clear an interrupt meant for the previous frame
+            Thread.interrupted();
+            try {
+                frame.run();
+            }
+            catch (RuntimeException e) {
+                // a superseded frame may fail half way (e.g. while loading an image)
+                if (!Thread.currentThread().isInterrupted()) e.printStackTrace();
+            }
+            synchronized (this) {
+                drawing = false;
+                frames++;
+            }
+        }
+    }
+}
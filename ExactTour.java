@@ -0,0 +1,670 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs ExactTour.java
+ *  Execution:    java-introcs ExactTour [-map] dir_or_file ...
+ *  Dependencies: ArrayTour.java PointFile.java BatchRunner.java StdMap.java
+ *                MapSession.java DistanceOracle.java
+ *                StdOut.java
+ *
+ *  Optimal tours for small instances such as the ones in test_files/round3
+ *  (10 to 25 points).
+ *
+ *  Up to MAX_HELD_KARP points, the bitmask dynamic program of Held and Karp
+ *  is used: best[S][j] = length of the shortest path that starts at point 0,
+ *  visits exactly the points in S and ends at j. The tables are flat
+ *  primitive arrays indexed by S * (n-1) + j (n = 20 needs 2^19 * 19 entries).
+ *
+ *  Beyond that, a branch-and-bound search extends paths from point 0. A
+ *  partial path is cut off when its length plus a lower bound on the rest
+ *  of the tour reaches the best tour found so far. The bound is a 1-tree
+ *  style relaxation of the remaining path (a spanning tree of the unvisited
+ *  points plus an edge at each end) with Held-Karp node penalties, computed
+ *  by subgradient ascent at the root and refined for a few steps per node.
+ *  The first upper bound is the better insertion tour improved by 2-opt.
+ *  A path is also dropped when another path through the same points to the
+ *  same end point was shorter (the Held-Karp recurrence used as a filter);
+ *  those lengths are kept in a table of primitives with open addressing,
+ *  of at most 2^21 slots (32 MB) and 1/16 of the heap, which stops taking
+ *  new pairs when it is 3/4 full.
+ *  The subtrees below the first two steps are searched in parallel on all
+ *  cores, sharing the best length found so far.
+ *
+ *  Distances come from a matrix (or a DistanceOracle, copied into one), so
+ *  both Euclidean and StdMap distances work; map distances may be
+ *  asymmetric (d[i][j] != d[j][i]), and the bounds then use
+ *  min(d[i][j], d[j][i]).
+ *
+ *  The main method prints the optimal length next to the nearest and
+ *  smallest insertion lengths and their optimality gaps. With -map, the
+ *  distances are StdMap's (this needs the keys in Constants).
+ *
+ *  % java-introcs ExactTour test_files/round3
+ *  file                             n      optimal    nearest    gap   smallest    gap   seconds
+ *  test_files/round3/test10pts-1   10       3.0387     3.2103   5.6%     3.0387   0.0%     0.003
+ *  ...
+ *
+ **************************************************************************** */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class ExactTour {
+
+    // largest instance solved with the Held-Karp dynamic program
+    public static final int MAX_HELD_KARP = 20;
+
+    // largest instance accepted at all (a visited set and an end point are
+    // packed into one long)
+    public static final int MAX_POINTS = 58;
+
+    // slots of the table of (visited set, end point) pairs the search
+    // remembers, 16 bytes each: at most 1/16 of the heap, and 32 MB (the
+    // hardest instance of round3, 24 points, remembers 140000 pairs)
+    private static final int MAX_SLOTS = 1 << 21;
+    private static final long SLOT_BYTES = 16;
+
+    // number of subgradient steps at the root, and at every search node
+    private static final int ASCENT_ITERATIONS = 2000;
+    private static final int NODE_ITERATIONS = 10;
+    private static final double NODE_LAMBDA = 0.5;
+
+    private final double[][] d;     // d[i][j] = distance from i to j
+    private final int n;            // number of points
+
+    private int[] order;            // optimal tour, starting at point 0
+    private double length;          // its length
+
+    // state of the branch-and-bound search
+    private double[][] s;           // symmetric lower bound on d
+    private double[] pi;            // node penalties from the ascent
+    private final AtomicLong best = new AtomicLong();
+    private LengthTable shortest;
+
+    // shortest known path length per (visited set, end point) key, in two
+    // primitive arrays with open addressing (linear probing), shared by the
+    // search threads without locks: a slot is claimed by a compare-and-set
+    // of its key, and its length only ever goes down. Once 3/4 full it
+    // stops taking new keys, and keeps lowering the lengths it has
+    private static final class LengthTable {
+        private static final long EMPTY = 0;
+        private static final long INFINITY = Double.doubleToLongBits(Double.POSITIVE_INFINITY);
+
+        private final AtomicLongArray keys;         // key + 1, or EMPTY
+        private final AtomicLongArray lengths;      // bits of the shortest length, xor INFINITY
+        private final int mask;
+        private final int limit;
+        private final AtomicInteger size = new AtomicInteger();
+
+        // creates a table of capacity slots (a power of two)
+        LengthTable(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            lengths = new AtomicLongArray(capacity);     // all infinite
+            mask = capacity - 1;
+            limit = capacity / 4 * 3;
+        }
+
+        // returns the table of the largest capacity that fits in the heap budget
+        static LengthTable sized() {
+            long slots = Math.min(MAX_SLOTS, Runtime.getRuntime().maxMemory() / 16 / SLOT_BYTES);
+            return new LengthTable(Integer.highestOneBit((int) Math.max(slots, 1024)));
+        }
+
+        // lowers the length of key to len if that is shorter (adding key if
+        // there is room), and returns the length of key before
+        double merge(long key, double len) {
+            long stored = key + 1;
+            long h = stored * 0x9E3779B97F4A7C15L;
+            for (int i = (int) (h >>> 40) & mask; ; i = (i + 1) & mask) {
+                long k = keys.get(i);
+                if (k == EMPTY) {
+                    if (size.get() >= limit) return Double.POSITIVE_INFINITY;
+                    if (!keys.compareAndSet(i, EMPTY, stored)) {
+                        k = keys.get(i);
+                        if (k != stored) continue;
+                    }
+                    else size.incrementAndGet();
+                }
+                else if (k != stored) continue;
+                long bits = Double.doubleToLongBits(len) ^ INFINITY;
+                while (true) {
+                    long old = lengths.get(i);
+                    double known = Double.longBitsToDouble(old ^ INFINITY);
+                    if (known <= len || lengths.compareAndSet(i, old, bits)) return known;
+                }
+            }
+        }
+    }
+
+    // computes an optimal tour for the given distance matrix
+    public ExactTour(double[][] distances) {
+        n = distances.length;
+        if (n > MAX_POINTS)
+            throw new IllegalArgumentException("At most " + MAX_POINTS + " points can be solved exactly");
+        d = new double[n][];
+        for (int i = 0; i < n; i++) {
+            if (distances[i].length != n) throw new IllegalArgumentException("Distance matrix must be square");
+            d[i] = distances[i].clone();
+        }
+
+        if (n <= 3) {
+            order = new int[n];
+            for (int i = 0; i < n; i++) order[i] = i;
+            if (n == 3 && d[0][2] + d[2][1] + d[1][0] < d[0][1] + d[1][2] + d[2][0]) {
+                order[1] = 2;
+                order[2] = 1;
+            }
+            length = tourLength(order);
+        }
+        else if (n <= MAX_HELD_KARP) heldKarp();
+        else branchAndBound();
+    }
+
+    // computes an optimal tour for the distances of the oracle
+    public ExactTour(DistanceOracle oracle) {
+        this(oracle.toMatrix());
+    }
+
+    // returns an optimal tour through the n points with Euclidean distances
+    public static ExactTour euclidean(double[] xs, double[] ys, int n) {
+        return new ExactTour(DistanceOracle.euclidean(xs, ys, n));
+    }
+
+    // returns an optimal tour through the n locations with StdMap distances
+    public static ExactTour onMap(double[] lngs, double[] lats, int n) {
+        return onMap(StdMap.getDefaultSession(), lngs, lats, n);
+    }
+
+    // returns an optimal tour through the n locations with the distances of
+    // the given map session
+    public static ExactTour onMap(MapSession session, double[] lngs, double[] lats, int n) {
+        return new ExactTour(DistanceOracle.onMap(session, lngs, lats, n));
+    }
+
+    // returns the number of points
+    public int size() {
+        return n;
+    }
+
+    // returns the length of an optimal tour
+    public double length() {
+        return length;
+    }
+
+    // returns the points of an optimal tour in order, starting with point 0
+    public int[] order() {
+        return order.clone();
+    }
+
+    // returns the length of the closed tour visiting the points in the given order
+    private double tourLength(int[] tour) {
+        double sum = 0.0;
+        for (int k = 0; k < tour.length; k++)
+            sum += d[tour[k]][tour[(k + 1) % tour.length]];
+        return sum;
+    }
+
+    /***************************************************************************
+     *  Held-Karp dynamic program.
+     ***************************************************************************/
+
+    private void heldKarp() {
+        int m = n - 1;                       // points 1..n-1 are bits 0..m-1
+        int sets = 1 << m;
+        long entries = (long) sets * m;
+        if (entries > Integer.MAX_VALUE) throw new IllegalStateException("Held-Karp table too large");
+
+        double[] cost = new double[(int) entries];
+        byte[] parent = new byte[(int) entries];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        for (int j = 0; j < m; j++)
+            cost[(1 << j) * m + j] = d[0][j + 1];
+
+        for (int set = 1; set < sets; set++) {
+            long base = (long) set * m;
+            for (int j = 0; j < m; j++) {
+                if ((set & (1 << j)) == 0) continue;
+                double c = cost[(int) (base + j)];
+                if (c == Double.POSITIVE_INFINITY) continue;
+                double[] dj = d[j + 1];
+                for (int k = 0; k < m; k++) {
+                    if ((set & (1 << k)) != 0) continue;
+                    int index = (int) ((long) (set | (1 << k)) * m + k);
+                    double candidate = c + dj[k + 1];
+                    if (candidate < cost[index]) {
+                        cost[index] = candidate;
+                        parent[index] = (byte) j;
+                    }
+                }
+            }
+        }
+
+        // close the tour, then walk the parents back from the full set
+        int full = sets - 1;
+        int last = 0;
+        length = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < m; j++) {
+            double c = cost[(int) ((long) full * m + j)] + d[j + 1][0];
+            if (c < length) {
+                length = c;
+                last = j;
+            }
+        }
+        order = new int[n];
+        int set = full;
+        for (int k = n - 1; k >= 1; k--) {
+            order[k] = last + 1;
+            int previous = parent[(int) ((long) set * m + last)];
+            set &= ~(1 << last);
+            last = previous;
+        }
+        order[0] = 0;
+    }
+
+    /***************************************************************************
+     *  Branch and bound.
+     ***************************************************************************/
+
+    // a path from point 0 that the parallel phase starts searching from
+    private static final class Prefix {
+        private final int[] path;
+        private final double length;
+        private final double bound;
+
+        private Prefix(int[] path, double length, double bound) {
+            this.path = path;
+            this.length = length;
+            this.bound = bound;
+        }
+    }
+
+    private void branchAndBound() {
+        s = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++)
+                s[i][j] = Math.min(d[i][j], d[j][i]);
+        }
+
+        // the best insertion tour, improved by 2-opt, is the first upper bound
+        int[] start = twoOpt(insertionTour());
+        order = start;
+        length = tourLength(start);
+        best.set(Double.doubleToLongBits(length));
+        pi = ascent(length);
+        shortest = LengthTable.sized();
+
+        // expand the first two steps, then search the subtrees in parallel
+        List<Prefix> prefixes = new ArrayList<Prefix>();
+        for (int a = 1; a < n; a++) {
+            for (int b = 1; b < n; b++) {
+                if (a == b) continue;
+                int[] path = { 0, a, b };
+                double len = d[0][a] + d[a][b];
+                long visited = 1L | (1L << a) | (1L << b);
+                if (dominated(visited, b, len)) continue;
+                prefixes.add(new Prefix(path, len, len + pathBound(visited, b, pi.clone())));
+            }
+        }
+        prefixes.sort((p, q) -> Double.compare(p.bound, q.bound));
+        prefixes.parallelStream().forEach(this::search);
+    }
+
+    // searches every tour that starts with the given prefix
+    private void search(Prefix prefix) {
+        if (prefix.bound >= bestLength()) return;
+        int[] path = Arrays.copyOf(prefix.path, n);
+        long visited = 0;
+        for (int v : prefix.path) visited |= 1L << v;
+        extend(path, prefix.path.length, visited, prefix.length, pi);
+    }
+
+    // depth-first search below the path path[0..k-1] of the given length;
+    // penalty holds the penalties the parent's bound ended with
+    private void extend(int[] path, int k, long visited, double len, double[] penalty) {
+        int last = path[k - 1];
+        if (k == n) {
+            double total = len + d[last][0];
+            if (total < bestLength()) record(path, total);
+            return;
+        }
+
+        // bound every child, then visit the most promising ones first
+        int[] candidates = new int[n - k];
+        double[] bounds = new double[n - k];
+        double[][] penalties = new double[n - k][];
+        int count = 0;
+        double[] dl = d[last];
+        for (int v = 1; v < n; v++) {
+            if ((visited & (1L << v)) != 0) continue;
+            double next = len + dl[v];
+            if (next >= bestLength()) continue;
+            if (dominated(visited | (1L << v), v, next)) continue;
+            double[] childPenalty = penalty.clone();
+            double bound = next;
+            if (k + 1 < n) bound += pathBound(visited | (1L << v), v, childPenalty);
+            if (bound >= bestLength()) continue;
+
+            // insertion sort by bound
+            int c = count++;
+            while (c > 0 && bounds[c - 1] > bound) {
+                candidates[c] = candidates[c - 1];
+                bounds[c] = bounds[c - 1];
+                penalties[c] = penalties[c - 1];
+                c--;
+            }
+            candidates[c] = v;
+            bounds[c] = bound;
+            penalties[c] = childPenalty;
+        }
+
+        for (int c = 0; c < count; c++) {
+            if (bounds[c] >= bestLength()) break;
+            int v = candidates[c];
+            path[k] = v;
+            extend(path, k + 1, visited | (1L << v), len + dl[v], penalties[c]);
+        }
+    }
+
+    // returns true if some other path through the same points to the same
+    // end point was at most as long, and otherwise remembers this path's length
+    private boolean dominated(long visited, int last, double len) {
+        long key = ((visited >>> 1) << 6) | last;
+        return shortest.merge(key, len) < len;
+    }
+
+    // returns the length of the best tour found so far
+    private double bestLength() {
+        return Double.longBitsToDouble(best.get());
+    }
+
+    // replaces the best tour if the given one is still shorter
+    private synchronized void record(int[] path, double total) {
+        if (total >= length) return;
+        length = total;
+        order = path.clone();
+        best.set(Double.doubleToLongBits(total));
+    }
+
+    // lower bound on the rest of the tour: a path from last through every
+    // unvisited point back to 0. Any such path is a spanning tree of the
+    // unvisited points plus one edge from last and one edge to 0, so the
+    // cheapest such structure, with penalties pi[v] added to every edge at v
+    // and 2 pi[v] subtracted per point, is a bound. A few subgradient steps
+    // starting from the given penalties (which are updated) tighten it.
+    private double pathBound(long visited, int last, double[] penalty) {
+        int[] nodes = new int[n];
+        int count = 0;
+        for (int v = 1; v < n; v++) {
+            if ((visited & (1L << v)) == 0) nodes[count++] = v;
+        }
+        int[] degree = new int[count];
+        int[] parent = new int[count];
+        double[] bestPenalty = penalty.clone();
+        double best = Double.NEGATIVE_INFINITY;
+        double lambda = NODE_LAMBDA;
+        double upperBound = bestLength();
+        for (int iteration = 0; iteration < NODE_ITERATIONS; iteration++) {
+            double bound = attachedTree(nodes, count, last, penalty, degree, parent);
+            if (bound > best) {
+                best = bound;
+                System.arraycopy(penalty, 0, bestPenalty, 0, n);
+            }
+            int norm = 0;
+            for (int i = 0; i < count; i++) norm += (degree[i] - 2) * (degree[i] - 2);
+            if (norm == 0 || best >= upperBound) break;
+            double step = lambda * (upperBound - bound) / norm;
+            for (int i = 0; i < count; i++) penalty[nodes[i]] += step * (degree[i] - 2);
+            lambda /= 2;
+        }
+
+        // hand the best penalties down to the children
+        System.arraycopy(bestPenalty, 0, penalty, 0, n);
+        return best;
+    }
+
+    // minimum spanning tree of nodes[0..count-1] plus the cheapest edge from
+    // last and the cheapest edge to 0, all with penalized costs, minus twice
+    // the penalties; fills in the degrees of the nodes and returns the bound
+    private double attachedTree(int[] nodes, int count, int last, double[] penalty,
+                                int[] degree, int[] parent) {
+        Arrays.fill(degree, 0, count, 0);
+        double total = 0.0;
+        double[] key = new double[count];
+        boolean[] inTree = new boolean[count];
+        Arrays.fill(key, Double.POSITIVE_INFINITY);
+        key[0] = 0.0;
+        parent[0] = -1;
+        for (int step = 0; step < count; step++) {
+            int u = -1;
+            for (int i = 0; i < count; i++) {
+                if (!inTree[i] && (u == -1 || key[i] < key[u])) u = i;
+            }
+            inTree[u] = true;
+            total += key[u];
+            if (parent[u] >= 0) {
+                degree[u]++;
+                degree[parent[u]]++;
+            }
+            int nu = nodes[u];
+            for (int i = 0; i < count; i++) {
+                if (inTree[i]) continue;
+                int ni = nodes[i];
+                double c = s[nu][ni] + penalty[nu] + penalty[ni];
+                if (c < key[i]) {
+                    key[i] = c;
+                    parent[i] = u;
+                }
+            }
+        }
+
+        int from = 0, to = 0;
+        for (int i = 1; i < count; i++) {
+            if (s[last][nodes[i]] + penalty[nodes[i]] < s[last][nodes[from]] + penalty[nodes[from]]) from = i;
+            if (s[0][nodes[i]] + penalty[nodes[i]] < s[0][nodes[to]] + penalty[nodes[to]]) to = i;
+        }
+        total += s[last][nodes[from]] + penalty[nodes[from]] + s[0][nodes[to]] + penalty[nodes[to]];
+        degree[from]++;
+        degree[to]++;
+        for (int i = 0; i < count; i++) total -= 2 * penalty[nodes[i]];
+        return total;
+    }
+
+    // Held-Karp subgradient ascent on minimum 1-trees (point 0 is the special
+    // node); returns the penalties that gave the best bound
+    private double[] ascent(double upperBound) {
+        double[] penalty = new double[n];
+        double[] bestPenalty = new double[n];
+        double bestBound = Double.NEGATIVE_INFINITY;
+        int[] degree = new int[n];
+        int[] parent = new int[n];
+        double lambda = 2.0;
+
+        for (int iteration = 0; iteration < ASCENT_ITERATIONS; iteration++) {
+            double w = oneTree(penalty, degree, parent);
+            double sum = 0.0;
+            for (int i = 0; i < n; i++) sum += penalty[i];
+            double bound = w - 2 * sum;
+            if (bound > bestBound) {
+                bestBound = bound;
+                System.arraycopy(penalty, 0, bestPenalty, 0, n);
+            }
+
+            int norm = 0;
+            for (int i = 0; i < n; i++) norm += (degree[i] - 2) * (degree[i] - 2);
+            if (norm == 0) break;       // the 1-tree is a tour: bound is optimal
+            double step = lambda * (upperBound - bound) / norm;
+            for (int i = 0; i < n; i++) penalty[i] += step * (degree[i] - 2);
+            if (iteration % 100 == 99) lambda /= 2;
+        }
+        return bestPenalty;
+    }
+
+    // minimum 1-tree with penalized costs: a spanning tree on points 1..n-1 plus
+    // the two cheapest edges at point 0; fills in the degrees and returns the cost
+    private double oneTree(double[] penalty, int[] degree, int[] parent) {
+        Arrays.fill(degree, 0);
+        int m = n - 1;
+        double[] key = new double[n];
+        boolean[] inTree = new boolean[n];
+        Arrays.fill(key, Double.POSITIVE_INFINITY);
+        key[1] = 0.0;
+        parent[1] = -1;
+        double total = 0.0;
+        for (int step = 0; step < m; step++) {
+            int u = -1;
+            for (int i = 1; i < n; i++) {
+                if (!inTree[i] && (u == -1 || key[i] < key[u])) u = i;
+            }
+            inTree[u] = true;
+            total += key[u];
+            if (parent[u] >= 0) {
+                degree[u]++;
+                degree[parent[u]]++;
+            }
+            for (int i = 1; i < n; i++) {
+                if (inTree[i]) continue;
+                double c = s[u][i] + penalty[u] + penalty[i];
+                if (c < key[i]) {
+                    key[i] = c;
+                    parent[i] = u;
+                }
+            }
+        }
+
+        int first = -1, second = -1;
+        for (int i = 1; i < n; i++) {
+            double c = s[0][i] + penalty[0] + penalty[i];
+            if (first == -1 || c < s[0][first] + penalty[0] + penalty[first]) {
+                second = first;
+                first = i;
+            }
+            else if (second == -1 || c < s[0][second] + penalty[0] + penalty[second]) {
+                second = i;
+            }
+        }
+        total += s[0][first] + s[0][second] + 2 * penalty[0] + penalty[first] + penalty[second];
+        degree[0] = 2;
+        degree[first]++;
+        degree[second]++;
+        return total;
+    }
+
+    // returns the better of the nearest and smallest insertion tours on d,
+    // rotated to start at point 0
+    private int[] insertionTour() {
+        int[] bestTour = null;
+        double bestLen = Double.POSITIVE_INFINITY;
+        for (int heuristic = 0; heuristic < 2; heuristic++) {
+            int[] next = new int[n];
+            next[0] = 0;
+            for (int p = 1; p < n; p++) {
+                int at = 0;
+                double atCost = Double.POSITIVE_INFINITY;
+                int i = 0;
+                do {
+                    double c = heuristic == 0 ? d[i][p] : d[i][p] + d[p][next[i]] - d[i][next[i]];
+                    if (c < atCost) {
+                        atCost = c;
+                        at = i;
+                    }
+                    i = next[i];
+                } while (i != 0);
+                next[p] = next[at];
+                next[at] = p;
+            }
+            int[] tour = new int[n];
+            int i = 0;
+            for (int k = 0; k < n; k++) {
+                tour[k] = i;
+                i = next[i];
+            }
+            double len = tourLength(tour);
+            if (len < bestLen) {
+                bestLen = len;
+                bestTour = tour;
+            }
+        }
+        return bestTour;
+    }
+
+    // applies improving 2-opt moves (reversing tour[i..j]) until there are
+    // none; moves are evaluated on d directly, so asymmetry is respected
+    private int[] twoOpt(int[] tour) {
+        double len = tourLength(tour);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 1; i < n - 1; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    reverse(tour, i, j);
+                    double candidate = tourLength(tour);
+                    if (candidate < len - 1e-9) {
+                        len = candidate;
+                        improved = true;
+                    }
+                    else reverse(tour, i, j);
+                }
+            }
+        }
+        return tour;
+    }
+
+    // reverses tour[i..j]
+    private static void reverse(int[] tour, int i, int j) {
+        for (; i < j; i++, j--) {
+            int t = tour[i];
+            tour[i] = tour[j];
+            tour[j] = t;
+        }
+    }
+
+    // returns 100 * (length / optimal - 1)
+    private static double gap(double length, double optimal) {
+        if (optimal == 0.0) return 0.0;
+        return 100.0 * (length / optimal - 1.0);
+    }
+
+    // returns the length of the insertion tour of the file's points, measured
+    // with the same distances as the exact solution
+    private static double heuristicLength(PointFile file, boolean smallest, boolean usingMapDistance) {
+        ArrayTour tour = usingMapDistance ? new ArrayTour(true) : new ArrayTour(file.size());
+        for (int i = 0; i < file.size(); i++) {
+            if (smallest) tour.insertSmallest(file.xs()[i], file.ys()[i]);
+            else          tour.insertNearest(file.xs()[i], file.ys()[i]);
+        }
+        return tour.length();
+    }
+
+    public static void main(String[] args) {
+        boolean usingMapDistance = false;
+        List<String> filenames = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.equals("-map")) usingMapDistance = true;
+            else BatchRunner.collect(arg, filenames);
+        }
+        if (usingMapDistance) StdMap.setApiKeys(Constants.STATIC_MAPS_API_KEY, Constants.DIRECTIONS_API_KEY);
+
+        StdOut.printf("%-32s %3s %12s %10s %6s %10s %6s %9s\n",
+                      "file", "n", "optimal", "nearest", "gap", "smallest", "gap", "seconds");
+        for (String filename : filenames) {
+            PointFile file = new PointFile(filename);
+            int n = file.size();
+            if (n == 0 || n > MAX_POINTS) continue;
+
+            long start = System.nanoTime();
+            if (usingMapDistance) StdMap.clear();
+            ExactTour exact = usingMapDistance ? onMap(file.xs(), file.ys(), n)
+                                               : euclidean(file.xs(), file.ys(), n);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            double nearest = heuristicLength(file, false, usingMapDistance);
+            double smallest = heuristicLength(file, true, usingMapDistance);
+            StdOut.printf("%-32s %3d %12.4f %10.4f %5.1f%% %10.4f %5.1f%% %9.3f\n",
+                          filename, n, exact.length(),
+                          nearest, gap(nearest, exact.length()),
+                          smallest, gap(smallest, exact.length()), seconds);
+        }
+    }
+}
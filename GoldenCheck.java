@@ -0,0 +1,629 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs GoldenCheck.java
+ *  Execution:    java-introcs GoldenCheck [-record] [-reference] [-threads k] [-max n]
+ *                                         [-workers w] [-golden file] [dir_or_file ...]
+ *  Dependencies: Tour.java ArrayTour.java DistanceKernel.java ExactTour.java
+ *                MultiStart.java TwoOpt.java DistanceOracle.java LargeTour.java
+ *                Storage.java DistributedSolver.java TourWorker.java
+ *                Point.java PointFile.java BatchRunner.java StdOut.java
+ *
+ *  Checks every tour constructor against recorded reference tours, on
+ *  every bundled instance (by default: the instances in this directory,
+ *  test_files/round1 and test_files/round3, up to 20000 points), so that a
+ *  faster Tour can be trusted without comparing tours by eye.
+ *
+ *  For each instance and constructor, the tour must be a permutation of
+ *  the points (one pass over a BitSet), the length the constructor reports
+ *  must be the length of its visiting order, and that length must be the
+ *  recorded one (both within 1e-9, relatively). ArrayTour produces exactly
+ *  the tours of the linked-list Tour, so its visiting order must also be
+ *  the recorded one, starting from point 0 (compared by a 64-bit FNV-1a hash
+ *  of the order, or point by point when the whole order was recorded).
+ *
+ *  The programs that improve tours are checked the same way (permutation,
+ *  and the length they had when recorded, not their order): MultiStart
+ *  (3 starts of smallest insertion with Or-opt, seed 1, up to 2000 points),
+ *  TwoOpt (from the nearest insertion tour, up to 2000 points), LargeTour
+ *  (Or-opt with 5 candidates) and DistributedSolver (the joined tour of 8
+ *  regions, before the repair, solved by w TourWorkers spawned as local
+ *  JVMs on Unix domain sockets; default 2, -workers 0 skips it). One more
+ *  worker, started with -fail 1, takes part in the DistributedSolver
+ *  checks and drops its connection on its second region, so one of them
+ *  also covers the requeue of a failed region to the other workers (the
+ *  coordinator reports it as "Worker ... failed" on standard error).
+ *
+ *  The references are
+ *
+ *    X-nearest.ans, X-smallest.ans   the tour after the last insertion (the
+ *                                    last block of the file) for X.txt, e.g.
+ *                                    tsp10-nearest.ans; order and length
+ *    X-optimal.ans                   the optimal length for X.txt, which
+ *                                    ExactTour must match
+ *    golden.txt                      the length and order hash of Tour's
+ *                                    nearest and smallest insertion tours of
+ *                                    every instance, and of the tours of the
+ *                                    improvement programs, one per line
+ *
+ *  Tour.java is the student's file of the assignment, so it is not in this
+ *  repository, and golden.txt was recorded with a plain circular linked
+ *  list Tour written to the assignment's rules: both heuristics scan the
+ *  tour from the first point inserted, keep the first of equal minima
+ *  (strict <), and insert the new point after the chosen one, with
+ *  Point.distanceTo for every distance. That Tour reproduces every bundled
+ *  .ans file, order and length, so any Tour that does the same can record
+ *  golden.txt again.
+ *
+ *  -record runs Tour (the reference implementation, which is quadratic and
+ *  slow) and the improvement programs on the instances and writes their
+ *  lines of golden.txt, keeping the lines of the tours it did not run; to
+ *  be done again only when the bundled instances, the rules of the
+ *  heuristics or an improvement program change. The .ans files are checked
+ *  against Tour at the same time. -reference runs Tour alongside the others
+ *  and compares the orders point by point instead.
+ *
+ *  Instances of more than n points are skipped (-max n, default 20000; 0
+ *  for all of them): on one core, the check takes 15 seconds, and
+ *  -record -max 0 took 10 minutes.
+ *
+ *  The constructors run in parallel on k threads (default: one per core).
+ *  A failure is printed with its reason, and makes the program exit with
+ *  status 1.
+ *
+ *  % java-introcs GoldenCheck
+ *  golden.txt: 516 recorded tours
+ *  511 checks, 0 failures (3 instances over 20000 points skipped) in 14.6 seconds
+ *
+ *  % java-introcs GoldenCheck test_files/round3/test10pts-1 tsp10.txt
+ *  golden.txt: 516 recorded tours
+ *  ok    test_files/round3/test10pts-1   ArrayTour.nearest             10          3.2103
+ *  ok    test_files/round3/test10pts-1   ArrayTour.smallest            10          3.0387
+ *  ok    test_files/round3/test10pts-1   MultiStart.smallest           10          3.0387
+ *  ok    test_files/round3/test10pts-1   TwoOpt.nearest                10          3.0387
+ *  ok    test_files/round3/test10pts-1   LargeTour.oropt               10          3.0540
+ *  ok    test_files/round3/test10pts-1   DistributedSolver.joined      10          3.2652
+ *  ok    tsp10.txt                       ArrayTour.nearest             10       1566.1363
+ *  ok    tsp10.txt                       ArrayTour.smallest            10       1655.7462
+ *  ok    tsp10.txt                       ExactTour.optimal             10       1552.9612
+ *  ok    tsp10.txt                       MultiStart.smallest           10       1552.9612
+ *  ok    tsp10.txt                       TwoOpt.nearest                10       1566.1363
+ *  ok    tsp10.txt                       LargeTour.oropt               10       1552.9612
+ *  ok    tsp10.txt                       DistributedSolver.joined      10       1629.5847
+ *  13 checks, 0 failures in 1.5 seconds
+ *
+ **************************************************************************** */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class GoldenCheck {
+    private static final String[] DEFAULT_INPUTS = { ".", "test_files/round1", "test_files/round3" };
+    private static final String DEFAULT_GOLDEN = "golden.txt";
+    private static final int DEFAULT_MAX = 20000;
+    private static final double TOLERANCE = 1e-9;       // relative, on lengths
+    private static final int WORKERS = 2;               // TourWorkers spawned for DistributedSolver
+    private static final int SLOW_MAX = 2000;           // largest instance for MultiStart and TwoOpt
+    private static final int STARTS = 3;                // MultiStart starts
+    private static final long SEED = 1;                 // MultiStart seed
+
+    // a recorded tour: its length, and its order (or only the hash of it)
+    private static final class Golden {
+        private final int points;
+        private final double length;
+        private final long hash;
+        private final int[] order;          // null if only the hash was recorded
+
+        private Golden(int points, double length, long hash, int[] order) {
+            this.points = points;
+            this.length = length;
+            this.hash = hash;
+            this.order = order;
+        }
+    }
+
+    // a tour built by an engine: its visiting order, and the length it reports
+    private static final class Built {
+        private final int[] order;
+        private final double length;
+
+        private Built(int[] order, double length) {
+            this.order = order;
+            this.length = length;
+        }
+    }
+
+    private interface Builder {
+        Built build(PointFile file);
+    }
+
+    // a tour constructor under test
+    private static final class Engine {
+        private final String name;
+        private final String heuristic;     // nearest, smallest, optimal, or the program's own name
+        private final boolean reference;    // Tour: runs only with -record or -reference
+        private final boolean exact;        // must reproduce the recorded order
+        private final boolean recorded;     // records its own length with -record
+        private final int limit;            // largest instance it runs on, 0 for all
+        private final Builder builder;
+
+        private Engine(String name, String heuristic, boolean reference, boolean exact, Builder builder) {
+            this(name, heuristic, reference, exact, false, 0, builder);
+        }
+
+        private Engine(String name, String heuristic, boolean reference, boolean exact, boolean recorded,
+                       int limit, Builder builder) {
+            this.name = name;
+            this.heuristic = heuristic;
+            this.reference = reference;
+            this.exact = exact;
+            this.recorded = recorded;
+            this.limit = limit;
+            this.builder = builder;
+        }
+    }
+
+    // the outcome of one engine on one instance
+    private static final class Check {
+        private final String filename;
+        private final Engine engine;
+        private int points;
+        private double length;
+        private int[] order;                // kept for -reference
+        private String failure;             // null if the tour passed
+
+        private Check(String filename, Engine engine) {
+            this.filename = filename;
+            this.engine = engine;
+        }
+    }
+
+    // returns the engines under test; DistributedSolver, on the given number
+    // of regions, only if workers is not null
+    private static List<Engine> engines(List<SocketAddress> workers, int regions) {
+        List<Engine> list = new ArrayList<Engine>();
+        for (String heuristic : new String[] { "nearest", "smallest" }) {
+            boolean smallest = heuristic.equals("smallest");
+            list.add(new Engine("Tour." + heuristic, heuristic, true, true, file -> {
+                Tour tour = new Tour();
+                for (Point p : file.points()) {
+                    if (smallest) tour.insertSmallest(p);
+                    else          tour.insertNearest(p);
+                }
+                return new Built(indices(file, tour.toString()), tour.length());
+            }));
+        }
+        List<DistanceKernel> kernels = new ArrayList<DistanceKernel>();
+        kernels.add(DistanceKernel.create());
+        if (!kernels.get(0).name().equals("scalar")) kernels.add(new DistanceKernel());
+        for (DistanceKernel kernel : kernels) {
+            String suffix = (kernel == kernels.get(0)) ? "" : "/" + kernel.name();
+            for (String heuristic : new String[] { "nearest", "smallest" }) {
+                boolean smallest = heuristic.equals("smallest");
+                list.add(new Engine("ArrayTour." + heuristic + suffix, heuristic, false, true, file -> {
+                    ArrayTour tour = new ArrayTour(file.size(), kernel);
+                    double[] xs = file.xs(), ys = file.ys();
+                    for (int i = 0; i < file.size(); i++) {
+                        if (smallest) tour.insertSmallest(xs[i], ys[i]);
+                        else          tour.insertNearest(xs[i], ys[i]);
+                    }
+                    return new Built(tour.order(), tour.length());
+                }));
+            }
+        }
+        // only for the instances with an -optimal.ans file
+        list.add(new Engine("ExactTour.optimal", "optimal", false, false, file -> {
+            ExactTour tour = ExactTour.euclidean(file.xs(), file.ys(), file.size());
+            return new Built(tour.order(), tour.length());
+        }));
+
+        // the improvement programs, against the lengths they had when recorded
+        list.add(new Engine("MultiStart.smallest", "multistart", false, false, true, SLOW_MAX, file -> {
+            MultiStart multi = new MultiStart(file.xs(), file.ys(), file.size(), true, true, SEED);
+            multi.run(STARTS, 1, 0, false);
+            return new Built(multi.order(), multi.length());
+        }));
+        list.add(new Engine("TwoOpt.nearest", "twoopt", false, false, true, SLOW_MAX, file -> {
+            ArrayTour start = new ArrayTour(Math.max(file.size(), 1));
+            double[] xs = file.xs(), ys = file.ys();
+            for (int i = 0; i < file.size(); i++) start.insertNearest(xs[i], ys[i]);
+            int[] tour = start.order();
+            DistanceOracle d = DistanceOracle.euclidean(xs, ys, file.size());
+            TwoOpt.improve(tour, d);
+            return new Built(tour, TwoOpt.length(tour, d));
+        }));
+        list.add(new Engine("LargeTour.oropt", "largetour", false, false, true, 0, file -> {
+            LargeTour tour = new LargeTour(Storage.wrap(file.xs()), Storage.wrap(file.ys()), Storage.heap());
+            tour.findNeighbors(5);
+            tour.orOpt();
+            int[] order = new int[file.size()];
+            for (int m = 1; m < order.length; m++) order[m] = tour.next(order[m - 1]);
+            return new Built(order, tour.length());
+        }));
+        if (workers != null) {
+            list.add(new Engine("DistributedSolver.joined", "distributed", false, false, true, 0, file -> {
+                try {
+                    int[] order = DistributedSolver.joinedTour(file.xs(), file.ys(), regions, workers);
+                    return new Built(order, length(order, file.xs(), file.ys()));
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted", e);
+                }
+            }));
+        }
+        return list;
+    }
+
+    // returns the indices in the file of the points of Tour.toString(), in
+    // order (equal points get their indices in the order of the file)
+    private static int[] indices(PointFile file, String tour) {
+        Map<String, ArrayDeque<Integer>> index = new HashMap<String, ArrayDeque<Integer>>();
+        double[] xs = file.xs(), ys = file.ys();
+        for (int i = 0; i < file.size(); i++)
+            index.computeIfAbsent(xs[i] + " " + ys[i], key -> new ArrayDeque<Integer>()).add(i);
+        List<String> lines = new ArrayList<String>();
+        for (String line : tour.split("\n")) {
+            if (!line.trim().isEmpty()) lines.add(line.trim());
+        }
+        int[] order = new int[lines.size()];
+        for (int k = 0; k < order.length; k++) {
+            double[] p = parsePoint(lines.get(k));
+            ArrayDeque<Integer> queue = index.get(p[0] + " " + p[1]);
+            // a point that isn't in the file (or appears too often) fails the permutation check
+            order[k] = (queue == null || queue.isEmpty()) ? -1 : queue.poll();
+        }
+        return order;
+    }
+
+    // parses "(x, y)"
+    private static double[] parsePoint(String line) {
+        String[] parts = line.substring(1, line.length() - 1).split(",");
+        return new double[] { Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()) };
+    }
+
+    // returns null if order is a permutation of 0..n-1, or what is wrong with it
+    private static String permutationFailure(int[] order, int n) {
+        if (order.length != n) return "visits " + order.length + " points, not " + n;
+        BitSet seen = new BitSet(n);
+        for (int k = 0; k < n; k++) {
+            int i = order[k];
+            if (i < 0 || i >= n) return "visits a point that isn't in the file, at position " + k;
+            if (seen.get(i)) return "visits point " + i + " twice";
+            seen.set(i);
+        }
+        return null;
+    }
+
+    private static double length(int[] order, double[] xs, double[] ys) {
+        double sum = 0.0;
+        for (int k = 0; k < order.length; k++) {
+            int i = order[k], j = order[(k + 1) % order.length];
+            double dx = xs[i] - xs[j], dy = ys[i] - ys[j];
+            sum += Math.sqrt(dx*dx + dy*dy);
+        }
+        return sum;
+    }
+
+    private static boolean close(double a, double b) {
+        return Math.abs(a - b) <= TOLERANCE * Math.max(1.0, Math.abs(b));
+    }
+
+    // returns the order rotated to start at point 0
+    private static int[] fromZero(int[] order) {
+        int start = 0;
+        while (start < order.length && order[start] != 0) start++;
+        if (start == order.length) return order;
+        int[] rotated = new int[order.length];
+        for (int k = 0; k < order.length; k++) rotated[k] = order[(start + k) % order.length];
+        return rotated;
+    }
+
+    // returns the 64-bit FNV-1a hash of the order, from point 0
+    private static long hash(int[] order) {
+        long h = 0xcbf29ce484222325L;
+        for (int i : fromZero(order)) {
+            for (int b = 0; b < 32; b += 8) {
+                h ^= (i >>> b) & 0xff;
+                h *= 0x100000001b3L;
+            }
+        }
+        return h;
+    }
+
+    // returns the first position, from point 0, at which the orders differ, or -1
+    private static int firstDifference(int[] a, int[] b) {
+        int[] x = fromZero(a), y = fromZero(b);
+        for (int k = 0; k < Math.min(x.length, y.length); k++) {
+            if (x[k] != y[k]) return k;
+        }
+        return (x.length == y.length) ? -1 : Math.min(x.length, y.length);
+    }
+
+    // the key of a reference tour: the normalized path and the heuristic
+    private static String key(String filename, String heuristic) {
+        return new File(filename).toPath().normalize() + " " + heuristic;
+    }
+
+    // builds the tour of one engine on one instance and checks it
+    private static Check check(String filename, Engine engine, Map<String, Golden> golden, boolean keepOrder) {
+        Check c = new Check(filename, engine);
+        try {
+            PointFile file = new PointFile(filename);
+            c.points = file.size();
+            Built built = engine.builder.build(file);
+            c.length = length(built.order, file.xs(), file.ys());
+            if (keepOrder) c.order = built.order;
+            c.failure = permutationFailure(built.order, file.size());
+            if (c.failure != null) return c;
+            if (!close(built.length, c.length)) {
+                c.failure = String.format("reports length %.10f, but its order has length %.10f",
+                                          built.length, c.length);
+                return c;
+            }
+            Golden g = golden.get(key(filename, engine.heuristic));
+            if (g == null) return c;
+            if (g.points != c.points) c.failure = "recorded with " + g.points + " points";
+            else if (!close(c.length, g.length))
+                c.failure = String.format("length %.10f, recorded %.10f", c.length, g.length);
+            else if (engine.exact && g.order != null && firstDifference(built.order, g.order) >= 0)
+                c.failure = "visits the points in another order than recorded, from position "
+                            + firstDifference(built.order, g.order);
+            else if (engine.exact && hash(built.order) != g.hash)
+                c.failure = "visits the points in another order than recorded";
+        }
+        catch (RuntimeException e) {
+            c.failure = "threw " + e;
+        }
+        return c;
+    }
+
+    // reads golden.txt, if there is one: "file heuristic points length hash"
+    private static void readGolden(String filename, Map<String, Golden> golden) {
+        if (!new File(filename).exists()) return;
+        try (BufferedReader in = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] f = line.split("\\s+");
+                golden.put(key(f[0], f[1]), new Golden(Integer.parseInt(f[2]), Double.parseDouble(f[3]),
+                                                       Long.parseUnsignedLong(f[4], 16), null));
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + filename, e);
+        }
+    }
+
+    // reads X-nearest.ans, X-smallest.ans and X-optimal.ans next to X.txt,
+    // if they exist; their last block is the tour, ending with its length
+    private static void readAnswers(String filename, Map<String, Golden> golden) {
+        if (!filename.endsWith(".txt")) return;
+        String base = filename.substring(0, filename.length() - 4);
+        for (String heuristic : new String[] { "nearest", "smallest", "optimal" }) {
+            File ans = new File(base + "-" + heuristic + ".ans");
+            if (!ans.exists()) continue;
+            List<String> block = new ArrayList<String>();
+            double length = Double.NaN;
+            try (BufferedReader in = new BufferedReader(new FileReader(ans))) {
+                String line;
+                List<String> points = new ArrayList<String>();
+                while ((line = in.readLine()) != null) {
+                    line = line.trim();
+                    if (line.startsWith("(")) points.add(line);
+                    else if (line.startsWith("Tour length = ")) {
+                        length = Double.parseDouble(line.substring("Tour length = ".length()));
+                        block = points;
+                        points = new ArrayList<String>();
+                    }
+                    else points.clear();
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + ans, e);
+            }
+            PointFile file = new PointFile(filename);
+            int[] order = indices(file, String.join("\n", block));
+            String failure = permutationFailure(order, file.size());
+            if (failure != null) throw new IllegalArgumentException(ans + ": the tour " + failure);
+            golden.put(key(filename, heuristic), new Golden(file.size(), length, hash(order), order));
+        }
+    }
+
+    // is the file a TSP instance (packed, or a first line of two integers)?
+    private static boolean isInstance(String filename) {
+        if (PointFile.isPacked(filename)) return true;
+        try (BufferedReader in = new BufferedReader(new FileReader(filename))) {
+            String line = in.readLine();
+            return line != null && line.trim().matches("\\d+\\s+\\d+");
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    // returns the number of points of the instance, without reading them all
+    private static int points(String filename) {
+        if (PointFile.isPacked(filename)) return new PointFile(filename).size();
+        int lines = -1;
+        try (BufferedReader in = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.trim().isEmpty()) lines++;
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + filename, e);
+        }
+        return lines;
+    }
+
+    // writes the lengths and order hashes of the recorded tours, keeping the
+    // lines of the file for the tours that were not run (e.g. of instances
+    // over -max)
+    private static void writeGolden(String filename, List<Check> checks) {
+        TreeMap<String, String> lines = new TreeMap<String, String>();
+        if (new File(filename).exists()) {
+            try (BufferedReader in = new BufferedReader(new FileReader(filename))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    String[] f = line.split("\\s+");
+                    lines.put(key(f[0], f[1]), line);
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + filename, e);
+            }
+        }
+        for (Check c : checks) {
+            String key = key(c.filename, c.engine.heuristic);
+            lines.put(key, String.format("%s %d %s %016x", key, c.points, Double.toString(c.length), hash(c.order)));
+        }
+        try (PrintWriter out = new PrintWriter(filename)) {
+            out.println("# Tours recorded by java-introcs GoldenCheck -record: nearest and smallest");
+            out.println("# are the reference Tour's (see GoldenCheck.java), the others are the tours");
+            out.println("# of MultiStart, TwoOpt, LargeTour and DistributedSolver when recorded");
+            out.println("# file heuristic points length hash");
+            for (String line : lines.values()) out.println(line);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + filename, e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean record = false, reference = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int max = DEFAULT_MAX, spawn = WORKERS;
+        String goldenFile = DEFAULT_GOLDEN;
+        List<String> inputs = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if      (args[i].equals("-record"))    record = true;
+            else if (args[i].equals("-reference")) reference = true;
+            else if (args[i].equals("-threads"))   threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-max"))       max = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-workers"))   spawn = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-golden"))    goldenFile = args[++i];
+            else if (args[i].startsWith("-")) {
+                StdOut.println("This program should be called: \n$ java-introcs GoldenCheck [-record] "
+                               + "[-reference] [-threads k] [-max n] [-workers w] [-golden file] "
+                               + "[dir_or_file ...]");
+                return;
+            }
+            else inputs.add(args[i]);
+        }
+        boolean listAll = !inputs.isEmpty();
+        if (inputs.isEmpty()) inputs.addAll(java.util.Arrays.asList(DEFAULT_INPUTS));
+
+        long start = System.nanoTime();
+        List<String> filenames = new ArrayList<String>();
+        for (String input : inputs) BatchRunner.collect(input, filenames);
+        int skipped = 0;
+        List<String> instances = new ArrayList<String>();
+        Map<String, Integer> sizes = new HashMap<String, Integer>();
+        for (String filename : filenames) {
+            if (!isInstance(filename)) continue;
+            int points = points(filename);
+            if (max > 0 && points > max) skipped++;
+            else {
+                instances.add(filename);
+                sizes.put(filename, points);
+            }
+        }
+
+        Map<String, Golden> golden = new HashMap<String, Golden>();
+        if (!record) {
+            readGolden(goldenFile, golden);
+            StdOut.println(goldenFile + ": " + golden.size() + " recorded tours");
+        }
+        for (String filename : instances) readAnswers(filename, golden);
+
+        // the workers of DistributedSolver, local JVMs on Unix domain sockets
+        List<Process> processes = new ArrayList<Process>();
+        Path directory = null;
+        List<SocketAddress> workers = null;
+        List<Check> checks = new ArrayList<Check>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            if (spawn > 0) {
+                directory = Files.createTempDirectory("tsp-workers");
+                workers = DistributedSolver.spawn(directory, spawn, 5, processes);
+                workers.add(DistributedSolver.spawn(directory, "failing", 5, processes, "-fail", "1"));
+            }
+            List<Engine> engines = engines(workers, 4 * spawn);
+            List<Future<Check>> futures = new ArrayList<Future<Check>>();
+            for (String filename : instances) {
+                for (Engine engine : engines) {
+                    if (engine.reference ? !(record || reference) : record && !engine.recorded) continue;
+                    if (engine.limit > 0 && sizes.get(filename) > engine.limit) continue;
+                    if (engine.heuristic.equals("optimal") && !golden.containsKey(key(filename, "optimal")))
+                        continue;
+                    boolean keepOrder = record || reference;
+                    futures.add(pool.submit(() -> check(filename, engine, golden, keepOrder)));
+                }
+            }
+
+            // collect in submission order so the report is deterministic
+            for (Future<Check> future : futures)
+                checks.add(future.get());
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("Golden check failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+            if (directory != null) DistributedSolver.stop(processes, directory);
+        }
+
+        // with -reference, the exact engines must follow Tour point by point
+        if (reference) {
+            Map<String, Check> tours = new HashMap<String, Check>();
+            for (Check c : checks) {
+                if (c.engine.reference) tours.put(key(c.filename, c.engine.heuristic), c);
+            }
+            for (Check c : checks) {
+                Check tour = tours.get(key(c.filename, c.engine.heuristic));
+                if (c.engine.reference || !c.engine.exact || c.failure != null || tour == null
+                    || tour.failure != null) continue;
+                int k = firstDifference(c.order, tour.order);
+                if (k >= 0) c.failure = "visits the points in another order than Tour, from position " + k;
+            }
+        }
+
+        int failures = 0;
+        for (Check c : checks) {
+            if (c.failure != null) failures++;
+            if (c.failure == null && !listAll) continue;
+            StdOut.printf("%-4s  %-30s  %-24s %7d  %14.4f%s\n", c.failure == null ? "ok" : "FAIL",
+                          new File(c.filename).toPath().normalize(), c.engine.name, c.points, c.length,
+                          c.failure == null ? "" : "  " + c.failure);
+        }
+        if (record && failures == 0) {
+            writeGolden(goldenFile, checks);
+            StdOut.println(goldenFile + ": " + checks.size() + " recorded tours");
+        }
+        StdOut.printf("%d checks, %d failures%s in %.1f seconds\n", checks.size(), failures,
+                      skipped > 0 ? " (" + skipped + " instances over " + max + " points skipped)" : "",
+                      (System.nanoTime() - start) / 1e9);
+        if (failures > 0) System.exit(1);
+    }
+}
@@ -0,0 +1,181 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs InsertionBenchmark.java
+ *  Execution:    java-introcs InsertionBenchmark [-inlining] file1.txt file2.txt ...
+ *  Dependencies: Tour.java ArrayTour.java DistanceKernel.java Point.java
+ *                PointFile.java StdOut.java Stopwatch.java
+ *
+ *  Compares the throughput (points inserted per second) of nearest insertion
+ *  using Tour, which calls Point.distanceTo (and hence Math.sqrt) for every
+ *  candidate, against ArrayTour, which compares squared distances computed
+ *  by DistanceKernel.squaredDistances over primitive arrays, without
+ *  allocating.
+ *
+ *  % java-introcs InsertionBenchmark tsp1000.txt usa13509.txt mona-100k.txt
+ *
+ *  -inlining runs the benchmark in a second JVM with -XX:+PrintInlining,
+ *  its output logged to a file, and then reports what the JIT decided for
+ *  each call to the methods on the hot paths: how many compilations
+ *  inlined it, why the others did not, and the last decision, which is
+ *  the one the timed runs use.
+ *
+ *  % java-introcs InsertionBenchmark -inlining usa13509.txt
+ *  usa13509.txt (13509 points)
+ *  ...
+ *    points per second: 14652 before, 21174 after (1.45x)
+ *
+ *  JIT inlining decisions (-XX:+PrintInlining):
+ *    Point::distanceTo                  inlined in 7 of 13 compilations, inlined in the last
+ *        callee uses too much stack     6
+ *        inline (hot)                   7
+ *    java.lang.Math::sqrt               inlined in 16 of 16 compilations, inlined in the last
+ *        intrinsic                      3
+ *        (intrinsic)                    13
+ *    DistanceKernel::squaredDistances   inlined in 2 of 4 compilations, inlined in the last
+ *        callee is too large            1
+ *        inline (hot)                   2
+ *        inlining prohibited by policy  1
+ *
+ **************************************************************************** */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class InsertionBenchmark {
+
+    // number of untimed runs before measuring, to let the JIT compile
+    private static final int WARMUP = 2;
+
+    // the methods on the hot paths, as PrintInlining names them
+    private static final String[] HOT = {
+        "Point::distanceTo", "java.lang.Math::sqrt", "DistanceKernel::squaredDistances"
+    };
+
+    // one PrintInlining line: "@ bci   Class::method (size bytes)   decision"
+    private static final Pattern DECISION = Pattern.compile("@ \\d+\\s+(\\S+) \\(\\d+ bytes\\)\\s+(.*)$");
+
+    // times nearest insertion using Tour and Point.distanceTo
+    private static double timeTour(Point[] points) {
+        Stopwatch timer = new Stopwatch();
+        Tour tour = new Tour();
+        for (Point p : points)
+            tour.insertNearest(p);
+        double elapsed = timer.elapsedTime();
+        StdOut.printf("  Tour       length = %.4f  ", tour.length());
+        return elapsed;
+    }
+
+    // times nearest insertion using ArrayTour and squared distances
+    private static double timeArrayTour(double[] xs, double[] ys, int n) {
+        Stopwatch timer = new Stopwatch();
+        ArrayTour tour = new ArrayTour(n);
+        for (int i = 0; i < n; i++)
+            tour.insertNearest(xs[i], ys[i]);
+        double elapsed = timer.elapsedTime();
+        StdOut.printf("  ArrayTour  length = %.4f  ", tour.length());
+        return elapsed;
+    }
+
+    // reruns the benchmark on the files in a JVM that logs the JIT's inlining
+    // decisions, and reports them for the methods on the hot paths
+    private static void checkInlining(List<String> filenames) throws IOException, InterruptedException {
+        Path log = Files.createTempFile("inlining", ".log");
+        List<String> command = new ArrayList<String>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-XX:+UnlockDiagnosticVMOptions");
+        command.add("-XX:+PrintInlining");
+        command.add("-XX:+LogVMOutput");
+        command.add("-XX:-DisplayVMOutput");
+        command.add("-XX:LogFile=" + log);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("InsertionBenchmark");
+        command.addAll(filenames);
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        if (process.waitFor() != 0) throw new IllegalStateException("Benchmark JVM exited with " + process.exitValue());
+
+        // decision -> count for each hot method, and its last decision
+        Map<String, Map<String, Integer>> decisions = new LinkedHashMap<String, Map<String, Integer>>();
+        Map<String, String> last = new LinkedHashMap<String, String>();
+        for (String method : HOT) decisions.put(method, new LinkedHashMap<String, Integer>());
+        try (BufferedReader in = Files.newBufferedReader(log)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                Matcher m = DECISION.matcher(line);
+                if (!m.find()) continue;
+                for (String method : HOT) {
+                    if (!m.group(1).endsWith(method)) continue;
+                    String decision = m.group(2).trim();
+                    decisions.get(method).merge(decision, 1, Integer::sum);
+                    last.put(method, decision);
+                }
+            }
+        }
+        Files.delete(log);
+
+        StdOut.println("JIT inlining decisions (-XX:+PrintInlining):");
+        for (String method : HOT) {
+            Map<String, Integer> counts = decisions.get(method);
+            if (counts.isEmpty()) {
+                StdOut.printf("  %-34s never compiled into a caller\n", method);
+                continue;
+            }
+            int total = 0, inlined = 0;
+            for (Map.Entry<String, Integer> e : counts.entrySet()) {
+                total += e.getValue();
+                if (isInlined(e.getKey())) inlined += e.getValue();
+            }
+            StdOut.printf("  %-34s inlined in %d of %d compilations, %s in the last\n", method, inlined, total,
+                          isInlined(last.get(method)) ? "inlined" : "NOT inlined");
+            for (Map.Entry<String, Integer> e : counts.entrySet())
+                StdOut.printf("      %-30s %d\n", e.getKey(), e.getValue());
+        }
+    }
+
+    // returns true if the PrintInlining decision inlines the call
+    private static boolean isInlined(String decision) {
+        return decision.startsWith("inline (") || decision.contains("intrinsic");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<String> filenames = new ArrayList<String>();
+        boolean inlining = false;
+        for (String arg : args) {
+            if (arg.equals("-inlining")) inlining = true;
+            else filenames.add(arg);
+        }
+        if (inlining) {
+            checkInlining(filenames);
+            return;
+        }
+
+        for (String filename : filenames) {
+            PointFile file = new PointFile(filename);
+            int n = file.size();
+            Point[] points = file.points();
+
+            StdOut.println(filename + " (" + n + " points)");
+            for (int run = 0; run <= WARMUP; run++) {
+                boolean timed = run == WARMUP;
+                double before = timeTour(points);
+                StdOut.printf("%8.3f seconds%s\n", before, timed ? "" : " (warmup)");
+                double after = timeArrayTour(file.xs(), file.ys(), n);
+                StdOut.printf("%8.3f seconds%s\n", after, timed ? "" : " (warmup)");
+                if (timed) {
+                    StdOut.printf("  points per second: %.0f before, %.0f after (%.2fx)\n",
+                                  n / before, n / after, before / after);
+                }
+            }
+            StdOut.println();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs InstanceGenerator.java
+ *  Execution:    java-introcs InstanceGenerator distribution n [seed] [file]
+ *  Dependencies: PointFile.java Stopwatch.java StdOut.java
+ *
+ *  Deterministic synthetic TSP instances, for timing and testing beyond the
+ *  bundled files (which stop at 100k points). The same distribution, n and
+ *  seed (default 0) always give the same points, in the same order, on any
+ *  machine: every instance comes from its own SplittableRandom, and the
+ *  coordinates are rounded to the 4 decimals of the text format, so that a
+ *  file read back holds exactly the points that were generated.
+ *
+ *  Distributions, on a 1000-by-1000 square unless noted:
+ *
+ *    uniform       independent uniform points
+ *    clustered     n/100 uniform centers, each point normally distributed
+ *                  around a random one of them (as in the DIMACS challenge)
+ *    grid          the first n points of a square lattice, in random order
+ *                  (many equal distances: a test of tie-breaking)
+ *    image[:file]  stippling of an image (default: logo.png), like the mona
+ *                  files: a point falls on a pixel with probability
+ *                  proportional to the square of its darkness; the longest
+ *                  side of the image is scaled to 1000
+ *
+ *  The instance is written to file if given, in the packed binary format of
+ *  PointFile if its name ends in .bin and in the text format otherwise, or
+ *  printed to standard output.
+ *
+ *  % java-introcs InstanceGenerator clustered 1000000 42 clustered-1m.bin
+ *  clustered-1m.bin: 1000 x 1000, 1000000 points (0.6 seconds)
+ *
+ *  % java-introcs InstanceGenerator uniform 5 | head -3
+ *  1000 1000
+ *  730.9787 240.8452
+ *  101.7539 648.5017
+ *
+ **************************************************************************** */
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import javax.imageio.ImageIO;
+
+public final class InstanceGenerator {
+    public static final String[] DISTRIBUTIONS = { "uniform", "clustered", "grid", "image" };
+
+    private static final int SIZE = 1000;                   // side of the square
+    private static final int CLUSTER = 100;                 // points per center
+    private static final String DEFAULT_IMAGE = "logo.png";
+
+    private InstanceGenerator() { }
+
+    // returns n points of the given distribution ("image:file.png" for an
+    // image other than logo.png), determined by the seed
+    public static PointFile generate(String distribution, int n, long seed) {
+        if (n < 0) throw new IllegalArgumentException("n must be nonnegative");
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        int width = SIZE, height = SIZE;
+        String label = distribution + "-" + n + "-" + seed;
+        if (distribution.equals("uniform")) uniform(random, xs, ys, n);
+        else if (distribution.equals("clustered")) clustered(random, xs, ys, n);
+        else if (distribution.equals("grid")) grid(random, xs, ys, n);
+        else if (distribution.equals("image") || distribution.startsWith("image:")) {
+            String filename = distribution.equals("image") ? DEFAULT_IMAGE : distribution.substring(6);
+            BufferedImage image;
+            try {
+                image = ImageIO.read(new File(filename));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + filename, e);
+            }
+            if (image == null) throw new IllegalArgumentException(filename + " is not an image");
+            double scale = (double) SIZE / Math.max(image.getWidth(), image.getHeight());
+            width = (int) Math.round(image.getWidth() * scale);
+            height = (int) Math.round(image.getHeight() * scale);
+            image(random, image, scale, xs, ys, n);
+        }
+        else throw new IllegalArgumentException("Unknown distribution: " + distribution
+                                                + " (expected one of " + Arrays.toString(DISTRIBUTIONS) + ")");
+        for (int i = 0; i < n; i++) {
+            xs[i] = round(xs[i]);
+            ys[i] = round(ys[i]);
+        }
+        return new PointFile(label, width, height, xs, ys);
+    }
+
+    // rounds to the 4 decimals of the text format (n / 1e4 is the double
+    // nearest to the decimal, i.e. what parsing the text gives back)
+    private static double round(double v) {
+        return Math.round(v * 1e4) / 1e4;
+    }
+
+    private static void uniform(SplittableRandom random, double[] xs, double[] ys, int n) {
+        for (int i = 0; i < n; i++) {
+            xs[i] = random.nextDouble(SIZE);
+            ys[i] = random.nextDouble(SIZE);
+        }
+    }
+
+    private static void clustered(SplittableRandom random, double[] xs, double[] ys, int n) {
+        int centers = Math.max(1, n / CLUSTER);
+        double[] cx = new double[centers];
+        double[] cy = new double[centers];
+        uniform(random, cx, cy, centers);
+        // clusters cover about a sixteenth of the square between them
+        double sigma = SIZE / (4.0 * Math.sqrt(centers));
+        for (int i = 0; i < n; i++) {
+            int c = random.nextInt(centers);
+            double x, y;
+            do {
+                x = cx[c] + sigma * gaussian(random);
+                y = cy[c] + sigma * gaussian(random);
+            } while (x < 0 || x >= SIZE || y < 0 || y >= SIZE);
+            xs[i] = x;
+            ys[i] = y;
+        }
+    }
+
+    // standard normal deviate (polar method)
+    private static double gaussian(SplittableRandom random) {
+        double r, x, y;
+        do {
+            x = random.nextDouble(-1.0, 1.0);
+            y = random.nextDouble(-1.0, 1.0);
+            r = x*x + y*y;
+        } while (r >= 1 || r == 0);
+        return x * Math.sqrt(-2 * Math.log(r) / r);
+    }
+
+    private static void grid(SplittableRandom random, double[] xs, double[] ys, int n) {
+        int columns = Math.max(1, (int) Math.ceil(Math.sqrt(n)));
+        double spacing = (double) SIZE / columns;
+        for (int i = 0; i < n; i++) {
+            xs[i] = (i % columns + 0.5) * spacing;
+            ys[i] = (i / columns + 0.5) * spacing;
+        }
+        // Fisher-Yates, so that the insertion order isn't row by row
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            double x = xs[i], y = ys[i];
+            xs[i] = xs[j];
+            ys[i] = ys[j];
+            xs[j] = x;
+            ys[j] = y;
+        }
+    }
+
+    private static void image(SplittableRandom random, BufferedImage image, double scale,
+                              double[] xs, double[] ys, int n) {
+        int w = image.getWidth(), h = image.getHeight();
+        // cumulative weights of the pixels, row by row from the top
+        double[] cumulative = new double[w * h];
+        double total = 0.0;
+        for (int row = 0; row < h; row++) {
+            for (int col = 0; col < w; col++) {
+                int rgb = image.getRGB(col, row);
+                double alpha = ((rgb >>> 24) & 0xff) / 255.0;
+                double luminance = (0.299 * ((rgb >> 16) & 0xff) + 0.587 * ((rgb >> 8) & 0xff)
+                                    + 0.114 * (rgb & 0xff)) / 255.0;
+                double darkness = alpha * (1.0 - luminance);
+                total += darkness * darkness;
+                cumulative[row * w + col] = total;
+            }
+        }
+        if (total == 0) throw new IllegalArgumentException("The image is blank");
+        for (int i = 0; i < n; i++) {
+            double u = random.nextDouble(total);
+            int pixel = Arrays.binarySearch(cumulative, u);
+            if (pixel < 0) pixel = -pixel - 1;
+            // skip pixels of weight 0 that tie with the one before them
+            while (pixel + 1 < cumulative.length && cumulative[pixel] <= u) pixel++;
+            int row = pixel / w, col = pixel % w;
+            xs[i] = (col + random.nextDouble()) * scale;
+            ys[i] = (h - row - random.nextDouble()) * scale;     // y up, as in StdDraw
+        }
+    }
+
+    // writes the instance to the file, packed if its name ends in .bin
+    public static void write(PointFile file, String filename) throws IOException {
+        if (filename.endsWith(".bin"))
+            PointFile.writePacked(filename, file.width(), file.height(), file.xs(), file.ys(), file.size());
+        else
+            PointFile.writeText(filename, file.width(), file.height(), file.xs(), file.ys(), file.size());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            StdOut.println("This program should be called: \n$ java-introcs InstanceGenerator "
+                           + "uniform|clustered|grid|image[:file] n [seed] [file]");
+            return;
+        }
+        int n = Integer.parseInt(args[1]);
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : 0;
+        Stopwatch timer = new Stopwatch();
+        PointFile file = generate(args[0], n, seed);
+        if (args.length > 3) {
+            write(file, args[3]);
+            StdOut.printf("%s: %d x %d, %d points (%.1f seconds)\n", args[3], file.width(),
+                          file.height(), file.size(), timer.elapsedTime());
+        }
+        else PointFile.writeText(System.out, file.width(), file.height(), file.xs(), file.ys(), file.size());
+    }
+}
@@ -0,0 +1,524 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs LargeTour.java
+ *  Execution:    java-introcs LargeTour [-storage heap|direct|mapped] [-k k] [-oropt]
+ *                                       file | distribution n [seed]
+ *  Dependencies: Storage.java PointFile.java InstanceGenerator.java StdOut.java
+ *
+ *  A tour for millions of points, with every array of size n in a Storage
+ *  (on the heap, in direct buffers, or in mapped files), so that a 10M-point
+ *  instance doesn't need a 2 GB heap and long collections.
+ *
+ *  The insertion heuristics take quadratic time, so this tour starts from
+ *  a space-filling curve instead: the points are sorted (radix sort, four
+ *  8-bit passes) by their index along a Hilbert curve over a 65536-by-65536
+ *  grid on their bounding box, which gives a tour about 40% longer than
+ *  optimal in O(n) time. Candidate lists of the k nearest points (default
+ *  5), found with a uniform grid, then drive Or-opt: a run of one to three
+ *  consecutive points is moved, in the same direction, next to one of the
+ *  nearest points of its ends, as in ArrayTour.orOpt(), until no move
+ *  shortens the tour, which leaves it about 10% longer than optimal.
+ *
+ *  Successors and predecessors, the candidate lists, the grid and the sort
+ *  keys are all allocated in the Storage; a packed PointFile is mapped from
+ *  disk (read-only) for the off-heap backends and read into double[] for
+ *  the heap. main() reports the collections and the memory of the process:
+ *  the heap backend needs -Xmx for all the arrays, the others only
+ *  -XX:MaxDirectMemorySize for the direct buffers (by default, as large as
+ *  -Xmx) or disk space for the mapped files.
+ *
+ *  % java-introcs InstanceGenerator uniform 10000000 1 u10m.bin
+ *  % java-introcs -Xmx2g LargeTour -storage heap -oropt u10m.bin
+ *  10000000 points (read from u10m.bin), heap storage: 0.3 s
+ *  space-filling curve: 4.4 s, length 3096372.1
+ *  5 nearest points: 37.1 s
+ *  Or-opt: 230.9 s, length 2481135.0
+ *  heap: 544 MB at most; GC: 10 collections, 275 ms in total, longest 101 ms
+ *  resident: 587 MB (at most 587 MB)
+ *
+ *  % java-introcs -Xmx64m -XX:MaxDirectMemorySize=2g LargeTour -storage direct -oropt u10m.bin
+ *  10000000 points (mapped from u10m.bin), direct storage: 0.0 s
+ *  space-filling curve: 4.6 s, length 3096372.1
+ *  5 nearest points: 50.4 s
+ *  Or-opt: 398.5 s, length 2481135.0
+ *  heap: 2 MB at most; GC: 0 collections, 0 ms in total, longest 0 ms
+ *  resident: 673 MB (at most 673 MB)
+ *
+ *  With -storage mapped (and -Xmx64m), the same tour, no collections and
+ *  675 MB resident, of which the pages of the files can be written back
+ *  and dropped under memory pressure. The off-heap backends trade the
+ *  collections for slower accesses: every get() is bounds-checked against
+ *  the buffer, and the coordinates mapped from a packed file are
+ *  big-endian, so they are byte-swapped on every read on x86.
+ *
+ **************************************************************************** */
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+public class LargeTour {
+    private static final int MAX_SEGMENT = 3;       // longest run of points orOpt() moves
+    private static final double EPSILON = 1e-9;     // smallest improvement orOpt() accepts
+    private static final int CURVE_BITS = 16;       // grid of the Hilbert curve: 2^16 by 2^16
+
+    private final Storage storage;
+    private final Storage.Doubles x, y;
+    private final int n;
+    private final Storage.Ints next;     // next[i] = point after i in the tour
+    private final Storage.Ints prev;     // prev[i] = point before i in the tour
+    private Storage.Ints neighbors;      // the k nearest points of i at i*k, ..., or -1
+    private int k;
+    private final int[] moved = new int[6];     // the points whose edges the last move changed
+
+    // creates the space-filling curve tour of the n points (xs[i], ys[i]),
+    // with its arrays in storage
+    public LargeTour(Storage.Doubles xs, Storage.Doubles ys, Storage storage) {
+        if (xs.size() != ys.size()) throw new IllegalArgumentException("xs and ys differ in size");
+        this.storage = storage;
+        this.x = xs;
+        this.y = ys;
+        this.n = xs.size();
+        this.next = storage.ints(n);
+        this.prev = storage.ints(n);
+        if (n > 0) spaceFillingCurve();
+    }
+
+    // creates the tour that visits the points (xs[i], ys[i]) in the given
+    // order, with its arrays in storage
+    public LargeTour(Storage.Doubles xs, Storage.Doubles ys, Storage storage, Storage.Ints order) {
+        if (xs.size() != ys.size()) throw new IllegalArgumentException("xs and ys differ in size");
+        if (order.size() != xs.size()) throw new IllegalArgumentException("order must hold every point once");
+        this.storage = storage;
+        this.x = xs;
+        this.y = ys;
+        this.n = xs.size();
+        this.next = storage.ints(n);
+        this.prev = storage.ints(n);
+        for (int i = 0; i < n; i++) link(order.get(i), order.get((i + 1) % n));
+    }
+
+    // returns the number of points
+    public int size() {
+        return n;
+    }
+
+    // returns the length of this tour
+    public double length() {
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) sum += distance(i, next.get(i));
+        return sum;
+    }
+
+    // returns the point after point i in this tour
+    public int next(int i) {
+        return next.get(i);
+    }
+
+    private double distance(int i, int j) {
+        double dx = x.get(i) - x.get(j);
+        double dy = y.get(i) - y.get(j);
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+    // links the points in the order of their Hilbert index
+    private void spaceFillingCurve() {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, x.get(i));
+            maxX = Math.max(maxX, x.get(i));
+            minY = Math.min(minY, y.get(i));
+            maxY = Math.max(maxY, y.get(i));
+        }
+        double side = Math.max(maxX - minX, maxY - minY);
+        double scale = (side > 0) ? ((1 << CURVE_BITS) - 1) / side : 0.0;
+
+        Storage.Ints keys = storage.ints(n), order = storage.ints(n);
+        for (int i = 0; i < n; i++) {
+            int gx = (int) ((x.get(i) - minX) * scale);
+            int gy = (int) ((y.get(i) - minY) * scale);
+            keys.set(i, hilbert(gx, gy));
+            order.set(i, i);
+        }
+
+        // LSD radix sort of the unsigned keys, 8 bits at a time
+        Storage.Ints keys2 = storage.ints(n), order2 = storage.ints(n);
+        int[] count = new int[257];
+        for (int shift = 0; shift < 32; shift += 8) {
+            java.util.Arrays.fill(count, 0);
+            for (int i = 0; i < n; i++) count[((keys.get(i) >>> shift) & 0xff) + 1]++;
+            for (int b = 0; b < 256; b++) count[b + 1] += count[b];
+            for (int i = 0; i < n; i++) {
+                int key = keys.get(i);
+                int to = count[(key >>> shift) & 0xff]++;
+                keys2.set(to, key);
+                order2.set(to, order.get(i));
+            }
+            Storage.Ints t = keys; keys = keys2; keys2 = t;
+            t = order; order = order2; order2 = t;
+        }
+
+        for (int i = 0; i < n; i++) {
+            int a = order.get(i), b = order.get((i + 1) % n);
+            next.set(a, b);
+            prev.set(b, a);
+        }
+    }
+
+    // returns the index of grid cell (gx, gy) along the Hilbert curve of
+    // order CURVE_BITS, as an unsigned int
+    static int hilbert(int gx, int gy) {
+        int d = 0;
+        for (int s = 1 << (CURVE_BITS - 1); s > 0; s >>= 1) {
+            int rx = (gx & s) != 0 ? 1 : 0;
+            int ry = (gy & s) != 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant, so that the curve is continuous
+            if (ry == 0) {
+                if (rx == 1) {
+                    gx = s - 1 - gx;
+                    gy = s - 1 - gy;
+                }
+                int t = gx;
+                gx = gy;
+                gy = t;
+            }
+        }
+        return d;
+    }
+
+    // finds the k nearest points of every point, with a uniform grid of
+    // about two points per cell, for orOpt()
+    public void findNeighbors(int k) {
+        if (k < 1) throw new IllegalArgumentException("k must be positive");
+        this.k = k;
+        if ((long) n * k > Integer.MAX_VALUE) throw new IllegalArgumentException("n * k is too large");
+        this.neighbors = storage.ints(n * k);
+        if (n == 0) return;
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, x.get(i));
+            maxX = Math.max(maxX, x.get(i));
+            minY = Math.min(minY, y.get(i));
+            maxY = Math.max(maxY, y.get(i));
+        }
+        double size = Math.sqrt((maxX - minX) * (maxY - minY) / Math.max(1, n / 2));
+        if (!(size > 0)) size = Math.max(maxX - minX, maxY - minY) / Math.max(1, n / 2);
+        if (!(size > 0)) size = 1.0;
+        int cols = (int) Math.min((maxX - minX) / size, 1 << 15) + 1;
+        int rows = (int) Math.min((maxY - minY) / size, 1 << 15) + 1;
+
+        // counting sort of the points by cell: the points of cell c are
+        // members[start[c]], ..., members[start[c + 1] - 1]
+        int cells = cols * rows;
+        Storage.Ints start = storage.ints(cells + 1);
+        Storage.Ints members = storage.ints(n);
+        for (int i = 0; i < n; i++) {
+            int c = cell(i, minX, minY, size, cols, rows);
+            start.set(c, start.get(c) + 1);
+        }
+        for (int c = 1; c < cells; c++) start.set(c, start.get(c) + start.get(c - 1));
+        start.set(cells, n);
+        // fill each cell from its end, which leaves start[c] at its start
+        for (int i = n - 1; i >= 0; i--) {
+            int c = cell(i, minX, minY, size, cols, rows);
+            int to = start.get(c) - 1;
+            start.set(c, to);
+            members.set(to, i);
+        }
+
+        double[] dist2 = new double[k];
+        int[] found = new int[k];
+        for (int i = 0; i < n; i++) {
+            double px = x.get(i), py = y.get(i);
+            int cx = (int) Math.max(0, Math.min(cols - 1, Math.floor((px - minX) / size)));
+            int cy = (int) Math.max(0, Math.min(rows - 1, Math.floor((py - minY) / size)));
+            int count = 0;
+            int maxRing = Math.max(Math.max(cx, cols - 1 - cx), Math.max(cy, rows - 1 - cy));
+            for (int r = 0; r <= maxRing; r++) {
+                for (int gy = cy - r; gy <= cy + r; gy++) {
+                    if (gy < 0 || gy >= rows) continue;
+                    boolean edgeRow = (gy == cy - r || gy == cy + r);
+                    for (int gx = cx - r; gx <= cx + r; gx += edgeRow ? 1 : 2 * r) {
+                        if (gx >= 0 && gx < cols) {
+                            int c = gy * cols + gx;
+                            for (int m = start.get(c), end = start.get(c + 1); m < end; m++) {
+                                int j = members.get(m);
+                                if (j == i) continue;
+                                double dx = x.get(j) - px, dy = y.get(j) - py;
+                                double d = dx*dx + dy*dy;
+                                if (count == k && d >= dist2[k - 1]) continue;
+                                int slot = (count < k) ? count++ : k - 1;
+                                while (slot > 0 && dist2[slot - 1] > d) {
+                                    dist2[slot] = dist2[slot - 1];
+                                    found[slot] = found[slot - 1];
+                                    slot--;
+                                }
+                                dist2[slot] = d;
+                                found[slot] = j;
+                            }
+                        }
+                        if (r == 0) break;
+                    }
+                }
+                // every cell beyond ring r is at least r * size away
+                double reach = r * size;
+                if (count == k && dist2[k - 1] <= reach * reach) break;
+            }
+            for (int m = 0; m < k; m++) neighbors.set(i * k + m, (m < count) ? found[m] : -1);
+        }
+    }
+
+    // returns the m-th nearest point of point i found by findNeighbors()
+    // (from m = 0), or -1 if there are fewer than m + 1 other points
+    public int neighbor(int i, int m) {
+        if (neighbors == null) throw new IllegalStateException("findNeighbors() wasn't called");
+        if (m < 0 || m >= k) throw new IllegalArgumentException("m must be in [0, " + k + ")");
+        return neighbors.get(i * k + m);
+    }
+
+    private int cell(int i, double minX, double minY, double size, int cols, int rows) {
+        int cx = (int) Math.max(0, Math.min(cols - 1, Math.floor((x.get(i) - minX) / size)));
+        int cy = (int) Math.max(0, Math.min(rows - 1, Math.floor((y.get(i) - minY) / size)));
+        return cy * cols + cx;
+    }
+
+    // improves the tour with Or-opt moves, with the neighbors found by
+    // findNeighbors() (5 if it wasn't called) as candidates; returns the
+    // total decrease in length
+    public double orOpt() {
+        if (n < MAX_SEGMENT + 2) return 0.0;
+        if (neighbors == null) findNeighbors(5);
+        double saved = 0.0;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int s = 0; s < n; s++) {
+                double gain = move(s);
+                saved += gain;
+                improved |= gain > 0;
+            }
+        }
+        return saved;
+    }
+
+    // improves the tour with Or-opt moves of the runs that start at the
+    // given points, and then at the ends of every move, until none of them
+    // shortens the tour: a repair of the parts of the tour around these
+    // points only (e.g. where DistributedSolver joined its regions); returns
+    // the total decrease in length
+    public double orOpt(int[] starts) {
+        if (n < MAX_SEGMENT + 2) return 0.0;
+        if (neighbors == null) findNeighbors(5);
+        java.util.BitSet queued = new java.util.BitSet(n);
+        java.util.ArrayDeque<Integer> queue = new java.util.ArrayDeque<Integer>();
+        for (int s : starts) {
+            if (!queued.get(s)) {
+                queued.set(s);
+                queue.add(s);
+            }
+        }
+        double saved = 0.0;
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            queued.clear(s);
+            double gain = move(s);
+            if (gain == 0) continue;
+            saved += gain;
+            for (int t : moved) {
+                if (!queued.get(t)) {
+                    queued.set(t);
+                    queue.add(t);
+                }
+            }
+        }
+        return saved;
+    }
+
+    // moves the best run of one to MAX_SEGMENT points starting at s, if that
+    // shortens the tour, and returns the decrease in length (0 if none); the
+    // points at the ends of the edges it changed are left in moved
+    private double move(int s) {
+        int e = s;
+        for (int len = 1; len <= MAX_SEGMENT; len++) {
+            if (len > 1) e = next.get(e);
+            int p = prev.get(s), q = next.get(e);
+            if (q == p || q == s) break;        // too little left outside
+            double removed = distance(p, s) + distance(e, q) - distance(p, q);
+            if (removed <= EPSILON) continue;
+
+            // best edge a -> b outside the segment to put it in: after
+            // a neighbor of s, or before a neighbor of e
+            int bestA = -1;
+            double bestGain = EPSILON;
+            for (int m = 0; m < 2 * k; m++) {
+                int c = neighbors.get((m < k ? s : e) * k + m % k);
+                if (c == -1) continue;
+                int a = (m < k) ? c : prev.get(c);
+                if (a == p || inSegment(a, s, len)) continue;
+                int b = next.get(a);
+                double added = distance(a, s) + distance(e, b) - distance(a, b);
+                if (removed - added > bestGain) {
+                    bestGain = removed - added;
+                    bestA = a;
+                }
+            }
+            if (bestA == -1) continue;
+
+            int b = next.get(bestA);
+            link(p, q);
+            link(e, b);
+            link(bestA, s);
+            moved[0] = p;
+            moved[1] = q;
+            moved[2] = s;
+            moved[3] = e;
+            moved[4] = bestA;
+            moved[5] = b;
+            return bestGain;
+        }
+        return 0.0;
+    }
+
+    private void link(int a, int b) {
+        next.set(a, b);
+        prev.set(b, a);
+    }
+
+    // is point a one of the len points starting at s?
+    private boolean inSegment(int a, int s, int len) {
+        for (int m = 0; m < len; m++, s = next.get(s)) {
+            if (a == s) return true;
+        }
+        return false;
+    }
+
+    // collections seen since the monitor was created, with their pauses
+    private static final class GcMonitor {
+        private long collections, totalMillis, maxMillis;
+
+        private GcMonitor() {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (!(gc instanceof NotificationEmitter)) continue;
+                ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+                    if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+                        return;
+                    GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    long millis = info.getGcInfo().getDuration();
+                    synchronized (this) {
+                        collections++;
+                        totalMillis += millis;
+                        maxMillis = Math.max(maxMillis, millis);
+                    }
+                }, null, null);
+            }
+        }
+
+        private synchronized String summary() {
+            return collections + " collections, " + totalMillis + " ms in total, longest " + maxMillis + " ms";
+        }
+    }
+
+    // returns the peak use of the heap pools, in bytes
+    private static long peakHeap() {
+        long sum = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) sum += pool.getPeakUsage().getUsed();
+        }
+        return sum;
+    }
+
+    // returns the value of a field (e.g. VmRSS) of /proc/self/status, or "n/a"
+    private static String procStatus(String field) {
+        try (BufferedReader in = new BufferedReader(new FileReader("/proc/self/status"))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(field + ":")) {
+                    long kb = Long.parseLong(line.replaceAll("[^0-9]", ""));
+                    return String.format("%.0f MB", kb / 1024.0);
+                }
+            }
+        }
+        catch (IOException | NumberFormatException e) {
+            // not Linux
+        }
+        return "n/a";
+    }
+
+    public static void main(String[] args) {
+        String storageName = "heap";
+        int k = 5;
+        boolean orOpt = false;
+        java.util.List<String> rest = new java.util.ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if      (args[i].equals("-storage")) storageName = args[++i];
+            else if (args[i].equals("-k"))       k = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-oropt"))   orOpt = true;
+            else rest.add(args[i]);
+        }
+        if (rest.isEmpty()) {
+            StdOut.println("This program should be called: \n$ java-introcs LargeTour "
+                           + "[-storage heap|direct|mapped] [-k k] [-oropt] file | distribution n [seed]");
+            return;
+        }
+        GcMonitor gc = new GcMonitor();
+        Storage storage = Storage.named(storageName);
+
+        long start = System.nanoTime();
+        Storage.Doubles xs, ys;
+        String source;
+        if (rest.size() == 1 && PointFile.isPacked(rest.get(0)) && !storageName.equals("heap")) {
+            Storage.Doubles[] mapped = Storage.mapPoints(rest.get(0));
+            xs = mapped[0];
+            ys = mapped[1];
+            source = "mapped from " + rest.get(0);
+        }
+        else {
+            PointFile file = (rest.size() == 1)
+                ? new PointFile(rest.get(0))
+                : InstanceGenerator.generate(rest.get(0), Integer.parseInt(rest.get(1)),
+                                             (rest.size() > 2) ? Long.parseLong(rest.get(2)) : 0);
+            source = (rest.size() == 1) ? "read from " + rest.get(0) : "generated";
+            if (storageName.equals("heap")) {
+                xs = Storage.wrap(file.xs());
+                ys = Storage.wrap(file.ys());
+            }
+            else {
+                // copy into the storage; the heap arrays become garbage
+                xs = storage.doubles(file.size());
+                ys = storage.doubles(file.size());
+                for (int i = 0; i < file.size(); i++) {
+                    xs.set(i, file.xs()[i]);
+                    ys.set(i, file.ys()[i]);
+                }
+            }
+        }
+        StdOut.printf("%d points (%s), %s storage: %.1f s\n", xs.size(), source, storage.name(),
+                      (System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        LargeTour tour = new LargeTour(xs, ys, storage);
+        StdOut.printf("space-filling curve: %.1f s, length %.1f\n", (System.nanoTime() - start) / 1e9,
+                      tour.length());
+        if (orOpt) {
+            start = System.nanoTime();
+            tour.findNeighbors(k);
+            StdOut.printf("%d nearest points: %.1f s\n", k, (System.nanoTime() - start) / 1e9);
+            start = System.nanoTime();
+            tour.orOpt();
+            StdOut.printf("Or-opt: %.1f s, length %.1f\n", (System.nanoTime() - start) / 1e9, tour.length());
+        }
+        StdOut.printf("heap: %.0f MB at most; GC: %s\n", peakHeap() / 1048576.0, gc.summary());
+        StdOut.println("resident: " + procStatus("VmRSS") + " (at most " + procStatus("VmHWM") + ")");
+    }
+}
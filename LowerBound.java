@@ -0,0 +1,404 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs LowerBound.java
+ *  Execution:    java-introcs LowerBound [-iterations k] dir_or_file ...
+ *  Dependencies: CandidateGraph.java Storage.java ArrayTour.java PointFile.java
+ *                BatchRunner.java StdOut.java
+ *
+ *  Held-Karp lower bound on the length of the optimal tour, to measure how
+ *  far a heuristic tour is from optimal on instances too large to solve
+ *  exactly (usa13509.txt, mona-100k.txt, ...).
+ *
+ *  A minimum 1-tree (a spanning tree plus one more edge at a chosen
+ *  vertex) is never longer than the optimal tour. Adding a penalty pi[v] to
+ *  every edge at v changes every tour by the same 2 * sum(pi), but not the
+ *  1-trees, so w(pi) = 1-tree(pi) - 2 * sum(pi) is a lower bound for every
+ *  pi. Subgradient optimization pushes pi up at vertices of degree > 2 and
+ *  down at leaves, which makes the 1-tree look more like a tour and w(pi)
+ *  larger.
+ *
+ *  The 1-trees are built over a sparse CandidateGraph (Delaunay edges and
+ *  10 nearest neighbors, or all edges up to 64 points) with Prim's
+ *  algorithm and a binary heap, in O(n log n) per iteration instead of
+ *  O(n^2). The 1-tree is the spanning tree plus the second-cheapest edge of
+ *  the leaf where that edge is most expensive. As in LKH, a 1-tree over
+ *  the candidates is only a lower bound if the candidates hold the edges of
+ *  the minimum 1-tree over all edges, which nothing guarantees once the
+ *  penalties are added.
+ *
+ *  So, up to 20000 points, the 1-tree of the best penalties is computed
+ *  once more over all edges, in O(n^2) (0.5 seconds for usa13509.txt):
+ *  that value is a proven lower bound (proven() is true), and at most the
+ *  sparse one. Over 20000 points the sparse value is kept, and reported
+ *  as an estimate (label() is "estimated lower bound").
+ *
+ *  % java-introcs LowerBound tsp1000.txt usa13509.txt
+ *
+ **************************************************************************** */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class LowerBound {
+    private static final int NEIGHBORS = 10;
+    private static final int COMPLETE = 64;     // up to this many points, use all edges
+    private static final int ITERATIONS = 100;
+    private static final int PATIENCE = 3;      // iterations without progress before halving the step
+    private static final int PROVEN_MAX = 20000;  // up to this many points, redo the last 1-tree over all edges
+
+    private final double[] xs, ys;
+    private final int n;
+    private final Storage.Ints offsets, targets;
+    private final double[] pi;                  // penalties
+    private final int[] degree;                 // degrees in the last 1-tree
+    private final double[] bestPi;              // penalties of the best bound
+    private double bound;
+    private boolean proven;                     // bound is over all edges, not only the candidates
+    private int iterations;
+
+    // scratch space for Prim's algorithm
+    private final double[] key;
+    private final boolean[] inTree;
+    private final double[] heapKey;
+    private final int[] heapNode;
+
+    // computes the bound for the n points (xs[i], ys[i]), given the length of
+    // a known tour to aim the steps at
+    public LowerBound(double[] xs, double[] ys, int n, double upperBound) {
+        this(xs, ys, n, candidates(xs, ys, n), upperBound, ITERATIONS);
+    }
+
+    // returns the default candidate graph: the Delaunay edges and the nearest
+    // neighbors, or every edge on small instances, where a far-away point can
+    // need an edge that is not among the candidates of anything
+    public static CandidateGraph candidates(double[] xs, double[] ys, int n) {
+        int k = (n <= COMPLETE) ? n - 1 : NEIGHBORS;
+        return CandidateGraph.create(xs, ys, n, k);
+    }
+
+    // computes the bound over the given candidate graph with at most the
+    // given number of subgradient iterations
+    public LowerBound(double[] xs, double[] ys, int n, CandidateGraph graph,
+                      double upperBound, int iterations) {
+        this.xs = xs;
+        this.ys = ys;
+        this.n = n;
+        this.offsets = graph.offsets();
+        this.targets = graph.targets();
+        pi = new double[n];
+        bestPi = new double[n];
+        degree = new int[n];
+        key = new double[n];
+        inTree = new boolean[n];
+        heapKey = new double[targets.size() + 2];
+        heapNode = new int[targets.size() + 2];
+
+        if (n < 3) {
+            bound = (n == 2) ? 2 * distance(0, 1) : 0.0;
+            proven = true;
+            return;
+        }
+        ascent(upperBound, iterations);
+        if (targets.size() == (long) n * (n - 1)) proven = true;   // the candidates are all edges
+        else if (n <= PROVEN_MAX) {
+            System.arraycopy(bestPi, 0, pi, 0, n);
+            bound = completeOneTree();
+            proven = true;
+        }
+    }
+
+    // returns the lower bound (an estimate if not proven())
+    public double value() {
+        return bound;
+    }
+
+    // returns whether value() is a proven lower bound, computed over all
+    // edges, rather than an estimate over the candidate graph
+    public boolean proven() {
+        return proven;
+    }
+
+    // returns how to call value() in output
+    public String label() {
+        return proven ? "lower bound" : "estimated lower bound";
+    }
+
+    // returns the number of 1-trees computed
+    public int iterations() {
+        return iterations;
+    }
+
+    // returns how much longer than the bound a tour of the given length is,
+    // in percent
+    public static double gap(double length, double bound) {
+        if (bound <= 0) return 0.0;
+        return 100.0 * (length - bound) / bound;
+    }
+
+    // subgradient optimization with Polyak steps towards the upper bound
+    private void ascent(double upperBound, int maxIterations) {
+        double lambda = 2.0;
+        int stalled = 0;
+        bound = Double.NEGATIVE_INFINITY;
+        for (iterations = 0; iterations < maxIterations; ) {
+            double w = oneTree();
+            iterations++;
+            if (iterations == 1 || w > bound + 1e-9 * Math.abs(bound)) {
+                bound = w;
+                System.arraycopy(pi, 0, bestPi, 0, n);
+                stalled = 0;
+            }
+            else if (++stalled == PATIENCE) {
+                lambda /= 2;
+                stalled = 0;
+            }
+
+            int norm = 0;
+            for (int v = 0; v < n; v++) {
+                int g = degree[v] - 2;
+                norm += g * g;
+            }
+            if (norm == 0) break;                       // the 1-tree is a tour
+            double target = upperBound > w ? upperBound : 1.01 * w;
+            double step = lambda * (target - w) / norm;
+            if (step <= 1e-12 * w) break;
+            for (int v = 0; v < n; v++)
+                pi[v] += step * (degree[v] - 2);
+        }
+    }
+
+    private double distance(int i, int j) {
+        double dx = xs[i] - xs[j];
+        double dy = ys[i] - ys[j];
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+    // computes a minimum 1-tree with the current penalties, fills degree[]
+    // and returns w(pi)
+    private double oneTree() {
+        Arrays.fill(key, Double.POSITIVE_INFINITY);
+        Arrays.fill(inTree, false);
+        Arrays.fill(degree, 0);
+        int[] parent = new int[n];
+        double[] parentCost = new double[n];
+        double total = 0.0;
+
+        // Prim's algorithm with a lazy binary heap over the candidate edges
+        int size = 0;
+        key[0] = 0.0;
+        parent[0] = -1;
+        size = push(size, 0.0, 0);
+        while (size > 0) {
+            double k = heapKey[1];
+            int u = heapNode[1];
+            size = pop(size);
+            if (inTree[u] || k > key[u]) continue;
+            inTree[u] = true;
+            if (parent[u] >= 0) {
+                total += k;
+                parentCost[u] = k;
+                degree[u]++;
+                degree[parent[u]]++;
+            }
+            for (int e = offsets.get(u), end = offsets.get(u + 1); e < end; e++) {
+                int v = targets.get(e);
+                if (inTree[v]) continue;
+                double c = distance(u, v) + pi[u] + pi[v];
+                if (c < key[v]) {
+                    key[v] = c;
+                    parent[v] = u;
+                    size = push(size, c, v);
+                }
+            }
+        }
+
+        // close the tree at the leaf whose second-cheapest edge costs most
+        int bestLeaf = -1, bestTree = -1, bestFirst = -1, bestSecond = -1;
+        double bestExtra = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < n; v++) {
+            if (degree[v] != 1) continue;
+            double first = Double.POSITIVE_INFINITY, second = Double.POSITIVE_INFINITY;
+            int firstNode = -1, secondNode = -1;
+            for (int e = offsets.get(v), end = offsets.get(v + 1); e < end; e++) {
+                int w = targets.get(e);
+                double c = distance(v, w) + pi[v] + pi[w];
+                if (c < first) {
+                    second = first;
+                    secondNode = firstNode;
+                    first = c;
+                    firstNode = w;
+                }
+                else if (c < second) {
+                    second = c;
+                    secondNode = w;
+                }
+            }
+            if (secondNode == -1) continue;
+            // removing the leaf's tree edge and adding its two cheapest
+            // edges gives the minimum 1-tree rooted at v
+            int treeNeighbor = (parent[v] >= 0) ? parent[v] : onlyChild(parent, v);
+            double treeCost = (parent[v] >= 0) ? parentCost[v] : parentCost[treeNeighbor];
+            double extra = first + second - treeCost;
+            if (extra > bestExtra) {
+                bestExtra = extra;
+                bestLeaf = v;
+                bestTree = treeNeighbor;
+                bestFirst = firstNode;
+                bestSecond = secondNode;
+            }
+        }
+        total += bestExtra;
+        degree[bestLeaf]++;
+        degree[bestTree]--;
+        degree[bestFirst]++;
+        degree[bestSecond]++;
+
+        double sum = 0.0;
+        for (int v = 0; v < n; v++) sum += pi[v];
+        return total - 2 * sum;
+    }
+
+    // computes the minimum 1-tree with the current penalties over all edges
+    // (Prim's algorithm on the complete graph, in O(n^2)) and returns w(pi)
+    private double completeOneTree() {
+        Arrays.fill(key, Double.POSITIVE_INFINITY);
+        Arrays.fill(degree, 0);
+        int[] parent = new int[n];
+        double[] parentCost = new double[n];
+        double total = 0.0;
+
+        // the points not in the tree yet are out[0..left-1]; each step
+        // updates their keys and finds the next one in the same pass
+        int[] out = new int[n];
+        for (int v = 0; v < n; v++) out[v] = v;
+        int left = n - 1;
+        out[0] = out[left];
+        parent[0] = -1;
+        int u = 0;
+        while (left > 0) {
+            double ux = xs[u], uy = ys[u], upi = pi[u];
+            int next = 0;
+            for (int k = 0; k < left; k++) {
+                int v = out[k];
+                double dx = ux - xs[v], dy = uy - ys[v];
+                double c = Math.sqrt(dx*dx + dy*dy) + upi + pi[v];
+                if (c < key[v]) {
+                    key[v] = c;
+                    parent[v] = u;
+                }
+                if (key[v] < key[out[next]]) next = k;
+            }
+            u = out[next];
+            out[next] = out[--left];
+            total += key[u];
+            parentCost[u] = key[u];
+            degree[u]++;
+            degree[parent[u]]++;
+        }
+
+        // close the tree at the leaf whose two cheapest edges, over all
+        // points, cost most more than its tree edge
+        double bestExtra = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < n; v++) {
+            if (degree[v] != 1) continue;
+            double first = Double.POSITIVE_INFINITY, second = Double.POSITIVE_INFINITY;
+            for (int w = 0; w < n; w++) {
+                if (w == v) continue;
+                double c = distance(v, w) + pi[v] + pi[w];
+                if (c < first) {
+                    second = first;
+                    first = c;
+                }
+                else if (c < second) second = c;
+            }
+            double treeCost = (parent[v] >= 0) ? parentCost[v] : parentCost[onlyChild(parent, v)];
+            bestExtra = Math.max(bestExtra, first + second - treeCost);
+        }
+        total += bestExtra;
+
+        double sum = 0.0;
+        for (int v = 0; v < n; v++) sum += pi[v];
+        return total - 2 * sum;
+    }
+
+    // returns the child of the root v (which is a leaf, so it has one)
+    private int onlyChild(int[] parent, int v) {
+        for (int u = 0; u < n; u++) {
+            if (parent[u] == v) return u;
+        }
+        throw new IllegalStateException("root without a child");
+    }
+
+    // binary min-heap on (heapKey, heapNode), 1-based; returns the new size
+    private int push(int size, double k, int node) {
+        int i = ++size;
+        while (i > 1 && heapKey[i / 2] > k) {
+            heapKey[i] = heapKey[i / 2];
+            heapNode[i] = heapNode[i / 2];
+            i /= 2;
+        }
+        heapKey[i] = k;
+        heapNode[i] = node;
+        return size;
+    }
+
+    private int pop(int size) {
+        double k = heapKey[size];
+        int node = heapNode[size];
+        size--;
+        int i = 1;
+        while (2 * i <= size) {
+            int child = 2 * i;
+            if (child < size && heapKey[child + 1] < heapKey[child]) child++;
+            if (heapKey[child] >= k) break;
+            heapKey[i] = heapKey[child];
+            heapNode[i] = heapNode[child];
+            i = child;
+        }
+        heapKey[i] = k;
+        heapNode[i] = node;
+        return size;
+    }
+
+    // prints the bound and the gaps of both insertion heuristics per file
+    public static void main(String[] args) {
+        int maxIterations = ITERATIONS;
+        List<String> filenames = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-iterations")) maxIterations = Integer.parseInt(args[++i]);
+            else BatchRunner.collect(args[i], filenames);
+        }
+        if (filenames.isEmpty()) {
+            StdOut.println("This program should be called: \n$ java-introcs LowerBound [-iterations k] dir_or_file ...");
+            return;
+        }
+
+        StdOut.printf("%-36s %8s %15s %14s %8s %14s %8s %8s\n", "file", "points",
+                      "lower bound", "nearest", "gap", "smallest", "gap", "seconds");
+        boolean estimates = false;
+        for (String filename : filenames) {
+            PointFile file = new PointFile(filename);
+            double[] xs = file.xs();
+            double[] ys = file.ys();
+            int n = file.size();
+            ArrayTour nearest = new ArrayTour(n);
+            ArrayTour smallest = new ArrayTour(n);
+            for (int i = 0; i < n; i++) {
+                nearest.insertNearest(xs[i], ys[i]);
+                smallest.insertSmallest(xs[i], ys[i]);
+            }
+            double best = Math.min(nearest.length(), smallest.length());
+
+            long start = System.nanoTime();
+            CandidateGraph graph = candidates(xs, ys, n);
+            LowerBound bound = new LowerBound(xs, ys, n, graph, best, maxIterations);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            StdOut.printf("%-36s %8d %14.4f%s %14.4f %7.2f%% %14.4f %7.2f%% %8.3f\n", filename, n,
+                          bound.value(), bound.proven() ? " " : "*", nearest.length(),
+                          gap(nearest.length(), bound.value()), smallest.length(),
+                          gap(smallest.length(), bound.value()), seconds);
+            estimates = estimates || !bound.proven();
+        }
+        if (estimates) StdOut.println("* estimated over the candidate graph only (over " + PROVEN_MAX + " points)");
+    }
+}
@@ -0,0 +1,468 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs MapImageCache.java
+ *  Execution:    java-introcs MapImageCache static_map_url
+ *  Dependencies: StdOut.java
+ *
+ *  Static map images, kept so that a map that was already shown (or
+ *  prefetched) is drawn again without a request to the Static Maps API.
+ *  Images are keyed by their URL without the API key, so changing keys
+ *  keeps the cache.
+ *
+ *  Recently used images are kept in memory, up to a number of bytes; the
+ *  least recently used ones spill to a directory on disk (by default
+ *  tsp-map-cache in the temporary directory, so it lasts between runs),
+ *  which is trimmed, oldest files first, to its own limit. StdDraw.picture()
+ *  draws from a file name or a URL, so get() returns the name of the
+ *  image's file, writing it from memory first if needed; trimming keeps
+ *  the files of images still in memory, so each is written only once.
+ *
+ *  prefetch() fetches an image on a background thread, so that it is
+ *  ready when it is asked for: after drawing a map, MapSession prefetches
+ *  the maps one zoom level in and out. An image is requested once even if
+ *  get() asks for it while it is being prefetched. Only image responses are
+ *  kept; get() throws an IOException for anything else (e.g. a wrong key).
+ *
+ *  Downloads run on background threads while get() waits for them, so an
+ *  interrupted get() (a map superseded by a newer one) returns at once with
+ *  an InterruptedIOException, and its download is aborted unless another
+ *  get() or a prefetch is waiting for the same image.
+ *
+ *  main() fetches a map three times (network, memory, disk) and prefetches
+ *  the next zoom level, with any static map server, e.g. SolveServer -stub:
+ *
+ *  % java-introcs MapImageCache "http://localhost:8126/stub/staticmap?size=500x500&center=40.3,-74.6&zoom=13"
+ *  network: 12.4 ms
+ *  memory:  0.4 ms
+ *  disk:    0.1 ms
+ *  prefetched zoom 14: 0.3 ms
+ *
+ **************************************************************************** */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class MapImageCache {
+    private static final long MEMORY_BYTES = 64L << 20;
+    private static final long DISK_BYTES = 256L << 20;
+    private static final int TIMEOUT = 10000;   // milliseconds to connect, and to read
+
+    private static MapImageCache defaultCache;
+
+    // an image as fetched
+    private static final class Image {
+        private final byte[] bytes;
+        private final String extension;
+
+        private Image(byte[] bytes, String extension) {
+            this.bytes = bytes;
+            this.extension = extension;
+        }
+    }
+
+    private final File directory;
+    private final long memoryLimit, diskLimit;
+
+    // least recently used first; guarded by this
+    private final LinkedHashMap<String, Image> memory = new LinkedHashMap<String, Image>(16, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes = -1;        // not measured yet
+
+    // images being fetched, so that each is requested once; guarded by this
+    private final HashMap<String, Download> fetching = new HashMap<String, Download>();
+    private ExecutorService downloader; // started by the first fetch, guarded by this
+    private ExecutorService prefetcher; // started by the first prefetch, guarded by this
+
+    // statistics, guarded by this
+    private int memoryHits, diskHits, misses, prefetches;
+
+    // creates a cache that keeps up to memoryBytes of images in memory and
+    // diskBytes in the given directory (created if needed)
+    public MapImageCache(String directory, long memoryBytes, long diskBytes) {
+        this.directory = new File(directory);
+        this.memoryLimit = memoryBytes;
+        this.diskLimit = diskBytes;
+    }
+
+    // returns the cache shared by the sessions that don't set their own
+    public static synchronized MapImageCache getDefault() {
+        if (defaultCache == null) {
+            File dir = new File(System.getProperty("java.io.tmpdir"), "tsp-map-cache");
+            defaultCache = new MapImageCache(dir.getPath(), MEMORY_BYTES, DISK_BYTES);
+        }
+        return defaultCache;
+    }
+
+    // returns the name of a file holding the image at the given URL,
+    // fetching it only if it is neither in memory nor on disk
+    public String get(String url) throws IOException {
+        String key = key(url);
+        File file;
+        Image image;
+        synchronized (this) {
+            image = memory.get(key);
+            file = file(key, (image == null) ? null : image.extension);
+            if (image != null) memoryHits++;
+        }
+        if (image != null) {
+            // its file is written once (trim() keeps it while the image is
+            // in memory), so a memory hit is one stat, not a write
+            if (!file.isFile()) write(file, image);
+            return file.getPath();
+        }
+        File onDisk = find(key);
+        if (onDisk != null) {
+            synchronized (this) {
+                diskHits++;
+            }
+            onDisk.setLastModified(System.currentTimeMillis());
+            return onDisk.getPath();
+        }
+
+        image = fetch(key, url, false);
+        file = file(key, image.extension);
+        if (!file.isFile()) write(file, image);
+        return file.getPath();
+    }
+
+    // fetches the image at the given URL in the background, unless it is
+    // cached or already being fetched
+    public void prefetch(String url) {
+        String key = key(url);
+        synchronized (this) {
+            if (memory.containsKey(key) || fetching.containsKey(key)) return;
+            if (prefetcher == null) {
+                prefetcher = Executors.newSingleThreadExecutor(daemon("prefetch"));
+            }
+            prefetcher.execute(() -> {
+                if (find(key) != null) return;
+                try {
+                    fetch(key, url, true);
+                }
+                catch (IOException e) {
+                    // nothing is waiting for it; get() will report the error
+                }
+            });
+        }
+    }
+
+    // returns the number of images found in memory
+    public synchronized int memoryHits() {
+        return memoryHits;
+    }
+
+    // returns the number of images found on disk
+    public synchronized int diskHits() {
+        return diskHits;
+    }
+
+    // returns the number of images get() had to fetch (or wait for)
+    public synchronized int misses() {
+        return misses;
+    }
+
+    // returns the number of images fetched in the background
+    public synchronized int prefetches() {
+        return prefetches;
+    }
+
+    private synchronized boolean isFetching(String url) {
+        return fetching.containsKey(key(url));
+    }
+
+    // forgets the images in memory and deletes those on disk
+    public synchronized void clear() {
+        memory.clear();
+        memoryBytes = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        diskBytes = 0;
+    }
+
+    // fetches the image at the given URL, or waits for the fetch in progress,
+    // and keeps it in memory; if the thread is interrupted (its map was
+    // superseded), it stops waiting, and the download is cancelled unless
+    // another thread waits for it too
+    private Image fetch(String key, String url, boolean prefetch) throws IOException {
+        Download download;
+        synchronized (this) {
+            download = fetching.get(key);
+            if (download == null || download.task.isCancelled()) {
+                download = new Download(key, url);
+                fetching.put(key, download);
+                if (downloader == null) downloader = Executors.newCachedThreadPool(daemon("download"));
+                downloader.execute(download.task);
+            }
+            download.waiters++;
+            if (prefetch) prefetches++;
+            else misses++;
+        }
+        boolean waiting = true;
+        try {
+            return download.task.get();
+        }
+        catch (InterruptedException e) {
+            synchronized (this) {
+                waiting = false;
+                if (--download.waiters == 0) download.cancel();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Map request superseded");
+        }
+        catch (CancellationException e) {
+            throw new InterruptedIOException("Map request cancelled");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Could not fetch the map", e.getCause());
+        }
+        finally {
+            if (waiting) {
+                synchronized (this) {
+                    download.waiters--;
+                }
+            }
+        }
+    }
+
+    // a download in progress, run by the downloader threads
+    private final class Download implements Callable<Image> {
+        private final String key, url;
+        private final FutureTask<Image> task;
+        private volatile HttpURLConnection connection;
+        private int waiters;                    // guarded by MapImageCache.this
+
+        private Download(String key, String url) {
+            this.key = key;
+            this.url = url;
+            this.task = new FutureTask<Image>(this) {
+                protected void done() {
+                    synchronized (MapImageCache.this) {
+                        fetching.remove(Download.this.key, Download.this);
+                    }
+                }
+            };
+        }
+
+        public Image call() throws IOException {
+            Image image = download();
+            keep(key, image);
+            return image;
+        }
+
+        // stops the download, even in the middle of a read
+        private void cancel() {
+            task.cancel(true);
+            HttpURLConnection c = connection;
+            if (c != null) c.disconnect();
+        }
+
+        private Image download() throws IOException {
+            HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
+            c.setConnectTimeout(TIMEOUT);
+            c.setReadTimeout(TIMEOUT);
+            connection = c;
+            if (task.isCancelled()) throw new InterruptedIOException("Map request cancelled");
+            try {
+                int status = c.getResponseCode();
+                String type = c.getContentType();
+                if (status != HttpURLConnection.HTTP_OK)
+                    throw new IOException("Static map request failed with HTTP " + status);
+                if (type == null || !type.startsWith("image/"))
+                    throw new IOException("Static map request returned " + type + ", not an image");
+                String extension = type.substring("image/".length()).split(";")[0].trim();
+                if (extension.equals("jpeg")) extension = "jpg";
+                try (InputStream in = c.getInputStream()) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+                    byte[] buffer = new byte[1 << 14];
+                    for (int k = in.read(buffer); k != -1; k = in.read(buffer)) bytes.write(buffer, 0, k);
+                    return new Image(bytes.toByteArray(), extension);
+                }
+            }
+            finally {
+                c.disconnect();
+            }
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread thread = new Thread(r, "MapImageCache " + name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // adds an image to memory, spilling the least recently used ones to disk
+    private void keep(String key, Image image) throws IOException {
+        List<Map.Entry<String, Image>> spilled = new ArrayList<Map.Entry<String, Image>>();
+        synchronized (this) {
+            if (memory.put(key, image) == null) memoryBytes += image.bytes.length;
+            Iterator<Map.Entry<String, Image>> it = memory.entrySet().iterator();
+            while (memoryBytes > memoryLimit && it.hasNext()) {
+                Map.Entry<String, Image> e = it.next();
+                if (e.getKey().equals(key)) continue;
+                it.remove();
+                memoryBytes -= e.getValue().bytes.length;
+                spilled.add(e);
+            }
+        }
+        for (Map.Entry<String, Image> e : spilled) {
+            File file = file(e.getKey(), e.getValue().extension);
+            if (!file.isFile()) write(file, e.getValue());
+        }
+    }
+
+    // writes an image to its file (through a temporary file, so that a file
+    // is always complete) and trims the directory if it has grown too big
+    private void write(File file, Image image) throws IOException {
+        synchronized (this) {
+            if (diskBytes < 0) diskBytes = measure();
+        }
+        Files.createDirectories(directory.toPath());
+        File temp = File.createTempFile("map", ".tmp", directory);
+        try {
+            Files.write(temp.toPath(), image.bytes);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            temp.delete();
+        }
+        boolean trim;
+        synchronized (this) {
+            diskBytes += image.bytes.length;
+            trim = diskBytes > diskLimit;
+        }
+        if (trim) trim();
+    }
+
+    // deletes the least recently used files until the directory is 3/4 full,
+    // keeping the files of images in memory: get() returns those without
+    // looking at the disk's order, and would only write them again
+    private synchronized void trim() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        HashSet<String> kept = new HashSet<String>();
+        for (Map.Entry<String, Image> e : memory.entrySet())
+            kept.add(file(e.getKey(), e.getValue().extension).getName());
+        long total = 0;
+        for (File f : files) total += f.length();
+        for (int i = 0; i < files.length && total > diskLimit / 4 * 3; i++) {
+            if (kept.contains(files[i].getName())) continue;
+            long length = files[i].length();
+            if (files[i].delete()) total -= length;
+        }
+        diskBytes = total;
+    }
+
+    private long measure() {
+        long total = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) total += f.length();
+        }
+        return total;
+    }
+
+    // returns the file of the image with the given key, if it is on disk
+    private File find(String key) {
+        for (String extension : new String[] { "png", "jpg", "gif" }) {
+            File file = new File(directory, key + "." + extension);
+            if (file.isFile()) return file;
+        }
+        return null;
+    }
+
+    private File file(String key, String extension) {
+        return new File(directory, key + "." + ((extension == null) ? "png" : extension));
+    }
+
+    // returns the SHA-256 (in hex) of the URL without its API key
+    static String key(String url) {
+        String normalized = url.replaceAll("([?&])key=[^&]*&?", "$1");
+        if (normalized.endsWith("&") || normalized.endsWith("?"))
+            normalized = normalized.substring(0, normalized.length() - 1);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest) hex.append(String.format("%02x", b));
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // fetches the map at the given URL from the network, memory and disk,
+    // and prefetches the next zoom level
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            StdOut.println("This program should be called: \n$ java-introcs MapImageCache static_map_url");
+            return;
+        }
+        String url = args[0];
+        File dir = Files.createTempDirectory("map-cache").toFile();
+        dir.deleteOnExit();
+        MapImageCache cache = new MapImageCache(dir.getPath(), MEMORY_BYTES, DISK_BYTES);
+
+        long start = System.nanoTime();
+        cache.get(url);
+        StdOut.printf("network: %.1f ms\n", (System.nanoTime() - start) / 1e6);
+        start = System.nanoTime();
+        cache.get(url);
+        StdOut.printf("memory:  %.1f ms\n", (System.nanoTime() - start) / 1e6);
+        synchronized (cache) {
+            cache.memory.clear();
+            cache.memoryBytes = 0;
+        }
+        start = System.nanoTime();
+        cache.get(url);
+        StdOut.printf("disk:    %.1f ms\n", (System.nanoTime() - start) / 1e6);
+
+        Matcher m = Pattern.compile("zoom=(\\d+)").matcher(url);
+        if (m.find()) {
+            int zoom = Integer.parseInt(m.group(1)) + 1;
+            String next = m.replaceFirst("zoom=" + zoom);
+            cache.prefetch(next);
+            while (cache.prefetches() == 0 || cache.isFetching(next)) Thread.sleep(1);
+            start = System.nanoTime();
+            cache.get(next);
+            StdOut.printf("prefetched zoom %d: %.1f ms\n", zoom, (System.nanoTime() - start) / 1e6);
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs MapRenderer.java
+ *  Execution:    java-introcs MapRenderer [n] [points per leg]
+ *  Dependencies: Polyline.java StdDraw.java StdOut.java
+ *
+ *  Draws a map locally, without the Static Maps API: the tour as decoded
+ *  from the Directions polylines and the points as markers, projected with
+ *  Web Mercator like the static maps, on a plain background. It draws on
+ *  the StdDraw canvas or on an offscreen image (Graphics2D), for any zoom
+ *  and center, with no size limit other than the canvas.
+ *
+ *  The lines are projected once (in world pixels at zoom 0). Level of
+ *  detail: at each zoom they are simplified with Douglas-Peucker to one
+ *  pixel (kept for the next time the zoom is used), and only the segments
+ *  that cross the canvas are drawn; markers that would fall on a pixel
+ *  already marked are skipped. Drawing again after zooming or panning
+ *  costs milliseconds and no request.
+ *
+ *  Offscreen, the lines are drawn without antialiasing, which would make
+ *  them cost four times as much (the markers are antialiased).
+ *
+ *  main() times 640-by-640 frames of a random tour with winding legs,
+ *  offscreen (the first frame at a zoom includes its simplification):
+ *
+ *  % java-introcs MapRenderer 100 30
+ *  100 points, 3000 polyline points
+ *  zoom 10: 141.6 ms (then 18.9 ms per frame)
+ *  ...
+ *  zoom 14: 18.7 ms (then 19.2 ms per frame)
+ *  ...
+ *  zoom 18: 11.1 ms (then 3.2 ms per frame)
+ *  pan at zoom 14: 12.2 ms per frame
+ *
+ **************************************************************************** */
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public final class MapRenderer {
+    private static final double LOD_PIXELS = 1.0;       // Douglas-Peucker tolerance at the zoom drawn
+    private static final double PATH_WIDTH = 3.0;       // pixels, as the static maps' weight:3
+    private static final double FIRST_MARKER = 6.0;     // pixels (radius)
+    private static final double MARKER = 3.0;
+    private static final Color BACKGROUND = new Color(0xE8E4DA);
+    private static final Color GRID = new Color(0xDAD5C8);
+    private static final double GRID_PIXELS = 256.0;    // a map tile
+    private static final int PIECE = 64;                // segments per Graphics2D path
+
+    // the lines and points in world pixels at zoom 0
+    private final List<double[]> xs = new ArrayList<double[]>(), ys = new ArrayList<double[]>();
+    private final double[] px, py;
+
+    // the lines simplified for each zoom drawn so far, in world pixels at that zoom
+    private final Map<Integer, List<double[][]>> levels = new HashMap<Integer, List<double[][]>>();
+
+    // what the lines and points are drawn with: StdDraw or Graphics2D, in
+    // pixels from the top left corner
+    private interface Pen {
+        void color(Color c, double width);
+        void path(double[] xs, double[] ys, int from, int to);
+        void dot(double x, double y, double radius);
+    }
+
+    // renders the given lines, each {lat0, lng0, lat1, lng1, ...}, and
+    // points, {lat0, lng0, ...}; the first point gets a larger marker
+    public MapRenderer(List<double[]> lines, double[] points) {
+        for (double[] line : lines) {
+            int n = line.length / 2;
+            double[] x = new double[n], y = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = Polyline.mercatorX(line[2*i + 1], 0);
+                y[i] = Polyline.mercatorY(line[2*i], 0);
+            }
+            xs.add(x);
+            ys.add(y);
+        }
+        int n = points.length / 2;
+        px = new double[n];
+        py = new double[n];
+        for (int i = 0; i < n; i++) {
+            px[i] = Polyline.mercatorX(points[2*i + 1], 0);
+            py[i] = Polyline.mercatorY(points[2*i], 0);
+        }
+    }
+
+    // draws the width-by-height map at the given zoom, centered on (cx, cy)
+    // in world pixels at zoom 0, on the StdDraw canvas, whose scale must be
+    // in pixels with y going up from 0 at the bottom of the map
+    public void draw(int zoom, double cx, double cy, int width, int height,
+                     Color pathColor, Color pointColor, boolean showPoints) {
+        StdDraw.setPenColor(BACKGROUND);
+        StdDraw.filledRectangle(width / 2.0, height / 2.0, width / 2.0, height / 2.0);
+        render(new Pen() {
+            public void color(Color c, double width) {
+                StdDraw.setPenColor(c);
+                StdDraw.setPenRadius(width / 512.0);    // StdDraw's stroke is radius * 512 pixels
+            }
+            public void path(double[] xs, double[] ys, int from, int to) {
+                for (int i = from; i < to; i++)
+                    StdDraw.line(xs[i], height - ys[i], xs[i + 1], height - ys[i + 1]);
+            }
+            public void dot(double x, double y, double radius) {
+                StdDraw.filledCircle(x, height - y, radius);
+            }
+        }, zoom, cx, cy, width, height, pathColor, pointColor, showPoints);
+        StdDraw.setPenRadius();
+    }
+
+    // draws the map as draw() does, on g, with the map's top left corner at (0, 0)
+    public void paint(Graphics2D g, int zoom, double cx, double cy, int width, int height,
+                      Color pathColor, Color pointColor, boolean showPoints) {
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, width, height);
+        render(new Pen() {
+            public void color(Color c, double width) {
+                g.setColor(c);
+                g.setStroke(new BasicStroke((float) width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+                // antialiasing would make the lines cost four times as much to draw
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, (width > 1) ? RenderingHints.VALUE_ANTIALIAS_OFF
+                                                                                 : RenderingHints.VALUE_ANTIALIAS_ON);
+            }
+            public void path(double[] xs, double[] ys, int from, int to) {
+                Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, to - from + 1);
+                path.moveTo(xs[from], ys[from]);
+                for (int i = from + 1; i <= to; i++) path.lineTo(xs[i], ys[i]);
+                g.draw(path);
+            }
+            public void dot(double x, double y, double radius) {
+                g.fill(new Ellipse2D.Double(x - radius, y - radius, 2 * radius, 2 * radius));
+            }
+        }, zoom, cx, cy, width, height, pathColor, pointColor, showPoints);
+    }
+
+    // returns the map as draw() would show it, as an image
+    public BufferedImage image(int zoom, double cx, double cy, int width, int height,
+                               Color pathColor, Color pointColor, boolean showPoints) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        paint(g, zoom, cx, cy, width, height, pathColor, pointColor, showPoints);
+        g.dispose();
+        return image;
+    }
+
+    private void render(Pen pen, int zoom, double cx, double cy, int width, int height,
+                        Color pathColor, Color pointColor, boolean showPoints) {
+        double scale = 1L << zoom;
+        double left = cx * scale - width / 2.0, top = cy * scale - height / 2.0;
+
+        // tile boundaries, so that panning shows
+        pen.color(GRID, 1.0);
+        double[] gx = new double[2], gy = new double[2];
+        for (double x = Math.ceil(left / GRID_PIXELS) * GRID_PIXELS; x < left + width; x += GRID_PIXELS) {
+            gx[0] = gx[1] = x - left;
+            gy[0] = 0;
+            gy[1] = height;
+            pen.path(gx, gy, 0, 1);
+        }
+        for (double y = Math.ceil(top / GRID_PIXELS) * GRID_PIXELS; y < top + height; y += GRID_PIXELS) {
+            gy[0] = gy[1] = y - top;
+            gx[0] = 0;
+            gx[1] = width;
+            pen.path(gx, gy, 0, 1);
+        }
+
+        // the lines: the runs of segments that cross the canvas; the static
+        // maps draw them at half opacity, which over the plain background
+        // is this opaque color (so that segment ends don't overlap darker)
+        pen.color(blend(pathColor, BACKGROUND), PATH_WIDTH);
+        double margin = PATH_WIDTH;
+        double[] x = new double[0], y = new double[0];
+        for (double[][] line : level(zoom)) {
+            int n = line[0].length;
+            if (x.length < n) {
+                x = new double[n];
+                y = new double[n];
+            }
+            for (int i = 0; i < n; i++) {
+                x[i] = line[0][i] - left;
+                y[i] = line[1][i] - top;
+            }
+            int run = -1;
+            for (int i = 0; i + 1 < n; i++) {
+                boolean visible = Math.max(x[i], x[i + 1]) >= -margin && Math.min(x[i], x[i + 1]) <= width + margin
+                               && Math.max(y[i], y[i + 1]) >= -margin && Math.min(y[i], y[i + 1]) <= height + margin;
+                if (visible && run == -1) run = i;
+                if (run != -1 && !visible) {
+                    pen.path(x, y, run, i);
+                    run = -1;
+                }
+            }
+            if (run != -1) pen.path(x, y, run, n - 1);
+        }
+
+        // the points, at most one per pixel
+        if (!showPoints) return;
+        pen.color(pointColor, 1.0);
+        Set<Long> marked = new HashSet<Long>();
+        for (int i = px.length - 1; i >= 0; i--) {
+            double mx = px[i] * scale - left, my = py[i] * scale - top;
+            double radius = (i == 0) ? FIRST_MARKER : MARKER;
+            if (mx < -radius || mx > width + radius || my < -radius || my > height + radius) continue;
+            if (i > 0 && !marked.add((long) Math.floor(mx) << 32 ^ (long) Math.floor(my))) continue;
+            pen.dot(mx, my, radius);
+        }
+    }
+
+    // returns the lines simplified for the given zoom, in world pixels at that zoom
+    private List<double[][]> level(int zoom) {
+        List<double[][]> lines = levels.get(zoom);
+        if (lines != null) return lines;
+        lines = new ArrayList<double[][]>();
+        double scale = 1L << zoom;
+        for (int k = 0; k < xs.size(); k++) {
+            double[] x0 = xs.get(k), y0 = ys.get(k);
+            int n = x0.length;
+            double[] x = new double[n], y = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = x0[i] * scale;
+                y[i] = y0[i] * scale;
+            }
+            boolean[] keep = new boolean[n];
+            int kept = Polyline.simplify(x, y, n, LOD_PIXELS, keep);
+            double[] sx = new double[kept], sy = new double[kept];
+            for (int i = 0, j = 0; i < n; i++) {
+                if (!keep[i]) continue;
+                sx[j] = x[i];
+                sy[j++] = y[i];
+            }
+            lines.add(new double[][] { sx, sy });
+        }
+        levels.put(zoom, lines);
+        return lines;
+    }
+
+    // returns c at half opacity over the background
+    private static Color blend(Color c, Color background) {
+        return new Color((c.getRed() + background.getRed()) / 2, (c.getGreen() + background.getGreen()) / 2,
+                         (c.getBlue() + background.getBlue()) / 2);
+    }
+
+    // renders a random tour of n points around Princeton, with legs of the
+    // given number of polyline points, at zoom levels 10 to 18, then pans
+    public static void main(String[] args) {
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+        int legPoints = (args.length > 1) ? Integer.parseInt(args[1]) : 30;
+        Random random = new Random(44);
+        double[] points = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+            points[2*i] = 40.33 + 0.04 * random.nextDouble();
+            points[2*i + 1] = -74.68 + 0.06 * random.nextDouble();
+        }
+        double[] line = new double[2 * n * legPoints];
+        for (int i = 0, k = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            for (int t = 0; t < legPoints; t++) {
+                double f = t / (double) legPoints, wiggle = 0.0003 * Math.sin(t * 0.7);
+                line[k++] = points[2*i] + f * (points[2*j] - points[2*i]) + wiggle;
+                line[k++] = points[2*i + 1] + f * (points[2*j + 1] - points[2*i + 1]) - wiggle;
+            }
+        }
+        List<double[]> lines = new ArrayList<double[]>();
+        lines.add(line);
+        MapRenderer renderer = new MapRenderer(lines, points);
+        StdOut.printf("%d points, %d polyline points\n", n, line.length / 2);
+
+        double cx = Polyline.mercatorX(-74.65, 0), cy = Polyline.mercatorY(40.35, 0);
+        int frames = 10;
+        for (int zoom = 10; zoom <= 18; zoom++) {
+            long start = System.nanoTime();
+            renderer.image(zoom, cx, cy, 640, 640, Color.BLACK, Color.RED, true);
+            double first = (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            for (int k = 0; k < frames; k++) renderer.image(zoom, cx, cy, 640, 640, Color.BLACK, Color.RED, true);
+            StdOut.printf("zoom %d: %.1f ms (then %.1f ms per frame)\n", zoom, first,
+                          (System.nanoTime() - start) / 1e6 / frames);
+        }
+        long start = System.nanoTime();
+        for (int k = 0; k < frames; k++) {
+            renderer.image(14, cx + k * 100 / 16384.0, cy, 640, 640, Color.BLACK, Color.RED, true);
+        }
+        StdOut.printf("pan at zoom 14: %.1f ms per frame\n", (System.nanoTime() - start) / 1e6 / frames);
+    }
+}
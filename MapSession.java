@@ -0,0 +1,1570 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs MapSession.java
+ *  Dependencies: MapImageCache.java MapRenderer.java Polyline.java PolylineStore.java
+ *                StdDraw.java org.json
+ *
+ *  One map: a set of points with the paths between them, the visible paths,
+ *  the transportation mode, the API keys and the display settings. This is
+ *  what StdMap used to keep in static fields; StdMap is now a thin wrapper
+ *  around a default session, so several tours can be computed at once in
+ *  the same JVM, each in its own session.
+ *
+ *  Every public method is synchronized on its session (openMap() only
+ *  while it reads the session and while it draws, not while it waits for
+ *  the images), so a session can be shared by many threads, and
+ *  independent sessions never wait for each other. Fetched paths go
+ *  through a PathCache, which sessions can share: a path is requested once
+ *  per Directions URL, mode, start and end (the API key doesn't change a
+ *  path, and is not kept), even when several sessions ask for it at the
+ *  same time, so sessions pointed at different endpoints never get each
+ *  other's paths; requests for different paths run concurrently. The cache
+ *  keeps at most DEFAULT_MAX_PATHS paths (PathCache(maxPaths,
+ *  polylineBytes) sets another bound) and forgets the least recently used.
+ *
+ *  A map of n points holds n(n-1) paths, so they are kept small: a path
+ *  has its endpoints, its distance as a float and its time as an int; the
+ *  session keeps the distances and times between its points in matrices
+ *  of primitives; and the overview polylines, which only the visible paths
+ *  need, are stored apart in the PathCache's PolylineStore, compressed
+ *  and within a heap budget (PathCache(polylineBytes)), the least recently
+ *  used ones on disk. That budget is for the polylines only; the paths
+ *  themselves are bounded by their number (maxPaths). With 80 points
+ *  (6320 paths of 200-point polylines, from a local server), the map
+ *  takes 5.6 MB of heap with the default budget, 3.7 MB of it polylines,
+ *  and 3.0 MB with a budget of 1 MB: about 300 bytes per path besides its
+ *  polyline (path, key, cache entry and matrix cells), so the default
+ *  bound of 65536 paths holds about 20 MB of them. Keyed by request URL
+ *  (a String of about 150 characters with the API key), the cache took
+ *  0.9 MB more.
+ *
+ *  The Directions and Static Maps URLs can be changed per session (e.g. to
+ *  point at a local stub or a proxy).
+ *
+ *  The map is drawn from as few Static Maps requests as possible: the
+ *  visible paths are decoded and joined in tour order into one polyline,
+ *  simplified with Douglas-Peucker to one pixel at the map's zoom (zoom and
+ *  center are computed here rather than left to the API, so the tolerance
+ *  is known) and encoded again, and all the points share one markers
+ *  parameter. Only if that still doesn't fit in a URL (over 8000
+ *  characters) is the canvas split into tiles with the same zoom, each
+ *  drawing the part of the tour that crosses it.
+ *
+ *  Map images go through a MapImageCache (by default one shared by all
+ *  sessions, in memory and in the temporary directory): a map that was
+ *  shown before is drawn from it, and after each openMap() the maps one
+ *  zoom level in and out are prefetched in the background, so zoomIn() or
+ *  zoomOut() followed by openMap() draws at once. zoomIn() and zoomOut()
+ *  start from the zoom of the map as shown.
+ *
+ *  With setLocalRendering(true), openMap() draws the map itself instead
+ *  (MapRenderer): the decoded polylines and the markers, projected like
+ *  the static maps, on a plain background, with no request and no limit
+ *  on the number of points. renderMap() and saveMap() draw it offscreen.
+ *  panMap() moves the center by a number of pixels.
+ *
+ *  MapSession session = new MapSession(staticMapKey, directionsKey);
+ *  session.setTransportationMode("driving");
+ *  session.addPoint(40.35025, -74.65219);
+ *  session.addPoint(40.34187, -74.65904);
+ *  double meters = session.getMapDistance(40.35025, -74.65219, 40.34187, -74.65904);
+ *
+ **************************************************************************** */
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Pattern;
+import javax.imageio.ImageIO;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public final class MapSession {
+    // helper classes
+    private static final class Location {
+        public final double lng;
+        public final double lat;
+
+        // other constants
+        private static final double MIN_LAT = -180.0;
+        private static final double MAX_LAT = 180.0;
+        private static final double MIN_LNG = -85.05115;
+        private static final double MAX_LNG = 85;
+
+        // constructors
+        public Location(double ln, double la) {
+            if (la < MIN_LAT || ln < MIN_LNG || la > MAX_LAT || ln > MAX_LNG) {
+                throw new IllegalArgumentException("Coordinates exceed world bounds");
+            }
+            lng = process(ln);
+            lat = process(la);
+        }
+
+        public boolean equals(Object that) {
+            if (that instanceof Location)
+                return ((Location)that).lng == lng && ((Location)that).lat == lat;
+            return false;
+        }
+
+        public int hashCode() {
+            return (int)Math.round(((lng - MIN_LNG) * (MAX_LAT-MIN_LAT) + lat-MIN_LAT)* 100000);
+        }
+
+        // ensure accuracy of max 5 decimals
+        private double process(double value) {
+            return (double)Math.round(value * 100000d) / 100000d;
+        }
+
+        public String toString() {
+            return lng + "," + lat;
+        }
+    }
+
+
+    // a fetched path, kept small since a map of n points has n(n-1) of
+    // them: the polyline is in the PathCache's PolylineStore, by id
+    private static final class Path {
+        // identifiers
+        public final Location start;
+        public final Location end;
+        private final int polyline;     // id in the PolylineStore, or -1 if the path is not possible
+
+        // path stats
+        private final float distance;   // in meters, or -1 if the path is not possible
+        private final int time;         // in seconds
+
+
+        // constructors (also perform call to API)
+        public Path(Location start, Location end, String requestUrl, PolylineStore polylines) {
+            this.start = start;
+            this.end = end;
+            // start request
+            String req = Request.request(requestUrl);
+            JSONObject res = new JSONObject(req);
+            String status = res.getString("status");
+
+            switch(status) {
+                case "OK": {
+                    assert(res.has("routes"));
+                    JSONObject route = res.getJSONArray("routes").getJSONObject(0);
+                    JSONArray legs = route.getJSONArray("legs");
+
+                    // get path id
+                    this.polyline = polylines.add(route.getJSONObject("overview_polyline").getString("points"));
+
+                    // get distance (whole meters and seconds, as the API gives them)
+                    int distance = 0, time = 0;
+                    for (int i = 0; i < legs.length(); i++) {
+                        JSONObject leg = legs.getJSONObject(i);
+                        distance += leg.getJSONObject("distance").getInt("value");
+                        time += leg.getJSONObject("duration").getInt("value");
+                    }
+                    this.distance = distance;
+                    this.time = time;
+                    return;
+                }
+                case "MAX_WAYPOINTS_EXCEEDED":
+                case "MAX_ROUTE_LENGTH_EXCEEDED":
+                case "ZERO_RESULTS": {
+                    break;
+                }
+                case "INVALID_REQUEST":
+                case "NOT_FOUND": throw new IllegalArgumentException("Invalid coordinates for the path - couldn't geocode");
+                case "REQUEST_DENIED": throw new IllegalArgumentException("Directions API key is not correct");
+                case "OVER_QUERY_LIMIT":
+                case "OVER_DAILY_LIMIT": throw new IllegalArgumentException("Directions API key is obsolete, " +
+                        "or the daily limit has been exceded.");
+                default: {
+                    System.err.println("Unknown error when sending an API request.");
+                    break;
+                }
+            }
+            // default  - no path between the two
+            this.distance = -1;
+            this.time = -1;
+            this.polyline = -1;
+        }
+
+        // paths are directed: with one-way streets and transit, start -> end
+        // and end -> start are different paths with different stats
+        public boolean equals(Object that) {
+            if (that instanceof Path)
+                return ((Path)that).start.equals(start) && ((Path)that).end.equals(end);
+            return false;
+        }
+
+        public int hashCode() {
+            return 31 * start.hashCode() + end.hashCode();
+        }
+
+
+        // gets the length of the available path in meters or or -1 if the path is not possible
+        public double getDistance() {
+            return distance;
+        }
+
+        public double getTime() {
+            return time;
+        }
+
+        // returns whether there is any path available or null if the path is not possible
+        public boolean isPossible() {
+            return distance >= 0;
+        }
+    }
+
+    private static final class Request {
+        public static String request(String targetURL) {
+            HttpURLConnection connection = null;
+
+            try {
+                //Create connection
+                URL url = new URL(targetURL);
+                connection = (HttpURLConnection) url.openConnection();
+                connection.setRequestMethod("GET");
+                connection.setUseCaches(true);
+
+                //Get Response
+                InputStream is = connection.getInputStream();
+                BufferedReader rd = new BufferedReader(new InputStreamReader(is));
+                StringBuilder response = new StringBuilder(); // or StringBuffer if Java version 5+
+                String line;
+                while ((line = rd.readLine()) != null) {
+                    response.append(line);
+                    response.append('\r');
+                }
+                rd.close();
+                return response.toString();
+            } catch (Exception e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+            }
+        }
+    }
+
+    // what a fetched path depends on: its endpoints, the mode and the
+    // Directions URL, but not the API key, which doesn't change the path.
+    // The mode and the URL are the session's Strings, shared by all its
+    // keys, so a key is four references
+    private static final class Key {
+        private final Location start;
+        private final Location end;
+        private final String mode;
+        private final String directionsUrl;
+
+        public Key(Location start, Location end, String mode, String directionsUrl) {
+            this.start = start;
+            this.end = end;
+            this.mode = mode;
+            this.directionsUrl = directionsUrl;
+        }
+
+        public boolean equals(Object that) {
+            if (!(that instanceof Key)) return false;
+            Key k = (Key) that;
+            return k.start.equals(start) && k.end.equals(end)
+                && k.mode.equals(mode) && k.directionsUrl.equals(directionsUrl);
+        }
+
+        public int hashCode() {
+            return 31 * (31 * (31 * start.hashCode() + end.hashCode()) + mode.hashCode()) + directionsUrl.hashCode();
+        }
+    }
+
+    // fetched paths by Key, shareable between sessions; each path is
+    // requested once, by the first thread that asks for it, while the
+    // others wait for that request instead of making their own. At most
+    // maxPaths paths are kept, the least recently used ones are forgotten
+    // (with their polylines) and requested again if they are needed. The
+    // polylines of the paths are kept apart, within a heap budget
+    public static final class PathCache {
+        public static final int DEFAULT_MAX_PATHS = 1 << 16;
+
+        private final int maxPaths;
+        // guarded by this
+        private final LinkedHashMap<Key, FutureTask<Path>> paths =
+            new LinkedHashMap<Key, FutureTask<Path>>(16, 0.75f, true);
+        private final PolylineStore polylines;
+
+        // creates a cache of at most DEFAULT_MAX_PATHS paths that keeps at
+        // most PolylineStore.DEFAULT_BUDGET bytes of polylines on the heap
+        public PathCache() {
+            this(DEFAULT_MAX_PATHS, PolylineStore.DEFAULT_BUDGET);
+        }
+
+        // creates a cache of at most DEFAULT_MAX_PATHS paths that keeps at
+        // most polylineBytes bytes of polylines on the heap (the others go
+        // to disk)
+        public PathCache(long polylineBytes) {
+            this(DEFAULT_MAX_PATHS, polylineBytes);
+        }
+
+        // creates a cache of at most maxPaths paths that keeps at most
+        // polylineBytes bytes of polylines on the heap
+        public PathCache(int maxPaths, long polylineBytes) {
+            if (maxPaths < 1) throw new IllegalArgumentException("The cache must hold at least one path");
+            this.maxPaths = maxPaths;
+            this.polylines = new PolylineStore(polylineBytes);
+        }
+
+        // returns the number of paths in this cache
+        public synchronized int size() {
+            return paths.size();
+        }
+
+        // returns the most paths this cache keeps
+        public int maxPaths() {
+            return maxPaths;
+        }
+
+        // returns the store of the polylines of the paths
+        public PolylineStore polylines() {
+            return polylines;
+        }
+
+        // forgets all paths
+        public synchronized void clear() {
+            paths.clear();
+            polylines.clear();
+        }
+
+        private Path get(Key key, String requestUrl) {
+            FutureTask<Path> task, fetch = null;
+            synchronized (this) {
+                task = paths.get(key);
+                if (task == null) {
+                    task = fetch = new FutureTask<Path>(() -> new Path(key.start, key.end, requestUrl, polylines));
+                    paths.put(key, fetch);
+                    evict();
+                }
+            }
+            // the request is made outside the lock: other paths don't wait
+            if (fetch != null) fetch.run();
+            try {
+                return task.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while fetching a path", e);
+            }
+            catch (ExecutionException e) {
+                // don't keep failures: the next caller tries again
+                synchronized (this) {
+                    if (paths.get(key) == task) paths.remove(key);
+                }
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new IllegalStateException("Could not fetch a path", e.getCause());
+            }
+        }
+
+        // forgets the least recently used paths, and their polylines, until
+        // at most maxPaths are left (a path still being requested keeps its
+        // polyline, which the store spills to disk in time)
+        private void evict() {
+            Iterator<FutureTask<Path>> it = paths.values().iterator();
+            while (paths.size() > maxPaths && it.hasNext()) {
+                FutureTask<Path> task = it.next();
+                it.remove();
+                if (!task.isDone()) continue;
+                try {
+                    Path p = task.get();
+                    if (p.polyline >= 0) polylines.remove(p.polyline);
+                }
+                catch (InterruptedException | ExecutionException e) {
+                    // a done task doesn't wait; a failed one has no polyline
+                }
+            }
+        }
+
+        // returns the encoded polyline of the path, requesting it again
+        // (from requestUrl) if the store lost it, or null if there is none
+        private String polyline(Path p, String requestUrl) {
+            if (p.polyline < 0) return null;
+            String polyline = polylines.get(p.polyline);
+            if (polyline != null) return polyline;
+            JSONObject res = new JSONObject(Request.request(requestUrl));
+            if (!res.getString("status").equals("OK")) return null;
+            polyline = res.getJSONArray("routes").getJSONObject(0)
+                          .getJSONObject("overview_polyline").getString("points");
+            polylines.put(p.polyline, polyline);
+            return polyline;
+        }
+    }
+
+    // the points of a map, in the order they were added, and the distances
+    // and times of the paths between them, in row-major matrices of
+    // primitives (capacity by capacity), so that getMapDistance() is an
+    // array read; the paths themselves stay in the PathCache
+    private static final class PathMatrix {
+        private final HashMap<Location, Integer> index = new HashMap<Location, Integer>();
+        private Location[] points = new Location[8];
+        private float[] distances = new float[64];
+        private int[] times = new int[64];
+        private int n;
+
+        private int size() {
+            return n;
+        }
+
+        private boolean contains(Location l) {
+            return index.containsKey(l);
+        }
+
+        // returns the index of l, or -1 if it is not a point of the map
+        private int indexOf(Location l) {
+            Integer i = index.get(l);
+            return (i == null) ? -1 : i;
+        }
+
+        // returns the points, in order
+        private List<Location> points() {
+            return Arrays.asList(Arrays.copyOf(points, n));
+        }
+
+        // adds l (not a point yet) and returns its index
+        private int add(Location l) {
+            int capacity = points.length;
+            if (n == capacity) {
+                float[] d = new float[4 * capacity * capacity];
+                int[] t = new int[4 * capacity * capacity];
+                for (int i = 0; i < n; i++) {
+                    System.arraycopy(distances, i * capacity, d, i * 2 * capacity, n);
+                    System.arraycopy(times, i * capacity, t, i * 2 * capacity, n);
+                }
+                distances = d;
+                times = t;
+                points = Arrays.copyOf(points, 2 * capacity);
+            }
+            points[n] = l;
+            index.put(l, n);
+            return n++;
+        }
+
+        // records the path from point i to point j
+        private void set(int i, int j, Path p) {
+            distances[i * points.length + j] = (float) p.getDistance();
+            times[i * points.length + j] = (int) p.getTime();
+        }
+
+        private double distance(int i, int j) {
+            return distances[i * points.length + j];
+        }
+
+        private double time(int i, int j) {
+            return times[i * points.length + j];
+        }
+
+        // removes l, moving the last point into its index
+        private void remove(Location l) {
+            Integer removed = index.remove(l);
+            if (removed == null) return;
+            int i = removed, last = n - 1, capacity = points.length;
+            if (i != last) {
+                points[i] = points[last];
+                index.put(points[i], i);
+                System.arraycopy(distances, last * capacity, distances, i * capacity, n);
+                System.arraycopy(times, last * capacity, times, i * capacity, n);
+                for (int k = 0; k < n; k++) {
+                    distances[k * capacity + i] = distances[k * capacity + last];
+                    times[k * capacity + i] = times[k * capacity + last];
+                }
+                distances[i * capacity + i] = 0;
+                times[i * capacity + i] = 0;
+            }
+            points[last] = null;
+            n--;
+        }
+    }
+
+    // constants
+    private static final String STATIC_MAP_URL = "https://maps.googleapis.com/maps/api/staticmap";
+    private static final String DIRECTIONS_URL = "https://maps.googleapis.com/maps/api/directions/json";
+    private static final int DEFAULT_MAP_WIDTH = 500;
+    private static final int  DEFAULT_MAP_HEIGHT = 500;
+    private static final int DEFAULT_INFOBOX_WIDTH = 360;
+    private static final String DEFAULT_MODE = "walking";
+    private static final String DEFAULT_PATH_COLOR = "0x000000";
+    private static final String DEFAULT_POINT_COLOR = "0xFF0000";
+    private static final int MAX_URL_CHARS = 8000; // it's actually 8192 but just in case, leaving space for the key
+    private static final double SIMPLIFY_PIXELS = 1.0;      // Douglas-Peucker tolerance at the map's zoom
+    private static final double MAX_SIMPLIFY_PIXELS = 2.0;  // coarsest tolerance before splitting into tiles
+    private static final int TILE_MARGIN = 8;               // pixels; markers and paths this close are drawn
+    private static final int MIN_TILE = 64;                 // pixels; smallest tile side
+    private static final int FIT_MARGIN = 16;               // pixels kept free around the fitted contents
+    private static final int MAX_FIT_ZOOM = 18;
+    private static final String[] TRANSPORTATION_MODE = new String[]{"driving", "walking", "bicycling", "transit"};
+
+    // needs to be setup
+    private PathMatrix graph;
+    private Set<Path> visiblePaths;
+    private String staticMapApiKey;
+    private String directionsApiKey;
+    private final PathCache cache;
+    private MapImageCache imageCache;
+
+    // things that could be set
+    private String staticMapUrl;
+    private String directionsUrl;
+    private int canvasWidth;
+    private int canvasHeight;
+    private String mode;
+    private String pathColor;
+    private String pointColor;
+    private Location center;
+    private boolean showPoints;
+    private int zoom;
+    private boolean defaultZoom;
+    private boolean infoboxOn;
+    private int infoboxWidth;
+    private LinkedList<String> messages;
+    private int maxMessages;
+
+    // touched only by me
+    private boolean apiKeysSet;
+    private long maps;                      // openMap() calls, to tell the latest
+    private boolean localRendering;
+    private MapRenderer renderer;           // of the paths and points below, or null
+    private Set<Path> renderedPaths;
+    private List<Location> renderedPoints;
+    private List<double[]> lines;           // tourLines() of the paths below, or null
+    private Set<Path> linesPaths;
+
+    // StdDraw canvas size last set by any session, guarded by StdDraw.class
+    private static int stdDrawWidth, stdDrawHeight;
+
+    // creates a session without API keys (set them with setApiKeys) and
+    // with its own path cache
+    public MapSession() {
+        this(new PathCache());
+    }
+
+    // creates a session without API keys that shares the given path cache
+    public MapSession(PathCache cache) {
+        if (cache == null) throw new IllegalArgumentException("Path cache can't be null");
+        this.cache = cache;
+        this.imageCache = MapImageCache.getDefault();
+        init();
+    }
+
+    // creates a session with the given API keys and its own path cache
+    public MapSession(String staticMapKey, String directionsKey) {
+        this(staticMapKey, directionsKey, new PathCache());
+    }
+
+    // creates a session with the given API keys that shares the given path cache
+    public MapSession(String staticMapKey, String directionsKey, PathCache cache) {
+        this(cache);
+        setApiKeys(staticMapKey, directionsKey);
+    }
+
+    private void init() {
+        this.graph = null;
+        this.visiblePaths = null;
+        this.staticMapApiKey = null;
+        this.directionsApiKey = null;
+        this.staticMapUrl = STATIC_MAP_URL;
+        this.directionsUrl = DIRECTIONS_URL;
+        this.canvasWidth = DEFAULT_MAP_WIDTH;
+        this.canvasHeight = DEFAULT_MAP_HEIGHT;
+        this.mode = DEFAULT_MODE;
+        this.pathColor = DEFAULT_PATH_COLOR;
+        this.pointColor = DEFAULT_POINT_COLOR;
+        this.center = null;
+        this.zoom = 5;
+        this.showPoints = true;
+        this.apiKeysSet = false;
+        this.defaultZoom = true;
+        this.infoboxOn = false;
+        this.infoboxWidth = DEFAULT_INFOBOX_WIDTH;
+        this.messages = new LinkedList<String>();
+        this.maxMessages = (this.canvasHeight - 10) / 20;
+    }
+
+    // returns the path cache of this session
+    public PathCache getPathCache() {
+        return cache;
+    }
+
+    // sets the cache of static map images (by default MapImageCache.getDefault(),
+    // shared by all sessions); null fetches every map again
+    public synchronized void setImageCache(MapImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    // returns a new empty session with the API keys, URLs, mode, path cache
+    // and image cache of this one; the keys are not validated again
+    public synchronized MapSession newSession() {
+        MapSession session = new MapSession(this.cache);
+        session.staticMapUrl = this.staticMapUrl;
+        session.directionsUrl = this.directionsUrl;
+        session.staticMapApiKey = this.staticMapApiKey;
+        session.directionsApiKey = this.directionsApiKey;
+        session.apiKeysSet = this.apiKeysSet;
+        session.mode = this.mode;
+        session.imageCache = this.imageCache;
+        return session;
+    }
+
+    public synchronized String addMessage(String m) {
+        this.messages.add(m);
+        String popped = null;
+        while (this.messages.size() > this.maxMessages) popped = this.messages.pop();
+        return popped;
+    }
+
+    // fetches (or finds in the cache) the path from start to end in the current mode
+    private Path fetch(Location start, Location end) {
+        if (!this.apiKeysSet) throw new IllegalStateException("API calls can't be made until all API keys are set");
+        return cache.get(new Key(start, end, this.mode, this.directionsUrl), getReqURL(start, end));
+    }
+
+    // get path request url
+    private String getReqURL(Location start, Location end) {
+        assert(this.directionsApiKey != null);
+        StringBuilder url = new StringBuilder(this.directionsUrl);
+
+        url.append("?mode=");
+        url.append(this.mode);
+
+        url.append("&origin=");
+        url.append(start.toString());
+
+        url.append("&destination=");
+        url.append(end.toString());
+
+        url.append("&key=");
+        url.append(this.directionsApiKey);
+        return url.toString();
+    }
+
+    // adds point to the graph to be displayed
+    // add records *possible* paths between points
+    private void addPoint(Location l) {
+        if (this.graph == null) this.graph = new PathMatrix();
+        if (this.graph.contains(l)) return;
+        int i = this.graph.add(l);
+        for (int j = 0; j < i; j++) {
+            Location it = this.graph.points[j];
+            // paths might be different, so both directions are fetched
+            this.graph.set(i, j, fetch(l, it));
+            this.graph.set(j, i, fetch(it, l));
+        }
+    }
+
+    // adds point to the graph to be displayed
+    // add records *possible* paths between points
+    public synchronized void addPoint(double lng, double lat) {
+        addPoint(new Location(lng, lat));
+    }
+
+    // makes specified path visible on the map to be created
+    private void addVisiblePath(Path p) {
+        if (!p.isPossible())
+            throw new IllegalArgumentException("Impossible path can't be drawn to map");
+        if (!this.graph.contains(p.start) && !this.graph.contains(p.end))
+            throw new IllegalArgumentException("Path contains endpoints that are not on the map");
+
+        if (this.visiblePaths == null) this.visiblePaths = new HashSet<Path>();
+        this.visiblePaths.add(p);
+    }
+
+
+    public synchronized void addVisiblePath(double startlng, double startlat, double endlng, double endlat) {
+        addVisiblePath(getPath(new Location(startlng, startlat), new Location(endlng, endlat)));
+    }
+
+    // returns the path from a to b, from the path cache (where the paths
+    // between the points on the map already are), or from the API
+    private Path getPath(Location a, Location b) {
+        return fetch(a, b);
+    }
+
+    // returns the encoded polyline of the path, or null if it has none
+    private String polyline(Path p) {
+        return cache.polyline(p, getReqURL(p.start, p.end));
+    }
+
+    // clears the map of all points in the graph and all visible paths
+    public synchronized void clear() {
+        setPoints((Location[])null);
+    }
+
+    // clears all visible paths
+    public synchronized void clearPaths() {
+        setVisiblePaths((Path[])null);
+    }
+
+
+    // one static map image and where it goes on the canvas, in pixels from
+    // the top left corner
+    private static final class Tile {
+        private final String url;
+        private final int left, top, width, height;
+
+        private Tile(String url, int left, int top, int width, int height) {
+            this.url = url;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    // a polyline in latitude/longitude and in world pixels at the map's zoom
+    private static final class Line {
+        private final double[] latlng;      // {lat0, lng0, lat1, lng1, ...}
+        private final double[] xs, ys;
+        private final int n;
+
+        private Line(double[] latlng, int zoom) {
+            this.latlng = latlng;
+            n = latlng.length / 2;
+            xs = new double[n];
+            ys = new double[n];
+            for (int i = 0; i < n; i++) {
+                xs[i] = Polyline.mercatorX(latlng[2*i + 1], zoom);
+                ys[i] = Polyline.mercatorY(latlng[2*i], zoom);
+            }
+        }
+
+        // returns this line without the points that move it less than tolerance pixels
+        private Line simplify(double tolerance, int zoom) {
+            boolean[] keep = new boolean[n];
+            int kept = Polyline.simplify(xs, ys, n, tolerance, keep);
+            double[] points = new double[2 * kept];
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                if (!keep[i]) continue;
+                points[k++] = latlng[2*i];
+                points[k++] = latlng[2*i + 1];
+            }
+            return new Line(points, zoom);
+        }
+    }
+
+    // joins the visible paths into as few polylines as possible, following
+    // each path with the one that starts where it ends (for a tour: one
+    // closed polyline); a path without a polyline is a straight segment.
+    // Kept until the visible paths change
+    private List<double[]> tourLines() {
+        Set<Path> paths = (this.visiblePaths == null) ? new HashSet<Path>() : this.visiblePaths;
+        if (this.lines != null && paths.equals(this.linesPaths)) return this.lines;
+        this.linesPaths = new HashSet<Path>(paths);
+        this.lines = new ArrayList<double[]>();
+        List<double[]> lines = this.lines;
+        if (this.visiblePaths == null) return lines;
+        Map<Location, Deque<Path>> outgoing = new HashMap<Location, Deque<Path>>();
+        Map<Location, Integer> incoming = new HashMap<Location, Integer>();
+        for (Path p : this.visiblePaths) {
+            outgoing.computeIfAbsent(p.start, l -> new ArrayDeque<Path>()).add(p);
+            incoming.merge(p.end, 1, Integer::sum);
+        }
+        int left = this.visiblePaths.size();
+        while (left > 0) {
+            // start open chains at a point nothing leads to, then the cycles
+            Location first = null;
+            for (Map.Entry<Location, Deque<Path>> e : outgoing.entrySet()) {
+                if (e.getValue().isEmpty()) continue;
+                if (first == null || incoming.getOrDefault(e.getKey(), 0) == 0) first = e.getKey();
+                if (incoming.getOrDefault(first, 0) == 0) break;
+            }
+            double[] points = new double[64];
+            int count = 0;
+            for (Location at = first; outgoing.containsKey(at) && !outgoing.get(at).isEmpty(); ) {
+                Path p = outgoing.get(at).poll();
+                incoming.merge(p.end, -1, Integer::sum);
+                left--;
+                String id = polyline(p);
+                double[] leg = (id == null || id.isEmpty())
+                    ? new double[] { p.start.lng, p.start.lat, p.end.lng, p.end.lat }
+                    : Polyline.decode(id);
+                for (int i = 0; i < leg.length; i += 2) {
+                    // legs meet at a shared point; keep it once
+                    if (count >= 2 && points[count - 2] == leg[i] && points[count - 1] == leg[i + 1]) continue;
+                    if (count + 2 > points.length) points = Arrays.copyOf(points, 2 * points.length);
+                    points[count++] = leg[i];
+                    points[count++] = leg[i + 1];
+                }
+                at = p.end;
+            }
+            lines.add(Arrays.copyOf(points, count));
+        }
+        return lines;
+    }
+
+    // returns the largest zoom at which everything fits on the canvas
+    // around the given center (world pixels at zoom 0)
+    private int fitZoom(List<double[]> lines, double cx, double cy) {
+        double half = 0.0, halfY = 0.0;
+        for (double[] line : lines) {
+            for (int i = 0; i < line.length; i += 2) {
+                half = Math.max(half, Math.abs(Polyline.mercatorX(line[i + 1], 0) - cx));
+                halfY = Math.max(halfY, Math.abs(Polyline.mercatorY(line[i], 0) - cy));
+            }
+        }
+        for (Location l : this.graph.points()) {
+            half = Math.max(half, Math.abs(Polyline.mercatorX(l.lat, 0) - cx));
+            halfY = Math.max(halfY, Math.abs(Polyline.mercatorY(l.lng, 0) - cy));
+        }
+        double w = this.canvasWidth / 2.0 - FIT_MARGIN, h = this.canvasHeight / 2.0 - FIT_MARGIN;
+        for (int z = MAX_FIT_ZOOM; z > 0; z--) {
+            double scale = 1L << z;
+            if (half * scale <= w && halfY * scale <= h) return z;
+        }
+        return 0;
+    }
+
+    // returns the center of the map in world pixels at zoom 0: the user's,
+    // or the middle of the points and the lines
+    private double[] mapCenter(List<double[]> latlngs) {
+        if (this.center != null)
+            return new double[] { Polyline.mercatorX(this.center.lat, 0), Polyline.mercatorY(this.center.lng, 0) };
+
+        double x0 = Double.POSITIVE_INFINITY, x1 = Double.NEGATIVE_INFINITY;
+        double y0 = Double.POSITIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+        for (Location l : this.graph.points()) {
+            x0 = Math.min(x0, Polyline.mercatorX(l.lat, 0));
+            x1 = Math.max(x1, Polyline.mercatorX(l.lat, 0));
+            y0 = Math.min(y0, Polyline.mercatorY(l.lng, 0));
+            y1 = Math.max(y1, Polyline.mercatorY(l.lng, 0));
+        }
+        for (double[] line : latlngs) {
+            for (int i = 0; i < line.length; i += 2) {
+                x0 = Math.min(x0, Polyline.mercatorX(line[i + 1], 0));
+                x1 = Math.max(x1, Polyline.mercatorX(line[i + 1], 0));
+                y0 = Math.min(y0, Polyline.mercatorY(line[i], 0));
+                y1 = Math.max(y1, Polyline.mercatorY(line[i], 0));
+            }
+        }
+        return new double[] { (x0 + x1) / 2, (y0 + y1) / 2 };
+    }
+
+    // returns the zoom of the map: the user's, or the largest that shows everything
+    private int mapZoom() {
+        if (!this.defaultZoom || this.graph == null) return this.zoom;
+        List<double[]> latlngs = tourLines();
+        double[] c = mapCenter(latlngs);
+        return fitZoom(latlngs, c[0], c[1]);
+    }
+
+    // returns the static map requests that draw the map at zoom z: one URL with all
+    // the points and the tour merged into one polyline, simplified to what
+    // is visible at the zoom level; several tiles only if even the
+    // simplified tour can't fit in one URL
+    private List<Tile> createMapTiles(int z) { // include API key in parameters
+        assert(this.graph != null);
+        List<double[]> latlngs = tourLines();
+        double[] c = mapCenter(latlngs);
+        double cx = c[0] * (1L << z), cy = c[1] * (1L << z);
+
+        List<Line> lines = new ArrayList<Line>();
+        for (double[] line : latlngs) lines.add(new Line(line, z));
+        List<Tile> tiles = new ArrayList<Tile>();
+        double left = cx - this.canvasWidth / 2.0, top = cy - this.canvasHeight / 2.0;
+        // one pixel first; two pixels still look the same, and beat splitting
+        for (double tolerance = SIMPLIFY_PIXELS; tolerance <= MAX_SIMPLIFY_PIXELS; tolerance *= 2) {
+            List<Line> simple = new ArrayList<Line>();
+            for (Line line : lines) simple.add(line.simplify(tolerance, z));
+            String url = tileUrl(simple, z, left, top, this.canvasWidth, this.canvasHeight);
+            if (url != null) {
+                tiles.add(new Tile(url, 0, 0, this.canvasWidth, this.canvasHeight));
+                return tiles;
+            }
+            if (tolerance * 2 > MAX_SIMPLIFY_PIXELS) {
+                addTiles(tiles, simple, z, left, top, 0, 0, this.canvasWidth, this.canvasHeight);
+            }
+        }
+        return tiles;
+    }
+
+    // covers the canvas rectangle (x, y, width, height), whose top left corner
+    // is at world pixel (left + x, top + y), with as few tiles as possible,
+    // halving the longer side until each tile's URL fits
+    private void addTiles(List<Tile> tiles, List<Line> lines, int z, double left, double top,
+                          int x, int y, int width, int height) {
+        String url = tileUrl(lines, z, left + x, top + y, width, height);
+        if (url != null) {
+            tiles.add(new Tile(url, x, y, width, height));
+            return;
+        }
+        if (width <= MIN_TILE && height <= MIN_TILE) {
+            System.err.println("Map too detailed to draw this part in one request; zoom in");
+            tiles.add(new Tile(tileUrl(new ArrayList<Line>(), z, left + x, top + y, width, height),
+                               x, y, width, height));
+            return;
+        }
+        if (width >= height) {
+            int w = width / 2;
+            addTiles(tiles, lines, z, left, top, x, y, w, height);
+            addTiles(tiles, lines, z, left, top, x + w, y, width - w, height);
+        }
+        else {
+            int h = height / 2;
+            addTiles(tiles, lines, z, left, top, x, y, width, h);
+            addTiles(tiles, lines, z, left, top, x, y + h, width, height - h);
+        }
+    }
+
+    // returns the URL of the static map of the world-pixel rectangle with
+    // top left corner (left, top) at zoom z, with the points and the parts
+    // of the lines that show in it, or null if it would be too long
+    private String tileUrl(List<Line> lines, int z, double left, double top, int width, int height) {
+        StringBuilder url = new StringBuilder(this.staticMapUrl);
+        url.append("?size=").append(width).append("x").append(height);
+        url.append("&center=").append(String.format("%.6f,%.6f",
+                   Polyline.latitude(top + height / 2.0, z), Polyline.longitude(left + width / 2.0, z)));
+        url.append("&zoom=").append(z);
+
+        // things within a margin outside the tile are drawn partly inside it
+        double x0 = left - TILE_MARGIN, x1 = left + width + TILE_MARGIN;
+        double y0 = top - TILE_MARGIN, y1 = top + height + TILE_MARGIN;
+
+        // add points: the first one larger, the others in a single group
+        if (this.showPoints) {
+            boolean isFirst = true;
+            StringBuilder others = new StringBuilder();
+            for (Location l : this.graph.points()) {
+                double px = Polyline.mercatorX(l.lat, z), py = Polyline.mercatorY(l.lng, z);
+                boolean inside = px >= x0 && px <= x1 && py >= y0 && py <= y1;
+                if (isFirst) {
+                    if (inside) url.append("&markers=size:mid%7Ccolor:").append(this.pointColor)
+                                   .append("%7C").append(l.toString());
+                    isFirst = false;
+                }
+                else if (inside) others.append("%7C").append(l.toString());
+            }
+            if (others.length() > 0)
+                url.append("&markers=size:tiny%7Ccolor:").append(this.pointColor).append(others);
+        }
+
+        // add the runs of each line that cross the tile
+        for (Line line : lines) {
+            int run = -1;
+            for (int i = 0; i + 1 < line.n; i++) {
+                boolean crosses = Math.max(line.xs[i], line.xs[i + 1]) >= x0
+                               && Math.min(line.xs[i], line.xs[i + 1]) <= x1
+                               && Math.max(line.ys[i], line.ys[i + 1]) >= y0
+                               && Math.min(line.ys[i], line.ys[i + 1]) <= y1;
+                if (crosses && run == -1) run = i;
+                if (run != -1 && (!crosses || i + 2 == line.n)) {
+                    int end = crosses ? i + 1 : i;
+                    double[] points = Arrays.copyOfRange(line.latlng, 2 * run, 2 * end + 2);
+                    // in the url below the 80 after the color is the alpha value (transparency)
+                    url.append("&path=weight:3%7Ccolor:").append(this.pathColor).append("80%7Cenc:")
+                       .append(escape(Polyline.encode(points, end - run + 1)));
+                    run = -1;
+                }
+            }
+            if (url.length() >= MAX_URL_CHARS) return null;
+        }
+
+        url.append("&maptype=roadmap");
+        url.append("&key=");
+        url.append(this.staticMapApiKey);
+        if (url.length() >= MAX_URL_CHARS) return null;
+        return url.toString();
+    }
+
+    // escapes the characters of an encoded polyline that can't appear in a URL
+    private static String escape(String polyline) {
+        StringBuilder s = new StringBuilder(polyline.length());
+        for (int i = 0; i < polyline.length(); i++) {
+            char c = polyline.charAt(i);
+            if (c == '\\' || c == '`' || c == '^' || c == '{' || c == '|' || c == '}')
+                s.append('%').append(String.format("%02X", (int) c));
+            else s.append(c);
+        }
+        return s.toString();
+    }
+
+    // returns the Static Maps URLs openMap() draws, one per tile
+    public synchronized List<String> getMapUrls() {
+        List<String> urls = new ArrayList<String>();
+        if (this.graph == null) return urls;
+        for (Tile tile : createMapTiles(mapZoom())) urls.add(tile.url);
+        return urls;
+    }
+
+    public synchronized void disableDefaultZoom() {
+        this.defaultZoom = false;
+    }
+
+    private void drawInfobox() {
+        // get timing and distance info
+        // display info
+        StdDraw.setFont();
+        StdDraw.setPenColor(StdDraw.BLACK);
+        StdDraw.setPenRadius();
+        int i = 0;
+        for (String m : this.messages) {
+            StdDraw.textLeft(this.canvasWidth + 5, this.canvasHeight - 20 - 20*i, m);
+            i++;
+        }
+    }
+
+    public synchronized void enableDefaultZoom() {
+        this.defaultZoom = true;
+    }
+
+    // from the matrix if both are points on the map, from the path otherwise
+    private double getMapDistance(Location a, Location b) {
+        if (a.equals(b)) return 0;
+        int i = (this.graph == null) ? -1 : this.graph.indexOf(a);
+        int j = (i == -1) ? -1 : this.graph.indexOf(b);
+        if (j != -1) return this.graph.distance(i, j);
+        return getPath(a, b).getDistance();
+    }
+
+    private double getMapTime(Location a, Location b) {
+        if (a.equals(b)) return 0;
+        int i = (this.graph == null) ? -1 : this.graph.indexOf(a);
+        int j = (i == -1) ? -1 : this.graph.indexOf(b);
+        if (j != -1) return this.graph.time(i, j);
+        return getPath(a, b).getTime();
+    }
+
+    public synchronized double getMapDistance(double startLng, double startLat, double endLng, double endLat) {
+        return getMapDistance(new Location(startLng, startLat), new Location(endLng, endLat));
+    }
+
+    // returns the travel time in seconds from start to end, or -1 if there is no path
+    public synchronized double getMapTime(double startLng, double startLat, double endLng, double endLat) {
+        return getMapTime(new Location(startLng, startLat), new Location(endLng, endLat));
+    }
+
+    // returns d[i][j] = map distance in meters from point i to point j, for
+    // the first n points; d[i][j] and d[j][i] can differ (one-way streets,
+    // transit), and an impossible path is -1
+    public synchronized double[][] getDistanceMatrix(double[] lngs, double[] lats, int n) {
+        return getMatrix(lngs, lats, n, false);
+    }
+
+    // returns t[i][j] = travel time in seconds from point i to point j, for
+    // the first n points; like distances, times are directed
+    public synchronized double[][] getTimeMatrix(double[] lngs, double[] lats, int n) {
+        return getMatrix(lngs, lats, n, true);
+    }
+
+    private double[][] getMatrix(double[] lngs, double[] lats, int n, boolean time) {
+        Location[] l = new Location[n];
+        for (int i = 0; i < n; i++) l[i] = new Location(lngs[i], lats[i]);
+        double[][] m = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                m[i][j] = time ? getMapTime(l[i], l[j]) : getMapDistance(l[i], l[j]);
+            }
+        }
+        return m;
+    }
+
+
+    // sums the visible paths, each in its own direction
+    public synchronized String getTotalDistance() {
+        int dist = 0; // in meters
+        for (Path p : visiblePaths) {
+            dist += p.getDistance();
+        }
+        String output = String.format("%.1f miles", metersToMiles(dist));
+        return output;
+    }
+
+    public synchronized String getTotalTime() {
+        int time = 0; // in secs
+        for (Path p : visiblePaths) {
+            time += p.getTime();
+        }
+
+        double mins = secsToMins(time);
+        int hours = (int)Math.floor(mins/60);
+        mins -= hours*60;
+
+        String output = "";
+
+        if (hours > 0) {
+            if (hours > 1) output += (hours + " hours");
+            else output += (hours + " hour");
+
+            if (mins > 0) output += " ";
+        }
+
+        if (mins > 0) {
+            if (mins == 1) output += "1 minute";
+            else output += String.format("%.1f minutes", mins);
+        }
+
+        return output;
+    }
+
+    public synchronized String getTransportationMode() {
+        return this.mode;
+    }
+
+    public synchronized void hideInfobox() {
+        this.infoboxOn = false;
+    }
+
+    public static boolean isTransportationModeSupported(String mode) {
+        String m = mode.toLowerCase();
+        for (int i = 0; i < TRANSPORTATION_MODE.length; i++)  {
+            if (m.equals(TRANSPORTATION_MODE[i])) return true;
+        }
+        return false;
+    }
+
+    private static double metersToMiles(int distance) {
+        return Math.round(distance/1609.344*10)/10d;
+    }
+
+    // opens map using StdDraw
+    // (there is one StdDraw window, shared by all sessions)
+    // sizes the StdDraw canvas for the map and the infobox, and clears it;
+    // the window is only made again if its size changes
+    private void setUpCanvas() {
+        int width = this.canvasWidth + (this.infoboxOn ? this.infoboxWidth : 0);
+        if (width != stdDrawWidth || this.canvasHeight != stdDrawHeight) {
+            StdDraw.setCanvasSize(width, this.canvasHeight);
+            stdDrawWidth = width;
+            stdDrawHeight = this.canvasHeight;
+        }
+        StdDraw.setXscale(0, width);
+        StdDraw.setYscale(0, this.canvasHeight);
+        StdDraw.enableDoubleBuffering();
+        StdDraw.clear();
+    }
+
+    // returns the local renderer of the visible paths and the points,
+    // made again only when they change
+    private MapRenderer renderer() {
+        Set<Path> paths = (this.visiblePaths == null) ? new HashSet<Path>() : this.visiblePaths;
+        if (this.renderer == null || !paths.equals(this.renderedPaths)
+                                  || !this.graph.points().equals(this.renderedPoints)) {
+            this.renderedPaths = new HashSet<Path>(paths);
+            this.renderedPoints = this.graph.points();
+            // in the order of the static maps' markers: the first one is larger
+            double[] points = new double[2 * this.graph.size()];
+            int k = 0;
+            for (Location l : this.graph.points()) {
+                points[k++] = l.lng;
+                points[k++] = l.lat;
+            }
+            this.renderer = new MapRenderer(tourLines(), points);
+        }
+        return this.renderer;
+    }
+
+    // returns the map as drawn locally (whatever setLocalRendering() says),
+    // with the infobox if it is shown, as an image
+    public synchronized BufferedImage renderMap() {
+        if (this.graph == null) throw new IllegalStateException("Locations not set");
+        int width = this.canvasWidth + (this.infoboxOn ? this.infoboxWidth : 0);
+        BufferedImage image = new BufferedImage(width, this.canvasHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, this.canvasHeight);
+        double[] c = mapCenter(tourLines());
+        renderer().paint(g, mapZoom(), c[0], c[1], this.canvasWidth, this.canvasHeight,
+                         Color.decode(this.pathColor), Color.decode(this.pointColor), this.showPoints);
+        if (this.infoboxOn) {
+            // as drawInfobox() does on the canvas
+            g.setColor(Color.BLACK);
+            g.setFont(new Font("SansSerif", Font.PLAIN, 16));
+            int baseline = g.getFontMetrics().getAscent() / 2;
+            int i = 0;
+            for (String m : this.messages) {
+                g.drawString(m, this.canvasWidth + 5, 20 + 20*i + baseline);
+                i++;
+            }
+        }
+        g.dispose();
+        return image;
+    }
+
+    // saves the map as drawn locally to a file (png, jpg or gif, by its extension)
+    public synchronized void saveMap(String filename) throws IOException {
+        String extension = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase();
+        if (!(extension.equals("png") || extension.equals("jpg") || extension.equals("gif")))
+            throw new IllegalArgumentException("Map can only be saved as png, jpg or gif");
+        ImageIO.write(renderMap(), extension, new File(filename));
+    }
+
+    // draws the map; the images are fetched without holding the session, so
+    // it can change meanwhile: a map superseded by a later openMap(), or
+    // whose thread is interrupted while it waits for its images, is not drawn
+    public void openMap() {
+        List<Tile> tiles;
+        MapImageCache images;
+        long map;
+        synchronized (this) {
+            if (this.graph == null) {
+                System.err.println("Locations not set");
+                return;
+            }
+            if (this.visiblePaths == null) System.err.println("Paths not set");
+            map = ++this.maps;
+
+            // drawn locally: nothing to wait for
+            if (this.localRendering) {
+                int z = mapZoom();
+                double[] c = mapCenter(tourLines());
+                synchronized (StdDraw.class) {
+                    setUpCanvas();
+                    renderer().draw(z, c[0], c[1], this.canvasWidth, this.canvasHeight,
+                                    Color.decode(this.pathColor), Color.decode(this.pointColor), this.showPoints);
+                    if (this.infoboxOn) drawInfobox();
+                    StdDraw.show();
+                }
+                return;
+            }
+            tiles = createMapTiles(mapZoom());
+            images = this.imageCache;
+        }
+
+        // what to pass to StdDraw.picture(): the image's file in the cache,
+        // or the URL itself if it can't be cached
+        String[] pictures = new String[tiles.size()];
+        for (int k = 0; k < pictures.length; k++) {
+            pictures[k] = tiles.get(k).url;
+            if (images == null) continue;
+            try {
+                pictures[k] = images.get(pictures[k]);
+            }
+            catch (InterruptedIOException e) {
+                return;
+            }
+            catch (IOException e) {
+                if (Thread.currentThread().isInterrupted()) return;
+                System.err.println("Could not cache the map: " + e.getMessage());
+            }
+        }
+
+        synchronized (this) {
+            if (map != this.maps || Thread.currentThread().isInterrupted()) return;
+            synchronized (StdDraw.class) {
+                setUpCanvas();
+                if (this.infoboxOn) drawInfobox();
+                for (int k = 0; k < pictures.length; k++) {
+                    Tile tile = tiles.get(k);
+                    StdDraw.picture(tile.left + tile.width/2d, this.canvasHeight - tile.top - tile.height/2d,
+                                    pictures[k], tile.width, tile.height);
+                }
+                StdDraw.show();
+            }
+
+            // the maps one zoom level in and out, so that zooming is instant
+            if (this.imageCache != null) {
+                int z = mapZoom();
+                for (int dz = -1; dz <= 1; dz += 2) {
+                    if (z + dz < 0 || z + dz > 20) continue;
+                    for (Tile tile : createMapTiles(z + dz)) this.imageCache.prefetch(tile.url);
+                }
+            }
+        }
+        // uncomment for timing
+        //System.exit(0);
+    }
+
+    // remove location from map
+    private void removePoint(Location l) {
+        if (this.graph == null || !this.graph.contains(l)) return;
+        this.graph.remove(l);
+        if (this.visiblePaths != null) {
+            Set<Path> save = new HashSet<Path>(this.visiblePaths);
+            for (Path p : save) {
+                if (p.start.equals(l) || p.end.equals(l)) {
+                    this.visiblePaths.remove(p);
+                }
+            }
+            if (this.visiblePaths.isEmpty()) this.visiblePaths = null;
+        }
+        if (this.graph.size() == 0) this.graph = null;
+    }
+
+    public synchronized void removePoint(double lng, double lat) {
+        removePoint(new Location(lng, lat));
+    }
+
+    // remove path from map
+    private void removeVisiblePath(Path p) {
+        if (this.visiblePaths == null) return;
+        this.visiblePaths.remove(p);
+        if (this.visiblePaths.isEmpty()) this.visiblePaths = null;
+    }
+
+    public synchronized void removeVisiblePath(double startlng, double startlat, double endlng, double endlat) {
+        if (this.visiblePaths == null) return;
+        // find the path by its endpoints instead of fetching it again
+        Location start = new Location(startlng, startlat);
+        Location end = new Location(endlng, endlat);
+        for (Path p : this.visiblePaths) {
+            if (p.start.equals(start) && p.end.equals(end)) {
+                removeVisiblePath(p);
+                return;
+            }
+        }
+    }
+
+    private static double secsToMins(int sec) {
+        return Math.round(sec/60d * 10)/10d;
+    }
+
+    // set API keys is correct
+    public synchronized void setApiKeys(String staticMapKey, String directionsKey) {
+        if (this.apiKeysSet) throw new IllegalStateException("API keys can only be set once");
+        if (!validateApiKeys(staticMapKey, directionsKey, this.staticMapUrl, this.directionsUrl))
+            throw new IllegalArgumentException("API keys are incorrect");
+        this.staticMapApiKey = staticMapKey;
+        this.directionsApiKey = directionsKey;
+        this.apiKeysSet = true;
+    }
+
+    // sets the base URLs of the Static Maps and Directions APIs (for a proxy
+    // or a local stub); null leaves a URL unchanged
+    public synchronized void setApiUrls(String staticMapUrl, String directionsUrl) {
+        if (staticMapUrl != null) this.staticMapUrl = staticMapUrl;
+        if (directionsUrl != null) this.directionsUrl = directionsUrl;
+    }
+
+
+    // set map center
+    private void setMapCenter(Location l) {
+        this.center = l;
+    }
+
+    public synchronized void setMapCenter(double lng, double lat) {
+        setMapCenter(new Location(lng, lat));
+    }
+
+    public synchronized void setZoom(int zoom) {
+        if (zoom < 0 || zoom > 20) throw new IllegalArgumentException("Zoom must be a value between 0 and 20.");
+
+        disableDefaultZoom();
+
+        this.zoom = zoom;
+    }
+
+    // set map dimensions (on screen)
+    // calling with nonpositive arguments will just leave the default options
+    public synchronized void setMapScreenSize(int width, int height) {
+        this.canvasWidth = width > 0? width : DEFAULT_MAP_WIDTH;
+        this.canvasHeight = height > 0? height : DEFAULT_MAP_HEIGHT;
+
+        this.maxMessages = (this.canvasHeight - 10) / 20;
+        while (this.messages.size() > this.maxMessages) this.messages.pop();
+    }
+
+    public synchronized void setTransportationMode(String mode) {
+        if (!isTransportationModeSupported(mode))
+            throw new IllegalArgumentException("Transportation mode can be set to either" + supportedTransportationModes()
+                                                + " (where available)");
+        this.mode = new String(mode);
+        if (graph == null) return;
+        Location[] l = graph.points().toArray(new Location[0]);
+        clear();
+        setPoints(l);
+    }
+
+    public synchronized void setPathColor(String s) {
+        if (s.charAt(0) == '#') s = "0x" + s.substring(1);
+        if (!Pattern.matches("^0(x|X)([0-9a-fA-F]){6}$", s))
+            throw new IllegalArgumentException("Path color must be a hex number of the form 0x123ABC or #123abc");
+        this.pathColor = s;
+    }
+
+    public synchronized void setPointColor(String s) {
+        if (s.charAt(0) == '#') s = "0x" + s.substring(1);
+        if (!Pattern.matches("^0(x|X)([0-9a-fA-F]){6}$", s))
+            throw new IllegalArgumentException("Point color must be a hex number of the form 0x123ABC or #123abc");
+        this.pointColor = s;
+    }
+
+    // sets the points of the graph to be displayed, and erases all set visible paths
+    // if there are any existing points, they will be removed
+    // records *possible* paths between points
+    // Note: calling with a null argument will erase all the points from the graph
+    private void setPoints(Location[] l) {
+        this.visiblePaths = null;
+        if (l == null) {
+            this.graph = null;
+            return;
+        }
+        this.graph = new PathMatrix();
+
+        for (int i = 0; i < l.length; i++) {
+            // don't allow duplicates
+            if (this.graph.contains(l[i])) continue;
+            this.graph.add(l[i]);
+        }
+
+        // one request per ordered pair: start -> end and end -> start can
+        // differ, and a point needs no path to itself
+        int n = this.graph.size();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i == j) continue;
+                this.graph.set(i, j, fetch(this.graph.points[i], this.graph.points[j]));
+            }
+        }
+    }
+
+    public synchronized void setPoints(double[][] points) {
+        Location[] l = new Location[points.length];
+        for (int i = 0; i < points.length; i++) {
+            l[i] = new Location(points[i][0], points[i][1]);
+        }
+        setPoints(l);
+    }
+
+    public synchronized void setShowPoints(boolean toggle) {
+        this.showPoints = toggle;
+    }
+
+    // sets the visible paths of the graph to be displayed, and erases all previously set visible paths
+    // Note: calling with a null argument will erase all the paths from the graph
+    private void setVisiblePaths(Path[] ps) {
+        if (ps == null) this.visiblePaths = null;
+        else {
+            this.visiblePaths = new HashSet<Path>();
+            for (int i = 0 ; i < ps.length; i++) {
+                this.visiblePaths.add(ps[i]);
+            }
+        }
+    }
+
+    public synchronized void setVisiblePaths(double[][] points) {
+        Path[] ps = new Path[points.length];
+        for (int i = 0; i < points.length; i++) {
+            ps[i] = getPath(new Location(points[i][0], points[i][1]),
+                            new Location(points[i][2], points[i][3]));
+        }
+        setVisiblePaths(ps);
+    }
+
+    public synchronized void showInfobox() {
+        this.infoboxOn = true;
+    }
+
+    public synchronized void showInfobox(int width) {
+        this.infoboxWidth = width;
+        this.infoboxOn = true;
+    }
+
+    // returns the number of points on the map
+    public synchronized int size() {
+        return this.graph == null ? 0 : this.graph.size();
+    }
+
+    // returns the number of visible paths
+    public synchronized int visiblePathCount() {
+        return this.visiblePaths == null ? 0 : this.visiblePaths.size();
+    }
+
+    public static String supportedTransportationModes() {
+        StringBuilder ls = new StringBuilder();
+        boolean isFirst = true;
+        for (int i = 0; i < TRANSPORTATION_MODE.length; i++)  {
+            if (isFirst) isFirst = false;
+            else ls.append(", ");
+            ls.append(TRANSPORTATION_MODE[i]);
+        }
+        return ls.toString();
+    }
+
+    // unset map center
+    // draws the map locally (MapRenderer) rather than with the Static Maps API
+    public synchronized void setLocalRendering(boolean local) {
+        this.localRendering = local;
+    }
+
+    public synchronized boolean isLocalRendering() {
+        return this.localRendering;
+    }
+
+    // moves the center of the map by the given number of pixels (right and down)
+    public synchronized void panMap(double dx, double dy) {
+        if (this.graph == null) return;
+        int z = mapZoom();
+        double[] c = mapCenter(tourLines());
+        double scale = 1L << z;
+        setMapCenter(new Location(Polyline.latitude(c[1] * scale + dy, z), Polyline.longitude(c[0] * scale + dx, z)));
+    }
+
+    public synchronized void unsetMapCenter() {
+        setMapCenter(null);
+    }
+
+    // check if API keys are correct
+    public static boolean validateApiKeys(String staticMapKey, String directionsKey) {
+        return validateApiKeys(staticMapKey, directionsKey, STATIC_MAP_URL, DIRECTIONS_URL);
+    }
+
+    private static boolean validateApiKeys(String staticMapKey, String directionsKey,
+                                           String staticMapUrl, String directionsUrl) {
+        if (staticMapKey == null || staticMapKey.length() == 0) {
+            System.err.println("Static Maps API key is invalid");
+            return false;
+        }
+        if (directionsKey == null || directionsKey.length() == 0) {
+            System.err.println("Directions API key is invalid");
+            return false;
+        }
+
+        try {
+            Request.request(directionsUrl + "?" +
+                "mode=walking&origin=40.35025,-74.65219&destination=40.34187,%20-74.65904" +
+                "&key=" + directionsKey);
+        } catch (Exception e) {
+            System.err.println("Directions API key is invalid, API call failed.");
+            return false;
+        }
+        try {
+            Request.request(staticMapUrl + "?" +
+                "center=Princeton,NJ&zoom=13&size=500x500&key=" + staticMapKey);
+        } catch (Exception e) {
+            System.err.println("Static Maps API key is invalid");
+            return false;
+        }
+        return true;
+    }
+
+    // zooms in from the map as shown (the fitted zoom if it is the default)
+    public synchronized int zoomIn() {
+        this.zoom = mapZoom();
+        disableDefaultZoom();
+        if (this.zoom < 20) this.zoom++;
+        return this.zoom;
+    }
+
+    // zooms out from the map as shown (the fitted zoom if it is the default)
+    public synchronized int zoomOut() {
+        this.zoom = mapZoom();
+        disableDefaultZoom();
+        if (this.zoom > 0) this.zoom--;
+        return this.zoom;
+    }
+}
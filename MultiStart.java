@@ -0,0 +1,297 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs MultiStart.java
+ *  Execution:    java-introcs MultiStart [-starts k] [-threads t] [-seconds s]
+ *                                        [-seed r] [-oropt] [-quiet]
+ *                                        [-checkpoint file [-interval s]] n/s < file.txt
+ *  Dependencies: ArrayTour.java CandidateGraph.java TourCheckpoint.java
+ *                PointFile.java In.java StdOut.java
+ *
+ *  Best-of-k insertion tours. Insertion heuristics depend on the order in
+ *  which the points are inserted, so each start inserts the points in a
+ *  different random order (start 0 uses the file order, so the result is
+ *  never worse than the plain heuristic), optionally followed by Or-opt,
+ *  and the shortest tour wins.
+ *
+ *  Starts run in parallel on t threads (default: one per core). Every start
+ *  has its own SplittableRandom, seeded from the seed and the start number,
+ *  so threads share no generator and a given seed always gives the same
+ *  tours, whatever the number of threads. With -seconds, no new start
+ *  begins once the time budget is spent (without -starts, starts continue
+ *  until then). The Or-opt candidate graph is built once and renumbered
+ *  for each start.
+ *
+ *  Progress (one line per start, with the best length so far) goes to
+ *  standard error; the best tour is printed as by ArrayTour.
+ *
+ *  -checkpoint saves the best tour and the number of starts that finished
+ *  (all starts before it did) to the given file, in the background, at
+ *  most every -interval seconds (default: 10). If the file exists, the run
+ *  resumes from it: the saved tour is the best so far, and since every start
+ *  is determined by the seed and its number, the run continues with the
+ *  first start that had not finished. The heuristic, -oropt and the seed
+ *  must be the same as in the run that wrote it.
+ *
+ *  % java-introcs MultiStart -starts 32 -oropt s < tsp1000.txt
+ *  (...)
+ *  Tour length = ...
+ *  Number of points = 1000
+ *  Best of 32 starts = start ...
+ *
+ **************************************************************************** */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MultiStart {
+    private static final int DEFAULT_STARTS = 16;
+    private static final int NEIGHBORS = 10;    // Or-opt candidates per point
+    private static final double INTERVAL = 10.0; // default seconds between checkpoints
+
+    private final double[] xs, ys;
+    private final int n;
+    private final boolean smallest;
+    private final boolean orOpt;
+    private final long seed;
+    private final CandidateGraph graph;         // Or-opt candidates in file order, or null
+
+    private final AtomicInteger nextStart = new AtomicInteger();
+    private final AtomicInteger finished = new AtomicInteger();
+    private long startTime;
+
+    // the best tour so far, guarded by this
+    private double bestLength = Double.POSITIVE_INFINITY;
+    private int[] bestOrder = new int[0];
+    private int bestStart = -1;
+    private final BitSet done = new BitSet();   // starts that finished
+    private TourCheckpoint checkpoint;          // or null
+    private int saved;                          // finished starts in the last snapshot
+
+    // prepares starts over the n points (xs[i], ys[i]) with smallest (or
+    // nearest) insertion, each followed by Or-opt if orOpt
+    public MultiStart(double[] xs, double[] ys, int n, boolean smallest, boolean orOpt, long seed) {
+        this.xs = xs;
+        this.ys = ys;
+        this.n = n;
+        this.smallest = smallest;
+        this.orOpt = orOpt;
+        this.seed = seed;
+        this.graph = orOpt ? CandidateGraph.create(xs, ys, n, NEIGHBORS) : null;
+    }
+
+    // returns a description of the run, which a checkpoint must match to resume it
+    public String method() {
+        return (smallest ? "s" : "n") + (orOpt ? " -oropt" : "") + " -seed " + seed;
+    }
+
+    // offers a snapshot to the given checkpoint whenever the best tour or the
+    // number of finished starts changes
+    public synchronized void checkpoint(TourCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    // continues the run that wrote the given snapshot: its tour is the best
+    // so far and its finished starts are not run again
+    public synchronized void resume(TourCheckpoint.Snapshot s) {
+        if (!s.method().equals(method()))
+            throw new IllegalArgumentException("checkpoint is for \"" + s.method() + "\", not \"" + method() + "\"");
+        bestLength = s.length();
+        bestOrder = s.order();
+        bestStart = (int) s.source();
+        int finishedStarts = (int) s.progress();
+        done.set(0, finishedStarts);
+        saved = finishedStarts;
+        nextStart.set(finishedStarts);
+        finished.set(finishedStarts);
+    }
+
+    // runs up to starts starts on the given number of threads, beginning no
+    // start after the given number of seconds (0 for no limit); prints a
+    // line per start to standard error if progress
+    public void run(int starts, int threads, double seconds, boolean progress) {
+        startTime = System.nanoTime();
+        long deadline = (seconds > 0) ? startTime + (long) (seconds * 1e9) : Long.MAX_VALUE;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(pool.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    int start = nextStart.getAndIncrement();
+                    if (start >= starts) break;
+                    solve(start, progress);
+                }
+            }));
+        }
+        try {
+            for (Future<?> worker : workers) worker.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("start failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // builds the tour of the given start and keeps it if it is the best
+    private void solve(int start, boolean progress) {
+        // insertion order: the file order for start 0, a random permutation otherwise
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        if (start > 0) {
+            SplittableRandom random = new SplittableRandom(seed ^ (start * 0x9E3779B97F4A7C15L));
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+        }
+
+        ArrayTour tour = new ArrayTour(Math.max(n, 1));
+        for (int i = 0; i < n; i++) {
+            if (smallest) tour.insertSmallest(xs[order[i]], ys[order[i]]);
+            else          tour.insertNearest(xs[order[i]], ys[order[i]]);
+        }
+        if (orOpt) tour.orOpt(graph.permute(order));
+        double length = tour.length();
+
+        double best;
+        synchronized (this) {
+            boolean improved = length < bestLength || (length == bestLength && start < bestStart);
+            if (improved) {
+                // tour indices are insertion ranks; map them back to the file
+                int[] ranks = tour.order();
+                int[] points = new int[ranks.length];
+                for (int k = 0; k < ranks.length; k++) points[k] = order[ranks[k]];
+                bestLength = length;
+                bestOrder = points;
+                bestStart = start;
+            }
+            best = bestLength;
+
+            // bestOrder is never modified, so the snapshot can share it
+            done.set(start);
+            int prefix = done.nextClearBit(0);
+            if (checkpoint != null && (improved || prefix > saved)) {
+                checkpoint.offer(new TourCheckpoint.Snapshot(bestOrder, bestLength, method(), prefix, bestStart));
+                saved = prefix;
+            }
+        }
+        int done = finished.incrementAndGet();
+        if (progress) {
+            System.err.printf("start %d: %.4f   best %.4f   (%d done, %.1fs)\n", start, length, best,
+                              done, (System.nanoTime() - startTime) / 1e9);
+        }
+    }
+
+    // returns the length of the best tour
+    public synchronized double length() {
+        return bestLength;
+    }
+
+    // returns the indices (in file order) of the points of the best tour, in tour order
+    public synchronized int[] order() {
+        return bestOrder.clone();
+    }
+
+    // returns the number of the start that found the best tour
+    public synchronized int bestStart() {
+        return bestStart;
+    }
+
+    // returns the number of starts that finished
+    public int starts() {
+        return finished.get();
+    }
+
+    // reads a TSP file from standard input and prints the best tour found
+    public static void main(String[] args) throws IOException {
+        int starts = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double seconds = 0.0;
+        long seed = 126;
+        boolean orOpt = false;
+        boolean progress = true;
+        String checkpointFile = null;
+        double interval = INTERVAL;
+        String heuristic = null;
+        for (int i = 0; i < args.length; i++) {
+            if      (args[i].equals("-starts"))  starts = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-threads")) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-seconds")) seconds = Double.parseDouble(args[++i]);
+            else if (args[i].equals("-seed"))    seed = Long.parseLong(args[++i]);
+            else if (args[i].equals("-oropt"))   orOpt = true;
+            else if (args[i].equals("-quiet"))   progress = false;
+            else if (args[i].equals("-checkpoint")) checkpointFile = args[++i];
+            else if (args[i].equals("-interval"))   interval = Double.parseDouble(args[++i]);
+            else heuristic = args[i];
+        }
+        if (heuristic == null || !(heuristic.equals("n") || heuristic.equals("s"))) {
+            StdOut.println("This program should be called: \n$ java-introcs MultiStart [-starts k] [-threads t] "
+                           + "[-seconds s] [-seed r] [-oropt] [-quiet] [-checkpoint file [-interval s]] n/s < file.txt");
+            return;
+        }
+        // with only a time budget, keep starting until it is spent
+        if (starts < 0) starts = (seconds > 0) ? Integer.MAX_VALUE : DEFAULT_STARTS;
+
+        PointFile file = new PointFile("stdin", new In());
+        double[] xs = file.xs();
+        double[] ys = file.ys();
+        int n = file.size();
+        MultiStart multi = new MultiStart(xs, ys, n, heuristic.equals("s"), orOpt, seed);
+        TourCheckpoint checkpoint = null;
+        if (checkpointFile != null) {
+            try {
+                TourCheckpoint.Snapshot snapshot = TourCheckpoint.load(checkpointFile, xs, ys, n);
+                if (snapshot != null) {
+                    multi.resume(snapshot);
+                    System.err.printf("resuming after %d starts, best %.4f\n", snapshot.progress(), snapshot.length());
+                }
+            }
+            catch (IllegalArgumentException e) {
+                System.err.println("Cannot resume: " + e.getMessage());
+                return;
+            }
+            checkpoint = new TourCheckpoint(checkpointFile, xs, ys, n, interval);
+            multi.checkpoint(checkpoint);
+        }
+        multi.run(starts, threads, seconds, progress);
+        if (checkpoint != null) {
+            checkpoint.close();
+            if (progress) {
+                System.err.printf("%d checkpoints, %.1f ms average, %.1f ms max\n", checkpoint.writes(),
+                                  checkpoint.averageMillis(), checkpoint.maxMillis());
+            }
+        }
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), 1 << 16));
+        for (int i : multi.order()) {
+            out.print('(');
+            out.print(xs[i]);
+            out.print(", ");
+            out.print(ys[i]);
+            out.print(")\n");
+        }
+        out.print('\n');
+        out.printf("Tour length = %.4f\n", multi.length());
+        out.printf("Number of points = %d\n", n);
+        out.printf("Best of %d starts = start %d\n", multi.starts(), multi.bestStart());
+        out.flush();
+    }
+}
@@ -2,36 +2,82 @@
  *  YOU DO NOT NEED TO MODIFY THIS FILE
  *
  *  Compilation:  javac NearestInsertion.java
- *  Execution:    java NearestInsertion < file.txt
- *  Dependencies: Tour.java Point.java StdIn.java StdDraw.java
+ *  Execution:    java NearestInsertion [-headless] [-png file.png] [-gap] < file.txt
+ *  Dependencies: Tour.java Point.java StdIn.java StdDraw.java TourImage.java
+ *                LowerBound.java
  *
  *  Run nearest neighbor insertion heuristic for traveling
  *  salesperson problemand plot results.
  *
  *  % java NearestInsertion < tsp1000.txt
+ *  % java NearestInsertion -headless < tsp1000.txt               (text only)
+ *  % java NearestInsertion -headless -png tour.png < tsp1000.txt  (and a picture)
+ *
+ *  -headless (or running with -Djava.awt.headless=true) skips all drawing
+ *  and prints exactly the same text; -png also writes the final tour to an
+ *  image file, drawn off-screen when headless. -gap adds how far the tour
+ *  is above a Held-Karp lower bound on the optimal length (see LowerBound;
+ *  over 20000 points, an estimated one) to the "Tour length" line.
+ *
+ *  The tour is printed with println(tour), and -png reads the points back
+ *  from tour.toString(): this program runs the student's Tour, and the
+ *  string is the only export that class has. ArrayTour's clients (TSPMap
+ *  -arraytour, BatchRunner -arraytour) read the order back with order()
+ *  or coordinates() instead, and ArrayTour's main() prints it with print().
  *
  **************************************************************************** */
 
+import java.awt.GraphicsEnvironment;
+import java.util.Arrays;
+
 public class NearestInsertion {
 
     public static void main(String[] args) {
 
+        // parse options
+        boolean headless = false;
+        String png = null;
+        boolean gap = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-headless")) headless = true;
+            else if (args[i].equals("-gap")) gap = true;
+            else if (args[i].equals("-png") && i + 1 < args.length) png = args[++i];
+        }
+        if (headless) System.setProperty("java.awt.headless", "true");
+
         // get dimensions
         int width = StdIn.readInt();
         int height = StdIn.readInt();
         int border = 20;
-        StdDraw.setCanvasSize(width, height + border);
-        StdDraw.setXscale(0, width);
-        StdDraw.setYscale(-border, height);
 
-        // turn on animation mode
-        StdDraw.enableDoubleBuffering();
+        // without a display (java -Djava.awt.headless=true), skip all drawing
+        headless = headless || GraphicsEnvironment.isHeadless();
+        if (!headless) {
+            StdDraw.setCanvasSize(width, height + border);
+            StdDraw.setXscale(0, width);
+            StdDraw.setYscale(-border, height);
+
+            // turn on animation mode
+            StdDraw.enableDoubleBuffering();
+        }
 
         // run smallest insertion heuristic
         Tour tour = new Tour();
+        double[] xs = new double[16];
+        double[] ys = new double[16];
+        int n = 0;
         while (!StdIn.isEmpty()) {
             double x = StdIn.readDouble();
             double y = StdIn.readDouble();
+            if (gap) {
+                if (n == xs.length) {
+                    xs = Arrays.copyOf(xs, 2 * n);
+                    ys = Arrays.copyOf(ys, 2 * n);
+                }
+                xs[n] = x;
+                ys[n] = y;
+                n++;
+            }
             Point p = new Point(x, y);
             tour.insertNearest(p);
 
@@ -44,12 +90,24 @@ public class NearestInsertion {
         }
 
         // draw to standard draw
-        tour.draw();
-        StdDraw.show();
+        if (!headless) {
+            tour.draw();
+            StdDraw.show();
+            if (png != null) StdDraw.save(png);
+        }
+        else if (png != null) {
+            TourImage.save(png, tour.toString(), width, height, border);
+        }
         
         // print tour to standard output
         StdOut.println(tour);
-        StdOut.printf("Tour length = %.4f\n", tour.length());
+        if (gap) {
+            double length = tour.length();
+            LowerBound bound = new LowerBound(xs, ys, n, length);
+            StdOut.printf("Tour length = %.4f (%.2f%% above %s %.4f)\n",
+                          length, LowerBound.gap(length, bound.value()), bound.label(), bound.value());
+        }
+        else StdOut.printf("Tour length = %.4f\n", tour.length());
         StdOut.printf("Number of points = %d\n", tour.size());
     }
 
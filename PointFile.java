@@ -0,0 +1,363 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs PointFile.java
+ *  Execution:    java-introcs PointFile file.txt [packed.bin]
+ *  Dependencies: In.java StdOut.java
+ *
+ *  Reads a TSP input file into primitive arrays. The first line holds the
+ *  width and height; every following line holds the two coordinates of a
+ *  point, optionally followed by a description (as in the map files, e.g.
+ *  "40.7484 -73.9857 Empire State Building"), which is kept as the point's
+ *  name.
+ *
+ *  Files can also be in a packed binary format, which is recognized by its
+ *  first four bytes and read without parsing (a 10M-point text file takes
+ *  seconds to parse, the packed file a fraction of a second): the int
+ *  0x54535042 ("TSPB"), the width, the height and the number of points n,
+ *  then the n x-coordinates and the n y-coordinates as doubles, all
+ *  big-endian. Packed files have no descriptions. The same format goes
+ *  over sockets (readPacked() and writePacked() on a channel), e.g. to the
+ *  workers of DistributedSolver.
+ *
+ *  main() prints a summary of the file, and converts it to the packed
+ *  format if given a second file name:
+ *
+ *  % java-introcs PointFile mona-100k.txt mona-100k.bin
+ *  500 x 500, 100000 points
+ *
+ **************************************************************************** */
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+public final class PointFile {
+    static final int MAGIC = 0x54535042;            // "TSPB", first int of a packed file
+    static final int HEADER = 16;                   // bytes before the coordinates
+    static final int MAX_PACKED = 1 << 26;          // points readPacked() accepts (1 GB of coordinates)
+
+    private final String filename;
+    private final int width;
+    private final int height;
+    private final double[] x;
+    private final double[] y;
+    private final String[] names;
+    private final int n;
+
+    // reads the given file, in the text or the packed format
+    public PointFile(String filename) {
+        this(filename, isPacked(filename) ? null : new In(filename));
+    }
+
+    // reads a TSP file from the given input stream, filename being only a
+    // label; if in is null, reads filename in the packed format instead
+    public PointFile(String filename, In in) {
+        this.filename = filename;
+        if (in == null) {
+            try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+                 FileChannel channel = file.getChannel()) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER);
+                while (header.hasRemaining() && channel.read(header) >= 0) { }
+                header.flip();
+                if (header.remaining() < HEADER || header.getInt() != MAGIC)
+                    throw new IllegalArgumentException(filename + ": not a packed point file");
+                width = header.getInt();
+                height = header.getInt();
+                n = header.getInt();
+                if (n < 0 || channel.size() != HEADER + 16L * n)
+                    throw new IllegalArgumentException(filename + ": truncated packed point file");
+                DoubleBuffer coordinates = channel.map(FileChannel.MapMode.READ_ONLY, HEADER, 16L * n)
+                                                  .asDoubleBuffer();
+                x = new double[n];
+                y = new double[n];
+                coordinates.get(x);
+                coordinates.get(y);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + filename, e);
+            }
+            names = new String[n];
+            return;
+        }
+
+        // the whole input at once, split by hand: In.readLine() and
+        // String.split() run regular expressions on every line, which took
+        // longer than building a candidate graph on the points
+        String text = in.readAll();
+        int at = skipSpace(text, 0, text.length());
+        if (at == text.length()) {
+            width = 0;
+            height = 0;
+        }
+        else {
+            int end = skipToken(text, at, text.length());
+            width = Integer.parseInt(text.substring(at, end));
+            at = skipSpace(text, end, text.length());
+            end = skipToken(text, at, text.length());
+            if (at == end) throw new IllegalArgumentException(filename + ": expected a width and a height");
+            height = Integer.parseInt(text.substring(at, end));
+            at = text.indexOf('\n', end);
+            if (at == -1) at = text.length();
+        }
+
+        double[] xs = new double[16];
+        double[] ys = new double[16];
+        String[] ns = new String[16];
+        int count = 0;
+        while (at < text.length()) {
+            int eol = text.indexOf('\n', at);
+            if (eol == -1) eol = text.length();
+            // the line, trimmed: coordinates, then an optional description
+            int from = skipSpace(text, at, eol);
+            int to = eol;
+            while (to > from && text.charAt(to - 1) <= ' ') to--;
+            at = eol + 1;
+            if (from == to) continue;
+            int xEnd = skipToken(text, from, to);
+            int yStart = skipSpace(text, xEnd, to);
+            int yEnd = skipToken(text, yStart, to);
+            if (yStart == yEnd) {
+                throw new IllegalArgumentException(filename + ": expected two coordinates, got \""
+                                                   + text.substring(from, to) + "\"");
+            }
+            int nameStart = skipSpace(text, yEnd, to);
+            if (count == xs.length) {
+                xs = Arrays.copyOf(xs, 2 * count);
+                ys = Arrays.copyOf(ys, 2 * count);
+                ns = Arrays.copyOf(ns, 2 * count);
+            }
+            xs[count] = Double.parseDouble(text.substring(from, xEnd));
+            ys[count] = Double.parseDouble(text.substring(yStart, yEnd));
+            ns[count] = nameStart < to ? text.substring(nameStart, to) : null;
+            count++;
+        }
+        n = count;
+        x = Arrays.copyOf(xs, n);
+        y = Arrays.copyOf(ys, n);
+        names = Arrays.copyOf(ns, n);
+    }
+
+    // wraps points that are already in memory (e.g. generated ones); the
+    // arrays are not copied
+    public PointFile(String label, int width, int height, double[] xs, double[] ys) {
+        if (xs.length != ys.length) throw new IllegalArgumentException("xs and ys differ in length");
+        this.filename = label;
+        this.width = width;
+        this.height = height;
+        this.n = xs.length;
+        this.x = xs;
+        this.y = ys;
+        this.names = new String[n];
+    }
+
+    // returns the index of the first character of s[from..to) that is not
+    // whitespace, or to
+    private static int skipSpace(String s, int from, int to) {
+        while (from < to && s.charAt(from) <= ' ') from++;
+        return from;
+    }
+
+    // returns the index of the first whitespace character of s[from..to), or to
+    private static int skipToken(String s, int from, int to) {
+        while (from < to && s.charAt(from) > ' ') from++;
+        return from;
+    }
+
+    // returns true if filename is a file in the packed format
+    public static boolean isPacked(String filename) {
+        File file = new File(filename);
+        if (!file.isFile() || file.length() < HEADER) return false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    // writes the first n points (xs[i], ys[i]) to filename in the text format
+    public static void writeText(String filename, int width, int height,
+                                 double[] xs, double[] ys, int n) throws IOException {
+        try (OutputStream out = new FileOutputStream(filename)) {
+            writeText(out, width, height, xs, ys, n);
+        }
+    }
+
+    // writes the first n points (xs[i], ys[i]) to out in the text format,
+    // with 4 decimals, and flushes it
+    public static void writeText(OutputStream out, int width, int height,
+                                 double[] xs, double[] ys, int n) throws IOException {
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out), 1 << 16));
+        writer.println(width + " " + height);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            line.setLength(0);
+            appendFixed(line, xs[i]).append(' ');
+            appendFixed(line, ys[i]);
+            writer.println(line);
+        }
+        writer.flush();
+        if (writer.checkError()) throw new IOException("Could not write the points");
+    }
+
+    // appends v with 4 decimals, like "%.4f" but without a Formatter per number
+    private static StringBuilder appendFixed(StringBuilder s, double v) {
+        long scaled = Math.round(v * 1e4);
+        if (scaled < 0) {
+            s.append('-');
+            scaled = -scaled;
+        }
+        long fraction = scaled % 10000;
+        s.append(scaled / 10000).append('.');
+        if (fraction < 1000) s.append('0');
+        if (fraction < 100) s.append('0');
+        if (fraction < 10) s.append('0');
+        return s.append(fraction);
+    }
+
+    // writes the first n points (xs[i], ys[i]) to filename in the packed format
+    public static void writePacked(String filename, int width, int height,
+                                   double[] xs, double[] ys, int n) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw");
+             FileChannel channel = file.getChannel()) {
+            channel.truncate(0);
+            writePacked(channel, width, height, xs, ys, n);
+        }
+    }
+
+    // writes the first n points (xs[i], ys[i]) to the channel (a file or a
+    // socket) in the packed format
+    public static void writePacked(WritableByteChannel channel, int width, int height,
+                                   double[] xs, double[] ys, int n) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putInt(width).putInt(height).putInt(n).flip();
+        while (header.hasRemaining()) channel.write(header);
+        // a buffer at a time, so that 10M points don't need another 160 MB
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        for (double[] coordinates : new double[][] { xs, ys }) {
+            for (int i = 0; i < n; i++) {
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                    buffer.clear();
+                }
+                buffer.putDouble(coordinates[i]);
+            }
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    // reads points in the packed format from the channel (e.g. a socket),
+    // label being only a name for them; returns null if the channel is at
+    // its end before the first byte
+    public static PointFile readPacked(ReadableByteChannel channel, String label) throws IOException {
+        return readPacked(channel, label, MAX_PACKED);
+    }
+
+    // reads points in the packed format from the channel, as above, but
+    // fails before allocating anything if the header announces more than
+    // max points (the header comes from the other end of a socket)
+    public static PointFile readPacked(ReadableByteChannel channel, String label, int max) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        if (!readFully(channel, header)) {
+            if (header.position() == 0) return null;
+            throw new IOException(label + ": truncated packed points");
+        }
+        header.flip();
+        if (header.getInt() != MAGIC) throw new IOException(label + ": not packed points");
+        int width = header.getInt();
+        int height = header.getInt();
+        int n = header.getInt();
+        if (n < 0) throw new IOException(label + ": negative number of points");
+        if (n > max) throw new IOException(label + ": " + n + " points, more than the " + max + " allowed");
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        for (double[] coordinates : new double[][] { xs, ys }) {
+            for (int i = 0; i < n; ) {
+                buffer.clear().limit(Math.min(buffer.capacity(), 8 * (n - i)));
+                if (!readFully(channel, buffer)) throw new IOException(label + ": truncated packed points");
+                buffer.flip();
+                while (buffer.hasRemaining()) coordinates[i++] = buffer.getDouble();
+            }
+        }
+        return new PointFile(label, width, height, xs, ys);
+    }
+
+    // fills the buffer from the channel; returns false at the end of the channel
+    private static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) return false;
+        }
+        return true;
+    }
+
+    // returns the name of the file the points were read from
+    public String filename() {
+        return filename;
+    }
+
+    // returns the width on the first line of the file
+    public int width() {
+        return width;
+    }
+
+    // returns the height on the first line of the file
+    public int height() {
+        return height;
+    }
+
+    // returns the number of points
+    public int size() {
+        return n;
+    }
+
+    // returns the x-coordinates of the points, in file order (not a copy)
+    public double[] xs() {
+        return x;
+    }
+
+    // returns the y-coordinates of the points, in file order (not a copy)
+    public double[] ys() {
+        return y;
+    }
+
+    // returns the description of point i, or null if the line had none
+    public String name(int i) {
+        return names[i];
+    }
+
+    // returns the points as Point objects, in file order
+    public Point[] points() {
+        Point[] points = new Point[n];
+        for (int i = 0; i < n; i++)
+            points[i] = new Point(x[i], y[i]);
+        return points;
+    }
+
+    // prints a summary of the given file, and packs it into the second file
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            StdOut.println("This program should be called: \n$ java-introcs PointFile file.txt [packed.bin]");
+            return;
+        }
+        PointFile file = new PointFile(args[0]);
+        StdOut.println(file.width() + " x " + file.height() + ", " + file.size() + " points");
+        if (args.length > 1)
+            writePacked(args[1], file.width(), file.height(), file.xs(), file.ys(), file.size());
+    }
+}
@@ -0,0 +1,178 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs Polyline.java
+ *  Execution:    java-introcs Polyline encoded_polyline [tolerance]
+ *  Dependencies: StdOut.java
+ *
+ *  Google's encoded polyline format (the "overview_polyline" of a
+ *  Directions route and the "enc:" of a Static Maps path), Douglas-Peucker
+ *  simplification and the Web Mercator projection the static maps use.
+ *
+ *  Points are stored as flat arrays {lat0, lng0, lat1, lng1, ...}.
+ *  decode() and encode() round coordinates to 5 decimals, as the format
+ *  does. simplify() works in projected pixels, so that a tolerance of one
+ *  pixel at the map's zoom level removes exactly the detail that could not
+ *  be seen anyway.
+ *
+ *  % java-introcs Polyline '_p~iF~ps|U_ulLnnqC_mqNvxq`@' 0
+ *  3 points: 38.5 -120.2, 40.7 -120.95, 43.252 -126.453
+ *
+ **************************************************************************** */
+
+import java.util.Arrays;
+
+public final class Polyline {
+    private static final double TILE = 256.0;       // pixels of the world at zoom 0
+
+    private Polyline() { }
+
+    // returns the points of the encoded polyline, as {lat0, lng0, lat1, lng1, ...}
+    public static double[] decode(String encoded) {
+        double[] points = new double[16];
+        int count = 0;
+        int lat = 0, lng = 0;
+        int i = 0;
+        while (i < encoded.length()) {
+            int[] value = new int[2];
+            for (int k = 0; k < 2; k++) {
+                int shift = 0, result = 0, b;
+                do {
+                    if (i >= encoded.length()) throw new IllegalArgumentException("truncated polyline");
+                    b = encoded.charAt(i++) - 63;
+                    result |= (b & 0x1f) << shift;
+                    shift += 5;
+                } while (b >= 0x20);
+                value[k] = ((result & 1) != 0) ? ~(result >> 1) : (result >> 1);
+            }
+            lat += value[0];
+            lng += value[1];
+            if (count + 2 > points.length) points = Arrays.copyOf(points, 2 * points.length);
+            points[count++] = lat / 1e5;
+            points[count++] = lng / 1e5;
+        }
+        return Arrays.copyOf(points, count);
+    }
+
+    // returns the encoding of the first n points of {lat0, lng0, lat1, lng1, ...}
+    public static String encode(double[] points, int n) {
+        StringBuilder s = new StringBuilder();
+        long lastLat = 0, lastLng = 0;
+        for (int i = 0; i < n; i++) {
+            long lat = Math.round(points[2*i] * 1e5);
+            long lng = Math.round(points[2*i + 1] * 1e5);
+            encodeValue(s, lat - lastLat);
+            encodeValue(s, lng - lastLng);
+            lastLat = lat;
+            lastLng = lng;
+        }
+        return s.toString();
+    }
+
+    private static void encodeValue(StringBuilder s, long value) {
+        long v = (value < 0) ? ~(value << 1) : (value << 1);
+        while (v >= 0x20) {
+            s.append((char) ((0x20 | (v & 0x1f)) + 63));
+            v >>= 5;
+        }
+        s.append((char) (v + 63));
+    }
+
+    // returns the x-coordinate, in pixels of the world map, of longitude lng at the given zoom
+    public static double mercatorX(double lng, int zoom) {
+        return (lng + 180.0) / 360.0 * TILE * (1L << zoom);
+    }
+
+    // returns the y-coordinate (down from the north edge), in pixels of the
+    // world map, of latitude lat at the given zoom
+    public static double mercatorY(double lat, int zoom) {
+        double sin = Math.sin(Math.toRadians(Math.max(-85.05112878, Math.min(85.05112878, lat))));
+        return (0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * TILE * (1L << zoom);
+    }
+
+    // returns the longitude of the world-map x-coordinate px at the given zoom
+    public static double longitude(double px, int zoom) {
+        return px / (TILE * (1L << zoom)) * 360.0 - 180.0;
+    }
+
+    // returns the latitude of the world-map y-coordinate py at the given zoom
+    public static double latitude(double py, int zoom) {
+        double n = Math.PI * (1 - 2 * py / (TILE * (1L << zoom)));
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+
+    // Douglas-Peucker: marks in keep[] the points of the polyline (xs[i], ys[i])
+    // to keep so that no point dropped is farther than tolerance from the
+    // simplified line; the endpoints are always kept. Returns the number kept
+    public static int simplify(double[] xs, double[] ys, int n, double tolerance, boolean[] keep) {
+        if (n == 0) return 0;
+        Arrays.fill(keep, 0, n, false);
+        keep[0] = true;
+        keep[n - 1] = true;
+        int kept = (n == 1) ? 1 : 2;
+        double tolerance2 = tolerance * tolerance;
+
+        // explicit stack of ranges, so that long tours can't overflow the call stack
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double ax = xs[first], ay = ys[first];
+            double dx = xs[last] - ax, dy = ys[last] - ay;
+            double length2 = dx*dx + dy*dy;
+            int farthest = -1;
+            double max = tolerance2;
+            for (int i = first + 1; i < last; i++) {
+                double px = xs[i] - ax, py = ys[i] - ay;
+                double d2;
+                if (length2 == 0) d2 = px*px + py*py;
+                else {
+                    double t = Math.max(0, Math.min(1, (px*dx + py*dy) / length2));
+                    double qx = px - t*dx, qy = py - t*dy;
+                    d2 = qx*qx + qy*qy;
+                }
+                if (d2 > max) {
+                    max = d2;
+                    farthest = i;
+                }
+            }
+            if (farthest == -1) continue;
+            keep[farthest] = true;
+            kept++;
+            if (top + 4 > stack.length) stack = Arrays.copyOf(stack, 2 * stack.length);
+            stack[top++] = first;
+            stack[top++] = farthest;
+            stack[top++] = farthest;
+            stack[top++] = last;
+        }
+        return kept;
+    }
+
+    // decodes a polyline and prints it, simplified with the given tolerance
+    // (in 1e-5 degrees, default 0)
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            StdOut.println("This program should be called: \n$ java-introcs Polyline encoded_polyline [tolerance]");
+            return;
+        }
+        double[] points = decode(args[0]);
+        int n = points.length / 2;
+        double tolerance = (args.length > 1) ? Double.parseDouble(args[1]) : 0.0;
+        double[] xs = new double[n], ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = points[2*i + 1] * 1e5;
+            ys[i] = points[2*i] * 1e5;
+        }
+        boolean[] keep = new boolean[n];
+        int kept = simplify(xs, ys, n, tolerance, keep);
+        StringBuilder s = new StringBuilder(kept + " points:");
+        boolean first = true;
+        for (int i = 0; i < n; i++) {
+            if (!keep[i]) continue;
+            s.append(first ? " " : ", ").append(points[2*i]).append(' ').append(points[2*i + 1]);
+            first = false;
+        }
+        StdOut.println(s);
+    }
+}
@@ -0,0 +1,385 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs PolylineStore.java
+ *  Execution:    java-introcs PolylineStore [paths] [points] [budgetMB]
+ *  Dependencies: Polyline.java StdOut.java
+ *
+ *  Encoded polylines (of Directions paths), kept within a number of bytes
+ *  of heap. A map of n points has n(n-1) paths, each with an overview
+ *  polyline of a few hundred to a few thousand characters, but only the n
+ *  paths of the tour are ever drawn; the polylines are stored here, by an
+ *  int id, rather than as Strings in the paths.
+ *
+ *  Each polyline is kept as bytes (the format is ASCII), compressed with
+ *  Deflater when that makes it smaller (about 30% for a polyline of a few
+ *  hundred points). Recently used ones stay in memory up to the budget;
+ *  the least recently used ones spill to a temporary file, from which
+ *  get() reads them back (and keeps them in memory again). Polylines in
+ *  memory, with their per-entry overhead, never take more than the budget;
+ *  the index of the file takes 12 bytes per id. If the file can't be
+ *  written, an evicted polyline is lost and get() returns null, and the
+ *  caller fetches it again.
+ *
+ *  The budget covers the polylines only, not the paths that refer to them:
+ *  MapSession's PathCache bounds those by count (maxPaths, about 300 bytes
+ *  of heap each). When the cache forgets a path it removes its polyline,
+ *  whose bytes in the file are then dead; once the dead bytes are over
+ *  1 MB and more than the live ones, the live polylines are copied to a
+ *  new file and the old one is deleted, so the file stays within twice
+ *  the size of the live polylines (or 1 MB over it).
+ *
+ *  main() stores the polylines of a synthetic map (by default 200 points,
+ *  that is 39800 paths of 200 points each), then reads the 200 of a tour
+ *  and all of them, and removes three quarters of them:
+ *
+ *  % java-introcs PolylineStore 39800 200 4
+ *  39800 polylines, 30.5 MB as Strings
+ *  in memory: 4.0 MB of 4.0 MB, 17.3 MB on disk
+ *  tour (200 polylines): 16.6 ms, again 16.7 ms
+ *  all: 847.9 ms (39600 from disk)
+ *  removed 29850: 1.0 MB in memory, 10.5 MB on disk
+ *
+ **************************************************************************** */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public final class PolylineStore {
+    public static final long DEFAULT_BUDGET = 16L << 20;
+    private static final int ENTRY_BYTES = 64;      // heap per entry besides its bytes (map entry, key, array header)
+    private static final byte PLAIN = 0, DEFLATED = 1;
+    private static final long REMOVED = -2;         // offsets[id] of a removed polyline
+    private static final long MIN_DEAD_BYTES = 1L << 20;    // dead bytes in the file before compacting it
+
+    private final long budget;
+
+    // guarded by this
+    private final LinkedHashMap<Integer, byte[]> memory =
+        new LinkedHashMap<Integer, byte[]>(16, 0.75f, true);
+    private long memoryBytes;
+    private int ids;
+    private long[] offsets = new long[16];      // offsets[id] in the file, or -1, or REMOVED
+    private int[] lengths = new int[16];
+    private RandomAccessFile file;              // the spilled polylines, or null
+    private File path;                          // of the file
+    private long liveBytes;                     // in the file, of polylines not removed
+    private boolean fileFailed;
+    private int memoryHits, diskHits, misses;
+
+    // creates a store that keeps at most budget bytes of polylines on the heap
+    public PolylineStore(long budget) {
+        if (budget < 0) throw new IllegalArgumentException("The budget can't be negative");
+        this.budget = budget;
+    }
+
+    // returns the heap budget of this store, in bytes
+    public long budget() {
+        return budget;
+    }
+
+    // stores the polyline under a new id, and returns the id
+    public synchronized int add(String polyline) {
+        int id = ids++;
+        if (id == offsets.length) {
+            offsets = Arrays.copyOf(offsets, 2 * id);
+            lengths = Arrays.copyOf(lengths, 2 * id);
+        }
+        offsets[id] = -1;
+        keep(id, pack(polyline));
+        return id;
+    }
+
+    // stores the polyline again under the id it had (after get() returned
+    // null), unless the id was removed
+    public synchronized void put(int id, String polyline) {
+        if (id < 0 || id >= ids) throw new IllegalArgumentException("Unknown polyline id " + id);
+        if (offsets[id] == REMOVED) return;
+        keep(id, pack(polyline));
+    }
+
+    // forgets the polyline stored under the id, for good: get() returns
+    // null for it and put() ignores it
+    public synchronized void remove(int id) {
+        if (id < 0 || id >= ids) throw new IllegalArgumentException("Unknown polyline id " + id);
+        byte[] bytes = memory.remove(id);
+        if (bytes != null) memoryBytes -= bytes.length + ENTRY_BYTES;
+        if (offsets[id] >= 0) liveBytes -= lengths[id];
+        offsets[id] = REMOVED;
+        compact();
+    }
+
+    // returns the polyline stored under the id, or null if it was lost
+    public String get(int id) {
+        byte[] bytes;
+        synchronized (this) {
+            if (id < 0 || id >= ids) throw new IllegalArgumentException("Unknown polyline id " + id);
+            bytes = memory.get(id);
+            if (bytes != null) memoryHits++;
+            else {
+                bytes = read(id);
+                if (bytes == null) {
+                    misses++;
+                    return null;
+                }
+                diskHits++;
+                keep(id, bytes);
+            }
+        }
+        // unpack outside the lock: other threads' polylines don't wait
+        return unpack(bytes);
+    }
+
+    // puts the packed polyline in memory, spilling the least recently used
+    // ones until the budget holds again
+    private void keep(int id, byte[] bytes) {
+        byte[] old = memory.put(id, bytes);
+        if (old != null) memoryBytes -= old.length + ENTRY_BYTES;
+        memoryBytes += bytes.length + ENTRY_BYTES;
+        Iterator<Map.Entry<Integer, byte[]>> it = memory.entrySet().iterator();
+        while (memoryBytes > budget && it.hasNext()) {
+            Map.Entry<Integer, byte[]> eldest = it.next();
+            it.remove();
+            memoryBytes -= eldest.getValue().length + ENTRY_BYTES;
+            spill(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    // writes the packed polyline to the file, once (polylines never change)
+    private void spill(int id, byte[] bytes) {
+        if (offsets[id] >= 0 || fileFailed) return;
+        try {
+            if (file == null) {
+                path = File.createTempFile("tsp-polylines", ".bin");
+                path.deleteOnExit();
+                file = new RandomAccessFile(path, "rw");
+            }
+            long offset = file.length();
+            file.seek(offset);
+            file.write(bytes);
+            offsets[id] = offset;
+            lengths[id] = bytes.length;
+            liveBytes += bytes.length;
+        }
+        catch (IOException e) {
+            System.err.println("Could not spill polylines to disk: " + e);
+            fileFailed = true;
+        }
+    }
+
+    // copies the live polylines to a new file if most of the file is dead
+    // (removed polylines); if that fails, keeps the old one
+    private void compact() {
+        if (file == null) return;
+        File newPath = null;
+        RandomAccessFile newFile = null;
+        try {
+            long dead = file.length() - liveBytes;
+            if (dead < MIN_DEAD_BYTES || dead <= liveBytes) return;
+            newPath = File.createTempFile("tsp-polylines", ".bin");
+            newPath.deleteOnExit();
+            newFile = new RandomAccessFile(newPath, "rw");
+            long[] newOffsets = offsets.clone();
+            long offset = 0;
+            byte[] buffer = new byte[4096];
+            for (int id = 0; id < ids; id++) {
+                if (offsets[id] < 0) continue;
+                if (lengths[id] > buffer.length) buffer = new byte[Math.max(lengths[id], 2 * buffer.length)];
+                file.seek(offsets[id]);
+                file.readFully(buffer, 0, lengths[id]);
+                newFile.write(buffer, 0, lengths[id]);
+                newOffsets[id] = offset;
+                offset += lengths[id];
+            }
+            file.close();
+            path.delete();
+            file = newFile;
+            path = newPath;
+            offsets = newOffsets;
+        }
+        catch (IOException e) {
+            System.err.println("Could not compact the polylines on disk: " + e);
+            if (newFile != null) {
+                try {
+                    newFile.close();
+                }
+                catch (IOException ignored) {
+                    // it is deleted anyway
+                }
+                newPath.delete();
+            }
+        }
+    }
+
+    // reads a spilled polyline back, or returns null
+    private byte[] read(int id) {
+        if (offsets[id] < 0 || file == null) return null;
+        try {
+            byte[] bytes = new byte[lengths[id]];
+            file.seek(offsets[id]);
+            file.readFully(bytes);
+            return bytes;
+        }
+        catch (IOException e) {
+            System.err.println("Could not read polylines from disk: " + e);
+            return null;
+        }
+    }
+
+    // returns the polyline as bytes, deflated if that is shorter, after a flag
+    private static byte[] pack(String polyline) {
+        byte[] plain = polyline.getBytes(StandardCharsets.US_ASCII);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(plain);
+        deflater.finish();
+        byte[] packed = new byte[plain.length + 1];
+        int length = 0;
+        // give up as soon as the output is no shorter than the input
+        while (!deflater.finished() && length < plain.length)
+            length += deflater.deflate(packed, 1 + length, plain.length - length);
+        boolean deflated = deflater.finished() && length < plain.length;
+        deflater.end();
+        if (!deflated) {
+            System.arraycopy(plain, 0, packed, 1, plain.length);
+            packed[0] = PLAIN;
+            return packed;
+        }
+        packed = Arrays.copyOf(packed, 1 + length);
+        packed[0] = DEFLATED;
+        return packed;
+    }
+
+    private static String unpack(byte[] packed) {
+        if (packed[0] == PLAIN)
+            return new String(packed, 1, packed.length - 1, StandardCharsets.US_ASCII);
+        Inflater inflater = new Inflater(true);
+        // raw deflate streams need one byte past their end (copyOfRange pads with 0)
+        inflater.setInput(Arrays.copyOfRange(packed, 1, packed.length + 1));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(3 * packed.length);
+        byte[] buffer = new byte[4096];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new DataFormatException("truncated");
+                out.write(buffer, 0, n);
+            }
+        }
+        catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt polyline", e);
+        }
+        finally {
+            inflater.end();
+        }
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    // returns the number of polylines stored
+    public synchronized int size() {
+        return ids;
+    }
+
+    // returns the heap taken by the polylines in memory, in bytes
+    public synchronized long memoryBytes() {
+        return memoryBytes;
+    }
+
+    // returns the size of the file of spilled polylines, in bytes
+    public synchronized long diskBytes() {
+        try {
+            return file == null ? 0 : file.length();
+        }
+        catch (IOException e) {
+            return 0;
+        }
+    }
+
+    public synchronized int memoryHits() {
+        return memoryHits;
+    }
+
+    public synchronized int diskHits() {
+        return diskHits;
+    }
+
+    // returns the number of get() calls that found the polyline lost
+    public synchronized int misses() {
+        return misses;
+    }
+
+    // forgets all polylines and empties the file; ids stay valid (they are
+    // not given out again), and get() returns null for them
+    public synchronized void clear() {
+        memory.clear();
+        memoryBytes = 0;
+        liveBytes = 0;
+        Arrays.fill(offsets, 0, ids, -1);
+        fileFailed = false;
+        if (file != null) {
+            try {
+                file.setLength(0);
+            }
+            catch (IOException e) {
+                // keep appending to it
+            }
+        }
+    }
+
+    // stores the polylines of a synthetic map and reads some of them back
+    public static void main(String[] args) {
+        int paths = (args.length > 0) ? Integer.parseInt(args[0]) : 39800;
+        int points = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+        long budget = (args.length > 2) ? (long) (Double.parseDouble(args[2]) * (1 << 20)) : DEFAULT_BUDGET;
+
+        // winding routes around Princeton
+        SplittableRandom random = new SplittableRandom(1);
+        PolylineStore store = new PolylineStore(budget);
+        long strings = 0;
+        double[] route = new double[2 * points];
+        for (int p = 0; p < paths; p++) {
+            double lat = 40.35, lng = -74.65, heading = random.nextDouble(2 * Math.PI);
+            for (int i = 0; i < points; i++) {
+                heading += random.nextDouble(-0.5, 0.5);
+                lat += 0.0005 * Math.cos(heading) * (1 + random.nextInt(4));
+                lng += 0.0005 * Math.sin(heading) * (1 + random.nextInt(4));
+                route[2*i] = lat;
+                route[2*i + 1] = lng;
+            }
+            String polyline = Polyline.encode(route, points);
+            strings += 40 + polyline.length();       // String, compact Latin-1 array
+            store.add(polyline);
+        }
+        StdOut.printf("%d polylines, %.1f MB as Strings\n", paths, strings / 1048576.0);
+        StdOut.printf("in memory: %.1f MB of %.1f MB, %.1f MB on disk\n", store.memoryBytes() / 1048576.0,
+                      budget / 1048576.0, store.diskBytes() / 1048576.0);
+
+        int tour = Math.min(paths, points);
+        for (int run = 0; run < 2; run++) {
+            long start = System.nanoTime();
+            for (int id = 0; id < tour; id++) store.get(id);
+            double ms = (System.nanoTime() - start) / 1e6;
+            if (run == 0) StdOut.printf("tour (%d polylines): %.1f ms", tour, ms);
+            else StdOut.printf(", again %.1f ms\n", ms);
+        }
+        int before = store.diskHits();
+        long start = System.nanoTime();
+        for (int id = 0; id < paths; id++) store.get(id);
+        StdOut.printf("all: %.1f ms (%d from disk)\n", (System.nanoTime() - start) / 1e6,
+                      store.diskHits() - before);
+
+        // as a PathCache forgetting paths
+        for (int id = 0; id < paths; id++)
+            if (id % 4 != 0) store.remove(id);
+        StdOut.printf("removed %d: %.1f MB in memory, %.1f MB on disk\n", paths - (paths + 3) / 4,
+                      store.memoryBytes() / 1048576.0, store.diskBytes() / 1048576.0);
+    }
+}
@@ -0,0 +1,215 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs ScalingSweep.java
+ *  Execution:    java-introcs ScalingSweep [-distribution d] [-seed s] [-from n]
+ *                                          [-to n] [-seconds t] [-tolerance e]
+ *  Dependencies: Tour.java ArrayTour.java CandidateGraph.java Point.java
+ *                InstanceGenerator.java PointFile.java StdOut.java
+ *
+ *  Times each tour constructor on instances of InstanceGenerator (default:
+ *  uniform, seed 0) of doubling size, from 1000 up to 10M points, and fits
+ *  its empirical scaling exponent b in time ~ a n^b (least squares over
+ *  log time against log n, for its 4 largest runs: smaller ones are still
+ *  in the caches, and the shortest can't be timed reliably). Runs shorter
+ *  than a second are repeated, and the best of 3 kept.
+ *
+ *  Both insertion heuristics scan the whole tour for every point, so their
+ *  exponent is 2, and the candidate graph is built in O(n log n) time. An
+ *  exponent more than the tolerance (default 0.5, half way to the next
+ *  power of n) above the expected one is reported as a regression, e.g. a
+ *  heuristic that scans the tour again for every edge it tries, or a graph
+ *  built with a quadratic pass, and makes the program exit with status 1,
+ *  so the sweep can run unattended. Smaller excesses are normal: the
+ *  quadratic scans slow down as the tour outgrows each cache.
+ *
+ *  A constructor stops before the run that would take more than t seconds
+ *  (default 10), extrapolating from its expected exponent, so the quadratic
+ *  ones stop well before 10M points. Each constructor runs twice untimed on
+ *  the smallest instance first, to let the JIT compile it.
+ *
+ *  % java-introcs ScalingSweep -distribution clustered -seconds 2
+ *  clustered, seed 0
+ *          n        Tour.nearest       Tour.smallest   ArrayTour.nearest  ...
+ *       1000               0.002               0.009               0.002  ...
+ *       2000               0.024               0.038               0.010  ...
+ *       4000               0.058               0.076               0.030  ...
+ *       8000               0.285               0.320               0.175  ...
+ *      16000               1.968               1.471               0.859  ...
+ *      32000                   -                   -                   -  ...
+ *      ...
+ *  exponent    2.14 (2 expected)   1.79 (2 expected)   2.42 (2 expected)  ...
+ *
+ **************************************************************************** */
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ScalingSweep {
+    private static final double MIN_FIT_SECONDS = 0.02;  // shorter runs are left out of the fit
+    private static final int FIT_RUNS = 4;               // the fit uses the largest runs only
+    private static final double REPEAT_SECONDS = 1.0;    // shorter runs take the best of REPEATS
+    private static final int REPEATS = 3;
+    private static final int WARMUP = 2;
+
+    // a way to build something from the points, timed as a whole
+    private interface Build {
+        double run(PointFile file, Point[] points);
+    }
+
+    private static final class Constructor {
+        private final String name;
+        private final double expected;      // expected scaling exponent
+        private final boolean usesPoints;   // needs the Point objects
+        private final Build build;
+        private final List<Integer> sizes = new ArrayList<>();
+        private final List<Double> seconds = new ArrayList<>();
+        private boolean stopped;
+
+        private Constructor(String name, double expected, boolean usesPoints, Build build) {
+            this.name = name;
+            this.expected = expected;
+            this.usesPoints = usesPoints;
+            this.build = build;
+        }
+
+        // returns the least-squares slope of log time against log n over the
+        // largest FIT_RUNS runs, or NaN if fewer than 3 runs were long enough
+        // to time
+        private double exponent() {
+            double sx = 0, sy = 0, sxx = 0, sxy = 0;
+            int m = 0;
+            for (int i = sizes.size() - 1; i >= 0 && m < FIT_RUNS; i--) {
+                if (seconds.get(i) < MIN_FIT_SECONDS) break;
+                double x = Math.log(sizes.get(i));
+                double y = Math.log(seconds.get(i));
+                sx += x;
+                sy += y;
+                sxx += x * x;
+                sxy += x * y;
+                m++;
+            }
+            if (m < 3) return Double.NaN;
+            return (m * sxy - sx * sy) / (m * sxx - sx * sx);
+        }
+    }
+
+    // the result of every build, so that the JIT can't drop one
+    private static double sink;
+
+    private static List<Constructor> constructors() {
+        List<Constructor> list = new ArrayList<>();
+        list.add(new Constructor("Tour.nearest", 2, true, (file, points) -> {
+            Tour tour = new Tour();
+            for (Point p : points) tour.insertNearest(p);
+            return tour.length();
+        }));
+        list.add(new Constructor("Tour.smallest", 2, true, (file, points) -> {
+            Tour tour = new Tour();
+            for (Point p : points) tour.insertSmallest(p);
+            return tour.length();
+        }));
+        list.add(new Constructor("ArrayTour.nearest", 2, false, (file, points) -> {
+            ArrayTour tour = new ArrayTour(file.size());
+            double[] xs = file.xs(), ys = file.ys();
+            for (int i = 0; i < file.size(); i++) tour.insertNearest(xs[i], ys[i]);
+            return tour.length();
+        }));
+        list.add(new Constructor("ArrayTour.smallest", 2, false, (file, points) -> {
+            ArrayTour tour = new ArrayTour(file.size());
+            double[] xs = file.xs(), ys = file.ys();
+            for (int i = 0; i < file.size(); i++) tour.insertSmallest(xs[i], ys[i]);
+            return tour.length();
+        }));
+        list.add(new Constructor("CandidateGraph", 1, false, (file, points) ->
+            CandidateGraph.create(file.xs(), file.ys(), file.size(), 10).edges()));
+        return list;
+    }
+
+    private static double time(Constructor c, PointFile file, Point[] points) {
+        long start = System.nanoTime();
+        sink += c.build.run(file, points);
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    // returns the best of REPEATS times if the first was short, the first otherwise
+    private static double bestTime(Constructor c, PointFile file, Point[] points) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int run = 0; run < REPEATS; run++) {
+            System.gc();
+            best = Math.min(best, time(c, file, points));
+            if (best >= REPEAT_SECONDS) break;
+        }
+        return best;
+    }
+
+    public static void main(String[] args) {
+        String distribution = "uniform";
+        long seed = 0;
+        int from = 1000, to = 10000000;
+        double budget = 10.0, tolerance = 0.5;
+        for (int i = 0; i < args.length; i++) {
+            if      (args[i].equals("-distribution")) distribution = args[++i];
+            else if (args[i].equals("-seed"))         seed = Long.parseLong(args[++i]);
+            else if (args[i].equals("-from"))         from = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-to"))           to = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-seconds"))      budget = Double.parseDouble(args[++i]);
+            else if (args[i].equals("-tolerance"))    tolerance = Double.parseDouble(args[++i]);
+            else {
+                StdOut.println("This program should be called: \n$ java-introcs ScalingSweep "
+                               + "[-distribution d] [-seed s] [-from n] [-to n] [-seconds t] [-tolerance e]");
+                return;
+            }
+        }
+
+        List<Constructor> constructors = constructors();
+        PointFile small = InstanceGenerator.generate(distribution, from, seed);
+        for (int run = 0; run < WARMUP; run++)
+            for (Constructor c : constructors) time(c, small, small.points());
+
+        StdOut.println(distribution + ", seed " + seed);
+        StringBuilder header = new StringBuilder(String.format("%9s", "n"));
+        for (Constructor c : constructors) header.append(String.format("  %18s", c.name));
+        StdOut.println(header);
+
+        for (long n = from; n <= to; n *= 2) {
+            boolean active = false, usesPoints = false;
+            for (Constructor c : constructors) {
+                active |= !c.stopped;
+                usesPoints |= !c.stopped && c.usesPoints;
+            }
+            if (!active) break;
+            PointFile file = InstanceGenerator.generate(distribution, (int) n, seed);
+            Point[] points = usesPoints ? file.points() : null;
+
+            StringBuilder line = new StringBuilder(String.format("%9d", n));
+            for (Constructor c : constructors) {
+                if (c.stopped) {
+                    line.append(String.format("  %18s", "-"));
+                    continue;
+                }
+                double seconds = bestTime(c, file, points);
+                c.sizes.add((int) n);
+                c.seconds.add(seconds);
+                line.append(String.format("  %18.3f", seconds));
+                // stop before a run that would go over the budget
+                if (seconds * Math.pow(2, c.expected) > budget) c.stopped = true;
+            }
+            StdOut.println(line);
+        }
+
+        boolean regression = false;
+        StringBuilder fit = new StringBuilder("exponent ");
+        for (Constructor c : constructors) {
+            double b = c.exponent();
+            String s;
+            if (Double.isNaN(b)) s = "(too fast)";
+            else if (b > c.expected + tolerance) {
+                s = String.format("%.2f REGRESSION", b);
+                regression = true;
+            }
+            else s = String.format("%.2f (%.0f expected)", b, c.expected);
+            fit.append(String.format("  %18s", s));
+        }
+        StdOut.println(fit);
+        if (regression) System.exit(1);
+    }
+}
@@ -0,0 +1,522 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs SolveServer.java
+ *  Execution:    java-introcs SolveServer [-port p] [-workers k] [-queue q] [-stub]
+ *  Dependencies: ArrayTour.java MapSession.java PointFile.java In.java
+ *                StdOut.java org.json
+ *
+ *  Long-running local TSP service, instead of starting one JVM per request
+ *  with "java TSPMap n < file". The JIT stays warm between requests, all
+ *  requests share one cache of Directions paths (MapSession.PathCache), and
+ *  identical requests are answered from a result cache keyed by a SHA-256
+ *  hash of the options and the coordinates.
+ *
+ *  POST /solve with either the usual text format (width and height on the
+ *  first line, then one point per line) or JSON:
+ *
+ *      {"points": [[40.35025, -74.65219], ...], "heuristic": "s",
+ *       "mode": "walking", "oropt": true}
+ *
+ *  Options can also be given in the query string (?heuristic=s&mode=walking
+ *  &oropt). heuristic is n (nearest, the default) or s (smallest). Without
+ *  a mode the tour is built with Euclidean distances; with one, with map
+ *  distances in that transportation mode (at most 100 points, since every
+ *  ordered pair is a Directions request). The reply is
+ *
+ *      {"order": [0, 2, 1, ...], "length": ..., "distance": ..., "time": ...,
+ *       "hash": "...", "cached": false}
+ *
+ *  where order holds indices into the request's points, length is the
+ *  Euclidean length of the tour, and distance (meters) and time (seconds)
+ *  are the map totals, only with a mode. GET /stats reports the queue and
+ *  the caches.
+ *
+ *  Requests are solved on k worker threads (default: one per core) behind a
+ *  queue of q requests (default: 64). When the queue is full the server
+ *  answers 503 with Retry-After instead of accepting more work. Requests
+ *  identical to one being solved wait for that solve rather than taking a
+ *  place in the queue. The k + 1 HTTP threads only read and parse requests
+ *  and answer cache hits and /stats (the worker that solves a request
+ *  sends its reply), so those are answered while every worker is busy;
+ *  connections beyond them and a queue of q are closed at once.
+ *
+ *  -stub serves a fake Directions API from the same server (/stub/...), with
+ *  great-circle distances and constant speeds per mode, so the service can
+ *  be run and tested on localhost without API keys or network access. It
+ *  also serves fake static maps (a PNG of the requested size showing the
+ *  center and zoom), e.g. for MapImageCache.
+ *
+ *  % java-introcs SolveServer -stub &
+ *  % curl --data-binary @Princeton_points.txt 'localhost:8126/solve?mode=walking'
+ *
+ **************************************************************************** */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class SolveServer {
+    private static final int DEFAULT_PORT = 8126;
+    private static final int DEFAULT_QUEUE = 64;
+    private static final int CACHED_RESULTS = 1024;     // results kept by the result cache
+    private static final int MAX_MAP_POINTS = 100;      // n * (n - 1) Directions requests
+    private static final int MAX_BODY = 64 << 20;       // bytes
+
+    private final ThreadPoolExecutor workers;
+    private final MapSession template;                  // keys, URLs and path cache for map requests
+    private final Map<String, String> results;          // hash -> reply, least recently used first
+    private final AtomicLong solved = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+    // hash -> the solve of the identical requests being answered
+    private final ConcurrentHashMap<String, CompletableFuture<JSONObject>> inFlight =
+        new ConcurrentHashMap<String, CompletableFuture<JSONObject>>();
+
+    // one request, parsed
+    private static final class Problem {
+        private double[] xs, ys;
+        private int n;
+        private boolean smallest;
+        private String mode;        // null for Euclidean distances
+        private boolean orOpt;
+    }
+
+    // creates a server with the given number of workers and queue length;
+    // template is the session map requests are made from (null for none)
+    public SolveServer(int threads, int queue, MapSession template) {
+        this.template = template;
+        workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                         new ArrayBlockingQueue<Runnable>(queue));
+        results = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > CACHED_RESULTS;
+            }
+        };
+    }
+
+    // parses a request body, in the text format or as JSON, with the
+    // options of the query string
+    private static Problem parse(String body, Map<String, String> query) {
+        Problem p = new Problem();
+        String heuristic = query.getOrDefault("heuristic", "n");
+        p.mode = query.get("mode");
+        p.orOpt = query.containsKey("oropt");
+
+        String trimmed = body.trim();
+        if (trimmed.startsWith("{")) {
+            JSONObject json = new JSONObject(trimmed);
+            heuristic = json.optString("heuristic", heuristic);
+            if (json.has("mode")) p.mode = json.getString("mode");
+            p.orOpt = json.optBoolean("oropt", p.orOpt);
+            JSONArray points = json.getJSONArray("points");
+            p.n = points.length();
+            p.xs = new double[p.n];
+            p.ys = new double[p.n];
+            for (int i = 0; i < p.n; i++) {
+                JSONArray point = points.getJSONArray(i);
+                p.xs[i] = point.getDouble(0);
+                p.ys[i] = point.getDouble(1);
+            }
+        }
+        else {
+            PointFile file = new PointFile("request", new In(new Scanner(body)));
+            p.n = file.size();
+            p.xs = file.xs();
+            p.ys = file.ys();
+        }
+
+        if (heuristic.equals("n") || heuristic.equals("nearest")) p.smallest = false;
+        else if (heuristic.equals("s") || heuristic.equals("smallest")) p.smallest = true;
+        else throw new IllegalArgumentException("heuristic must be n or s, not " + heuristic);
+        if (p.mode != null) {
+            if (!MapSession.isTransportationModeSupported(p.mode))
+                throw new IllegalArgumentException("Supported transportation modes: "
+                                                   + MapSession.supportedTransportationModes());
+            p.mode = p.mode.toLowerCase();
+            if (p.n > MAX_MAP_POINTS)
+                throw new IllegalArgumentException("at most " + MAX_MAP_POINTS + " points with map distances");
+        }
+        return p;
+    }
+
+    // returns the hex SHA-256 of the options and coordinates of p
+    private static String hash(Problem p) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            String options = (p.smallest ? "s|" : "n|") + p.mode + "|" + p.orOpt + "|" + p.n + "|";
+            sha.update(options.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer buffer = ByteBuffer.allocate(16 * p.n);
+            for (int i = 0; i < p.n; i++) {
+                buffer.putDouble(p.xs[i]);
+                buffer.putDouble(p.ys[i]);
+            }
+            sha.update(buffer.array());
+            StringBuilder hex = new StringBuilder();
+            for (byte b : sha.digest()) hex.append(String.format("%02x", b));
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // builds the tour for p and returns the reply, without "cached"
+    private JSONObject solve(Problem p) {
+        MapSession session = null;
+        if (p.mode != null) {
+            if (template == null) throw new IllegalArgumentException("map distances are not available");
+            session = template.newSession();
+            session.setTransportationMode(p.mode);
+        }
+        ArrayTour tour = (session == null) ? new ArrayTour(Math.max(p.n, 1)) : new ArrayTour(session);
+        for (int i = 0; i < p.n; i++) {
+            if (p.smallest) tour.insertSmallest(p.xs[i], p.ys[i]);
+            else            tour.insertNearest(p.xs[i], p.ys[i]);
+        }
+        if (p.orOpt) tour.orOpt();
+
+        // points are inserted in request order, so tour indices are request indices
+        int[] order = tour.order();
+        JSONArray orderJson = new JSONArray();
+        double length = 0.0, distance = 0.0, time = 0.0;
+        boolean possible = true;
+        for (int k = 0; k < order.length; k++) {
+            int i = order[k];
+            int j = order[(k + 1) % order.length];
+            double dx = p.xs[i] - p.xs[j];
+            double dy = p.ys[i] - p.ys[j];
+            length += Math.sqrt(dx*dx + dy*dy);
+            if (session != null && order.length > 1) {
+                double d = session.getMapDistance(p.xs[i], p.ys[i], p.xs[j], p.ys[j]);
+                double t = session.getMapTime(p.xs[i], p.ys[i], p.xs[j], p.ys[j]);
+                if (d < 0 || t < 0) possible = false;
+                distance += d;
+                time += t;
+            }
+            orderJson.put(i);
+        }
+
+        JSONObject reply = new JSONObject();
+        reply.put("order", orderJson);
+        reply.put("length", length);
+        if (session != null) {
+            reply.put("mode", p.mode);
+            // -1, as for a single path, when some leg has no path
+            reply.put("distance", possible ? distance : -1);
+            reply.put("time", possible ? time : -1);
+        }
+        return reply;
+    }
+
+    // answers one /solve request: from the result cache, by joining the
+    // identical request being solved, or on a worker. The reply of a solve
+    // is sent by the worker that completes it, so the HTTP threads never
+    // wait for a solve and answer cache hits and /stats at once
+    private void handleSolve(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            send(exchange, 405, error("use POST"));
+            return;
+        }
+        String body = readBody(exchange);
+        if (body == null) {
+            send(exchange, 413, error("request larger than " + MAX_BODY + " bytes"));
+            return;
+        }
+
+        Problem p;
+        try {
+            p = parse(body, query(exchange));
+        }
+        catch (RuntimeException e) {
+            send(exchange, 400, error(message(e)));
+            return;
+        }
+        String key = hash(p);
+        String cached;
+        synchronized (results) {
+            cached = results.get(key);
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+            send(exchange, 200, new JSONObject(cached).put("hash", key).put("cached", true).toString());
+            return;
+        }
+
+        CompletableFuture<JSONObject> solve = new CompletableFuture<JSONObject>();
+        CompletableFuture<JSONObject> pending = inFlight.putIfAbsent(key, solve);
+        if (pending != null) {
+            joined.incrementAndGet();
+            pending.whenComplete((reply, failure) -> reply(exchange, key, reply, failure));
+            return;
+        }
+        solve.whenComplete((reply, failure) -> reply(exchange, key, reply, failure));
+        try {
+            workers.execute(() -> {
+                try {
+                    JSONObject reply = solve(p);
+                    solved.incrementAndGet();
+                    // cached before it is no longer in flight, so that an
+                    // identical request finds one or the other
+                    synchronized (results) {
+                        results.put(key, reply.toString());
+                    }
+                    inFlight.remove(key);
+                    solve.complete(reply);
+                }
+                catch (RuntimeException | Error e) {
+                    inFlight.remove(key);
+                    solve.completeExceptionally(e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            inFlight.remove(key);
+            solve.completeExceptionally(e);
+        }
+    }
+
+    // sends the reply of a solve (shared by the identical requests that
+    // joined it), or its failure: 503 if the queue was full, 400 for a bad
+    // request, 500 otherwise
+    private static void reply(HttpExchange exchange, String key, JSONObject reply, Throwable failure) {
+        try {
+            if (failure == null) {
+                send(exchange, 200, new JSONObject(reply.toString()).put("hash", key).put("cached", false).toString());
+            }
+            else if (failure instanceof RejectedExecutionException) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, error("queue is full"));
+            }
+            else {
+                int status = (failure instanceof IllegalArgumentException) ? 400 : 500;
+                send(exchange, status, error(message(failure)));
+            }
+        }
+        catch (IOException e) {
+            // the client is gone
+            exchange.close();
+        }
+    }
+
+    // answers GET /stats
+    private void handleStats(HttpExchange exchange) throws IOException {
+        JSONObject stats = new JSONObject();
+        stats.put("workers", workers.getMaximumPoolSize());
+        stats.put("active", workers.getActiveCount());
+        stats.put("queued", workers.getQueue().size());
+        stats.put("solved", solved.get());
+        stats.put("cacheHits", hits.get());
+        stats.put("rejected", rejected.get());
+        stats.put("joined", joined.get());
+        stats.put("inFlight", inFlight.size());
+        synchronized (results) {
+            stats.put("cachedResults", results.size());
+        }
+        if (template != null) {
+            MapSession.PathCache paths = template.getPathCache();
+            stats.put("cachedPaths", paths.size());
+            stats.put("polylineBytes", paths.polylines().memoryBytes());
+            stats.put("polylineDiskBytes", paths.polylines().diskBytes());
+        }
+        send(exchange, 200, stats.toString());
+    }
+
+    // returns the request body, or null if it is longer than MAX_BODY
+    private static String readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        byte[] bytes = in.readNBytes(MAX_BODY + 1);
+        if (bytes.length > MAX_BODY) return null;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // returns the query string as a map; a parameter without a value maps to ""
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> map = new HashMap<String, String>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) return map;
+        for (String pair : raw.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String name = (eq < 0) ? pair : pair.substring(0, eq);
+            String value = (eq < 0) ? "" : pair.substring(eq + 1);
+            map.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return map;
+    }
+
+    // returns the message of e, or its class name if it has none
+    private static String message(Throwable e) {
+        return (e.getMessage() != null) ? e.getMessage() : e.getClass().getName();
+    }
+
+    private static String error(String message) {
+        return new JSONObject().put("error", message).toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // fake Directions API: great-circle distance and a constant speed per mode
+    private static void handleStubDirections(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        String[] origin = query.get("origin").split(",");
+        String[] destination = query.get("destination").split(",");
+        double lat1 = Math.toRadians(Double.parseDouble(origin[0].trim()));
+        double lng1 = Math.toRadians(Double.parseDouble(origin[1].trim()));
+        double lat2 = Math.toRadians(Double.parseDouble(destination[0].trim()));
+        double lng2 = Math.toRadians(Double.parseDouble(destination[1].trim()));
+        double h = Math.pow(Math.sin((lat2 - lat1) / 2), 2)
+                 + Math.cos(lat1) * Math.cos(lat2) * Math.pow(Math.sin((lng2 - lng1) / 2), 2);
+        int meters = (int) Math.round(1.3 * 2 * 6371000 * Math.asin(Math.sqrt(h)));   // streets aren't straight
+
+        double speed;   // meters per second
+        switch (query.getOrDefault("mode", "walking")) {
+            case "driving":   speed = 11.0; break;
+            case "bicycling": speed = 4.5;  break;
+            case "transit":   speed = 8.0;  break;
+            default:          speed = 1.4;  break;
+        }
+        int seconds = (int) Math.round(meters / speed);
+
+        JSONObject point = new JSONObject().put("lat", Math.toDegrees(Math.max(lat1, lat2)))
+                                           .put("lng", Math.toDegrees(Math.max(lng1, lng2)));
+        JSONObject corner = new JSONObject().put("lat", Math.toDegrees(Math.min(lat1, lat2)))
+                                            .put("lng", Math.toDegrees(Math.min(lng1, lng2)));
+        JSONObject leg = new JSONObject().put("distance", new JSONObject().put("value", meters))
+                                         .put("duration", new JSONObject().put("value", seconds));
+        JSONObject route = new JSONObject()
+            .put("overview_polyline", new JSONObject().put("points", ""))
+            .put("bounds", new JSONObject().put("northeast", point).put("southwest", corner))
+            .put("legs", new JSONArray().put(leg));
+        send(exchange, 200, new JSONObject().put("status", "OK")
+                                            .put("routes", new JSONArray().put(route)).toString());
+    }
+
+    // fake Static Maps API: a blank map of the requested size, labeled with
+    // its center and zoom
+    private static void handleStubStaticMap(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        int width = 500, height = 500;
+        String[] size = query.getOrDefault("size", "").split("x");
+        if (size.length == 2) {
+            try {
+                width = Math.max(1, Math.min(640, Integer.parseInt(size[0])));
+                height = Math.max(1, Math.min(640, Integer.parseInt(size[1])));
+            }
+            catch (NumberFormatException e) {
+                // keep the default size
+            }
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(0xE8E4DA));
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.GRAY);
+        g.drawString(query.getOrDefault("center", "") + " zoom " + query.getOrDefault("zoom", ""), 5, 15);
+        g.dispose();
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        exchange.getResponseHeaders().set("Content-Type", "image/png");
+        exchange.sendResponseHeaders(200, png.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            png.writeTo(out);
+        }
+    }
+
+    // solves a random instance a few times so that the first requests don't
+    // run in the interpreter
+    private static void warmUp() {
+        Random random = new Random(126);
+        for (int round = 0; round < 3; round++) {
+            ArrayTour nearest = new ArrayTour(1000);
+            ArrayTour smallest = new ArrayTour(1000);
+            for (int i = 0; i < 1000; i++) {
+                double x = 1000 * random.nextDouble();
+                double y = 1000 * random.nextDouble();
+                nearest.insertNearest(x, y);
+                smallest.insertSmallest(x, y);
+            }
+            nearest.orOpt();
+        }
+    }
+
+    // starts the server
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = DEFAULT_QUEUE;
+        boolean stub = false;
+        for (int i = 0; i < args.length; i++) {
+            if      (args[i].equals("-port"))    port = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-workers")) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-queue"))   queue = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-stub"))    stub = true;
+            else {
+                StdOut.println("This program should be called: \n$ java-introcs SolveServer [-port p] [-workers k] [-queue q] [-stub]");
+                return;
+            }
+        }
+
+        HttpServer http = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        // the HTTP threads read, parse and answer from the cache, but don't
+        // wait for solves; past them and their queue, connections are closed
+        int handlers = threads + 1;
+        http.setExecutor(new ThreadPoolExecutor(handlers, handlers, 0L, TimeUnit.MILLISECONDS,
+                                                new ArrayBlockingQueue<Runnable>(queue)));
+        String base = "http://127.0.0.1:" + http.getAddress().getPort();
+        if (stub) {
+            http.createContext("/stub/directions/json", SolveServer::handleStubDirections);
+            http.createContext("/stub/staticmap", SolveServer::handleStubStaticMap);
+        }
+        http.start();
+
+        MapSession template = new MapSession();
+        if (stub) {
+            template.setApiUrls(base + "/stub/staticmap", base + "/stub/directions/json");
+            template.setApiKeys("stub", "stub");
+        }
+        else template.setApiKeys(Constants.STATIC_MAPS_API_KEY, Constants.DIRECTIONS_API_KEY);
+
+        warmUp();
+        SolveServer server = new SolveServer(threads, queue, template);
+        http.createContext("/solve", server::handleSolve);
+        http.createContext("/stats", server::handleStats);
+        StdOut.println("Listening on " + base + " with " + threads + " workers"
+                       + (stub ? " and a stub Directions API" : ""));
+    }
+}
@@ -0,0 +1,286 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs Storage.java
+ *  Dependencies: PointFile.java
+ *
+ *  Where the big arrays of an instance live: coordinates, successors,
+ *  candidate lists. Algorithms that are meant for millions of points
+ *  (LargeTour) allocate their arrays through a Storage and read them
+ *  through Storage.Doubles and Storage.Ints, so the same code runs with
+ *  each backend; CandidateGraph's adjacency lists are Storage.Ints too.
+ *  The backends are:
+ *
+ *    heap()         double[] and int[], as everywhere else
+ *    direct()       direct ByteBuffers: outside the heap, so the heap (and
+ *                   -Xmx) stays small and the collector never scans or
+ *                   copies them; freed when the buffer is collected
+ *    mapped(dir)    memory-mapped temporary files in dir: also outside the
+ *                   heap, and the operating system can page them out, so
+ *                   an instance can be larger than memory
+ *
+ *  mapPoints() maps the coordinates of a packed PointFile straight from
+ *  disk (read-only): a 10M-point instance is ready at once, without being
+ *  read, and its pages are shared with every other process mapping it.
+ *
+ *  Java 17 only has the Foreign Memory API (MemorySegment) as an
+ *  incubator module whose API changes with every release, so the off-heap
+ *  backends use NIO buffers, which give the same native and file-backed
+ *  memory. A buffer is indexed by an int, so an array holds at most
+ *  2^31 - 1 bytes: 268M doubles or 536M ints.
+ *
+ *  HotSpot inlines a call to get() or set() only where it has seen at most
+ *  two backends at that call site, and a buffer read still checks its
+ *  bounds and byte order, so an off-heap backend costs time in tight
+ *  loops. ArrayTour's next and prev links, read on every step of every
+ *  insertion, stay int[]: as Storage.Ints in direct buffers, nearest
+ *  insertion on usa13509 took twice as long.
+ *
+ **************************************************************************** */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public abstract class Storage {
+
+    // a fixed-size array of doubles
+    public abstract static class Doubles {
+        public abstract int size();
+        public abstract double get(int i);
+        public abstract void set(int i, double v);
+    }
+
+    // a fixed-size array of ints
+    public abstract static class Ints {
+        public abstract int size();
+        public abstract int get(int i);
+        public abstract void set(int i, int v);
+    }
+
+    // returns a short name for this backend
+    public abstract String name();
+
+    // returns a new array of n doubles, all 0
+    public abstract Doubles doubles(int n);
+
+    // returns a new array of n ints, all 0
+    public abstract Ints ints(int n);
+
+    // returns a new array of n ints in this backend, starting with the
+    // first min(n, a.size()) ints of a (as Arrays.copyOf, for growing arrays)
+    public Ints copyOf(Ints a, int n) {
+        Ints copy = ints(n);
+        for (int i = 0, m = Math.min(n, a.size()); i < m; i++) copy.set(i, a.get(i));
+        return copy;
+    }
+
+    // returns the on-heap backend
+    public static Storage heap() {
+        return new Storage() {
+            public String name() {
+                return "heap";
+            }
+
+            public Doubles doubles(int n) {
+                return new HeapDoubles(new double[n]);
+            }
+
+            public Ints ints(int n) {
+                return new HeapInts(new int[n]);
+            }
+        };
+    }
+
+    // returns the backend of direct (off-heap) buffers
+    public static Storage direct() {
+        return new Storage() {
+            public String name() {
+                return "direct";
+            }
+
+            public Doubles doubles(int n) {
+                return new BufferDoubles(allocate(n, Double.BYTES).asDoubleBuffer());
+            }
+
+            public Ints ints(int n) {
+                return new BufferInts(allocate(n, Integer.BYTES).asIntBuffer());
+            }
+
+            private ByteBuffer allocate(int n, int bytes) {
+                return ByteBuffer.allocateDirect(checkedBytes(n, bytes)).order(ByteOrder.nativeOrder());
+            }
+        };
+    }
+
+    // returns the backend of temporary files in dir (the temporary
+    // directory if null), mapped into memory; the files are deleted at once,
+    // so they go away with the mappings
+    public static Storage mapped(File dir) {
+        return new Storage() {
+            public String name() {
+                return "mapped";
+            }
+
+            public Doubles doubles(int n) {
+                return new BufferDoubles(map(n, Double.BYTES).asDoubleBuffer());
+            }
+
+            public Ints ints(int n) {
+                return new BufferInts(map(n, Integer.BYTES).asIntBuffer());
+            }
+
+            private ByteBuffer map(int n, int bytes) {
+                int size = checkedBytes(n, bytes);
+                try {
+                    File file = File.createTempFile("tsp-storage", ".bin", dir);
+                    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                         FileChannel channel = raf.getChannel()) {
+                        // the mapping outlives the channel and the file name
+                        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                        return buffer.order(ByteOrder.nativeOrder());
+                    }
+                    finally {
+                        if (!file.delete()) file.deleteOnExit();
+                    }
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException("Could not map a temporary file", e);
+                }
+            }
+        };
+    }
+
+    // returns the backend with the given name: heap, direct or mapped
+    public static Storage named(String name) {
+        if (name.equals("heap")) return heap();
+        if (name.equals("direct")) return direct();
+        if (name.equals("mapped")) return mapped(null);
+        throw new IllegalArgumentException("Unknown storage: " + name + " (expected heap, direct or mapped)");
+    }
+
+    // returns the x- and y-coordinates of the packed PointFile, mapped
+    // read-only from the file
+    public static Doubles[] mapPoints(String filename) {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+             FileChannel channel = file.getChannel()) {
+            // packed files are big-endian, like everything in java.io
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, PointFile.HEADER);
+            if (header.getInt() != PointFile.MAGIC)
+                throw new IllegalArgumentException(filename + ": not a packed point file");
+            int n = header.getInt(12);
+            if (channel.size() != PointFile.HEADER + 16L * n)
+                throw new IllegalArgumentException(filename + ": truncated packed point file");
+            DoubleBuffer xs = channel.map(FileChannel.MapMode.READ_ONLY, PointFile.HEADER, 8L * n)
+                                     .asDoubleBuffer();
+            DoubleBuffer ys = channel.map(FileChannel.MapMode.READ_ONLY, PointFile.HEADER + 8L * n, 8L * n)
+                                     .asDoubleBuffer();
+            return new Doubles[] { new BufferDoubles(xs), new BufferDoubles(ys) };
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not map " + filename, e);
+        }
+    }
+
+    // returns the array as Doubles, without copying it
+    public static Doubles wrap(double[] a) {
+        return new HeapDoubles(a);
+    }
+
+    // returns the array as Ints, without copying it
+    public static Ints wrap(int[] a) {
+        return new HeapInts(a);
+    }
+
+    private static int checkedBytes(int n, int bytes) {
+        if (n < 0) throw new IllegalArgumentException("Negative size " + n);
+        if ((long) n * bytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(n + " elements don't fit in one buffer");
+        return n * bytes;
+    }
+
+    private static final class HeapDoubles extends Doubles {
+        private final double[] a;
+
+        private HeapDoubles(double[] a) {
+            this.a = a;
+        }
+
+        public int size() {
+            return a.length;
+        }
+
+        public double get(int i) {
+            return a[i];
+        }
+
+        public void set(int i, double v) {
+            a[i] = v;
+        }
+    }
+
+    private static final class HeapInts extends Ints {
+        private final int[] a;
+
+        private HeapInts(int[] a) {
+            this.a = a;
+        }
+
+        public int size() {
+            return a.length;
+        }
+
+        public int get(int i) {
+            return a[i];
+        }
+
+        public void set(int i, int v) {
+            a[i] = v;
+        }
+    }
+
+    private static final class BufferDoubles extends Doubles {
+        private final DoubleBuffer b;
+
+        private BufferDoubles(DoubleBuffer b) {
+            this.b = b;
+        }
+
+        public int size() {
+            return b.capacity();
+        }
+
+        public double get(int i) {
+            return b.get(i);
+        }
+
+        public void set(int i, double v) {
+            b.put(i, v);
+        }
+    }
+
+    private static final class BufferInts extends Ints {
+        private final IntBuffer b;
+
+        private BufferInts(IntBuffer b) {
+            this.b = b;
+        }
+
+        public int size() {
+            return b.capacity();
+        }
+
+        public int get(int i) {
+            return b.get(i);
+        }
+
+        public void set(int i, int v) {
+            b.put(i, v);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs TSPLauncher.java
+ *  Execution:    java-introcs TSPLauncher [-headless] driver [args] < file.txt
+ *                java-introcs TSPLauncher -train
+ *  Dependencies: NearestInsertion.java SmallestInsertion.java TSPMap.java
+ *
+ *  Single entry point for the TSP drivers, used by tsp.sh to start them from
+ *  a shared class-data (AppCDS) archive. The driver is one of
+ *  NearestInsertion, SmallestInsertion or TSPMap; the remaining arguments
+ *  are passed on to it.
+ *
+ *  -headless runs the driver without AWT: no window is opened and only the
+ *  textual output is produced.
+ *
+ *  -train loads the classes of every driver and runs both heuristics on a
+ *  small generated instance, so that a JVM started with
+ *  -XX:ArchiveClassesAtExit records everything the drivers need.
+ *
+ **************************************************************************** */
+
+import java.lang.reflect.Method;
+
+public class TSPLauncher {
+    private static final String[] DRIVERS = { "NearestInsertion", "SmallestInsertion", "TSPMap" };
+
+    // classes loaded by the drivers, in addition to the drivers themselves
+    private static final String[] SUPPORT = {
+        "Tour", "Point", "LowerBound", "CandidateGraph", "StdIn", "StdOut", "StdDraw", "StdMap", "In",
+        "org.json.JSONObject", "org.json.JSONArray", "org.json.JSONTokener",
+        "java.awt.GraphicsEnvironment", "javax.swing.JFrame", "javax.imageio.ImageIO",
+    };
+
+    // loads (but does not initialize) the given classes, skipping missing ones
+    private static void load(String[] names) {
+        ClassLoader loader = TSPLauncher.class.getClassLoader();
+        for (String name : names) {
+            try {
+                Class.forName(name, false, loader);
+            }
+            catch (ClassNotFoundException | LinkageError e) {
+                System.err.println("Skipping " + name + ": " + e);
+            }
+        }
+    }
+
+    // exercises the classes the drivers need for a headless run
+    private static void train() {
+        load(DRIVERS);
+        load(SUPPORT);
+        Tour nearest = new Tour();
+        Tour smallest = new Tour();
+        for (int i = 0; i < 100; i++) {
+            Point p = new Point((i * 37) % 101, (i * 61) % 103);
+            nearest.insertNearest(p);
+            smallest.insertSmallest(p);
+        }
+        StdOut.printf("Tour length = %.4f\n", nearest.length());
+        StdOut.printf("Tour length = %.4f\n", smallest.length());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int first = 0;
+        if (args.length > 0 && args[0].equals("-headless")) {
+            // must happen before anything touches AWT
+            System.setProperty("java.awt.headless", "true");
+            first = 1;
+        }
+        if (args.length > first && args[first].equals("-train")) {
+            System.setProperty("java.awt.headless", "true");
+            train();
+            return;
+        }
+
+        boolean known = false;
+        for (String driver : DRIVERS) {
+            if (args.length > first && args[first].equals(driver)) known = true;
+        }
+        if (!known) {
+            StdOut.println("This program should be called: \n$ java-introcs TSPLauncher [-headless] "
+                           + "NearestInsertion/SmallestInsertion/TSPMap [args]");
+            return;
+        }
+
+        String[] rest = new String[args.length - first - 1];
+        System.arraycopy(args, first + 1, rest, 0, rest.length);
+        Method main = Class.forName(args[first]).getMethod("main", String[].class);
+        main.invoke(null, (Object) rest);
+    }
+}
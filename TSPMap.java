@@ -1,7 +1,25 @@
+import java.awt.GraphicsEnvironment;
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+
 public class TSPMap {
+    private static final double PAN = 64;   // pixels per arrow key
+
     public static void main(String[] args) {
+        // the tour is built with Tour unless -arraytour is given; -oropt (with
+        // ArrayTour) improves it with Or-opt moves, which never reverse a
+        // segment and so respect one-way streets and transit
+        boolean arrayTour = false;
+        boolean orOpt = false;
+        ArrayList<String> rest = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.equals("-arraytour")) arrayTour = true;
+            else if (arg.equals("-oropt")) orOpt = arrayTour = true;
+            else rest.add(arg);
+        }
+        args = rest.toArray(new String[0]);
         if ((args.length != 1 && args.length != 2) || !(args[0].equals("s") || args[0].equals("n"))) {
-            StdOut.println("This program should be called: \n$ java-introcs TSPMap n/s [transportation_mode]");
+            StdOut.println("This program should be called: \n$ java-introcs TSPMap n/s [transportation_mode] [-arraytour] [-oropt]");
             return;
         }
 
@@ -23,7 +41,8 @@ public class TSPMap {
 
         if (args.length == 2) StdMap.setTransportationMode(args[1]);
 
-        Tour tour = new Tour(true);
+        Tour tour = arrayTour ? null : new Tour(true);
+        ArrayTour fast = arrayTour ? new ArrayTour(true) : null;
         if (StdIn.isEmpty()) {
             StdOut.println("Empty");
             return;
@@ -33,79 +52,109 @@ public class TSPMap {
             double y = StdIn.readDouble();
             String s = StdIn.readLine();
 
-            Point p = new Point(x, y);
             StdMap.addPoint(x, y);
 
+            if (fast != null) {
+                if (isSmallestHeuristic) fast.insertSmallest(x, y);
+                else fast.insertNearest(x, y);
+                continue;
+            }
+            Point p = new Point(x, y);
             if (isSmallestHeuristic) tour.insertSmallest(p);
             else tour.insertNearest(p);
         }
-        String[] points = tour.toString().split("\n");
 
-        // StdMap.setTransportationMode("transit");
-        // StdMap.setTransportationMode("driving");
-
-        double firstLng = 0;
-        double firstLat = 0;
-        double prevLng = 0;
-        double prevLat = 0;
-
-        for (int i = 0; i < points.length; i++) {
-            String strip = points[i].trim();
-            if (strip.length() == 0) continue;
-            if (strip.charAt(0) != '(' || strip.charAt(strip.length()-1) != ')' || strip.indexOf(',') == -1) {
-                StdOut.println("Wrong tour output");
-                return;
+        // read the tour back in order: ArrayTour exports it, and Tour only
+        // has its string form, one "(lng, lat)" per line
+        int n;
+        double[] lngs;
+        double[] lats;
+        if (fast != null) {
+            if (orOpt) fast.orOpt();
+            n = fast.size();
+            lngs = new double[n];
+            lats = new double[n];
+            fast.coordinates(lngs, lats);
+        }
+        else {
+            double[][] coords = new double[2][];
+            try {
+                n = TourImage.parse(tour.toString(), coords);
             }
-            strip = strip.substring(1, strip.length()-1);
-            strip = strip.trim();
-            String[] coords = strip.split(",");
-            if (coords.length != 2) {
+            catch (IllegalArgumentException e) {
                 StdOut.println("Wrong tour output");
                 return;
             }
-            double lng = Double.parseDouble(coords[0].trim());
-            double lat = Double.parseDouble(coords[1].trim());
-            StdMap.addPoint(lng, lat);
-            
-            if (i == 0) {
-                firstLng = lng;
-                firstLat = lat;
-            } else {
-                StdMap.addVisiblePath(prevLng, prevLat, lng, lat);
-            }
+            lngs = coords[0];
+            lats = coords[1];
+        }
+
+        // StdMap.setTransportationMode("transit");
+        // StdMap.setTransportationMode("driving");
 
-            prevLng = lng;
-            prevLat = lat;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1 == n) ? 0 : i + 1;
+            StdMap.addVisiblePath(lngs[i], lats[i], lngs[j], lats[j]);
         }
-        StdMap.addVisiblePath(prevLng, prevLat, firstLng, firstLat);
+
         StdMap.addMessage("The transportation mode is " + StdMap.getTransportationMode());
         StdMap.addMessage("Total distance of the tour: " + StdMap.getTotalDistance());
         StdMap.addMessage("Total time of the tour: " + StdMap.getTotalTime());
         StdMap.showInfobox(360);
 
-        StdMap.openMap();
+        // without a display (java -Djava.awt.headless=true), print the infobox instead
+        if (GraphicsEnvironment.isHeadless()) {
+            StdOut.println("The transportation mode is " + StdMap.getTransportationMode());
+            StdOut.println("Total distance of the tour: " + StdMap.getTotalDistance());
+            StdOut.println("Total time of the tour: " + StdMap.getTotalTime());
+            return;
+        }
+
+        // maps are drawn on their own thread, so a key pressed while a map
+        // is loading supersedes it instead of waiting for it
+        DrawLoop maps = new DrawLoop("TSPMap", StdMap::openMap);
+        maps.requestFrame();
 
-        while(true) {
-            if (StdDraw.hasNextKeyTyped()) {
+        // sleep until a key is typed
+        long input = DrawLoop.inputs();
+        while (true) {
+            while (StdDraw.hasNextKeyTyped()) {
                 char key = StdDraw.nextKeyTyped();
                 
                 if (key == 'i') {
                     StdMap.zoomIn();
-                    StdMap.openMap();
+                    maps.requestFrame();
                 }
                 if (key == 'o') {
                     StdMap.zoomOut();
-                    StdMap.openMap();
+                    maps.requestFrame();
                 }
                 if (key == 'm') {
                     StdMap.disableDefaultZoom();
-                    StdMap.openMap();
+                    maps.requestFrame();
                 }
                 if (key == 'd') {
                     StdMap.enableDefaultZoom();
-                    StdMap.openMap();
+                    maps.requestFrame();
                 }
+                // draw locally instead of with static maps, or back
+                if (key == 'v') {
+                    StdMap.setLocalRendering(!StdMap.isLocalRendering());
+                    maps.requestFrame();
+                }
+            }
+
+            // arrow keys pan (held down, they repeat)
+            double dx = 0, dy = 0;
+            if (StdDraw.isKeyPressed(KeyEvent.VK_LEFT))  dx -= PAN;
+            if (StdDraw.isKeyPressed(KeyEvent.VK_RIGHT)) dx += PAN;
+            if (StdDraw.isKeyPressed(KeyEvent.VK_UP))    dy -= PAN;
+            if (StdDraw.isKeyPressed(KeyEvent.VK_DOWN))  dy += PAN;
+            if (dx != 0 || dy != 0) {
+                StdMap.panMap(dx, dy);
+                maps.requestFrame();
             }
+            input = DrawLoop.awaitInput(input);
         }
         
     }
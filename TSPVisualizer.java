@@ -15,13 +15,25 @@
  *
  *                  java-introcs TSPVisualizer tsp1000.txt
  *
+ *                With -arraytour, the two tours are ArrayTours instead of
+ *                Tours, so points can also be removed: in delete mode a
+ *                click removes the closest point from both tours, which
+ *                repair themselves locally instead of being rebuilt.
+ *
+ *                  java-introcs TSPVisualizer -arraytour tsp1000.txt
+ *
  *                Keyboard commands:
  *                  - n   toggle nearest heuristic tour
  *                  - s   toggle smallest heuristic tour
  *                  - m   toggle mouse up correction (what does this do... ?)
+ *                  - d   toggle delete mode (with -arraytour: clicks
+ *                        remove points)
  *                  - q   quit (no!)
  *
- *  Dependencies: Point, StdOut, StdDraw
+ *                Standard output lists every point added, including points
+ *                removed later (so it stays a valid input file).
+ *
+ *  Dependencies: Tour, ArrayTour, DrawLoop, Point, StdOut, StdDraw
  **************************************************************************** */
 
 import java.util.ArrayList;
@@ -30,6 +42,14 @@ public class TSPVisualizer {
     
     public static void main(String[] args) {
         
+        // -arraytour: ArrayTours, which can remove points, instead of Tours
+        boolean editable = false;
+        String filename = null;
+        for (String arg : args) {
+            if (arg.equals("-arraytour")) editable = true;
+            else filename = arg;
+        }
+        
         int xscale = 512;
         int yscale = 512-70;
         
@@ -41,12 +61,18 @@ public class TSPVisualizer {
         StdDraw.textLeft(80, 380, "- n   toggle nearest neighbor heuristic tour");
         StdDraw.textLeft(80, 360, "- s   toggle smallest insertion heuristic tour");
         StdDraw.textLeft(80, 340, "- m   'draw mode'");
-        StdDraw.textLeft(80, 320, "- q   quit");
+        if (editable) {
+            StdDraw.textLeft(80, 320, "- d   toggle delete mode");
+            StdDraw.textLeft(80, 300, "- q   quit");
+        }
+        else StdDraw.textLeft(80, 320, "- q   quit");
 
         StdDraw.enableDoubleBuffering();
         
-        Tour nearest  = new Tour();
-        Tour smallest = new Tour();
+        Tour nearest  = editable ? null : new Tour();
+        Tour smallest = editable ? null : new Tour();
+        ArrayTour editableNearest  = editable ? new ArrayTour() : null;
+        ArrayTour editableSmallest = editable ? new ArrayTour() : null;
         
         ArrayList<Point> points = new ArrayList<Point>();
         
@@ -57,10 +83,10 @@ public class TSPVisualizer {
         
         boolean mouseWasUp = true;
         boolean mouseCorrect = true;
+        boolean deleting = false;
         
         // initialize the two data structures with point from file
-        if (args.length > 0) {
-            String filename = args[0];
+        if (filename != null) {
             In in = new In(filename);
             
             xscale = in.readInt();
@@ -83,8 +109,14 @@ public class TSPVisualizer {
                 
                 points.add(p);
                 
-                nearest.insertNearest(p);
-                smallest.insertSmallest(p);
+                if (editable) {
+                    editableNearest.insertNearest(x, y);
+                    editableSmallest.insertSmallest(x, y);
+                }
+                else {
+                    nearest.insertNearest(p);
+                    smallest.insertSmallest(p);
+                }
             }
             
             redraw = true;
@@ -95,8 +127,9 @@ public class TSPVisualizer {
         }
         
         
-        // MAIN EVENT LOOP
+        // MAIN EVENT LOOP: sleeps until there is input (DrawLoop)
         // ------------------------------------------------------------------
+        long input = DrawLoop.inputs();
         while (true) {
             
             // check keyboard events
@@ -107,13 +140,32 @@ public class TSPVisualizer {
                 if (key == 'n') showingNearest = !showingNearest;
                 if (key == 's') showingSmallest = !showingSmallest;
                 if (key == 'm') mouseCorrect = !mouseCorrect;
+                if (key == 'd') deleting = editable && !deleting;
                 if (key == 'q') break;
                 
                 redraw = true;
             }
             
+            // on mouse click in delete mode: remove the closest point
+            if (deleting && StdDraw.isMousePressed() && (!mouseCorrect || mouseWasUp)) {
+                mouseWasUp = false;
+
+                double[] removed = editableNearest.removeNearest(StdDraw.mouseX(), StdDraw.mouseY());
+                if (removed != null) {
+                    editableSmallest.remove(removed[0], removed[1]);
+                    String p = new Point(removed[0], removed[1]).toString();
+                    for (int i = points.size() - 1; i >= 0; i--) {
+                        if (points.get(i).toString().equals(p)) {
+                            points.remove(i);
+                            break;
+                        }
+                    }
+                    redraw = true;
+                }
+            }
+
             // on mouse click: add new point to tours
-            if (StdDraw.isMousePressed() && (!mouseCorrect || mouseWasUp)) {
+            else if (StdDraw.isMousePressed() && (!mouseCorrect || mouseWasUp)) {
                 mouseWasUp = false;
                 
                 // the location (x, y) of the mouse
@@ -125,8 +177,14 @@ public class TSPVisualizer {
                 points.add(p);
                 
                 // insert points in the tours
-                nearest.insertNearest(p);
-                smallest.insertSmallest(p);
+                if (editable) {
+                    editableNearest.insertNearest(x, y);
+                    editableSmallest.insertSmallest(x, y);
+                }
+                else {
+                    nearest.insertNearest(p);
+                    smallest.insertSmallest(p);
+                }
                 
                 // Print line with new points coordinates
                 StdOut.println(x + " " + y);
@@ -138,8 +196,8 @@ public class TSPVisualizer {
                 mouseWasUp = !StdDraw.isMousePressed();
             
             
-            // when the frame needs to be refreshed
-            if (redraw) {
+            // when the frame needs to be refreshed (once for all the keys typed)
+            if (redraw && !StdDraw.hasNextKeyTyped()) {
                 redraw = false;
                 
                 StdDraw.clear();
@@ -148,14 +206,16 @@ public class TSPVisualizer {
                 if (showingNearest) {
                     StdDraw.setPenRadius(0.004);
                     StdDraw.setPenColor(StdDraw.RED);
-                    nearest.draw();
+                    if (editable) editableNearest.draw();
+                    else nearest.draw();
                 }
                 
                 // draw in blue the smallest
                 if (showingSmallest) {
                     StdDraw.setPenRadius(0.003);
                     StdDraw.setPenColor(StdDraw.BLUE);
-                    smallest.draw();
+                    if (editable) editableSmallest.draw();
+                    else smallest.draw();
                 }
                 
                 // draw all of the points
@@ -165,16 +225,19 @@ public class TSPVisualizer {
                     p.draw();
                 
                 // print captions
-                StdDraw.textLeft(10, -10, "num points: " + points.size());
+                StdDraw.textLeft(10, -10, "num points: " + points.size() + (deleting ? "   (delete mode)" : ""));
                 StdDraw.setPenColor(StdDraw.RED);
-                StdDraw.textLeft(10, -35, "nearest: " + nearest.length());
+                StdDraw.textLeft(10, -35, "nearest: " + (editable ? editableNearest.length() : nearest.length()));
                 StdDraw.setPenColor(StdDraw.BLUE);
-                StdDraw.textLeft(10, -60, "smallest: " + smallest.length());
+                StdDraw.textLeft(10, -60, "smallest: " + (editable ? editableSmallest.length() : smallest.length()));
                 StdDraw.setPenColor(StdDraw.BLACK);
                 
                 StdDraw.show();
                 StdDraw.pause(50);
             }
+
+            // wait for more input, unless some is left
+            if (!StdDraw.hasNextKeyTyped()) input = DrawLoop.awaitInput(input);
         }
         System.exit(0);
     }
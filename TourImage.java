@@ -0,0 +1,118 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs TourImage.java
+ *  Execution:    java-introcs TourImage output.png < file.txt
+ *  Dependencies: ArrayTour.java StdIn.java
+ *
+ *  Draws a tour into an off-screen image and writes it to a PNG file,
+ *  without opening a window, so it works with java.awt.headless=true.
+ *  The picture matches what NearestInsertion and SmallestInsertion show on
+ *  screen: a width x (height + border) canvas, black segments on white, with
+ *  y = -border at the bottom.
+ *
+ *  The tour can be given as coordinates in tour order (see
+ *  ArrayTour.coordinates), or as the output of Tour.toString(), one "(x, y)"
+ *  per line, for the student Tour that has no other way to export its order.
+ *
+ **************************************************************************** */
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+
+public final class TourImage {
+
+    // same default pen as StdDraw, which scales the radius by a 512-pixel canvas
+    private static final double PEN_RADIUS = 0.002;
+    private static final int DEFAULT_SIZE = 512;
+
+    // can't instantiate
+    private TourImage() { }
+
+    // parses Tour.toString() into coordinates; returns the number of points
+    public static int parse(String tour, double[][] coords) {
+        String[] lines = tour.split("\n");
+        double[] xs = new double[lines.length];
+        double[] ys = new double[lines.length];
+        int n = 0;
+        for (String line : lines) {
+            String s = line.trim();
+            if (s.length() == 0) continue;
+            int comma = s.indexOf(',');
+            if (s.charAt(0) != '(' || s.charAt(s.length()-1) != ')' || comma == -1)
+                throw new IllegalArgumentException("Wrong tour output: " + s);
+            xs[n] = Double.parseDouble(s.substring(1, comma).trim());
+            ys[n] = Double.parseDouble(s.substring(comma + 1, s.length()-1).trim());
+            n++;
+        }
+        coords[0] = Arrays.copyOf(xs, n);
+        coords[1] = Arrays.copyOf(ys, n);
+        return n;
+    }
+
+    // writes the output of Tour.toString() as a PNG picture of the tour
+    public static void save(String filename, String tour, int width, int height, int border) {
+        double[][] coords = new double[2][];
+        int n = parse(tour, coords);
+        save(filename, coords[0], coords[1], n, width, height, border);
+    }
+
+    // writes the closed tour through the first n points of (xs, ys), in order,
+    // as a PNG picture with x in [0, width] and y in [-border, height]
+    public static void save(String filename, double[] xs, double[] ys, int n,
+                            int width, int height, int border) {
+        int h = height + border;
+        BufferedImage image = new BufferedImage(width, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, h);
+        g.setColor(Color.BLACK);
+        float stroke = (float) (PEN_RADIUS * DEFAULT_SIZE);
+        g.setStroke(new BasicStroke(stroke, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+
+        Line2D.Double segment = new Line2D.Double();
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1 == n) ? 0 : i + 1;
+            segment.setLine(xs[i], height - ys[i], xs[j], height - ys[j]);
+            g.draw(segment);
+        }
+        g.dispose();
+
+        // ImageIO.write() returns false, and writes nothing, if no writer
+        // handles the file's suffix (e.g. "tour.svg")
+        String suffix = filename.substring(filename.lastIndexOf('.') + 1);
+        boolean written;
+        try {
+            written = ImageIO.write(image, suffix.toLowerCase(), new File(filename));
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("could not write " + filename, e);
+        }
+        if (!written)
+            throw new IllegalArgumentException("could not write " + filename + ": no image writer for \"" + suffix + "\"");
+    }
+
+    // reads in a TSP file and saves a picture of its nearest insertion tour
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int width = StdIn.readInt();
+        int height = StdIn.readInt();
+        ArrayTour tour = new ArrayTour();
+        while (!StdIn.isEmpty()) {
+            double x = StdIn.readDouble();
+            double y = StdIn.readDouble();
+            tour.insertNearest(x, y);
+        }
+        double[] xs = new double[tour.size()];
+        double[] ys = new double[tour.size()];
+        tour.coordinates(xs, ys);
+        save(args[0], xs, ys, xs.length, width, height, 20);
+    }
+}
@@ -0,0 +1,178 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs TourWorker.java
+ *  Execution:    java-introcs TourWorker [-port p [-bind address] | -socket path]
+ *                                        [-connections c] [-k k] [-fail r]
+ *  Dependencies: LargeTour.java Storage.java PointFile.java StdOut.java
+ *
+ *  Worker process of DistributedSolver: listens on a TCP port (default
+ *  8127) or on a Unix domain socket (a path, for workers on the same
+ *  machine), and solves the regions it is sent, one after the other on
+ *  each connection, until the coordinator closes it.
+ *
+ *  The port is only open to the loopback address unless -bind gives
+ *  another one (e.g. -bind 0.0.0.0 for a worker on another machine than
+ *  the coordinator), since anyone who can connect can make it work.
+ *  Connections are served by c threads (default: one per core), with at
+ *  most c more waiting; further ones are closed at once. A region that
+ *  would not fit in the heap (about 64 bytes per point) is refused before
+ *  anything is allocated for it.
+ *
+ *  -fail r makes the worker close its connection, without replying, on
+ *  receiving its (r+1)-th region, as a worker that dies mid-run would; it
+ *  does so once, and then serves as usual (GoldenCheck uses it to check
+ *  that the coordinator gives that region to the other workers).
+ *
+ *  A request is a region in the packed format of PointFile (the int
+ *  "TSPB", the width, the height, n, then the n x- and n y-coordinates as
+ *  doubles, big-endian). The reply is n, then the n indices of the points
+ *  of the region in tour order, as big-endian ints. Each region is solved
+ *  as by LargeTour: a space-filling curve tour, then Or-opt with the k
+ *  nearest points (default 5) as candidates.
+ *
+ *  % java-introcs TourWorker -socket /tmp/worker-0.sock
+ *  listening on /tmp/worker-0.sock
+ *  region of 250000 points: 4.8 s
+ *  ...
+ *
+ **************************************************************************** */
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TourWorker {
+    static final int DEFAULT_PORT = 8127;
+    private static final AtomicInteger received = new AtomicInteger();     // regions, for -fail
+
+    // returns the points of the region in tour order, as LargeTour finds it
+    static int[] solve(PointFile region, int k) {
+        LargeTour tour = new LargeTour(Storage.wrap(region.xs()), Storage.wrap(region.ys()), Storage.heap());
+        tour.findNeighbors(k);
+        tour.orOpt();
+        int[] order = new int[region.size()];
+        for (int m = 1; m < order.length; m++) order[m] = tour.next(order[m - 1]);
+        return order;
+    }
+
+    // writes n and then the order, as big-endian ints
+    static void writeOrder(SocketChannel channel, int[] order) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        buffer.putInt(order.length);
+        for (int i : order) {
+            if (!buffer.hasRemaining()) {
+                buffer.flip();
+                while (buffer.hasRemaining()) channel.write(buffer);
+                buffer.clear();
+            }
+            buffer.putInt(i);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    // reads a reply of writeOrder() for a region of n points
+    static int[] readOrder(SocketChannel channel, int n) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        readFully(channel, header);
+        int m = header.flip().getInt();
+        if (m != n) throw new IOException("Worker replied with " + m + " points instead of " + n);
+        int[] order = new int[n];
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        for (int i = 0; i < n; ) {
+            buffer.clear().limit(Math.min(buffer.capacity(), Integer.BYTES * (n - i)));
+            readFully(channel, buffer);
+            buffer.flip();
+            while (buffer.hasRemaining()) order[i++] = buffer.getInt();
+        }
+        return order;
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new IOException("Connection closed in the middle of a reply");
+        }
+    }
+
+    // solves the regions sent on one connection until it is closed, or
+    // until it fails on purpose on the region after the first fail ones
+    // this worker received (if fail >= 0)
+    private static void serve(SocketChannel channel, int k, int fail) {
+        // a region takes about 64 bytes per point: coordinates, tour and candidates
+        int max = (int) Math.min(PointFile.MAX_PACKED, Runtime.getRuntime().maxMemory() / 64);
+        try (SocketChannel c = channel) {
+            PointFile region;
+            while ((region = PointFile.readPacked(c, "region", max)) != null) {
+                if (received.getAndIncrement() == fail) return;     // closes the channel unanswered
+                long start = System.nanoTime();
+                writeOrder(c, solve(region, k));
+                StdOut.printf("region of %d points: %.1f s\n", region.size(), (System.nanoTime() - start) / 1e9);
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Connection failed: " + e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT, k = 5, fail = -1;
+        int connections = Runtime.getRuntime().availableProcessors();
+        String socket = null, bind = null;
+        for (int i = 0; i < args.length; i++) {
+            if      (args[i].equals("-port"))        port = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-bind"))        bind = args[++i];
+            else if (args[i].equals("-socket"))      socket = args[++i];
+            else if (args[i].equals("-connections")) connections = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-k"))           k = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-fail"))        fail = Integer.parseInt(args[++i]);
+            else {
+                StdOut.println("This program should be called: \n$ java-introcs TourWorker "
+                               + "[-port p [-bind address] | -socket path] [-connections c] [-k k] [-fail r]");
+                return;
+            }
+        }
+
+        ServerSocketChannel server;
+        SocketAddress address;
+        if (socket != null) {
+            Path path = Path.of(socket);
+            Files.deleteIfExists(path);
+            path.toFile().deleteOnExit();
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            address = UnixDomainSocketAddress.of(path);
+        }
+        else {
+            server = ServerSocketChannel.open();
+            InetAddress host = bind != null ? InetAddress.getByName(bind) : InetAddress.getLoopbackAddress();
+            address = new InetSocketAddress(host, port);
+        }
+        server.bind(address);
+        StdOut.println("listening on " + (socket != null ? socket : address));
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(connections, connections, 0L, TimeUnit.MILLISECONDS,
+                                                         new ArrayBlockingQueue<Runnable>(connections));
+        int solverK = k, solverFail = fail;
+        while (true) {
+            SocketChannel channel = server.accept();
+            try {
+                pool.execute(() -> serve(channel, solverK, solverFail));
+            }
+            catch (RejectedExecutionException e) {
+                System.err.println("Too many connections, closing " + channel.getRemoteAddress());
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs TwoOpt.java
+ *  Execution:    java-introcs TwoOpt [-smallest] [-runs r] [-oracle direct|float|double] file
+ *  Dependencies: DistanceOracle.java ArrayTour.java PointFile.java StdOut.java
+ *
+ *  2-opt with the distances of a DistanceOracle: an edge pair a -> b,
+ *  c -> d is replaced by a -> c, b -> d (reversing the path from b to c)
+ *  whenever that shortens the tour, scanning every pair, until no pair
+ *  does. Each pass evaluates n(n-3)/2 pairs with four distances each, the
+ *  same pairs over and over, which is what the cache of DistanceOracle is
+ *  for. With an asymmetric oracle (map distances), the reversed path is
+ *  measured in its new direction too.
+ *
+ *  main() improves the nearest insertion tour (or -smallest) of the file
+ *  with each kind of Euclidean oracle (or only -oracle), the best of r runs
+ *  (default 3), and checks that the tour is the same as the one 2-opt
+ *  finds with direct distances (computed once, whichever oracles are
+ *  timed). Use -oracle to time each one in its own JVM: after more than
+ *  two kinds, the calls to distance() are no longer inlined.
+ *
+ *  % java-introcs TwoOpt -oracle direct -runs 30 circuit1290.txt
+ *  circuit1290.txt: 1290 points, nearest insertion tour of length 25029.8
+ *  oracle         setup (ms)  2-opt (ms)     length   same tour as direct
+ *  direct               0.01       52.97    13633.4   yes
+ *
+ *  % java-introcs TwoOpt -oracle double -runs 30 circuit1290.txt
+ *  ...
+ *  double matrix       12.78       78.96    13633.4   yes
+ *
+ *  % java-introcs TwoOpt -oracle float -runs 30 circuit1290.txt
+ *  ...
+ *  float matrix         6.26       53.37    13717.6   no
+ *
+ *  % java-introcs TwoOpt -oracle double -runs 30 bier127.txt
+ *  ...
+ *  double matrix        0.17        0.66     4214.9   yes
+ *
+ *  % java-introcs TwoOpt -oracle direct -runs 30 bier127.txt
+ *  ...
+ *  direct               0.00        0.99     4214.9   yes
+ *
+ *  The float matrix rounds distances to 24 bits, enough to change which
+ *  of two nearly equal moves 2-opt takes on circuit1290.txt.
+ *
+ **************************************************************************** */
+
+import java.util.Arrays;
+
+public class TwoOpt {
+    private static final double EPSILON = 1e-9;     // smallest improvement accepted
+
+    // don't instantiate
+    private TwoOpt() { }
+
+    // improves the tour (the points in order) in place with 2-opt moves;
+    // returns the total decrease in length
+    public static double improve(int[] tour, DistanceOracle d) {
+        int n = tour.length;
+        if (n < 4) return 0.0;
+        boolean symmetric = d.isSymmetric();
+        double saved = 0.0;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 0; i < n - 2; i++) {
+                int a = tour[i], b = tour[i + 1];
+                double ab = d.distance(a, b);
+                // edge i -> i+1 and edge j -> j+1 (not adjacent to it)
+                for (int j = i + 2; j < (i == 0 ? n - 1 : n); j++) {
+                    int c = tour[j], e = tour[(j + 1) % n];
+                    double delta = d.distance(a, c) + d.distance(b, e) - ab - d.distance(c, e);
+                    if (!symmetric) delta += reversal(tour, i + 1, j, d);
+                    if (delta < -EPSILON) {
+                        reverse(tour, i + 1, j);
+                        saved -= delta;
+                        improved = true;
+                        b = tour[i + 1];
+                        ab = d.distance(a, b);
+                    }
+                }
+            }
+        }
+        return saved;
+    }
+
+    // returns how much longer the path tour[from..to] is backward than forward
+    private static double reversal(int[] tour, int from, int to, DistanceOracle d) {
+        double change = 0.0;
+        for (int k = from; k < to; k++)
+            change += d.distance(tour[k + 1], tour[k]) - d.distance(tour[k], tour[k + 1]);
+        return change;
+    }
+
+    // reverses tour[i..j]
+    private static void reverse(int[] tour, int i, int j) {
+        for (; i < j; i++, j--) {
+            int t = tour[i];
+            tour[i] = tour[j];
+            tour[j] = t;
+        }
+    }
+
+    // returns the length of the tour, with the oracle's distances
+    public static double length(int[] tour, DistanceOracle d) {
+        double sum = 0.0;
+        for (int k = 0; k < tour.length; k++)
+            sum += d.distance(tour[k], tour[(k + 1) % tour.length]);
+        return sum;
+    }
+
+    // improves an insertion tour with the oracle made by each budget (0:
+    // direct, a matrix of floats, a matrix of doubles) and prints the times
+    public static void main(String[] args) {
+        boolean smallest = false;
+        int runs = 3;
+        String only = null;
+        String filename = null;
+        for (int i = 0; i < args.length; i++) {
+            if      (args[i].equals("-smallest")) smallest = true;
+            else if (args[i].equals("-runs"))     runs = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-oracle"))   only = args[++i];
+            else filename = args[i];
+        }
+        if (filename == null) {
+            StdOut.println("This program should be called: \n$ java-introcs TwoOpt [-smallest] [-runs r] "
+                           + "[-oracle direct|float|double] file");
+            return;
+        }
+
+        PointFile file = new PointFile(filename);
+        double[] xs = file.xs(), ys = file.ys();
+        int n = file.size();
+        ArrayTour insertion = new ArrayTour(n);
+        for (int i = 0; i < n; i++) {
+            if (smallest) insertion.insertSmallest(xs[i], ys[i]);
+            else          insertion.insertNearest(xs[i], ys[i]);
+        }
+        int[] start = insertion.order();
+        StdOut.printf("%s: %d points, %s insertion tour of length %.1f\n", filename, n,
+                      smallest ? "smallest" : "nearest", insertion.length());
+        StdOut.printf("%-14s %10s %11s %10s   %s\n", "oracle", "setup (ms)", "2-opt (ms)", "length",
+                      "same tour as direct");
+
+        // the reference: the tour with direct distances, computed once
+        // whichever oracles are timed
+        int[] direct = start.clone();
+        improve(direct, DistanceOracle.euclidean(xs, ys, n, 0));
+
+        long entries = (long) n * n;
+        String[] names = { "direct", "float", "double" };
+        long[] budgets = { 0, entries * Float.BYTES, entries * Double.BYTES };
+        for (int o = 0; o < names.length; o++) {
+            if (only != null && !only.equals(names[o])) continue;
+            long budget = budgets[o];
+            double bestSetup = Double.POSITIVE_INFINITY, bestImprove = Double.POSITIVE_INFINITY;
+            DistanceOracle oracle = null;
+            int[] tour = null;
+            for (int run = 0; run < runs; run++) {
+                long t0 = System.nanoTime();
+                oracle = names[o].equals("float") ? DistanceOracle.euclideanFloat(xs, ys, n, budget)
+                                                  : DistanceOracle.euclidean(xs, ys, n, budget);
+                long t1 = System.nanoTime();
+                tour = start.clone();
+                improve(tour, oracle);
+                long t2 = System.nanoTime();
+                bestSetup = Math.min(bestSetup, (t1 - t0) / 1e6);
+                bestImprove = Math.min(bestImprove, (t2 - t1) / 1e6);
+            }
+            // lengths with exact distances, whatever the oracle stored
+            double length = length(tour, DistanceOracle.euclidean(xs, ys, n, 0));
+            StdOut.printf("%-14s %10.2f %11.2f %10.1f   %s\n", oracle.name(), bestSetup, bestImprove, length,
+                          Arrays.equals(tour, direct) ? "yes" : "no");
+        }
+    }
+}
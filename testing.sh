@@ -1,6 +1,6 @@
-
 javac-introcs *.java
 
+# the student's Tour on each instance, one JVM per file, through TSPMap
 for file in ./test_files/round1/*; do
     echo "FILE NAME: " $file >&2
     echo "nearest time" >&2
@@ -11,3 +11,13 @@ for file in ./test_files/round1/*; do
     echo '' >&2
 done
 
+# the same tours timed without JVM startup: the round1 instances are (lat,
+# lng) points, so they are built with Tour and map distances (walking, the
+# default mode of TSPMap), one instance at a time so that the times compare
+# with each other and with res.txt; pass -csv or -json for
+# machine-readable output
+java-introcs BatchRunner -sequential -map walking ./test_files/round1 "$@"
+
+# every tour constructor against the recorded reference tours (golden.txt
+# and the .ans files); exits with status 1 on a mismatch
+java-introcs GoldenCheck
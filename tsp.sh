@@ -0,0 +1,31 @@
+#!/bin/bash
+#
+# Starts one of the TSP drivers (NearestInsertion, SmallestInsertion, TSPMap)
+# from an AppCDS archive, so the JVM maps the already-parsed classes of the
+# drivers, StdDraw/StdMap and org.json instead of loading them one by one.
+#
+#   $ ./tsp.sh NearestInsertion < tsp1000.txt
+#   $ ./tsp.sh -headless SmallestInsertion < tsp1000.txt    (no AWT, text only)
+#   $ ./tsp.sh TSPMap n walking < NYC_points.txt
+#
+# The classes are packed into tsp.jar (CDS only archives classes from jars)
+# and the archive tsp.jsa is recorded from a training run the first time,
+# and again whenever a .class file is newer than the jar.
+#
+# INTROCS_JAR must point at the course library (StdIn, StdDraw, ...).
+
+INTROCS_JAR="${INTROCS_JAR:-/usr/local/lift/lib/introcs.jar}"
+JAR=tsp.jar
+ARCHIVE=tsp.jsa
+CP="$JAR:$INTROCS_JAR"
+
+if [ ! -f "$JAR" ] || [ -n "$(find . -maxdepth 3 -name '*.class' -newer "$JAR" -print -quit)" ]; then
+    rm -f "$JAR" "$ARCHIVE"
+    jar cf "$JAR" $(find . -maxdepth 3 -name '*.class' | sed 's|^\./||')
+fi
+
+if [ ! -f "$ARCHIVE" ]; then
+    java -XX:ArchiveClassesAtExit="$ARCHIVE" -cp "$CP" TSPLauncher -train > /dev/null
+fi
+
+exec java -XX:SharedArchiveFile="$ARCHIVE" -Xshare:auto -cp "$CP" TSPLauncher "$@"
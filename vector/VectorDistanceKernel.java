@@ -0,0 +1,70 @@
+/* *****************************************************************************
+ *  Compilation:  javac-introcs --add-modules jdk.incubator.vector -d . \
+ *                              vector/VectorDistanceKernel.java
+ *  Execution:    loaded by DistanceKernel.create() when the JVM is started
+ *                with --add-modules jdk.incubator.vector
+ *  Dependencies: DistanceKernel.java
+ *
+ *  SIMD version of DistanceKernel built on the Vector API. Each loop handles
+ *  SPECIES.length() points per iteration and finishes the tail with the
+ *  scalar code inherited from DistanceKernel. The lanes perform exactly the
+ *  same IEEE operations in the same order as the scalar loops, so the
+ *  results (and hence the tours built from them) are bit-for-bit identical.
+ *
+ *  This file lives outside the top-level directory so that the plain
+ *  "javac-introcs *.java" build does not need the incubator module.
+ *
+ **************************************************************************** */
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorDistanceKernel extends DistanceKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    public String name() {
+        return "vector" + SPECIES.length();
+    }
+
+    public void distances(double px, double py, double[] x, double[] y,
+                          int from, int to, double[] out) {
+        int i = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, x, i).sub(px);
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, y, i).sub(py);
+            dx.mul(dx).add(dy.mul(dy)).lanewise(VectorOperators.SQRT).intoArray(out, i);
+        }
+        super.distances(px, py, x, y, i, to, out);
+    }
+
+    public void squaredDistances(double px, double py, double[] x, double[] y,
+                                 int from, int to, double[] out) {
+        int i = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, x, i).sub(px);
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, y, i).sub(py);
+            dx.mul(dx).add(dy.mul(dy)).intoArray(out, i);
+        }
+        super.squaredDistances(px, py, x, y, i, to, out);
+    }
+
+    public void insertionDeltas(double px, double py,
+                                double[] ax, double[] ay, double[] bx, double[] by,
+                                double[] ab, int from, int to, double[] out) {
+        int i = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector dax = DoubleVector.fromArray(SPECIES, ax, i).sub(px);
+            DoubleVector day = DoubleVector.fromArray(SPECIES, ay, i).sub(py);
+            DoubleVector dbx = DoubleVector.fromArray(SPECIES, bx, i).sub(px);
+            DoubleVector dby = DoubleVector.fromArray(SPECIES, by, i).sub(py);
+            DoubleVector da = dax.mul(dax).add(day.mul(day)).lanewise(VectorOperators.SQRT);
+            DoubleVector db = dbx.mul(dbx).add(dby.mul(dby)).lanewise(VectorOperators.SQRT);
+            da.add(db).sub(DoubleVector.fromArray(SPECIES, ab, i)).intoArray(out, i);
+        }
+        super.insertionDeltas(px, py, ax, ay, bx, by, ab, i, to, out);
+    }
+}